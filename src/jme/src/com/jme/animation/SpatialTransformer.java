@@ -96,13 +96,13 @@ public class SpatialTransformer extends Controller {
 
     private float delta;
 
-    private final static Vector3f unSyncbeginPos = new Vector3f();
+    private final Vector3f unSyncbeginPos = new Vector3f();
 
-    private final static Vector3f unSyncendPos = new Vector3f();
+    private final Vector3f unSyncendPos = new Vector3f();
 
-    private final static Quaternion unSyncbeginRot = new Quaternion();
+    private final Quaternion unSyncbeginRot = new Quaternion();
 
-    private final static Quaternion unSyncendRot = new Quaternion();
+    private final Quaternion unSyncendRot = new Quaternion();
 
     /**
      * Constructs a new SpatialTransformer that will operate on
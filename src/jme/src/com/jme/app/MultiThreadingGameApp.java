@@ -28,16 +28,24 @@ public abstract class MultiThreadingGameApp extends AbstractGame
 
     private long preferredTicksPerFrame;
 
-    private long frameStartTick;
+    /** Wall time not yet simulated, in nanoseconds. */
+    private long accumulatedTicks;
 
-    private long frameDurationTicks;
+    private long lastPhysicsTick;
+
+    /** Upper bound of steps taken to catch up within one physics frame. */
+    private int maxSubSteps = 8;
+
+    /** Transforms handed from the physics thread to the render thread. */
+    private volatile TransformSnapshot transformSnapshot;
 
     /**
-     * Set preferred frame rate. The main loop will make every attempt to maintain the given frame rate. This should not
-     * be called prior to the application being <code>start()</code> -ed.
+     * Set the fixed rate the physics is stepped at. Every call to <code>updatePhysics()</code> advances the simulation
+     * by exactly <code>1 / fps</code> seconds, independent of the render frame rate. This should not be called after
+     * the physics thread was <code>start()</code> -ed.
      * 
      * @param fps
-     *            the desired frame rate in frames per second
+     *            the desired physics rate in steps per second
      */
     public void setFrameRate(int fps)
     {
@@ -46,15 +54,57 @@ public abstract class MultiThreadingGameApp extends AbstractGame
             throw new IllegalArgumentException("Frames per second cannot be less than one.");
         }
 
-        LoggingSystem.getLogger().log(Level.INFO, "Attempting to run at " + fps + " fps.");
+        LoggingSystem.getLogger().log(Level.INFO, "Attempting to run physics at " + fps + " fps.");
         preferredTicksPerFrame = 1000000000 / fps;
     }
 
+    /**
+     * @return the fixed physics step in seconds, as passed to <code>updatePhysics()</code>
+     */
+    protected float getPhysicsStepSize()
+    {
+        return preferredTicksPerFrame / 1000000000.0f;
+    }
+
+    /**
+     * Sets how many physics steps may be taken in a row to catch up after a stall. Time beyond that is dropped, so the
+     * simulation slows down instead of spiraling into ever longer frames.
+     * 
+     * @param steps
+     *            the maximum number of steps per physics frame
+     */
+    public void setMaxSubSteps(int steps)
+    {
+        if (steps <= 0)
+        {
+            throw new IllegalArgumentException("Sub steps cannot be less than one.");
+        }
+        maxSubSteps = steps;
+    }
+
+    /**
+     * Sets the snapshot the physics thread publishes its transforms to. It is applied at the start of every render
+     * frame, before <code>update()</code>, so the scene never has to be locked against the physics thread.
+     * 
+     * @param snapshot
+     *            the snapshot, or null to disable
+     */
+    protected void setTransformSnapshot(TransformSnapshot snapshot)
+    {
+        transformSnapshot = snapshot;
+    }
+
+    /**
+     * @return the snapshot applied at the start of every render frame, or null
+     */
+    protected TransformSnapshot getTransformSnapshot()
+    {
+        return transformSnapshot;
+    }
+
     static long sleepDuration = 1000000;
     static long startTime_logic = 0;
 
-    static long stopTime_logic = 0;
-
     static long startTime_render = 0;
 
     static long stopTime_render = 0;
@@ -71,36 +121,61 @@ public abstract class MultiThreadingGameApp extends AbstractGame
     {
         if (isGameReady && !finished && !display.isClosing())
         {
-            fps_logic_tmp++;
-            stopTime_logic = System.nanoTime() - startTime_logic;
+            long now = System.nanoTime();
+            if (lastPhysicsTick == 0)
+            {
+                lastPhysicsTick = startTime_logic = now;
+            }
+            accumulatedTicks += now - lastPhysicsTick;
+            lastPhysicsTick = now;
+
+            float stepSize = getPhysicsStepSize();
+            int steps = 0;
+            while (accumulatedTicks >= preferredTicksPerFrame)
+            {
+                if (steps == maxSubSteps)
+                {
+                    // too far behind, drop the rest instead of catching up
+                    accumulatedTicks = 0;
+                    break;
+                }
+                accumulatedTicks -= preferredTicksPerFrame;
 
-            if ((stopTime_logic - startTime_logic) >= (1000000000l / 60l))
+                TransformSnapshot snapshot = transformSnapshot;
+                if (snapshot != null)
+                {
+                    snapshot.setStepTime(now - accumulatedTicks);
+                }
+                updatePhysics(stepSize);
+                steps++;
+            }
+
+            fps_logic_tmp += steps;
+            if ((now - startTime_logic) >= 1000000000l)
             {
-                stopTime_logic = startTime_logic = System.nanoTime();
-                fps_logic = fps_logic_tmp * 5;
+                startTime_logic = now;
+                fps_logic = fps_logic_tmp;
                 fps_logic_tmp = 0;
 
-                System.out.println("physics updates per second: " + fps_logic + "/"+ skipFrame);
+                if (LoggingSystem.getLogger().isLoggable(Level.FINE))
+                    LoggingSystem.getLogger().log(Level.FINE, "physics updates per second: " + fps_logic + "/" + skipFrame);
 
                 skipFrame=false;
-
             }
 
-            //GlobalLock.writeLock.lock();
-            updatePhysics(1.0f / fps_logic); // 120 fps desired
-            //GlobalLock.writeLock.unlock();
             syncFrame();
         }
     }
 
+    /**
+     * Sleeps until the next physics step is due.
+     */
     private void syncFrame()
     {
-        frameDurationTicks = System.nanoTime() - frameStartTick;
-
-        if ((frameDurationTicks < preferredTicksPerFrame))
+        long sleepTicks = preferredTicksPerFrame - accumulatedTicks - (System.nanoTime() - lastPhysicsTick);
+        long sleepTime = sleepTicks / sleepDuration;
+        if (sleepTime > 0)
         {
-            long sleepTime = (preferredTicksPerFrame - frameDurationTicks) / sleepDuration;
-            //LoggingSystem.getLogger().log(Level.INFO, "sleeping: " + ((float)frameDurationTicks/(float)preferredTicksPerFrame)*100f + "%");
             try
             {
                 Thread.sleep(sleepTime);
@@ -112,10 +187,8 @@ public abstract class MultiThreadingGameApp extends AbstractGame
         }
         else
         {
-            //if((frameDurationTicks > preferredTicksPerFrame))
-              //  skipFrame=true;
+            Thread.yield();
         }
-        frameStartTick = System.nanoTime();
     }
 
     public boolean isRunning()
@@ -135,7 +208,7 @@ public abstract class MultiThreadingGameApp extends AbstractGame
             quit = false;
             getAttributes();
             // timer = Timer.getTimer(properties.getRenderer());
-            setFrameRate(120); // default to 30 fps
+            setFrameRate(240); // fixed physics step
 
             initSystem();
 
@@ -155,24 +228,24 @@ public abstract class MultiThreadingGameApp extends AbstractGame
             // main loop
             while (!finished && !display.isClosing())
             {
+                TransformSnapshot snapshot = transformSnapshot;
+                if (snapshot != null)
+                {
+                    // render one step behind the newest physics state, so
+                    // there are always two states to interpolate between
+                    snapshot.apply(System.nanoTime() - preferredTicksPerFrame);
+                }
+
                 if (!skipFrame)
                 {
-                    if (true == GlobalLock.readLock.tryLock())
-                    {
-                        update(-1.0f);
-                        render(-1.0f);
-                        display.getRenderer().displayBackBufferAndUnlock();
-                    }
+                    update(-1.0f);
+                    render(-1.0f);
+                    display.getRenderer().displayBackBuffer();
                 }                
                 else
                 {
                     display.getRenderer().clearRenderer();
-                    
-                    if (true == GlobalLock.readLock.tryLock())
-                    {
-                        update(-1.0f);
-                        GlobalLock.readLock.unlock();
-                    }
+                    update(-1.0f);
                 }
             }
 
@@ -214,7 +287,6 @@ public abstract class MultiThreadingGameApp extends AbstractGame
         
         for(int i=0; i<32; i++)
         {
-            LoggingSystem.getLogger().log(Level.INFO, "sleeping: " + ((float)frameDurationTicks/(float)preferredTicksPerFrame)*100f + "%");
             try
             {
                 LoggingSystem.getLogger().log(Level.INFO, "calibrating sleep counter..."+(i/0.32f)+"%");
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.jme.app;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+import com.jme.scene.Spatial;
+
+/**
+ * <code>TransformSnapshot</code> hands world transforms of a fixed set of
+ * spatials from a single writer thread (physics) to a single reader thread
+ * (rendering) without locking. It is a triple buffer: the writer fills its
+ * back buffer and publishes it by swapping it with the shared middle buffer,
+ * the reader swaps the middle buffer into its front buffer whenever a newer
+ * one was published. Neither side ever waits for the other and the reader
+ * always sees a complete step.
+ * <p>
+ * Every publication carries the state of the previous step as well, each
+ * stamped with the time it is valid at, so the reader can interpolate
+ * between the last two physics states when it renders faster than, or out
+ * of phase with, the fixed physics step.
+ * </p>
+ */
+public final class TransformSnapshot {
+
+	/** Floats stored per spatial: translation xyz, rotation xyzw. */
+	private static final int STRIDE = 7;
+
+	/** Buffer index bits of <code>middle</code>. */
+	private static final int INDEX_MASK = 3;
+
+	/** Set in <code>middle</code> when it holds an unread publication. */
+	private static final int DIRTY = 4;
+
+	private final Spatial[] targets;
+
+	private final IdentityHashMap indices;
+
+	/** Per buffer: current state, followed by the state of the step before. */
+	private final float[][] buffers;
+
+	/** Per buffer: time stamps of the previous and the current state. */
+	private final long[][] times;
+
+	/** Index of the shared buffer, optionally tagged with DIRTY. */
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	/** Owned by the writer. */
+	private int back = 0;
+
+	/** Owned by the writer, the state of the last published step. */
+	private final float[] last;
+
+	private long lastTime;
+
+	private boolean hasLast;
+
+	private long stepTime;
+
+	/** Owned by the reader. */
+	private int front = 2;
+
+	/** Owned by the reader, false until the first publication arrived. */
+	private boolean hasData;
+
+	/** Reader temp variables to flatline memory usage. */
+	private final Vector3f tmpPos = new Vector3f();
+
+	private final Quaternion tmpRot = new Quaternion();
+
+	private final Vector3f prevPos = new Vector3f();
+
+	private final Quaternion prevRot = new Quaternion();
+
+	private final Quaternion inverseWorldRotation = new Quaternion();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param targets
+	 *            the spatials whose transforms are handed over.
+	 */
+	public TransformSnapshot(Spatial[] targets) {
+		this.targets = targets.clone();
+		indices = new IdentityHashMap(targets.length * 2);
+		for (int i = 0; i < targets.length; i++) {
+			indices.put(targets[i], Integer.valueOf(i));
+		}
+		buffers = new float[3][targets.length * STRIDE * 2];
+		times = new long[3][2];
+		last = new float[targets.length * STRIDE];
+	}
+
+	/**
+	 * @param spat
+	 *            the spatial to look up.
+	 * @return the slot of the given spatial, or -1 if it is not part of this
+	 *         snapshot.
+	 */
+	public int indexOf(Spatial spat) {
+		Integer index = (Integer) indices.get(spat);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * @return the number of spatials in this snapshot.
+	 */
+	public int size() {
+		return targets.length;
+	}
+
+	/**
+	 * Writer side: stores the world transform for a slot into the back
+	 * buffer. Nothing becomes visible before <code>publish()</code>.
+	 * 
+	 * @param index
+	 *            the slot as returned by <code>indexOf</code>.
+	 * @param translation
+	 *            the world translation.
+	 * @param rotation
+	 *            the world rotation.
+	 */
+	public void setWorldTransform(int index, Vector3f translation,
+			Quaternion rotation) {
+		float[] buf = buffers[back];
+		int i = index * STRIDE;
+		buf[i++] = translation.x;
+		buf[i++] = translation.y;
+		buf[i++] = translation.z;
+		buf[i++] = rotation.x;
+		buf[i++] = rotation.y;
+		buf[i++] = rotation.z;
+		buf[i] = rotation.w;
+	}
+
+	/**
+	 * Writer side: sets the time, in <code>System.nanoTime()</code> units, the
+	 * state of the next publication is valid at. If never called, all states
+	 * carry the same stamp and readers always get the newest one.
+	 * 
+	 * @param nanos
+	 *            the time stamp.
+	 */
+	public void setStepTime(long nanos) {
+		stepTime = nanos;
+	}
+
+	/**
+	 * Writer side: makes the back buffer the newest publication and continues
+	 * with the previous middle buffer. The next step overwrites every slot,
+	 * so the stale content of that buffer does not matter.
+	 */
+	public void publish() {
+		float[] buf = buffers[back];
+		int size = last.length;
+		if (!hasLast) {
+			System.arraycopy(buf, 0, last, 0, size);
+			lastTime = stepTime;
+			hasLast = true;
+		}
+		System.arraycopy(last, 0, buf, size, size);
+		System.arraycopy(buf, 0, last, 0, size);
+		times[back][0] = lastTime;
+		times[back][1] = stepTime;
+		lastTime = stepTime;
+		back = middle.getAndSet(back | DIRTY) & INDEX_MASK;
+	}
+
+	/**
+	 * Reader side: swaps in the newest publication, if there is one.
+	 * 
+	 * @return true if the front buffer changed.
+	 */
+	public boolean acquire() {
+		if ((middle.get() & DIRTY) == 0) {
+			return false;
+		}
+		front = middle.getAndSet(front) & INDEX_MASK;
+		hasData = true;
+		return true;
+	}
+
+	/**
+	 * Reader side: reads the world transform of a slot from the front buffer.
+	 * 
+	 * @param index
+	 *            the slot as returned by <code>indexOf</code>.
+	 * @param translation
+	 *            receives the world translation.
+	 * @param rotation
+	 *            receives the world rotation.
+	 */
+	public void getWorldTransform(int index, Vector3f translation,
+			Quaternion rotation) {
+		read(front, index * STRIDE, translation, rotation);
+	}
+
+	private void read(int buffer, int i, Vector3f translation,
+			Quaternion rotation) {
+		float[] buf = buffers[buffer];
+		translation.set(buf[i], buf[i + 1], buf[i + 2]);
+		rotation.x = buf[i + 3];
+		rotation.y = buf[i + 4];
+		rotation.z = buf[i + 5];
+		rotation.w = buf[i + 6];
+	}
+
+	/**
+	 * Reader side: acquires the newest publication and sets the local
+	 * transforms of all spatials so that their world transforms match it.
+	 * Must be called on the thread that updates and draws the scene, before
+	 * <code>updateGeometricState</code>.
+	 */
+	public void apply() {
+		apply(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reader side: like <code>apply()</code>, but interpolates between the
+	 * previous and the current state of the newest publication. Times before
+	 * the previous or after the current state are clamped.
+	 * 
+	 * @param nanos
+	 *            the time to interpolate to, in the units passed to
+	 *            <code>setStepTime</code>.
+	 */
+	public void apply(long nanos) {
+		acquire();
+		if (!hasData) {
+			return;
+		}
+		long[] stamp = times[front];
+		float alpha = 1;
+		if (nanos < stamp[1]) {
+			long span = stamp[1] - stamp[0];
+			alpha = span > 0 && nanos > stamp[0] ? (float) (nanos - stamp[0])
+					/ span : 0;
+		}
+		int prevOffset = targets.length * STRIDE;
+		for (int i = 0; i < targets.length; i++) {
+			Spatial spat = targets[i];
+			getWorldTransform(i, tmpPos, tmpRot);
+			if (alpha < 1) {
+				read(front, prevOffset + i * STRIDE, prevPos, prevRot);
+				tmpPos.subtractLocal(prevPos).multLocal(alpha).addLocal(
+						prevPos);
+				tmpRot.slerp(prevRot, tmpRot, alpha);
+			}
+			Vector3f localPos = spat.getLocalTranslation();
+			Quaternion localRot = spat.getLocalRotation();
+			Spatial parent = spat.getParent();
+			if (parent != null) {
+				inverseWorldRotation.set(parent.getWorldRotation())
+						.inverseLocal();
+				localPos.set(tmpPos).subtractLocal(parent.getWorldTranslation());
+				localPos.divideLocal(parent.getWorldScale());
+				inverseWorldRotation.multLocal(localPos);
+				inverseWorldRotation.mult(tmpRot, localRot);
+			} else {
+				localPos.set(tmpPos);
+				localRot.set(tmpRot);
+			}
+		}
+	}
+}
@@ -32,6 +32,8 @@
 
 package com.jme.bounding;
 
+import java.nio.FloatBuffer;
+
 import com.jme.scene.shape.*;
 import com.jme.math.*;
 
@@ -66,12 +68,6 @@ public class BoundingBox extends Box implements BoundingVolume {
 
     private Vector3f origExtent = new Vector3f();
 
-    private static final Matrix3f tempMat = new Matrix3f();
-
-    private static final Vector3f tempVa = new Vector3f();
-
-    private static final Vector3f tempVb = new Vector3f();
-
     /**
      * Default contstructor instantiates a new <code>BoundingBox</code>
      * object.
@@ -134,6 +130,17 @@ public class BoundingBox extends Box implements BoundingVolume {
         containAABB(points);
     }
 
+    /**
+     * <code>computeFromPoints</code> creates a new Bounding Box from a buffer
+     * of points. It uses the <code>containAABB</code> method as default.
+     * 
+     * @param points
+     *            the points to contain.
+     */
+    public void computeFromPoints(FloatBuffer points) {
+        containAABB(points);
+    }
+
     /**
      * <code>containAABB</code> creates a minimum-volume axis-aligned bounding
      * box of the points, then selects the smallest enclosing sphere of the box
@@ -147,32 +154,83 @@ public class BoundingBox extends Box implements BoundingVolume {
             return;
         }
 
-        Vector3f min = tempVa.set(points[0]);
-        Vector3f max = tempVb.set(min);
+        float minX = points[0].x, minY = points[0].y, minZ = points[0].z;
+        float maxX = minX, maxY = minY, maxZ = minZ;
 
         for (int i = 1; i < points.length; i++) {
-            if (points[i].x < min.x)
-                min.x = points[i].x;
-            else if (points[i].x > max.x)
-                max.x = points[i].x;
-
-            if (points[i].y < min.y)
-                min.y = points[i].y;
-            else if (points[i].y > max.y)
-                max.y = points[i].y;
-
-            if (points[i].z < min.z)
-                min.z = points[i].z;
-            else if (points[i].z > max.z)
-                max.z = points[i].z;
+            if (points[i].x < minX)
+                minX = points[i].x;
+            else if (points[i].x > maxX)
+                maxX = points[i].x;
+
+            if (points[i].y < minY)
+                minY = points[i].y;
+            else if (points[i].y > maxY)
+                maxY = points[i].y;
+
+            if (points[i].z < minZ)
+                minZ = points[i].z;
+            else if (points[i].z > maxZ)
+                maxZ = points[i].z;
+        }
+
+        setMinMax(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * <code>containAABB</code> creates a minimum-volume axis-aligned bounding
+     * box of the points held in the buffer as consecutive x, y, z floats.
+     * 
+     * @param points
+     *            the buffer of points.
+     */
+    public void containAABB(FloatBuffer points) {
+        int quantity = points.limit() / 3;
+        if (quantity <= 0) {
+            return;
+        }
+
+        float minX = points.get(0), minY = points.get(1), minZ = points.get(2);
+        float maxX = minX, maxY = minY, maxZ = minZ;
+
+        float x, y, z;
+        for (int i = 1, j = 3; i < quantity; i++, j += 3) {
+            x = points.get(j);
+            y = points.get(j + 1);
+            z = points.get(j + 2);
+
+            if (x < minX)
+                minX = x;
+            else if (x > maxX)
+                maxX = x;
+
+            if (y < minY)
+                minY = y;
+            else if (y > maxY)
+                maxY = y;
+
+            if (z < minZ)
+                minZ = z;
+            else if (z > maxZ)
+                maxZ = z;
         }
 
-        center.set(min.addLocal(max));
+        setMinMax(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * <code>setMinMax</code> sets the center and extents of this box from
+     * its minimum and maximum corners. Only locals are used, so boxes may be
+     * computed on several threads at once.
+     */
+    private void setMinMax(float minX, float minY, float minZ, float maxX,
+            float maxY, float maxZ) {
+        center.set(minX + maxX, minY + maxY, minZ + maxZ);
         center.multLocal(0.5f);
 
-        origExtent.x = xExtent = max.x - center.x;
-        origExtent.y = yExtent = max.y - center.y;
-        origExtent.z = zExtent = max.z - center.z;
+        origExtent.x = xExtent = maxX - center.x;
+        origExtent.y = yExtent = maxY - center.y;
+        origExtent.z = zExtent = maxZ - center.z;
         origCenter.set(center);
     }
 
@@ -219,37 +277,29 @@ public class BoundingBox extends Box implements BoundingVolume {
         rotate.mult(origCenter, box.center);
         box.center.multLocal(scale).addLocal(translate);
 
-        Matrix3f transMatrix = tempMat;
-        transMatrix.set(rotate);
-        // Make the rotation matrix all positive to get the maximum x/y/z extent
-        if (transMatrix.m00 < 0)
-            transMatrix.m00 *= -1;
-        if (transMatrix.m01 < 0)
-            transMatrix.m01 *= -1;
-        if (transMatrix.m02 < 0)
-            transMatrix.m02 *= -1;
-        if (transMatrix.m10 < 0)
-            transMatrix.m10 *= -1;
-        if (transMatrix.m11 < 0)
-            transMatrix.m11 *= -1;
-        if (transMatrix.m12 < 0)
-            transMatrix.m12 *= -1;
-        if (transMatrix.m20 < 0)
-            transMatrix.m20 *= -1;
-        if (transMatrix.m21 < 0)
-            transMatrix.m21 *= -1;
-        if (transMatrix.m22 < 0)
-            transMatrix.m22 *= -1;
-
-        // (ab)use origExtent to do the multiplication resulting in the biggest
-        // extent
-        // values for a rotation.
-        transMatrix.mult(origExtent, box.origExtent);
+        // Make the rotation matrix all positive to get the maximum x/y/z
+        // extent. The matrix is kept in locals so boxes may be transformed on
+        // several threads at once.
+        float tx = 2.0f * rotate.x, ty = 2.0f * rotate.y, tz = 2.0f * rotate.z;
+        float twx = tx * rotate.w, twy = ty * rotate.w, twz = tz * rotate.w;
+        float txx = tx * rotate.x, txy = ty * rotate.x, txz = tz * rotate.x;
+        float tyy = ty * rotate.y, tyz = tz * rotate.y, tzz = tz * rotate.z;
+
+        float m00 = FastMath.abs(1.0f - (tyy + tzz));
+        float m01 = FastMath.abs(txy - twz);
+        float m02 = FastMath.abs(txz + twy);
+        float m10 = FastMath.abs(txy + twz);
+        float m11 = FastMath.abs(1.0f - (txx + tzz));
+        float m12 = FastMath.abs(tyz - twx);
+        float m20 = FastMath.abs(txz - twy);
+        float m21 = FastMath.abs(tyz + twx);
+        float m22 = FastMath.abs(1.0f - (txx + tyy));
+
         // Assign the biggest rotations after scales.
-        box.xExtent = box.origExtent.x * scale.x;
-        box.yExtent = box.origExtent.y * scale.y;
-        box.zExtent = box.origExtent.z * scale.z;
-        // reset origExtent back to what it should be.
+        float ex = origExtent.x, ey = origExtent.y, ez = origExtent.z;
+        box.xExtent = (m00 * ex + m01 * ey + m02 * ez) * scale.x;
+        box.yExtent = (m10 * ex + m11 * ey + m12 * ez) * scale.y;
+        box.zExtent = (m20 * ex + m21 * ey + m22 * ez) * scale.z;
         box.origExtent.set(origExtent);
 
         return box;
@@ -347,36 +397,30 @@ public class BoundingBox extends Box implements BoundingVolume {
         if (!volume.correctCorners)
             volume.computeCorners();
 
-        Vector3f min = tempVa.set(center.x - xExtent, center.y - yExtent,
-                center.z - zExtent);
-        Vector3f max = tempVb.set(center.x + xExtent, center.y + yExtent,
-                center.z + zExtent);
+        float minX = center.x - xExtent, minY = center.y - yExtent;
+        float minZ = center.z - zExtent;
+        float maxX = center.x + xExtent, maxY = center.y + yExtent;
+        float maxZ = center.z + zExtent;
 
         for (int i = 1; i < volume.vectorStore.length; i++) {
             Vector3f temp = volume.vectorStore[i];
-            if (temp.x < min.x)
-                min.x = temp.x;
-            else if (temp.x > max.x)
-                max.x = temp.x;
-
-            if (temp.y < min.y)
-                min.y = temp.y;
-            else if (temp.y > max.y)
-                max.y = temp.y;
-
-            if (temp.z < min.z)
-                min.z = temp.z;
-            else if (temp.z > max.z)
-                max.z = temp.z;
+            if (temp.x < minX)
+                minX = temp.x;
+            else if (temp.x > maxX)
+                maxX = temp.x;
+
+            if (temp.y < minY)
+                minY = temp.y;
+            else if (temp.y > maxY)
+                maxY = temp.y;
+
+            if (temp.z < minZ)
+                minZ = temp.z;
+            else if (temp.z > maxZ)
+                maxZ = temp.z;
         }
 
-        center.set(min.addLocal(max));
-        center.multLocal(0.5f);
-
-        origExtent.x = xExtent = max.x - center.x;
-        origExtent.y = yExtent = max.y - center.y;
-        origExtent.z = zExtent = max.z - center.z;
-        origCenter.set(center);
+        setMinMax(minX, minY, minZ, maxX, maxY, maxZ);
         return this;
     }
 
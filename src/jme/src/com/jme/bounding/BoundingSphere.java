@@ -31,11 +31,13 @@
 
 package com.jme.bounding;
 
+import java.nio.FloatBuffer;
 import java.util.logging.Level;
 
 import com.jme.math.*;
 import com.jme.scene.shape.Sphere;
 import com.jme.util.LoggingSystem;
+import com.jme.util.geom.BufferUtils;
 
 /**
  * <code>BoundingSphere</code> defines a sphere that defines a container for a
@@ -62,12 +64,6 @@ public class BoundingSphere extends Sphere implements BoundingVolume {
 
     private static final long serialVersionUID = 1L;
 
-    private static final Vector3f tempVeca = new Vector3f();
-
-    private static final Vector3f[] tempVarray = { new Vector3f(),
-            new Vector3f(), new Vector3f(), new Vector3f(), new Vector3f(),
-            new Vector3f(), new Vector3f(), new Vector3f() };
-
     /**
      * Default contstructor instantiates a new <code>BoundingSphere</code>
      * object.
@@ -172,6 +168,18 @@ public class BoundingSphere extends Sphere implements BoundingVolume {
         calcWelzl(points);
     }
 
+    /**
+     * <code>computeFromPoints</code> creates a new Bounding Sphere from a
+     * buffer of points. Welzl's algorithm reorders its input, so the points
+     * are first copied out of the buffer.
+     * 
+     * @param points
+     *            the points to contain.
+     */
+    public void computeFromPoints(FloatBuffer points) {
+        calcWelzl(BufferUtils.getVector3Array(points, points.limit() / 3));
+    }
+
     /**
      * Calculates a minimum bounding sphere for the set of points. The algorithm
      * was originally found at
@@ -516,30 +524,24 @@ public class BoundingSphere extends Sphere implements BoundingVolume {
         for (int i = 0; i < 8; i++) {
             mergeArray[i] = volume.vectorStore[i];
         }
-        mergeArray[8] = tempVarray[0].set(center).addLocal(radius, radius,
-                radius);
-        mergeArray[9] = tempVarray[1].set(center).addLocal(-radius, radius,
-                radius);
-        mergeArray[10] = tempVarray[2].set(center).addLocal(radius, -radius,
-                radius);
-        mergeArray[11] = tempVarray[3].set(center).addLocal(radius, radius,
-                -radius);
-        mergeArray[12] = tempVarray[4].set(center).addLocal(-radius, -radius,
-                radius);
-        mergeArray[13] = tempVarray[5].set(center).addLocal(-radius, radius,
-                -radius);
-        mergeArray[14] = tempVarray[6].set(center).addLocal(radius, -radius,
-                -radius);
-        mergeArray[15] = tempVarray[7].set(center).addLocal(-radius, -radius,
-                -radius);
+        mergeArray[8] = center.add(radius, radius, radius);
+        mergeArray[9] = center.add(-radius, radius, radius);
+        mergeArray[10] = center.add(radius, -radius, radius);
+        mergeArray[11] = center.add(radius, radius, -radius);
+        mergeArray[12] = center.add(-radius, -radius, radius);
+        mergeArray[13] = center.add(-radius, radius, -radius);
+        mergeArray[14] = center.add(radius, -radius, -radius);
+        mergeArray[15] = center.add(-radius, -radius, -radius);
         computeFromPoints(mergeArray);
         return this;
     }
 
     private BoundingVolume merge(float temp_radius, Vector3f temp_center,
             BoundingSphere rVal) {
-        Vector3f diff = temp_center.subtract(center, tempVeca);
-        float lengthSquared = diff.lengthSquared();
+        float diffX = temp_center.x - center.x;
+        float diffY = temp_center.y - center.y;
+        float diffZ = temp_center.z - center.z;
+        float lengthSquared = diffX * diffX + diffY * diffY + diffZ * diffZ;
         float radiusDiff = temp_radius - radius;
 
         float fRDiffSqr = radiusDiff * radiusDiff;
@@ -558,7 +560,8 @@ public class BoundingSphere extends Sphere implements BoundingVolume {
 
         if (length > FastMath.FLT_EPSILON) {
             float coeff = (length + radiusDiff) / (2.0f * length);
-            rVal.setCenter(center.addLocal(diff.multLocal(coeff)));
+            rVal.setCenter(center.addLocal(diffX * coeff, diffY * coeff, diffZ
+                    * coeff));
         } else {
             rVal.setCenter(center);
         }
@@ -37,6 +37,7 @@ import com.jme.math.Ray;
 import com.jme.math.Vector3f;
 
 import java.io.Serializable;
+import java.nio.FloatBuffer;
 
 /**
  * <code>BoundingVolume</code> defines an interface for dealing with
@@ -104,6 +105,17 @@ public interface BoundingVolume extends Serializable {
 	 */
 	public void computeFromPoints(Vector3f[] points);
 
+	/**
+	 * 
+	 * <code>computeFromPoints</code> generates a bounding volume that
+	 * encompasses a collection of points stored as consecutive x, y, z floats
+	 * up to the buffer's limit.
+	 * 
+	 * @param points
+	 *            the points to contain.
+	 */
+	public void computeFromPoints(FloatBuffer points);
+
 	/**
 	 * <code>merge</code> combines two bounding volumes into a single bounding
 	 * volume that contains both this bounding volume and the parameter volume.
@@ -1,5 +1,7 @@
 package com.jme.bounding;
 
+import java.nio.FloatBuffer;
+
 import com.jme.math.*;
 
 /**
@@ -97,11 +99,11 @@ public class OBB2 implements BoundingVolume {
 		OBB2 toReturn = (OBB2) store;
 		toReturn.extent.set(extent.x * scale.x, extent.y * scale.y, extent.z
 				* scale.z);
-		rotate.toRotationMatrix(tempMa);
-		tempMa.mult(xAxis, toReturn.xAxis);
-		tempMa.mult(yAxis, toReturn.yAxis);
-		tempMa.mult(zAxis, toReturn.zAxis);
-		tempMa.mult(center, toReturn.center);
+		Matrix3f rotation = rotate.toRotationMatrix();
+		rotation.mult(xAxis, toReturn.xAxis);
+		rotation.mult(yAxis, toReturn.yAxis);
+		rotation.mult(zAxis, toReturn.zAxis);
+		rotation.mult(center, toReturn.center);
 		toReturn.center.multLocal(scale).addLocal(translate);
 		toReturn.correctCorners = false;
 		return toReturn;
@@ -140,6 +142,11 @@ public class OBB2 implements BoundingVolume {
 		correctCorners = false;
 	}
 
+	public void computeFromPoints(FloatBuffer points) {
+		containAABB(points);
+		correctCorners = false;
+	}
+
 	/**
 	 * Calculates an AABB of the given point values for this OBB.
 	 * 
@@ -183,6 +190,55 @@ public class OBB2 implements BoundingVolume {
 		zAxis.set(0, 0, 1);
 	}
 
+	/**
+	 * Calculates an AABB of the point values held in the buffer for this OBB.
+	 * 
+	 * @param points
+	 *            The buffer of points this OBB should contain.
+	 */
+	private void containAABB(FloatBuffer points) {
+		int quantity = points.limit() / 3;
+		if (quantity <= 0) {
+			return;
+		}
+
+		Vector3f min = tempVa.set(points.get(0), points.get(1), points.get(2));
+		Vector3f max = tempVb.set(min);
+
+		float x, y, z;
+		for (int i = 1, j = 3; i < quantity; i++, j += 3) {
+			x = points.get(j);
+			y = points.get(j + 1);
+			z = points.get(j + 2);
+
+			if (x < min.x)
+				min.x = x;
+			else if (x > max.x)
+				max.x = x;
+
+			if (y < min.y)
+				min.y = y;
+			else if (y > max.y)
+				max.y = y;
+
+			if (z < min.z)
+				min.z = z;
+			else if (z > max.z)
+				max.z = z;
+		}
+
+		center.set(min.addLocal(max));
+		center.multLocal(0.5f);
+
+		extent.set(max.x - center.x, max.y - center.y, max.z - center.z);
+
+		xAxis.set(1, 0, 0);
+
+		yAxis.set(0, 1, 0);
+
+		zAxis.set(0, 0, 1);
+	}
+
 	public BoundingVolume merge(BoundingVolume volume) {
 		return new OBB2().mergeLocal(volume);
 	}
@@ -518,73 +574,6 @@ public class OBB2 implements BoundingVolume {
 						+ center.z);
 	}
 
-	public void computeFromTris(OBBTree.TreeTriangle[] tris, int start, int end) {
-		if (end - start <= 0) {
-			return;
-		}
-
-		Vector3f min = tempVa.set(tris[start].a);
-		Vector3f max = tempVb.set(min);
-		Vector3f point;
-		for (int i = start; i < end; i++) {
-
-			point = tris[i].a;
-			if (point.x < min.x)
-				min.x = point.x;
-			else if (point.x > max.x)
-				max.x = point.x;
-			if (point.y < min.y)
-				min.y = point.y;
-			else if (point.y > max.y)
-				max.y = point.y;
-			if (point.z < min.z)
-				min.z = point.z;
-			else if (point.z > max.z)
-				max.z = point.z;
-
-			point = tris[i].b;
-			if (point.x < min.x)
-				min.x = point.x;
-			else if (point.x > max.x)
-				max.x = point.x;
-			if (point.y < min.y)
-				min.y = point.y;
-			else if (point.y > max.y)
-				max.y = point.y;
-			if (point.z < min.z)
-				min.z = point.z;
-			else if (point.z > max.z)
-				max.z = point.z;
-
-			point = tris[i].c;
-			if (point.x < min.x)
-				min.x = point.x;
-			else if (point.x > max.x)
-				max.x = point.x;
-
-			if (point.y < min.y)
-				min.y = point.y;
-			else if (point.y > max.y)
-				max.y = point.y;
-
-			if (point.z < min.z)
-				min.z = point.z;
-			else if (point.z > max.z)
-				max.z = point.z;
-		}
-
-		center.set(min.addLocal(max));
-		center.multLocal(0.5f);
-
-		extent.set(max.x - center.x, max.y - center.y, max.z - center.z);
-
-		xAxis.set(1, 0, 0);
-
-		yAxis.set(0, 1, 0);
-
-		zAxis.set(0, 0, 1);
-	}
-
 	public boolean intersection(OBB2 box1) {
 		// Cutoff for cosine of angles between box axes. This is used to catch
 		// the cases when at least one pair of axes are parallel. If this
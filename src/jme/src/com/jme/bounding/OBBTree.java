@@ -1,21 +1,36 @@
 package com.jme.bounding;
 
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.jme.intersection.Intersection;
+import com.jme.math.Matrix3f;
+import com.jme.math.Quaternion;
 import com.jme.math.Ray;
 import com.jme.math.Vector3f;
-import com.jme.math.Matrix3f;
-import com.jme.intersection.Intersection;
 import com.jme.scene.TriMesh;
-
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.ArrayList;
+import com.jme.util.IntList;
 
 /**
  * Started Date: Sep 5, 2004 <br>
  * <br>
  * This class is used exclusivly by the TriMesh object. There is no need for
- * users to call functions on this class directly. It is a tree of OBB objects
- * that represent a model's bound.
+ * users to call functions on this class directly. It is a tree of boxes that
+ * represent a model's bound, down to leaves of a few triangles.
+ * <br>
+ * <br>
+ * The tree is held in flat arrays: the triangles as nine floats each in model
+ * space, ordered so the triangles below a node are stored together, and the
+ * nodes as axis aligned boxes in model space with the range of triangles below
+ * them. The first child of a node directly follows it. Queries walk the tree
+ * with an explicit stack and report the indices of the triangles hit into
+ * <code>IntList</code>s, so they do not allocate once the lists and stacks
+ * have grown to size. Rays are moved into model space, so the boxes and
+ * triangles are tested as they are stored. For two trees, each box is moved
+ * into the model space of the other tree and tested there as the axis aligned
+ * box around it, and the triangles of leaves that overlap are tested in world
+ * space.
  *
  * @author Jack Lindamood
  */
@@ -24,39 +39,85 @@ public class OBBTree {
     /** The max number of triangles in a leaf. */
     public static final int maxPerLeaf = 5;
 
-    /** Left tree. */
-    private OBBTree left;
+    /**
+     * Subtrees with more triangles than this are built on the fork/join pool,
+     * 0 to build on the calling thread only.
+     */
+    private static int parallelThreshold;
+
+    /** The mesh that built this tree. */
+    private TriMesh myParent;
+
+    /** Vertices of the triangles in model space, nine floats each. */
+    private float[] triangles;
 
-    /** Right tree. */
-    private OBBTree right;
+    /** Index in the mesh of each triangle. */
+    private int[] indices;
 
-    /** Untransformed bounds of this tree. */
-    public OBB2 bounds;
+    /** Center and extent of each node's box in model space, six floats each. */
+    private float[] bounds;
 
-    /** This tree's bounds after transformation. */
-    public OBB2 worldBounds;
+    /** Index of the first triangle below each node. */
+    private int[] first;
 
-    /** Array of triangles this tree is indexing. */
-    private TreeTriangle[] tris;
+    /** Number of triangles below each node. */
+    private int[] count;
 
-    /** Start and end triangle indexes that this node contains. */
-    private int myStart, myEnd;
+    /** Index of the second child of each node, or -1 for a leaf. */
+    private int[] second;
 
-    /** The mesh that built this node. */
-    private TriMesh myParent;
+    private int nodeQuantity;
+
+    /** Nodes still to visit by a ray, as deep as the tree. */
+    private int[] rayStack;
 
-    //static variables to contain information for ray intersection
-    static private final Vector3f tempVa = new Vector3f();
+    /** Pairs of nodes still to visit by a tree/tree test. */
+    private int[] pairStack = new int[64];
 
-    static private final Vector3f tempVb = new Vector3f();
+    /**
+     * World transform of the parent: the rotation row major, then the
+     * translation and the scale.
+     */
+    private final float[] transform = new float[15];
+
+    /**
+     * Affine maps from the model space of the other tree into this one's and
+     * back, twelve floats each.
+     */
+    private final float[] toThis = new float[12], toOther = new float[12];
 
-    static private final Vector3f tempVc = new Vector3f();
+    /** World space vertices of the triangles of the leaves being tested. */
+    private final float[] leafA = new float[9 * maxPerLeaf],
+            leafB = new float[9 * maxPerLeaf];
 
-    static private final Vector3f tempVd = new Vector3f();
+    private final IntList scratchA = new IntList(), scratchB = new IntList();
 
-    static private final Vector3f tempVe = new Vector3f();
+    private final Matrix3f rotation = new Matrix3f();
 
-    static private final Vector3f tempVf = new Vector3f();
+    private final Vector3f va = new Vector3f(), vb = new Vector3f(),
+            vc = new Vector3f(), vd = new Vector3f(), ve = new Vector3f(),
+            vf = new Vector3f();
+
+    /**
+     * <code>setParallelThreshold</code> sets the number of triangles above
+     * which a subtree is built on the fork/join pool instead of the calling
+     * thread. Building large meshes this way scales with the cores.
+     *
+     * @param threshold
+     *            the number of triangles, 0 to always build on the calling
+     *            thread.
+     */
+    public static void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+
+    /**
+     * @return the number of triangles above which a subtree is built on the
+     *         fork/join pool, 0 if it never is.
+     */
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
 
     /**
      * Recreates this OBBTree's information for the given TriMesh.
@@ -66,56 +127,286 @@ public class OBBTree {
      */
     public void construct(TriMesh parent) {
         this.myParent = parent;
-        Vector3f[] triangles = parent.getMeshAsTriangles();
-				if (tris == null || tris.length != triangles.length / 3)
-					tris = new TreeTriangle[triangles.length / 3];
-        for (int i = 0; i < tris.length; i++) {
-        	tris[i] = new TreeTriangle(triangles[i * 3 + 0],
-        		triangles[i * 3 + 1], triangles[i * 3 + 2]);
-            tris[i].putCentriod();
-            tris[i].index = i;
+        Vector3f[] vertices = parent.getMeshAsTriangles();
+        int quantity = vertices.length / 3;
+
+        float[] source = new float[9 * quantity];
+        float[] centroids = new float[3 * quantity];
+        int[] order = new int[quantity];
+        for (int i = 0; i < quantity; i++) {
+            for (int v = 0; v < 3; v++) {
+                Vector3f vertex = vertices[3 * i + v];
+                source[9 * i + 3 * v] = vertex.x;
+                source[9 * i + 3 * v + 1] = vertex.y;
+                source[9 * i + 3 * v + 2] = vertex.z;
+            }
+            for (int k = 0; k < 3; k++) {
+                centroids[3 * i + k] = (source[9 * i + k]
+                        + source[9 * i + 3 + k] + source[9 * i + 6 + k]) / 3.0f;
+            }
+            order[i] = i;
         }
-        createTree(0, tris.length);
-        for (int i = 0; i < tris.length; i++) {
-            tris[i].centroid = null;
+
+        nodeQuantity = quantity > 0 ? (int) (nodePair(quantity) >>> 32) : 0;
+        if (bounds == null || bounds.length != 6 * nodeQuantity) {
+            bounds = new float[6 * nodeQuantity];
+            first = new int[nodeQuantity];
+            count = new int[nodeQuantity];
+            second = new int[nodeQuantity];
+        }
+        rayStack = new int[depth(quantity) + 1];
+
+        if (quantity > 0) {
+            Builder builder = new Builder(0, 0, quantity, source, centroids,
+                    order);
+            if (parallelThreshold > 0 && quantity > parallelThreshold) {
+                ForkJoinPool.commonPool().invoke(builder);
+            } else {
+                builder.compute();
+            }
+        }
+
+        // store the triangles in the order of the leaves
+        if (triangles == null || triangles.length != source.length) {
+            triangles = new float[source.length];
         }
+        for (int i = 0; i < quantity; i++) {
+            System.arraycopy(source, 9 * order[i], triangles, 9 * i, 9);
+        }
+        indices = order;
     }
 
     /**
-     * Creates an OBB tree recursivly from the tris's array of triangles.
-     *
-     * @param start
-     *            The start index of the tris array, inclusive.
-     * @param end
-     *            The end index of the tris array, exclusive.
+     * Returns the number of nodes of a tree over n triangles in the high 32
+     * bits and of one over n + 1 triangles in the low bits. The halves of a
+     * split differ by at most one triangle, so the sizes on each level are two
+     * neighbouring numbers and one pair per level is enough.
      */
-    public void createTree(int start, int end) {
-        myStart = start;
-        myEnd = end;
-				if (bounds == null)
-					bounds = new OBB2();
-				if (worldBounds == null)
-					worldBounds = new OBB2();
-        bounds.computeFromTris(tris, start, end);
-        if (myEnd - myStart + 1 <= maxPerLeaf) {
-            return;
-        } else {
-            splitTris(start, end);
-						if (this.left == null)
-							this.left = new OBBTree();
-            this.left.tris = this.tris;
-            this.left.myParent = this.myParent;
-            this.left.createTree(start, (start + end) / 2);
-
-						if (this.right == null)
-							this.right = new OBBTree();
-            this.right.tris = this.tris;
-            this.right.myParent = this.myParent;
-            this.right.createTree((start + end) / 2 + 1, end);
+    private static long nodePair(int n) {
+        if (n + 1 <= maxPerLeaf) {
+            return (1L << 32) | 1;
+        }
+        int m = n >>> 1;
+        long pair = nodePair(m);
+        int fm = (int) (pair >>> 32), fm1 = (int) pair;
+        int fn = n <= maxPerLeaf ? 1 : 1 + fm + (n - m == m ? fm : fm1);
+        int c = (n + 1) >>> 1, d = n + 1 - c;
+        int fn1 = 1 + (c == m ? fm : fm1) + (d == m ? fm : fm1);
+        return ((long) fn << 32) | fn1;
+    }
+
+    /**
+     * @return the number of levels of a tree over n triangles.
+     */
+    private static int depth(int n) {
+        int depth = 1;
+        while (n > maxPerLeaf) {
+            n -= n >>> 1;
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Builds the node over the triangles from start to end, splitting them at
+     * the median of their centroids along the longest axis of its box. The
+     * node of the second half follows the whole subtree of the first, so both
+     * halves can be built at the same time.
+     */
+    private final class Builder extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int node, start, end;
+
+        private final float[] source, centroids;
+
+        private final int[] order;
+
+        Builder(int node, int start, int end, float[] source,
+                float[] centroids, int[] order) {
+            this.node = node;
+            this.start = start;
+            this.end = end;
+            this.source = source;
+            this.centroids = centroids;
+            this.order = order;
+        }
+
+        protected void compute() {
+            build(node, start, end);
+        }
+
+        private void build(int node, int start, int end) {
+            float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+            for (int i = start; i < end; i++) {
+                int o = 9 * order[i];
+                for (int v = o, vEnd = o + 9; v < vEnd; v += 3) {
+                    float x = source[v], y = source[v + 1], z = source[v + 2];
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    if (y > maxY) maxY = y;
+                    if (z < minZ) minZ = z;
+                    if (z > maxZ) maxZ = z;
+                }
+            }
+            int b = 6 * node;
+            bounds[b] = 0.5f * (minX + maxX);
+            bounds[b + 1] = 0.5f * (minY + maxY);
+            bounds[b + 2] = 0.5f * (minZ + maxZ);
+            bounds[b + 3] = 0.5f * (maxX - minX);
+            bounds[b + 4] = 0.5f * (maxY - minY);
+            bounds[b + 5] = 0.5f * (maxZ - minZ);
+            first[node] = start;
+            count[node] = end - start;
+            second[node] = -1;
+            if (end - start <= maxPerLeaf) {
+                return;
+            }
+
+            int axis;
+            if (maxX - minX > maxY - minY) {
+                axis = maxX - minX > maxZ - minZ ? 0 : 2;
+            } else {
+                axis = maxY - minY > maxZ - minZ ? 1 : 2;
+            }
+            int middle = (start + end) >>> 1;
+            select(start, end, middle, axis);
+
+            int left = node + 1;
+            int right = left + (int) (nodePair(middle - start) >>> 32);
+            second[node] = right;
+            if (parallelThreshold > 0 && end - start > parallelThreshold) {
+                invokeAll(new Builder(left, start, middle, source, centroids,
+                        order), new Builder(right, middle, end, source,
+                        centroids, order));
+            } else {
+                build(left, start, middle);
+                build(right, middle, end);
+            }
+        }
+
+        /**
+         * Moves the triangles so the one at <code>k</code> has the centroid
+         * it would have if they were sorted along the axis, with no greater
+         * one before it and no smaller one after it.
+         */
+        private void select(int start, int end, int k, int axis) {
+            int low = start, high = end - 1;
+            while (high > low) {
+                float pivot = centroids[3 * order[(low + high) >>> 1] + axis];
+                int i = low, j = high;
+                while (i <= j) {
+                    while (centroids[3 * order[i] + axis] < pivot) {
+                        i++;
+                    }
+                    while (centroids[3 * order[j] + axis] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int swap = order[i];
+                        order[i++] = order[j];
+                        order[j--] = swap;
+                    }
+                }
+                if (k <= j) {
+                    high = j;
+                } else if (k >= i) {
+                    low = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the world transform of the parent, as a row major rotation
+     * followed by the translation and the scale.
+     */
+    private void storeTransform() {
+        Quaternion rotate = myParent.getWorldRotation();
+        rotate.toRotationMatrix(rotation);
+        float[] m = transform;
+        m[0] = rotation.m00;
+        m[1] = rotation.m01;
+        m[2] = rotation.m02;
+        m[3] = rotation.m10;
+        m[4] = rotation.m11;
+        m[5] = rotation.m12;
+        m[6] = rotation.m20;
+        m[7] = rotation.m21;
+        m[8] = rotation.m22;
+        Vector3f translation = myParent.getWorldTranslation();
+        m[9] = translation.x;
+        m[10] = translation.y;
+        m[11] = translation.z;
+        Vector3f scale = myParent.getWorldScale();
+        m[12] = scale.x;
+        m[13] = scale.y;
+        m[14] = scale.z;
+    }
+
+    /**
+     * Stores the affine map from the model space of a tree with the world
+     * transform <code>from</code> into the model space of one with
+     * <code>to</code>: the 3x3 matrix row major, then the translation.
+     */
+    private static void storeMap(float[] from, float[] to, float[] store) {
+        // scale and rotation of to inverted, times rotation and scale of from
+        for (int r = 0; r < 3; r++) {
+            float inverse = 1 / to[12 + r];
+            for (int c = 0; c < 3; c++) {
+                store[3 * r + c] = inverse
+                        * (to[r] * from[c] + to[3 + r] * from[3 + c] + to[6 + r]
+                                * from[6 + c]) * from[12 + c];
+            }
+            store[9 + r] = inverse
+                    * (to[r] * (from[9] - to[9]) + to[3 + r]
+                            * (from[10] - to[10]) + to[6 + r]
+                            * (from[11] - to[11]));
+        }
+    }
+
+    /**
+     * Tests the box of the node of the other tree, moved into this tree's
+     * model space by the map, against the box of the node of this tree.
+     */
+    private static boolean overlaps(float[] boundsA, int a, float[] boundsB,
+            int b, float[] map) {
+        int oa = 6 * a, ob = 6 * b;
+        float cx = boundsB[ob], cy = boundsB[ob + 1], cz = boundsB[ob + 2];
+        float ex = boundsB[ob + 3], ey = boundsB[ob + 4], ez = boundsB[ob + 5];
+        for (int r = 0; r < 3; r++) {
+            float m0 = map[3 * r], m1 = map[3 * r + 1], m2 = map[3 * r + 2];
+            float center = m0 * cx + m1 * cy + m2 * cz + map[9 + r];
+            float extent = Math.abs(m0) * ex + Math.abs(m1) * ey
+                    + Math.abs(m2) * ez;
+            if (Math.abs(center - boundsA[oa + r]) > boundsA[oa + 3 + r]
+                    + extent) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the triangles of a leaf in world space.
+     */
+    private void storeLeaf(int node, float[] store) {
+        float[] m = transform;
+        int end = 9 * (first[node] + count[node]);
+        for (int i = 9 * first[node], o = 0; i < end; i += 3, o += 3) {
+            float x = triangles[i] * m[12], y = triangles[i + 1] * m[13];
+            float z = triangles[i + 2] * m[14];
+            store[o] = m[0] * x + m[1] * y + m[2] * z + m[9];
+            store[o + 1] = m[3] * x + m[4] * y + m[5] * z + m[10];
+            store[o + 2] = m[6] * x + m[7] * y + m[8] * z + m[11];
         }
     }
 
-    // Assume this is ok and param needs rotation.
     /**
      * Returns true if this OBBTree intersects the given OBBTree.
      *
@@ -124,284 +415,273 @@ public class OBBTree {
      * @return True if they intersect.
      */
     public boolean intersect(OBBTree collisionTree) {
-        if (collisionTree == null) return false;
-        collisionTree.bounds.transform(
-                collisionTree.myParent.findWorldRotMat(),
-                collisionTree.myParent.getWorldTranslation(),
-                collisionTree.myParent.getWorldScale(),
-                collisionTree.worldBounds);
-        if (!worldBounds.intersection(collisionTree.worldBounds)) return false;
-        if (left != null) { // This is not a leaf
-            if (collisionTree.intersect(left)) { return true; }
-            if (collisionTree.intersect(right)) { return true; }
-            return false;
-        } else { // This is a leaf
-            if (collisionTree.left != null) { // but collision isn't
-                if (this.intersect(collisionTree.left)) { return true; }
-                if (this.intersect(collisionTree.right)) { return true; }
-                return false;
-            } else { // both are leaves
-                Matrix3f roti = this.myParent.findWorldRotMat();
-                Vector3f scalei = this.myParent.getWorldScale();
-                Vector3f transi = this.myParent.getWorldTranslation();
-
-                Matrix3f rotj = collisionTree.myParent.findWorldRotMat();
-                Vector3f scalej = collisionTree.myParent.getWorldScale();
-                Vector3f transj = collisionTree.myParent.getWorldTranslation();
-                for (int i = myStart; i < myEnd; i++) {
-                    roti.mult(tris[i].a, tempVa).multLocal(scalei).addLocal(
-                            transi);
-                    roti.mult(tris[i].b, tempVb).multLocal(scalei).addLocal(
-                            transi);
-                    roti.mult(tris[i].c, tempVc).multLocal(scalei).addLocal(
-                            transi);
-                    for (int j = collisionTree.myStart; j < collisionTree.myEnd; j++) {
-                        rotj.mult(collisionTree.tris[j].a, tempVd).multLocal(
-                                scalej).addLocal(transj);
-                        rotj.mult(collisionTree.tris[j].b, tempVe).multLocal(
-                                scalej).addLocal(transj);
-                        rotj.mult(collisionTree.tris[j].c, tempVf).multLocal(
-                                scalej).addLocal(transj);
-                        if (Intersection.intersection(tempVa, tempVb, tempVc,
-                                tempVd, tempVe, tempVf)) return true;
-                    }
-                }
-                return false;
-            }
-        }
+        return intersect(collisionTree, null, null, true);
     }
 
-    // Assume this is ok and param needs rotation.
     /**
-     * Stores in the given array list all indexes of triangle intersection
-     * between the two OBBTree.
+     * Stores in the given lists the indices of all pairs of intersecting
+     * triangles of the two trees.
      *
      * @param collisionTree
      *            The tree to test this one against.
      * @param aList
-     *            The arraylist to hold indexes of this OBBTree's triangle
-     *            intersections.
+     *            The list to hold the indices of this tree's triangles.
      * @param bList
-     *            The arraylist to hold indexes of the testing OBBTree's
-     *            triangle intersections.
+     *            The list to hold the indices of the testing tree's
+     *            triangles, at the same positions.
      * @return True if there was an intersection.
      */
-    public boolean intersect(OBBTree collisionTree, ArrayList aList,
-            ArrayList bList) {
-        if (collisionTree == null) return false;
-        collisionTree.bounds.transform(
-                collisionTree.myParent.findWorldRotMat(),
-                collisionTree.myParent.getWorldTranslation(),
-                collisionTree.myParent.getWorldScale(),
-                collisionTree.worldBounds);
-        if (!worldBounds.intersection(collisionTree.worldBounds)) return false;
-        if (left != null) { // This is not a leaf
-            boolean test = collisionTree.intersect(left, bList, aList);
-            test = collisionTree.intersect(right, bList, aList) || test;
-            return test;
-        } else { // This is a leaf
-            if (collisionTree.left != null) { // but collision isn't
-                boolean test = this.intersect(collisionTree.left, aList, bList);
-                test = this.intersect(collisionTree.right, aList, bList)
-                        || test;
-                return test;
-            } else { // both are leaves
-                Matrix3f roti = this.myParent.findWorldRotMat();
-                Vector3f scalei = this.myParent.getWorldScale();
-                Vector3f transi = this.myParent.getWorldTranslation();
-
-                Matrix3f rotj = collisionTree.myParent.findWorldRotMat();
-                Vector3f scalej = collisionTree.myParent.getWorldScale();
-                Vector3f transj = collisionTree.myParent.getWorldTranslation();
-                boolean test = false;
-                for (int i = myStart; i < myEnd; i++) {
-                    roti.mult(tris[i].a, tempVa).multLocal(scalei).addLocal(
-                            transi);
-                    roti.mult(tris[i].b, tempVb).multLocal(scalei).addLocal(
-                            transi);
-                    roti.mult(tris[i].c, tempVc).multLocal(scalei).addLocal(
-                            transi);
-                    for (int j = collisionTree.myStart; j < collisionTree.myEnd; j++) {
-                        rotj.mult(collisionTree.tris[j].a, tempVd).multLocal(
-                                scalej).addLocal(transj);
-                        rotj.mult(collisionTree.tris[j].b, tempVe).multLocal(
-                                scalej).addLocal(transj);
-                        rotj.mult(collisionTree.tris[j].c, tempVf).multLocal(
-                                scalej).addLocal(transj);
-                        if (Intersection.intersection(tempVa, tempVb, tempVc,
-                                tempVd, tempVe, tempVf)) {
-                            test = true;
-                            aList.add(Integer.valueOf(tris[i].index));
-                            bList.add(Integer.valueOf(collisionTree.tris[j].index));
-                        }
-                    }
-                }
-                return test;
-            }
-        }
+    public boolean intersect(OBBTree collisionTree, IntList aList,
+            IntList bList) {
+        return intersect(collisionTree, aList, bList, false);
     }
 
     /**
      * Stores in the given array list all indexes of triangle intersection
-     * between this tree and a given ray.
+     * between the two OBBTree, as <code>Integer</code>s.
      *
-     * @param ray
-     *            The ray to test this tree against.
-     * @param triList
+     * @param collisionTree
+     *            The tree to test this one against.
+     * @param aList
      *            The arraylist to hold indexes of this OBBTree's triangle
      *            intersections.
+     * @param bList
+     *            The arraylist to hold indexes of the testing OBBTree's
+     *            triangle intersections.
+     * @return True if there was an intersection.
      */
-    public void intersect(Ray toTest, ArrayList triList) {
-        if (!worldBounds.intersects(toTest)) return;
-
-        if (left != null) {
-            left.bounds.transform(myParent.findWorldRotMat(), myParent
-                    .getWorldTranslation(), myParent.getWorldScale(),
-                    left.worldBounds);
-            left.intersect(toTest, triList);
+    public boolean intersect(OBBTree collisionTree, ArrayList aList,
+            ArrayList bList) {
+        scratchA.clear();
+        scratchB.clear();
+        boolean test = intersect(collisionTree, scratchA, scratchB, false);
+        for (int i = 0, size = scratchA.size(); i < size; i++) {
+            aList.add(Integer.valueOf(scratchA.get(i)));
+            bList.add(Integer.valueOf(scratchB.get(i)));
         }
+        return test;
+    }
 
-        if (right != null)
-        {
-            right.bounds.transform(myParent.findWorldRotMat(), myParent.getWorldTranslation(),
-                    myParent.getWorldScale(), right.worldBounds);
-            right.intersect(toTest, triList);
+    private boolean intersect(OBBTree other, IntList aList, IntList bList,
+            boolean any) {
+        if (other == null || nodeQuantity == 0 || other.nodeQuantity == 0) {
+            return false;
         }
-        else
-        {
-            if (left == null)
-            {
-                Matrix3f roti = this.myParent.findWorldRotMat();
-                Vector3f scalei = this.myParent.getWorldScale();
-                Vector3f transi = this.myParent.getWorldTranslation();
-
-                TreeTriangle tempt;
-                for (int i = myStart; i < myEnd; i++)
-                {
-                    tempt = tris[i];
-                    roti.mult(tempt.a, tempVa).multLocal(scalei).addLocal(transi);
-                    roti.mult(tempt.b, tempVb).multLocal(scalei).addLocal(transi);
-                    roti.mult(tempt.c, tempVc).multLocal(scalei).addLocal(transi);
-                    if (toTest.intersect(tempVa, tempVb, tempVc))
-                    {
-                        triList.add(Integer.valueOf(tris[i].index));
+        storeTransform();
+        other.storeTransform();
+        storeMap(other.transform, transform, toThis);
+        storeMap(transform, other.transform, toOther);
+
+        boolean test = false;
+        int[] stack = pairStack;
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int b = stack[--top];
+            int a = stack[--top];
+            if (!overlaps(bounds, a, other.bounds, b, toThis)
+                    || !overlaps(other.bounds, b, bounds, a, toOther)) {
+                continue;
+            }
+            boolean aLeaf = second[a] < 0, bLeaf = other.second[b] < 0;
+            if (aLeaf && bLeaf) {
+                if (intersectLeaves(other, a, b, aList, bList, any)) {
+                    if (any) {
+                        return true;
                     }
+                    test = true;
                 }
+                continue;
+            }
+            if (top + 4 > stack.length) {
+                int[] grown = new int[stack.length << 1];
+                System.arraycopy(stack, 0, grown, 0, top);
+                stack = pairStack = grown;
+            }
+            // go down the larger of the two, so the boxes stay alike in size
+            if (!aLeaf && (bLeaf || count[a] >= other.count[b])) {
+                stack[top++] = second[a];
+                stack[top++] = b;
+                stack[top++] = a + 1;
+                stack[top++] = b;
+            } else {
+                stack[top++] = a;
+                stack[top++] = other.second[b];
+                stack[top++] = a;
+                stack[top++] = b + 1;
             }
         }
+        return test;
     }
 
-    /**
-     * Splits the root obb acording to the largest bounds extent.
-     *
-     * @param start
-     *            Start index in the tris array, inclusive, that is the OBB to
-     *            split.
-     * @param end
-     *            End index in the tris array, exclusive, that is the OBB to
-     *            split.
-     */
-    private void splitTris(int start, int end) {
-        if (bounds.extent.x > bounds.extent.y) {
-            if (bounds.extent.x > bounds.extent.z)
-                sortX(start, end);
-            else
-                sortZ(start, end);
-        } else {
-            if (bounds.extent.y > bounds.extent.z)
-                sortY(start, end);
-            else
-                sortZ(start, end);
+    private boolean intersectLeaves(OBBTree other, int a, int b,
+            IntList aList, IntList bList, boolean any) {
+        storeLeaf(a, leafA);
+        other.storeLeaf(b, leafB);
+        boolean test = false;
+        for (int i = 0, iEnd = count[a]; i < iEnd; i++) {
+            int o = 9 * i;
+            va.set(leafA[o], leafA[o + 1], leafA[o + 2]);
+            vb.set(leafA[o + 3], leafA[o + 4], leafA[o + 5]);
+            vc.set(leafA[o + 6], leafA[o + 7], leafA[o + 8]);
+            for (int j = 0, jEnd = other.count[b]; j < jEnd; j++) {
+                int p = 9 * j;
+                vd.set(leafB[p], leafB[p + 1], leafB[p + 2]);
+                ve.set(leafB[p + 3], leafB[p + 4], leafB[p + 5]);
+                vf.set(leafB[p + 6], leafB[p + 7], leafB[p + 8]);
+                if (Intersection.intersection(va, vb, vc, vd, ve, vf)) {
+                    if (any) {
+                        return true;
+                    }
+                    test = true;
+                    aList.add(indices[first[a] + i]);
+                    bList.add(other.indices[other.first[b] + j]);
+                }
+            }
         }
+        return test;
     }
 
     /**
+     * Stores in the given list the indices of all triangles hit by the ray.
      *
-     * <code>sortZ</code> sorts the z bounds of the tree.
-     *
-     * @param start
-     *            the start index of the triangle list.
-     * @param end
-     *            the end index of the triangle list.
+     * @param toTest
+     *            The ray to test this tree against.
+     * @param triList
+     *            The list to hold the indices of the triangles hit.
      */
-    private void sortZ(int start, int end) {
-        for (int i = start; i < end; i++) {
-            tris[i].centroid.subtract(bounds.center, tempVa);
-            tris[i].projection = bounds.zAxis.dot(tempVa);
+    public void intersect(Ray toTest, IntList triList) {
+        if (nodeQuantity == 0) {
+            return;
         }
-        Arrays.sort(tris, start, end, new TreeCompare());
-    }
-
-    /**
-     *
-     * <code>sortY</code> sorts the y bounds of the tree.
-     *
-     * @param start
-     *            the start index of the triangle list.
-     * @param end
-     *            the end index of the triangle list.
-     */
-    private void sortY(int start, int end) {
-        for (int i = start; i < end; i++) {
-            tris[i].centroid.subtract(bounds.center, tempVa);
-            tris[i].projection = bounds.yAxis.dot(tempVa);
+        storeTransform();
+        float[] m = transform;
+
+        // the ray in model space, inverse rotation then inverse scale
+        Vector3f origin = toTest.getOrigin(), direction = toTest.getDirection();
+        float px = origin.x - m[9], py = origin.y - m[10];
+        float pz = origin.z - m[11];
+        float ox = (m[0] * px + m[3] * py + m[6] * pz) / m[12];
+        float oy = (m[1] * px + m[4] * py + m[7] * pz) / m[13];
+        float oz = (m[2] * px + m[5] * py + m[8] * pz) / m[14];
+        float dx = (m[0] * direction.x + m[3] * direction.y + m[6]
+                * direction.z) / m[12];
+        float dy = (m[1] * direction.x + m[4] * direction.y + m[7]
+                * direction.z) / m[13];
+        float dz = (m[2] * direction.x + m[5] * direction.y + m[8]
+                * direction.z) / m[14];
+        float ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+
+        int[] stack = rayStack;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!hitsBox(node, ox, oy, oz, ix, iy, iz)) {
+                continue;
+            }
+            if (second[node] >= 0) {
+                stack[top++] = second[node];
+                stack[top++] = node + 1;
+                continue;
+            }
+            for (int i = first[node], end = i + count[node]; i < end; i++) {
+                if (hitsTriangle(9 * i, ox, oy, oz, dx, dy, dz)) {
+                    triList.add(indices[i]);
+                }
+            }
         }
-        Arrays.sort(tris, start, end, new TreeCompare());
     }
 
     /**
+     * Stores in the given array list all indexes of triangle intersection
+     * between this tree and a given ray, as <code>Integer</code>s.
      *
-     * <code>sortX</code> sorts the x bounds of the tree.
-     *
-     * @param start
-     *            the start index of the triangle list.
-     * @param end
-     *            the end index of the triangle list.
+     * @param toTest
+     *            The ray to test this tree against.
+     * @param triList
+     *            The arraylist to hold indexes of this OBBTree's triangle
+     *            intersections.
      */
-    private void sortX(int start, int end) {
-        for (int i = start; i < end; i++) {
-            tris[i].centroid.subtract(bounds.center, tempVa);
-            tris[i].projection = bounds.xAxis.dot(tempVa);
+    public void intersect(Ray toTest, ArrayList triList) {
+        scratchA.clear();
+        intersect(toTest, scratchA);
+        for (int i = 0, size = scratchA.size(); i < size; i++) {
+            triList.add(Integer.valueOf(scratchA.get(i)));
         }
-        Arrays.sort(tris, start, end, new TreeCompare());
     }
 
     /**
-     * This class is simply a container for a triangle.
+     * Slab test of the ray, starting at its origin, against the box of a
+     * node.
      */
-    static class TreeTriangle {
-
-        Vector3f a, b, c;
-
-        float projection;
-
-        int index;
-
-        Vector3f centroid;
-
-        public TreeTriangle(Vector3f a, Vector3f b, Vector3f c) {
-            this.a = a;
-            this.b = b;
-            this.c = c;
+    private boolean hitsBox(int node, float ox, float oy, float oz, float ix,
+            float iy, float iz) {
+        int o = 6 * node;
+        float near = 0, far = Float.POSITIVE_INFINITY;
+        float t1 = (bounds[o] - bounds[o + 3] - ox) * ix;
+        float t2 = (bounds[o] + bounds[o + 3] - ox) * ix;
+        if (t1 > t2) {
+            float t = t1;
+            t1 = t2;
+            t2 = t;
         }
-
-        public void putCentriod() {
-            centroid = new Vector3f(a);
-            centroid.addLocal(b).addLocal(c).multLocal(1.0f / 3.0f);
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        t1 = (bounds[o + 1] - bounds[o + 4] - oy) * iy;
+        t2 = (bounds[o + 1] + bounds[o + 4] - oy) * iy;
+        if (t1 > t2) {
+            float t = t1;
+            t1 = t2;
+            t2 = t;
         }
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        t1 = (bounds[o + 2] - bounds[o + 5] - oz) * iz;
+        t2 = (bounds[o + 2] + bounds[o + 5] - oz) * iz;
+        if (t1 > t2) {
+            float t = t1;
+            t1 = t2;
+            t2 = t;
+        }
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        return near <= far;
     }
 
     /**
-     * Class to sort TreeTriangle acording to projection.
+     * Tests the ray, starting at its origin, against the triangle stored at
+     * the given offset, as <code>Ray.intersect</code> does.
      */
-    static class TreeCompare implements Comparator {
-
-        public int compare(Object o1, Object o2) {
-            TreeTriangle a = (TreeTriangle) o1;
-            TreeTriangle b = (TreeTriangle) o2;
-            if (a.projection < b.projection) { return -1; }
-            if (a.projection > b.projection) { return 1; }
-            return 0;
+    private boolean hitsTriangle(int o, float ox, float oy, float oz, float dx,
+            float dy, float dz) {
+        float[] t = triangles;
+        float e1x = t[o + 3] - t[o], e1y = t[o + 4] - t[o + 1], e1z = t[o + 5]
+                - t[o + 2];
+        float e2x = t[o + 6] - t[o], e2y = t[o + 7] - t[o + 1], e2z = t[o + 8]
+                - t[o + 2];
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx
+                * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (det == 0) {
+            return false;
+        }
+        float inverse = 1 / det;
+        float tx = ox - t[o], ty = oy - t[o + 1], tz = oz - t[o + 2];
+        float u = (tx * px + ty * py + tz * pz) * inverse;
+        if (u < 0 || u > 1) {
+            return false;
+        }
+        float qx = ty * e1z - tz * e1y, qy = tz * e1x - tx * e1z, qz = tx
+                * e1y - ty * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (v < 0 || u + v > 1) {
+            return false;
         }
+        return (e2x * qx + e2y * qy + e2z * qz) * inverse >= 0;
     }
 }
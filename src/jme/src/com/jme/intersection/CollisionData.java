@@ -34,12 +34,15 @@ package com.jme.intersection;
 import java.util.ArrayList;
 
 import com.jme.scene.Geometry;
+import com.jme.util.IntList;
 
 /**
  * CollisionData contains information about a collision between two TriMesh
  * objects. The mesh that was hit by the relevant TriMesh (the one making the
  * collision check) is referenced as well as an ArrayList for the triangles that
- * collided.
+ * collided. The triangles are either given as lists of <code>Integer</code>s or
+ * as <code>IntList</code>s; the lists of the other kind are made from them when
+ * asked for.
  * 
  * @author Mark Powell
  */
@@ -53,6 +56,10 @@ public class CollisionData {
 
     private ArrayList targetTris;
 
+    private IntList sourceTriangles;
+
+    private IntList targetTriangles;
+
     public CollisionData(Geometry sourceMesh, Geometry targetMesh) {
         this(sourceMesh, targetMesh, null, null);
     }
@@ -110,6 +117,9 @@ public class CollisionData {
      * @return Returns the source.
      */
     public ArrayList getSourceTris() {
+        if (sourceTris == null && sourceTriangles != null) {
+            sourceTris = PickData.toArrayList(sourceTriangles);
+        }
         return sourceTris;
     }
 
@@ -119,12 +129,16 @@ public class CollisionData {
      */
     public void setSourceTris(ArrayList source) {
         this.sourceTris = source;
+        this.sourceTriangles = null;
     }
 
     /**
      * @return Returns the target.
      */
     public ArrayList getTargetTris() {
+        if (targetTris == null && targetTriangles != null) {
+            targetTris = PickData.toArrayList(targetTriangles);
+        }
         return targetTris;
     }
 
@@ -134,5 +148,49 @@ public class CollisionData {
      */
     public void setTargetTris(ArrayList target) {
         this.targetTris = target;
+        this.targetTriangles = null;
+    }
+
+    /**
+     * @return the indices of the source mesh's triangles that made contact,
+     *         null if none were found.
+     */
+    public IntList getSourceTriangles() {
+        if (sourceTriangles == null && sourceTris != null) {
+            sourceTriangles = PickData.toIntList(sourceTris);
+        }
+        return sourceTriangles;
+    }
+
+    /**
+     * @param source
+     *            the indices of the source mesh's triangles that made
+     *            contact.
+     */
+    public void setSourceTriangles(IntList source) {
+        this.sourceTriangles = source;
+        this.sourceTris = null;
+    }
+
+    /**
+     * @return the indices of the target mesh's triangles that made contact,
+     *         at the same positions as their source triangles, null if none
+     *         were found.
+     */
+    public IntList getTargetTriangles() {
+        if (targetTriangles == null && targetTris != null) {
+            targetTriangles = PickData.toIntList(targetTris);
+        }
+        return targetTriangles;
+    }
+
+    /**
+     * @param target
+     *            the indices of the target mesh's triangles that made
+     *            contact.
+     */
+    public void setTargetTriangles(IntList target) {
+        this.targetTriangles = target;
+        this.targetTris = null;
     }
 }
\ No newline at end of file
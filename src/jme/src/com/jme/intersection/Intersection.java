@@ -94,13 +94,13 @@ public class Intersection {
 		bTransform.setTranslation(b.getWorldTranslation());
 		bTransform.setScale(b.getWorldScale());
 
-		Vector3f[] vertA = new Vector3f[a.getVertices().length];
+		Vector3f[] vertA = new Vector3f[a.getVertQuantity()];
 		for (int i = 0; i < vertA.length; i++) {
-			vertA[i] = aTransform.multPoint(new Vector3f(a.getVertices()[i]));
+			vertA[i] = aTransform.multPoint(a.getVertex(i, new Vector3f()));
 		}
-		Vector3f[] vertB = new Vector3f[b.getVertices().length];
+		Vector3f[] vertB = new Vector3f[b.getVertQuantity()];
 		for (int i = 0; i < vertB.length; i++) {
-			vertB[i] = bTransform.multPoint(new Vector3f(b.getVertices()[i]));
+			vertB[i] = bTransform.multPoint(b.getVertex(i, new Vector3f()));
 		}
 
 		for (int i = 0; i < a.getTriangleQuantity(); i++) {
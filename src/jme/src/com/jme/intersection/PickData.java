@@ -36,12 +36,15 @@ import java.util.ArrayList;
 
 import com.jme.math.Ray;
 import com.jme.scene.Geometry;
+import com.jme.util.IntList;
 
 /**
  * 
  * PickData contains information about a picking operation (or Ray/Volume
  * intersection). This data contains the mesh the ray hit, the triangles it hit,
- * and the ray itself.
+ * and the ray itself. The triangles are either given as a list of
+ * <code>Integer</code>s or as an <code>IntList</code>; the list of the other
+ * kind is made from it when asked for.
  * 
  * @author Mark Powell
  */
@@ -53,6 +56,8 @@ public class PickData {
 
     private ArrayList targetTris;
 
+    private IntList targetTriangles;
+
     public PickData(Ray ray, Geometry targetMesh) {
         this(ray, targetMesh, null);
     }
@@ -99,6 +104,9 @@ public class PickData {
      * @return Returns the target.
      */
     public ArrayList getTargetTris() {
+        if (targetTris == null && targetTriangles != null) {
+            targetTris = toArrayList(targetTriangles);
+        }
         return targetTris;
     }
 
@@ -108,6 +116,42 @@ public class PickData {
      */
     public void setTargetTris(ArrayList target) {
         this.targetTris = target;
+        this.targetTriangles = null;
+    }
+
+    /**
+     * @return the indices of the triangles hit, null if none were found.
+     */
+    public IntList getTargetTriangles() {
+        if (targetTriangles == null && targetTris != null) {
+            targetTriangles = toIntList(targetTris);
+        }
+        return targetTriangles;
+    }
+
+    /**
+     * @param target
+     *            the indices of the triangles hit.
+     */
+    public void setTargetTriangles(IntList target) {
+        this.targetTriangles = target;
+        this.targetTris = null;
+    }
+
+    static ArrayList toArrayList(IntList list) {
+        ArrayList boxed = new ArrayList(list.size());
+        for (int i = 0, size = list.size(); i < size; i++) {
+            boxed.add(Integer.valueOf(list.get(i)));
+        }
+        return boxed;
+    }
+
+    static IntList toIntList(ArrayList list) {
+        IntList unboxed = new IntList();
+        for (int i = 0, size = list.size(); i < size; i++) {
+            unboxed.add(((Integer) list.get(i)).intValue());
+        }
+        return unboxed;
     }
 
     /**
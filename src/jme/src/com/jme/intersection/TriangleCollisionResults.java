@@ -35,6 +35,7 @@ import java.util.ArrayList;
 
 import com.jme.scene.Geometry;
 import com.jme.scene.TriMesh;
+import com.jme.util.IntList;
 
 /**
  * TriangleCollisionResults creates a CollisionResults object that calculates
@@ -47,11 +48,22 @@ import com.jme.scene.TriMesh;
  * NOTE: Only TriMesh objects may obtain triangle accuracy, all others will 
  * result in Bounding accuracy.
  * 
+ * The CollisionData objects and their triangle lists are kept when the results
+ * are cleared and filled again by the next collisions, so collision tests do
+ * not allocate once the results have grown to size. CollisionData objects must
+ * therefore not be held on to across a <code>clear</code>.
+ * 
  * @author Mark Powell
  * @version $Id: TriangleCollisionResults.java,v 1.3 2004/10/14 01:23:12 mojomonkey Exp $
  */
 public class TriangleCollisionResults extends CollisionResults {
 
+    private final ArrayList pool = new ArrayList();
+
+    private final ArrayList triangleLists = new ArrayList();
+
+    private int pooled;
+
     /*
      * (non-Javadoc)
      * 
@@ -61,18 +73,41 @@ public class TriangleCollisionResults extends CollisionResults {
     
     @Override
     public void addCollision(Geometry s, Geometry t) {
-        ArrayList a = new ArrayList();
-        ArrayList b = new ArrayList();
+        if (pooled == pool.size()) {
+            pool.add(new CollisionData(s, t));
+            triangleLists.add(new IntList());
+            triangleLists.add(new IntList());
+        }
+        CollisionData data = (CollisionData) pool.get(pooled);
+        IntList a = (IntList) triangleLists.get(2 * pooled);
+        IntList b = (IntList) triangleLists.get(2 * pooled + 1);
+        pooled++;
+        data.setSourceMesh(s);
+        data.setTargetMesh(t);
         //find the triangle that is being hit.
         //add this node and the triangle to the CollisionResults list.
         if (!(s instanceof TriMesh) || !(t instanceof TriMesh)) {
-            CollisionData data = new CollisionData(s, t);
-            addCollisionData(data);
+            data.setSourceTriangles(null);
+            data.setTargetTriangles(null);
         } else {
+            a.clear();
+            b.clear();
             ((TriMesh) s).findTriangleCollision((TriMesh) t, a, b);
-            CollisionData data = new CollisionData(s, t, a, b);
-            addCollisionData(data);
+            data.setSourceTriangles(a);
+            data.setTargetTriangles(b);
         }
+        addCollisionData(data);
+    }
+
+    /**
+     * <code>clear</code> clears the list of collisions, keeping their
+     * CollisionData objects for the next collisions.
+     * 
+     * @see com.jme.intersection.CollisionResults#clear()
+     */
+    public void clear() {
+        super.clear();
+        pooled = 0;
     }
 
     /*
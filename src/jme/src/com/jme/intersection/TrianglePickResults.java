@@ -36,6 +36,7 @@ import java.util.ArrayList;
 import com.jme.math.Ray;
 import com.jme.scene.Geometry;
 import com.jme.scene.TriMesh;
+import com.jme.util.IntList;
 
 /**
  * TrianglePickResults creates a PickResults object that calculates picking to
@@ -47,12 +48,23 @@ import com.jme.scene.TriMesh;
  * NOTE: Only TriMesh objects may obtain triangle accuracy, all others will
  * result in Bounding accuracy.
  * 
+ * The PickData objects and their triangle lists are kept when the results are
+ * cleared and filled again by the next picks, so picking does not allocate
+ * once the results have grown to size. PickData objects must therefore not be
+ * held on to across a <code>clear</code>.
+ * 
  * @author Mark Powell
  * @version $Id: TrianglePickResults.java,v 1.2 2004/10/14 01:23:12 mojomonkey
  *          Exp $
  */
 public class TrianglePickResults extends PickResults {
 
+	private final ArrayList pool = new ArrayList();
+
+	private final ArrayList triangleLists = new ArrayList();
+
+	private int pooled;
+
 	/**
 	 * <code>addPick</code> adds a geometry object to the pick list. If the
 	 * Geometry object is not a TriMesh, the process stops here. However, if the
@@ -68,18 +80,36 @@ public class TrianglePickResults extends PickResults {
 	
     @Override
     public void addPick(Ray ray, Geometry s) {
-		ArrayList a = new ArrayList();
+		if (pooled == pool.size()) {
+			pool.add(new PickData(ray, s));
+			triangleLists.add(new IntList());
+		}
+		PickData data = (PickData) pool.get(pooled);
+		IntList a = (IntList) triangleLists.get(pooled++);
+		data.setRay(ray);
+		data.setTargetMesh(s);
 		//find the triangle that is being hit.
 		//add this node and the triangle to the CollisionResults
 		// list.
 		if (!(s instanceof TriMesh)) {
-			PickData data = new PickData(ray, s);
-			addPickData(data);
+			data.setTargetTriangles(null);
 		} else {
+			a.clear();
 			((TriMesh) s).findTrianglePick(ray, a);
-			PickData data = new PickData(ray, s, a);
-			addPickData(data);
+			data.setTargetTriangles(a);
 		}
+		addPickData(data);
+	}
+
+	/**
+	 * <code>clear</code> clears the list of picks, keeping their PickData
+	 * objects for the next picks.
+	 * 
+	 * @see com.jme.intersection.PickResults#clear()
+	 */
+	public void clear() {
+		super.clear();
+		pooled = 0;
 	}
 
 	/**
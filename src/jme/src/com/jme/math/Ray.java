@@ -66,7 +66,8 @@ public class Ray {
         float v=direction.dot(qvec) * det;
         if (v <0.0 || v + u >1.0)
             return false;
-        return true;
+        // the line hits the triangle, the ray only if it is not behind the origin
+        return edge2.dot(qvec) * det >= 0;
     }
 
 
@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.renderer;
+
+import java.nio.IntBuffer;
+
+import com.jme.bounding.BoundingVolume;
+import com.jme.curve.Curve;
+import com.jme.scene.CompositeMesh;
+import com.jme.scene.Geometry;
+import com.jme.scene.Line;
+import com.jme.scene.Point;
+import com.jme.scene.Spatial;
+import com.jme.scene.Text;
+import com.jme.scene.TriMesh;
+import com.jme.scene.state.AlphaState;
+import com.jme.scene.state.AttributeState;
+import com.jme.scene.state.CullState;
+import com.jme.scene.state.DitherState;
+import com.jme.scene.state.FogState;
+import com.jme.scene.state.FragmentProgramState;
+import com.jme.scene.state.GLSLShaderObjectsState;
+import com.jme.scene.state.LightState;
+import com.jme.scene.state.MaterialState;
+import com.jme.scene.state.RenderState;
+import com.jme.scene.state.ShadeState;
+import com.jme.scene.state.StencilState;
+import com.jme.scene.state.TextureState;
+import com.jme.scene.state.VertexProgramState;
+import com.jme.scene.state.WireframeState;
+import com.jme.scene.state.ZBufferState;
+import com.jme.widget.WidgetRenderer;
+
+/**
+ * <code>CountingRenderer</code> wraps another renderer and counts the draw
+ * calls and render state changes of each frame. A frame ends with one of the
+ * <code>displayBackBuffer</code> methods. Everything else is passed on to the
+ * wrapped renderer, except that the counting renderer keeps its own
+ * <code>RenderQueue</code>, so queued geometry is drawn through it as well.
+ * Wrapping the renderer of the <code>DummyDisplaySystem</code> gives the
+ * counts without a display.
+ * 
+ * A state change is counted whenever a geometry applied a render state other
+ * than the one current at the previous draw call, which is when
+ * <code>Geometry.applyStates</code> calls <code>RenderState.apply</code>.
+ * 
+ * @version $Id$
+ */
+public class CountingRenderer implements Renderer {
+
+    private final Renderer renderer;
+
+    private final RenderQueue queue;
+
+    private boolean processingQueue;
+
+    /** The states current at the previous draw call. */
+    private final RenderState[] drawnStates = new RenderState[RenderState.RS_MAX_STATE];
+
+    private int drawCalls, stateChanges;
+
+    private int frameDrawCalls, frameStateChanges;
+
+    /**
+     * @param renderer
+     *            the renderer to wrap.
+     */
+    public CountingRenderer(Renderer renderer) {
+        this.renderer = renderer;
+        queue = new RenderQueue(this);
+    }
+
+    /**
+     * @return the wrapped renderer.
+     */
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * @return the number of draw calls of the last frame.
+     */
+    public int getDrawCalls() {
+        return frameDrawCalls;
+    }
+
+    /**
+     * @return the number of render state changes of the last frame.
+     */
+    public int getStateChanges() {
+        return frameStateChanges;
+    }
+
+    private void count() {
+        drawCalls++;
+        for (int i = 0; i < drawnStates.length; i++) {
+            RenderState state = Spatial.getCurrentState(i);
+            if (state != drawnStates[i]) {
+                if (state != null)
+                    stateChanges++;
+                drawnStates[i] = state;
+            }
+        }
+    }
+
+    private void endFrame() {
+        frameDrawCalls = drawCalls;
+        frameStateChanges = stateChanges;
+        drawCalls = stateChanges = 0;
+    }
+
+    private void renderQueue() {
+        processingQueue = true;
+        queue.renderBuckets();
+        processingQueue = false;
+    }
+
+    public void setCamera(Camera camera) {
+        renderer.setCamera(camera);
+    }
+
+    public Camera getCamera() {
+        return renderer.getCamera();
+    }
+
+    public Camera createCamera(int width, int height) {
+        return renderer.createCamera(width, height);
+    }
+
+    public AlphaState createAlphaState() {
+        return renderer.createAlphaState();
+    }
+
+    public AttributeState createAttributeState() {
+        return renderer.createAttributeState();
+    }
+
+    public CullState createCullState() {
+        return renderer.createCullState();
+    }
+
+    public DitherState createDitherState() {
+        return renderer.createDitherState();
+    }
+
+    public FogState createFogState() {
+        return renderer.createFogState();
+    }
+
+    public LightState createLightState() {
+        return renderer.createLightState();
+    }
+
+    public MaterialState createMaterialState() {
+        return renderer.createMaterialState();
+    }
+
+    public ShadeState createShadeState() {
+        return renderer.createShadeState();
+    }
+
+    public TextureState createTextureState() {
+        return renderer.createTextureState();
+    }
+
+    public WireframeState createWireframeState() {
+        return renderer.createWireframeState();
+    }
+
+    public ZBufferState createZBufferState() {
+        return renderer.createZBufferState();
+    }
+
+    public VertexProgramState createVertexProgramState() {
+        return renderer.createVertexProgramState();
+    }
+
+    public FragmentProgramState createFragmentProgramState() {
+        return renderer.createFragmentProgramState();
+    }
+
+    public GLSLShaderObjectsState createGLSLShaderObjectsState() {
+        return renderer.createGLSLShaderObjectsState();
+    }
+
+    public StencilState createStencilState() {
+        return renderer.createStencilState();
+    }
+
+    public void enableStatistics(boolean value) {
+        renderer.enableStatistics(value);
+    }
+
+    public void clearStatistics() {
+        renderer.clearStatistics();
+    }
+
+    public String getStatistics() {
+        return getStatistics(new StringBuffer()).toString();
+    }
+
+    public StringBuffer getStatistics(StringBuffer a) {
+        renderer.getStatistics(a);
+        a.append(" : Draw calls: ").append(frameDrawCalls);
+        a.append(" : State changes: ").append(frameStateChanges);
+        return a;
+    }
+
+    public void setBackgroundColor(ColorRGBA c) {
+        renderer.setBackgroundColor(c);
+    }
+
+    public ColorRGBA getBackgroundColor() {
+        return renderer.getBackgroundColor();
+    }
+
+    public void clearZBuffer() {
+        renderer.clearZBuffer();
+    }
+
+    public void clearColorBuffer() {
+        renderer.clearColorBuffer();
+    }
+
+    public void clearBuffers() {
+        renderer.clearBuffers();
+    }
+
+    public void clearStrictBuffers() {
+        renderer.clearStrictBuffers();
+    }
+
+    public void displayBackBuffer() {
+        renderQueue();
+        renderer.displayBackBuffer();
+        endFrame();
+    }
+
+    public void displayBackBufferWarmUp() {
+        renderQueue();
+        renderer.displayBackBufferWarmUp();
+        endFrame();
+    }
+
+    public void displayBackBufferAndUnlock() {
+        renderQueue();
+        renderer.displayBackBufferAndUnlock();
+        endFrame();
+    }
+
+    public void clearQueue() {
+        queue.clearBuckets();
+    }
+
+    public void clearRenderer() {
+        renderer.clearRenderer();
+    }
+
+    public void setOrtho() {
+        renderer.setOrtho();
+    }
+
+    public void setOrthoCenter() {
+        renderer.setOrthoCenter();
+    }
+
+    public void unsetOrtho() {
+        renderer.unsetOrtho();
+    }
+
+    public boolean takeScreenShot(String filename) {
+        return renderer.takeScreenShot(filename);
+    }
+
+    public void grabScreenContents(IntBuffer buff, int x, int y, int w, int h) {
+        renderer.grabScreenContents(buff, x, y, w, h);
+    }
+
+    public void draw(Spatial s) {
+        if (s != null) {
+            s.onDraw(this);
+        }
+    }
+
+    public void drawBounds(Spatial s) {
+        if (s != null) {
+            s.onDrawBounds(this);
+        }
+    }
+
+    public void drawBounds(BoundingVolume bv) {
+        renderer.drawBounds(bv);
+    }
+
+    public void drawBounds(Geometry g) {
+        renderer.drawBounds(g);
+    }
+
+    public void draw(Point p) {
+        count();
+        renderer.draw(p);
+    }
+
+    public void draw(Line l) {
+        count();
+        renderer.draw(l);
+    }
+
+    public void draw(Curve c) {
+        count();
+        renderer.draw(c);
+    }
+
+    public void draw(Text t) {
+        count();
+        renderer.draw(t);
+    }
+
+    public void draw(TriMesh t) {
+        count();
+        renderer.draw(t);
+    }
+
+    public void draw(CompositeMesh c) {
+        count();
+        renderer.draw(c);
+    }
+
+    public void draw(WidgetRenderer wr) {
+        renderer.draw(wr);
+    }
+
+    public RenderQueue getQueue() {
+        return queue;
+    }
+
+    public boolean isProcessingQueue() {
+        return processingQueue;
+    }
+
+    public boolean checkAndAdd(Spatial s) {
+        int rqMode = s.getRenderQueueMode();
+        if (rqMode != Renderer.QUEUE_SKIP) {
+            queue.addToQueue(s, rqMode);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean supportsVBO() {
+        return renderer.supportsVBO();
+    }
+
+    public boolean isHeadless() {
+        return renderer.isHeadless();
+    }
+
+    public void setHeadless(boolean headless) {
+        renderer.setHeadless(headless);
+    }
+
+    public int getWidth() {
+        return renderer.getWidth();
+    }
+
+    public int getHeight() {
+        return renderer.getHeight();
+    }
+
+    public void reinit(int width, int height) {
+        renderer.reinit(width, height);
+    }
+}
@@ -31,18 +31,22 @@
  */
 package com.jme.renderer;
 
+import com.jme.image.Texture;
 import com.jme.math.Vector3f;
 import com.jme.scene.Spatial;
 import com.jme.scene.Geometry;
+import com.jme.scene.state.RenderState;
+import com.jme.scene.state.TextureState;
 import com.jme.system.JmeException;
 
-import java.util.Comparator;
-import java.util.Arrays;
 
 /**
  * This optional class supports queueing of rendering states that are drawn when
  * displayBackBuffer is called on the renderer. All spatials in the opaque
- * bucket are rendered first in order closest to farthest. Then all spatials in
+ * bucket are rendered first, grouped by their texture, material and light
+ * states and within a group in order closest to farthest. Geometry only applies
+ * the states which differ from the ones of the geometry drawn before, so the
+ * grouping saves state changes. Then all spatials in
  * the opaque bucket are rendered in order farthest to closest. Finally all
  * spatials in the ortho bucket are rendered in ortho mode from highest to
  * lowest Z order. As a user, you shouldn't need to use this class directly. All
@@ -50,6 +54,7 @@ import java.util.Arrays;
  * 
  * @author renanse
  * @author Jack Lindamood (javadoc + SpatialList only)
+ * @see SpatialList
  * @see com.jme.scene.Spatial#setRenderQueueMode(int)
  *  
  */
@@ -68,7 +73,10 @@ public class RenderQueue {
     private SpatialList cloneBucket;
 
     /** The renderer. */
-    private static Renderer renderer;
+    private Renderer renderer;
+
+    /** Whether the opaque bucket is grouped by render states. */
+    private boolean sortByState = true;
 
     /**
      * Creates a new render queue that will work with the given renderer.
@@ -84,10 +92,29 @@ public class RenderQueue {
      * Creates the buckets needed.
      */
     private void setupBuckets() {
-        opaqueBucket = new SpatialList(new OpaqueComp());
-        transparentBucket = new SpatialList(new TransparentComp());
-        orthoBucket = new SpatialList(new OrthoComp());
-        cloneBucket = new SpatialList(new CloneComp());
+        opaqueBucket = new SpatialList();
+        transparentBucket = new SpatialList();
+        orthoBucket = new SpatialList();
+        cloneBucket = new SpatialList();
+    }
+
+    /**
+     * @return true if the opaque bucket is grouped by render states before it
+     *         is sorted by distance.
+     */
+    public boolean isSortByState() {
+        return sortByState;
+    }
+
+    /**
+     * Sets whether the opaque bucket is grouped by render states before it is
+     * sorted by distance. Defaults to true.
+     * 
+     * @param sortByState
+     *            false to sort the opaque bucket by distance only.
+     */
+    public void setSortByState(boolean sortByState) {
+        this.sortByState = sortByState;
     }
 
     /**
@@ -132,7 +159,7 @@ public class RenderQueue {
      *            Spatial to distancize.
      * @return Distance from Spatial to camera.
      */
-    private static float distanceToCam(Spatial spat) {
+    private float distanceToCam(Spatial spat) {
         if (spat.queueDistance != Float.NEGATIVE_INFINITY)
                 return spat.queueDistance;
         Camera cam = renderer.getCamera();
@@ -144,6 +171,37 @@ public class RenderQueue {
         return spat.queueDistance;
     }
 
+    /**
+     * Packs the ids of the texture of the first unit, the texture state, the
+     * material state and the light state of a geometry into a key, 16 bits
+     * each. Geometries with equal keys share these states. Ids beyond 16 bits
+     * only weaken the grouping.
+     * 
+     * @param spat
+     *            Spatial to compute the key for.
+     * @return the key, 0 for spatials which are not geometry.
+     */
+    private static long stateKey(Spatial spat) {
+        if (!(spat instanceof Geometry))
+            return 0;
+        Geometry geom = (Geometry) spat;
+        long key = 0;
+        RenderState state = geom.getState(RenderState.RS_TEXTURE);
+        if (state != null) {
+            Texture texture = ((TextureState) state).getTexture();
+            if (texture != null)
+                key = texture.getTextureId() & 0xFFFFL;
+            key = key << 16 | state.getStateId() & 0xFFFFL;
+        } else {
+            key <<= 16;
+        }
+        state = geom.getState(RenderState.RS_MATERIAL);
+        key = key << 16 | (state != null ? state.getStateId() & 0xFFFFL : 0);
+        state = geom.getState(RenderState.RS_LIGHT);
+        key = key << 16 | (state != null ? state.getStateId() & 0xFFFFL : 0);
+        return key;
+    }
+
     /**
      * clears all of the buckets.
      */
@@ -165,9 +223,13 @@ public class RenderQueue {
     }
 
     /**
-     * Draw Clone buckets. Those with the smallest Z value are drawn first.
+     * Draw Clone buckets. Those with the highest clone ID are drawn first.
      */
     private void renderCloneBucket() {
+        for (int i = 0; i < cloneBucket.listSize; i++) {
+            cloneBucket.setKey(i, -(long) ((Geometry) cloneBucket.list[i])
+                    .getCloneID(), 0);
+        }
         cloneBucket.sort();
         for (int i = 0; i < cloneBucket.listSize; i++) {
             cloneBucket.list[i].draw(renderer);
@@ -176,10 +238,15 @@ public class RenderQueue {
     }
 
     /**
-     * Renders the opaque buckets. Those closest to the camera are rendered
-     * first.
+     * Renders the opaque buckets. Those sharing render states are rendered one
+     * after the other and those closest to the camera first.
      */
     private void renderOpaqueBucket() {
+        for (int i = 0; i < opaqueBucket.listSize; i++) {
+            Spatial spat = opaqueBucket.list[i];
+            opaqueBucket.setKey(i, sortByState ? stateKey(spat) : 0,
+                    distanceToCam(spat));
+        }
         opaqueBucket.sort();
         for (int i = 0; i < opaqueBucket.listSize; i++) {
             opaqueBucket.list[i].draw(renderer);
@@ -193,6 +260,10 @@ public class RenderQueue {
      * rendered first.
      */
     private void renderTransparentBucket() {
+        for (int i = 0; i < transparentBucket.listSize; i++) {
+            transparentBucket.setKey(i, 0,
+                    -distanceToCam(transparentBucket.list[i]));
+        }
         transparentBucket.sort();
         for (int i = 0; i < transparentBucket.listSize; i++) {
             transparentBucket.list[i].draw(renderer);
@@ -207,6 +278,9 @@ public class RenderQueue {
      */
     private void renderOrthoBucket() {
         renderer.setOrtho();
+        for (int i = 0; i < orthoBucket.listSize; i++) {
+            orthoBucket.setKey(i, -(long) orthoBucket.list[i].getZOrder(), 0);
+        }
         orthoBucket.sort();
         for (int i = 0; i < orthoBucket.listSize; i++) {
             orthoBucket.list[i].draw(renderer);
@@ -214,106 +288,4 @@ public class RenderQueue {
         orthoBucket.clear();
         renderer.unsetOrtho();
     }
-
-    /**
-     * This class is a special function list of Spatial objects for render
-     * queueing. It supports quicksorting with median of 3.
-     * 
-     * @author Jack Lindamood
-     */
-    private static class SpatialList {
-
-        Spatial[] list;
-
-        int listSize;
-
-        private static final int DEFAULT_SIZE = 32;
-
-        private Comparator c;
-
-        SpatialList(Comparator c) {
-            listSize = 0;
-            list = new Spatial[DEFAULT_SIZE];
-            this.c = c;
-        }
-
-        /**
-         * Adds a spatial to the list. Lise size is doubled if there is no room.
-         * 
-         * @param s
-         *            The spatial to add.
-         */
-        void add(Spatial s) {
-            if (listSize == list.length) {
-                Spatial[] temp = new Spatial[listSize * 2];
-                System.arraycopy(list, 0, temp, 0, listSize);
-                list = temp;
-            }
-            list[listSize++] = s;
-        }
-
-        /**
-         * Resets list size to 0.
-         */
-        void clear() {
-            for (int i = 0; i < listSize; i++)
-                list[i] = null;
-            listSize = 0;
-        }
-
-        /**
-         * Sorts the elements in the list acording to their Comparator.
-         */
-        void sort() {
-            if (listSize > 1) Arrays.sort(list, 0, listSize, c);
-        }
-    }
-
-    private static class OpaqueComp implements Comparator {
-
-        public int compare(Object o1, Object o2) {
-            float d1 = distanceToCam((Spatial) o1);
-            float d2 = distanceToCam((Spatial) o2);
-            if (d1 <= d2)
-                return -1;
-            else
-                return 1;
-        }
-    }
-
-    private static class TransparentComp implements Comparator {
-
-        public int compare(Object o1, Object o2) {
-            float d1 = distanceToCam((Spatial) o1);
-            float d2 = distanceToCam((Spatial) o2);
-            if (d1 <= d2)
-                return 1;
-            else
-                return -1;
-        }
-    }
-
-    private static class OrthoComp implements Comparator {
-
-        public int compare(Object o1, Object o2) {
-            Spatial s1 = (Spatial) o1;
-            Spatial s2 = (Spatial) o2;
-            if (s1.getZOrder() < s2.getZOrder())
-                return 1;
-            else
-                return -1;
-        }
-    }
-
-    private static class CloneComp implements Comparator {
-
-        public int compare(Object o1, Object o2) {
-            Geometry s1 = (Geometry) o1;
-            Geometry s2 = (Geometry) o2;
-            if (s1.getCloneID() < s2.getCloneID())
-                return 1;
-            else
-                return -1;
-        }
-    }
-}
\ No newline at end of file
+}
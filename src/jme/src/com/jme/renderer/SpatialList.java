@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.renderer;
+
+import java.util.Arrays;
+
+import com.jme.scene.Spatial;
+
+/**
+ * <code>SpatialList</code> is a list of spatials sorted by keys, as used for
+ * the buckets of the <code>RenderQueue</code>. Each entry has a long key and a
+ * float value; <code>sort</code> orders the entries by key and entries with
+ * equal keys by value, both ascending, keeping the order in which equal
+ * entries were added. Descending orders are had by negating the keys.
+ * 
+ * The keys are held in arrays next to the spatials and sorted with a least
+ * significant digit radix sort, one pass per byte. Passes over a byte which is
+ * the same for all entries are skipped, so small keys cost few passes. The
+ * arrays are kept between frames, so a list filled to the same size again
+ * does not allocate.
+ * 
+ * @author Jack Lindamood
+ * @version $Id$
+ */
+public final class SpatialList {
+
+    private static final int DEFAULT_SIZE = 32;
+
+    private static final int RADIX = 256;
+
+    Spatial[] list;
+
+    int listSize;
+
+    /** Entries used before the last clear, their slots still reference them. */
+    private int usedSize;
+
+    private long[] keys;
+
+    private int[] values;
+
+    // second set of arrays the sort passes copy into
+    private Spatial[] sortedList;
+
+    private long[] sortedKeys;
+
+    private int[] sortedValues;
+
+    private final int[] counts = new int[RADIX];
+
+    public SpatialList() {
+        list = new Spatial[DEFAULT_SIZE];
+        keys = new long[DEFAULT_SIZE];
+        values = new int[DEFAULT_SIZE];
+        sortedList = new Spatial[DEFAULT_SIZE];
+        sortedKeys = new long[DEFAULT_SIZE];
+        sortedValues = new int[DEFAULT_SIZE];
+    }
+
+    /**
+     * Adds a spatial to the list with key and value 0. List size is doubled
+     * if there is no room.
+     * 
+     * @param s
+     *            The spatial to add.
+     */
+    public void add(Spatial s) {
+        if (listSize == list.length) {
+            grow(listSize * 2);
+        }
+        keys[listSize] = 0;
+        values[listSize] = 0;
+        list[listSize++] = s;
+    }
+
+    /**
+     * Adds a spatial to the list.
+     * 
+     * @param s
+     *            The spatial to add.
+     * @param key
+     *            The key it is sorted by.
+     * @param value
+     *            The value it is sorted by among equal keys.
+     */
+    public void add(Spatial s, long key, float value) {
+        add(s);
+        setKey(listSize - 1, key, value);
+    }
+
+    private void grow(int size) {
+        Spatial[] temp = new Spatial[size];
+        System.arraycopy(list, 0, temp, 0, listSize);
+        list = temp;
+        long[] tempKeys = new long[size];
+        System.arraycopy(keys, 0, tempKeys, 0, listSize);
+        keys = tempKeys;
+        int[] tempValues = new int[size];
+        System.arraycopy(values, 0, tempValues, 0, listSize);
+        values = tempValues;
+        sortedList = new Spatial[size];
+        sortedKeys = new long[size];
+        sortedValues = new int[size];
+    }
+
+    /**
+     * Sets the key and value of an entry.
+     * 
+     * @param index
+     *            The index of the entry.
+     * @param key
+     *            The key it is sorted by.
+     * @param value
+     *            The value it is sorted by among equal keys.
+     */
+    public void setKey(int index, long key, float value) {
+        // flip the sign bit, so the keys sort as unsigned numbers
+        keys[index] = key ^ Long.MIN_VALUE;
+        // adding 0 turns -0 into 0, which compares equal to it
+        int bits = Float.floatToIntBits(value + 0f);
+        values[index] = bits ^ (bits >> 31 | Integer.MIN_VALUE);
+    }
+
+    /**
+     * @return The number of spatials in the list.
+     */
+    public int size() {
+        return listSize;
+    }
+
+    /**
+     * @param index
+     *            The index of a spatial.
+     * @return The spatial at the given index.
+     */
+    public Spatial get(int index) {
+        return list[index];
+    }
+
+    /**
+     * Resets list size to 0. The slots keep referencing their spatials until
+     * they are used again; slots which were used before but not since the last
+     * clear are released.
+     */
+    public void clear() {
+        if (listSize < usedSize) {
+            for (int i = listSize; i < usedSize; i++) {
+                list[i] = null;
+                sortedList[i] = null;
+            }
+        }
+        usedSize = listSize;
+        listSize = 0;
+    }
+
+    /**
+     * Sorts the entries by key and entries with equal keys by value.
+     */
+    public void sort() {
+        if (listSize < 2) {
+            return;
+        }
+        for (int shift = 0; shift < 32; shift += 8) {
+            sortValues(shift);
+        }
+        for (int shift = 0; shift < 64; shift += 8) {
+            sortKeys(shift);
+        }
+    }
+
+    /**
+     * Counts the entries per bucket of the given digits and turns the counts
+     * into the first index of each bucket.
+     * 
+     * @return false if all entries fall into the same bucket.
+     */
+    private boolean countBuckets(int firstDigit) {
+        int[] count = counts;
+        if (count[firstDigit] == listSize) {
+            return false;
+        }
+        int sum = 0;
+        for (int b = 0; b < RADIX; b++) {
+            int c = count[b];
+            count[b] = sum;
+            sum += c;
+        }
+        return true;
+    }
+
+    private void sortValues(int shift) {
+        int[] count = counts;
+        Arrays.fill(count, 0);
+        int[] v = values;
+        int n = listSize;
+        for (int i = 0; i < n; i++) {
+            count[(v[i] >>> shift) & 0xFF]++;
+        }
+        if (!countBuckets((v[0] >>> shift) & 0xFF)) {
+            return;
+        }
+        Spatial[] l = list, sl = sortedList;
+        long[] k = keys, sk = sortedKeys;
+        int[] sv = sortedValues;
+        for (int i = 0; i < n; i++) {
+            int to = count[(v[i] >>> shift) & 0xFF]++;
+            sl[to] = l[i];
+            sk[to] = k[i];
+            sv[to] = v[i];
+        }
+        swap();
+    }
+
+    private void sortKeys(int shift) {
+        int[] count = counts;
+        Arrays.fill(count, 0);
+        long[] k = keys;
+        int n = listSize;
+        for (int i = 0; i < n; i++) {
+            count[(int) (k[i] >>> shift) & 0xFF]++;
+        }
+        if (!countBuckets((int) (k[0] >>> shift) & 0xFF)) {
+            return;
+        }
+        Spatial[] l = list, sl = sortedList;
+        long[] sk = sortedKeys;
+        int[] v = values, sv = sortedValues;
+        for (int i = 0; i < n; i++) {
+            int to = count[(int) (k[i] >>> shift) & 0xFF]++;
+            sl[to] = l[i];
+            sk[to] = k[i];
+            sv[to] = v[i];
+        }
+        swap();
+    }
+
+    private void swap() {
+        Spatial[] l = list;
+        list = sortedList;
+        sortedList = l;
+        long[] k = keys;
+        keys = sortedKeys;
+        sortedKeys = k;
+        int[] v = values;
+        values = sortedValues;
+        sortedValues = v;
+    }
+}
@@ -1057,23 +1057,24 @@ public class LWJGLRenderer implements Renderer
 
         IntBuffer indices = t.getIndexAsBuffer();
         int verts = (t.getVertQuantity() >= 0 ? t.getVertQuantity() : t.getVertices().length);
+        int count = (t.getTriangleQuantity() >= 0 ? t.getTriangleQuantity() * 3 : t.getIndices().length);
         if (statisticsOn)
         {
-            numberOfTris += (t.getTriangleQuantity() >= 0 ? t.getTriangleQuantity() : t.getIndices().length / 3);
+            numberOfTris += count / 3;
             numberOfVerts += verts;
         }
 
         if (GLContext.getCapabilities().OpenGL12)
         {
             if (t.isDynamicVBOIndexEnabled() || t.isStaticVBOIndexEnabled())
-                GL12.glDrawRangeElements(GL11.GL_TRIANGLES, 0, verts,  t.getIndices().length, GL11.GL_UNSIGNED_INT, 0);
+                GL12.glDrawRangeElements(GL11.GL_TRIANGLES, 0, verts, count, GL11.GL_UNSIGNED_INT, 0);
             else
                 GL12.glDrawRangeElements(GL11.GL_TRIANGLES, 0, verts, indices);
         }
         else
         {
             if (t.isDynamicVBOIndexEnabled() || t.isStaticVBOIndexEnabled())
-                GL11.glDrawElements(GL11.GL_TRIANGLES, t.getIndices().length, GL11.GL_UNSIGNED_INT, 0);
+                GL11.glDrawElements(GL11.GL_TRIANGLES, count, GL11.GL_UNSIGNED_INT, 0);
             else
                 GL11.glDrawElements(GL11.GL_TRIANGLES, indices);
         }
@@ -1115,7 +1116,7 @@ public class LWJGLRenderer implements Renderer
 
         if (g.isStaticVBOVertexEnabled() && g.getVBOVertexID() <= 0)
         {
-            g.updateVertexBuffer(g.getVertices().length);
+            g.updateVertexBuffer(g.getVertQuantity());
             GL15.glGenBuffers(buf);
             g.setVBOVertexID(buf.get(0));
             GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, g.getVBOVertexID());
@@ -1126,7 +1127,7 @@ public class LWJGLRenderer implements Renderer
         {
             if (g.isDynamicVBOVertexEnabled())
             {
-                g.updateVertexBuffer(g.getVertices().length);
+                g.updateVertexBuffer(g.getVertQuantity());
                 if (g.getVBOVertexID() <= 0)
                 {
                     GL15.glGenBuffers(buf);
@@ -1150,6 +1151,14 @@ public class LWJGLRenderer implements Renderer
             GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, g.getVBOIndexID());
             GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, g.getIndexAsBuffer(), GL15.GL_STATIC_DRAW);
             buf.clear();
+            g.setVBOIndexStale(false);
+        }
+        else if (g.isStaticVBOIndexEnabled() && g.isVBOIndexStale())
+        {
+            // the indices changed, e.g. a ClodMesh chose another record
+            GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, g.getVBOIndexID());
+            GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, g.getIndexAsBuffer(), GL15.GL_STATIC_DRAW);
+            g.setVBOIndexStale(false);
         }
         else
         {
@@ -1173,7 +1182,7 @@ public class LWJGLRenderer implements Renderer
 
         if (g.isStaticVBONormalEnabled() && g.getVBONormalID() <= 0)
         {
-            g.updateNormalBuffer(g.getVertices().length);
+            g.updateNormalBuffer(g.getVertQuantity());
             GL15.glGenBuffers(buf);
             g.setVBONormalID(buf.get(0));
             GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, g.getVBONormalID());
@@ -1184,7 +1193,7 @@ public class LWJGLRenderer implements Renderer
         {
             if (g.isDynamicVBONormalEnabled())
             {
-                g.updateNormalBuffer(g.getVertices().length);
+                g.updateNormalBuffer(g.getVertQuantity());
                 if (g.getVBONormalID() <= 0)
                 {
                     GL15.glGenBuffers(buf);
@@ -1202,7 +1211,7 @@ public class LWJGLRenderer implements Renderer
 
         if (g.isStaticVBOColorEnabled() && g.getVBOColorID() <= 0)
         {
-            g.updateColorBuffer(g.getVertices().length);
+            g.updateColorBuffer(g.getVertQuantity());
             if (g.getColorAsFloatBuffer() != null)
             {
                 GL15.glGenBuffers(buf);
@@ -1216,7 +1225,7 @@ public class LWJGLRenderer implements Renderer
         {
             if (g.isDynamicVBOColorEnabled())
             {
-                g.updateColorBuffer(g.getVertices().length);
+                g.updateColorBuffer(g.getVertQuantity());
                 if (g.getVBOColorID() <= 0)
                 {
                     GL15.glGenBuffers(buf);
@@ -1239,7 +1248,7 @@ public class LWJGLRenderer implements Renderer
 
                 if (g.isStaticVBOTextureEnabled() && g.getVBOTextureID(i) <= 0 && g.getTextureAsFloatBuffer(i) != null)
                 {
-                    g.updateTextureBuffer(i, g.getVertices().length);
+                    g.updateTextureBuffer(i, g.getVertQuantity());
                     GL15.glGenBuffers(buf);
                     g.setVBOTextureID(i, buf.get(0));
                     GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, g.getVBOTextureID(i));
@@ -1250,7 +1259,7 @@ public class LWJGLRenderer implements Renderer
                 {
                     if (g.isDynamicVBOColorEnabled() && g.getTextureAsFloatBuffer(i) != null)
                     {
-                        g.updateTextureBuffer(i, g.getVertices().length);
+                        g.updateTextureBuffer(i, g.getVertQuantity());
                         if (g.getVBOTextureID(i) <= 0)
                         {
                             GL15.glGenBuffers(buf);
@@ -396,6 +396,10 @@ public class BumpMapNode extends Node {
 		worldBound = objects.getWorldBound();
 	}
 
+	protected boolean isWorldBoundCurrent() {
+		return false;
+	}
+
 	public void draw(Renderer r) {
 		objects.setForceCull(forceCullObjects);
 		r.draw(this);
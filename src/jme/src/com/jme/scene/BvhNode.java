@@ -0,0 +1,602 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.jme.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingSphere;
+import com.jme.bounding.BoundingVolume;
+import com.jme.intersection.PickResults;
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+import com.jme.renderer.Camera;
+import com.jme.renderer.Renderer;
+
+/**
+ * <code>BvhNode</code> is a node for static content that keeps a bounding
+ * volume hierarchy over the spatials below it. The hierarchy is built once by
+ * <code>build</code> from the world bounds the spatials have at that time,
+ * splitting them by the surface area heuristic. Drawing walks the hierarchy
+ * instead of the scene graph: a box outside the frustum culls everything in
+ * it, a box inside the frustum draws everything in it without further tests,
+ * and the camera's plane state is kept while going down, so planes a box is
+ * completely inside of are not tested again below it. Picking only visits the
+ * boxes the ray hits, so it takes logarithmic time in the number of spatials.
+ * <br>
+ * <br>
+ * The spatials keep their place in the scene graph, so transforms, render
+ * states and collisions work as with a plain <code>Node</code>. The
+ * hierarchy's leaves are the spatials below plain nodes; any other node type
+ * is kept whole. The hierarchy does not follow changes: after the content
+ * moved, or children were attached or detached, <code>build</code> has to be
+ * called again. Until the first <code>build</code>, this node behaves like a
+ * plain <code>Node</code>.
+ * 
+ * @version $Id$
+ */
+public class BvhNode extends Node {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Most spatials a leaf holds without trying to split it. */
+    private static final int LEAF_SIZE = 2;
+
+    /** Most spatials a leaf holds when splitting would cost more. */
+    private static final int MAX_LEAF_SIZE = 8;
+
+    /** Number of bins the centroids are sorted into to find a split. */
+    private static final int BINS = 16;
+
+    /** Cost of visiting a box relative to testing a spatial. */
+    private static final float TRAVERSAL_COST = 1.0f;
+
+    /** Spatials of the hierarchy, the ones below each box stored together. */
+    private transient Spatial[] items;
+
+    /** Spatials without a world bound, always drawn and never picked. */
+    private transient Spatial[] unbounded;
+
+    /** Minimum and maximum corner of each box, six floats per box. */
+    private transient float[] bounds;
+
+    /** The boxes as bounding volumes, for the camera. */
+    private transient BoundingBox[] boxes;
+
+    /** Index of the first spatial below each box. */
+    private transient int[] first;
+
+    /** Number of spatials below each box. */
+    private transient int[] count;
+
+    /**
+     * Index of the second child of each box, or -1 for a leaf. The first
+     * child directly follows its parent.
+     */
+    private transient int[] second;
+
+    /** Number of boxes in use. */
+    private transient int boxQuantity;
+
+    /** Boxes still to visit while picking, as deep as the hierarchy. */
+    private transient int[] pickStack;
+
+    /**
+     * Empty Constructor to be used internally only.
+     */
+    public BvhNode() {
+    }
+
+    /**
+     * Constructor instantiates a new <code>BvhNode</code> without children.
+     * The hierarchy is built by <code>build</code>, once the static content
+     * is attached and its world bounds are up to date.
+     * 
+     * @param name
+     *            the name of the scene element.
+     */
+    public BvhNode(String name) {
+        super(name);
+    }
+
+    /**
+     * <code>build</code> builds the hierarchy over the spatials currently
+     * below this node, from their current world bounds. Call
+     * <code>updateGeometricState</code> first if they are not up to date.
+     */
+    public void build() {
+        ArrayList found = new ArrayList();
+        ArrayList withoutBound = new ArrayList();
+        for (int i = 0, cSize = children.size(); i < cSize; i++) {
+            collect((Spatial) children.get(i), found, withoutBound);
+        }
+        unbounded = (Spatial[]) withoutBound.toArray(new Spatial[withoutBound
+                .size()]);
+
+        int quantity = found.size();
+        items = (Spatial[]) found.toArray(new Spatial[quantity]);
+        bounds = new float[6 * Math.max(1, 2 * quantity - 1)];
+        first = new int[Math.max(1, 2 * quantity - 1)];
+        count = new int[first.length];
+        second = new int[first.length];
+        boxQuantity = 0;
+
+        float[] itemBounds = new float[6 * quantity];
+        float[] centroids = new float[3 * quantity];
+        for (int i = 0; i < quantity; i++) {
+            worldBox(items[i].getWorldBound(), itemBounds, 6 * i);
+            for (int axis = 0; axis < 3; axis++) {
+                centroids[3 * i + axis] = 0.5f * (itemBounds[6 * i + axis]
+                        + itemBounds[6 * i + 3 + axis]);
+            }
+        }
+
+        int depth = 0;
+        if (quantity > 0) {
+            depth = split(0, quantity, itemBounds, centroids, 1);
+        }
+        pickStack = new int[depth + 1];
+
+        boxes = new BoundingBox[boxQuantity];
+        for (int b = 0; b < boxQuantity; b++) {
+            int o = 6 * b;
+            boxes[b] = new BoundingBox(new Vector3f(
+                    0.5f * (bounds[o] + bounds[o + 3]),
+                    0.5f * (bounds[o + 1] + bounds[o + 4]),
+                    0.5f * (bounds[o + 2] + bounds[o + 5])),
+                    0.5f * (bounds[o + 3] - bounds[o]),
+                    0.5f * (bounds[o + 4] - bounds[o + 1]),
+                    0.5f * (bounds[o + 5] - bounds[o + 2]));
+        }
+    }
+
+    /**
+     * <code>isBuilt</code> returns true once <code>build</code> was called.
+     * 
+     * @return true if drawing and picking use the hierarchy.
+     */
+    public boolean isBuilt() {
+        return items != null;
+    }
+
+    /**
+     * <code>getBoxQuantity</code> returns the number of boxes in the
+     * hierarchy.
+     * 
+     * @return the number of boxes, 0 before the first <code>build</code>.
+     */
+    public int getBoxQuantity() {
+        return boxQuantity;
+    }
+
+    /**
+     * Adds the spatial, or the spatials below it if it is a plain node, to
+     * the hierarchy's leaves.
+     */
+    private static void collect(Spatial spatial, List found, List withoutBound) {
+        if (spatial == null) {
+            return;
+        }
+        if (spatial.getClass() == Node.class) {
+            ArrayList list = ((Node) spatial).getChildren();
+            for (int i = 0, cSize = list.size(); i < cSize; i++) {
+                collect((Spatial) list.get(i), found, withoutBound);
+            }
+        } else if (spatial.getWorldBound() == null) {
+            withoutBound.add(spatial);
+        } else {
+            found.add(spatial);
+        }
+    }
+
+    /**
+     * Stores the axis aligned box around the world bound at the given offset,
+     * minimum corner first.
+     */
+    private static void worldBox(BoundingVolume bound, float[] store,
+            int offset) {
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            setBox(store, offset, box.getCenter(), box.xExtent, box.yExtent,
+                    box.zExtent);
+        } else if (bound instanceof BoundingSphere) {
+            BoundingSphere sphere = (BoundingSphere) bound;
+            float radius = sphere.getRadius();
+            setBox(store, offset, sphere.getCenter(), radius, radius, radius);
+        } else {
+            BoundingBox box = new BoundingBox(bound.getCenter(new Vector3f()),
+                    0, 0, 0);
+            box.mergeLocal(bound);
+            setBox(store, offset, box.getCenter(), box.xExtent, box.yExtent,
+                    box.zExtent);
+        }
+    }
+
+    private static void setBox(float[] store, int offset, Vector3f center,
+            float xExtent, float yExtent, float zExtent) {
+        store[offset] = center.x - xExtent;
+        store[offset + 1] = center.y - yExtent;
+        store[offset + 2] = center.z - zExtent;
+        store[offset + 3] = center.x + xExtent;
+        store[offset + 4] = center.y + yExtent;
+        store[offset + 5] = center.z + zExtent;
+    }
+
+    /**
+     * Creates the box over the items from <code>from</code> to
+     * <code>to</code> and splits it along the binned split with the lowest
+     * surface area cost, as long as that is cheaper than a leaf.
+     * 
+     * @return the depth of the deepest box below this one.
+     */
+    private int split(int from, int to, float[] itemBounds, float[] centroids,
+            int depth) {
+        int box = boxQuantity++;
+        int o = 6 * box;
+        float[] b = bounds;
+        b[o] = b[o + 1] = b[o + 2] = Float.POSITIVE_INFINITY;
+        b[o + 3] = b[o + 4] = b[o + 5] = Float.NEGATIVE_INFINITY;
+        float cMinX = Float.POSITIVE_INFINITY, cMinY = cMinX, cMinZ = cMinX;
+        float cMaxX = Float.NEGATIVE_INFINITY, cMaxY = cMaxX, cMaxZ = cMaxX;
+        for (int i = from; i < to; i++) {
+            int io = 6 * i;
+            for (int k = 0; k < 3; k++) {
+                if (itemBounds[io + k] < b[o + k])
+                    b[o + k] = itemBounds[io + k];
+                if (itemBounds[io + 3 + k] > b[o + 3 + k])
+                    b[o + 3 + k] = itemBounds[io + 3 + k];
+            }
+            float x = centroids[3 * i], y = centroids[3 * i + 1];
+            float z = centroids[3 * i + 2];
+            if (x < cMinX) cMinX = x;
+            if (x > cMaxX) cMaxX = x;
+            if (y < cMinY) cMinY = y;
+            if (y > cMaxY) cMaxY = y;
+            if (z < cMinZ) cMinZ = z;
+            if (z > cMaxZ) cMaxZ = z;
+        }
+        first[box] = from;
+        count[box] = to - from;
+        second[box] = -1;
+
+        int quantity = to - from;
+        if (quantity <= LEAF_SIZE) {
+            return depth;
+        }
+
+        // split along the axis the centroids spread most
+        int axis = 0;
+        float min = cMinX, extent = cMaxX - cMinX;
+        if (cMaxY - cMinY > extent) {
+            axis = 1;
+            min = cMinY;
+            extent = cMaxY - cMinY;
+        }
+        if (cMaxZ - cMinZ > extent) {
+            axis = 2;
+            min = cMinZ;
+            extent = cMaxZ - cMinZ;
+        }
+
+        int middle;
+        if (extent <= 0) {
+            // all centroids in one spot, no split can separate them
+            if (quantity <= MAX_LEAF_SIZE) {
+                return depth;
+            }
+            middle = (from + to) >>> 1;
+        } else {
+            int[] binCount = new int[BINS];
+            float[] binBounds = new float[6 * BINS];
+            for (int i = 0; i < BINS; i++) {
+                setEmpty(binBounds, 6 * i);
+            }
+            float scale = BINS / extent;
+            for (int i = from; i < to; i++) {
+                int bin = bin(centroids[3 * i + axis], min, scale);
+                binCount[bin]++;
+                grow(binBounds, 6 * bin, itemBounds, 6 * i);
+            }
+
+            // areas and counts to the right of each split, then sweep left
+            float[] rightArea = new float[BINS];
+            int[] rightCount = new int[BINS];
+            float[] sweep = new float[6];
+            setEmpty(sweep, 0);
+            int n = 0;
+            for (int i = BINS - 1; i > 0; i--) {
+                grow(sweep, 0, binBounds, 6 * i);
+                n += binCount[i];
+                rightArea[i] = area(sweep, 0);
+                rightCount[i] = n;
+            }
+            setEmpty(sweep, 0);
+            n = 0;
+            int bestSplit = -1;
+            float bestCost = Float.POSITIVE_INFINITY;
+            for (int i = 1; i < BINS; i++) {
+                grow(sweep, 0, binBounds, 6 * (i - 1));
+                n += binCount[i - 1];
+                if (n == 0 || rightCount[i] == 0) {
+                    continue;
+                }
+                float cost = area(sweep, 0) * n + rightArea[i] * rightCount[i];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestSplit = i;
+                }
+            }
+
+            float area = area(b, o);
+            float leafCost = area * quantity;
+            float splitCost = area * TRAVERSAL_COST + bestCost;
+            if (bestSplit < 0
+                    || (splitCost >= leafCost && quantity <= MAX_LEAF_SIZE)) {
+                return depth;
+            }
+
+            // move the items left of the split to the front
+            middle = from;
+            for (int i = from; i < to; i++) {
+                if (bin(centroids[3 * i + axis], min, scale) < bestSplit) {
+                    swap(middle++, i, itemBounds, centroids);
+                }
+            }
+        }
+
+        int leftDepth = split(from, middle, itemBounds, centroids, depth + 1);
+        second[box] = boxQuantity;
+        int rightDepth = split(middle, to, itemBounds, centroids, depth + 1);
+        return Math.max(leftDepth, rightDepth);
+    }
+
+    private static int bin(float centroid, float min, float scale) {
+        int bin = (int) ((centroid - min) * scale);
+        return bin < BINS ? bin : BINS - 1;
+    }
+
+    private static void setEmpty(float[] box, int offset) {
+        box[offset] = box[offset + 1] = box[offset + 2] = Float.POSITIVE_INFINITY;
+        box[offset + 3] = box[offset + 4] = box[offset + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    private static void grow(float[] box, int offset, float[] by, int byOffset) {
+        for (int k = 0; k < 3; k++) {
+            if (by[byOffset + k] < box[offset + k])
+                box[offset + k] = by[byOffset + k];
+            if (by[byOffset + 3 + k] > box[offset + 3 + k])
+                box[offset + 3 + k] = by[byOffset + 3 + k];
+        }
+    }
+
+    private static float area(float[] box, int offset) {
+        float x = box[offset + 3] - box[offset];
+        float y = box[offset + 4] - box[offset + 1];
+        float z = box[offset + 5] - box[offset + 2];
+        if (x < 0) {
+            return 0;
+        }
+        return x * y + y * z + z * x;
+    }
+
+    private void swap(int i, int j, float[] itemBounds, float[] centroids) {
+        if (i == j) {
+            return;
+        }
+        Spatial item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+        for (int k = 0; k < 6; k++) {
+            float f = itemBounds[6 * i + k];
+            itemBounds[6 * i + k] = itemBounds[6 * j + k];
+            itemBounds[6 * j + k] = f;
+        }
+        for (int k = 0; k < 3; k++) {
+            float f = centroids[3 * i + k];
+            centroids[3 * i + k] = centroids[3 * j + k];
+            centroids[3 * j + k] = f;
+        }
+    }
+
+    /**
+     * <code>draw</code> draws the spatials of the boxes that are not culled
+     * by the renderer's camera.
+     * 
+     * @see com.jme.scene.Spatial#draw(com.jme.renderer.Renderer)
+     * @param r
+     *            the renderer to draw to.
+     */
+    public void draw(Renderer r) {
+        if (items == null) {
+            super.draw(r);
+            return;
+        }
+        for (int i = 0; i < unbounded.length; i++) {
+            drawItem(r, null, unbounded[i], Camera.INSIDE_FRUSTUM);
+        }
+        if (boxQuantity > 0) {
+            cull(r, null, r.getCamera(), 0);
+        }
+    }
+
+    /**
+     * <code>findVisible</code> adds the spatials the camera does not cull to
+     * the given list, in the order <code>draw</code> would draw them.
+     * 
+     * @param camera
+     *            the camera to cull against.
+     * @param store
+     *            the list the visible spatials are added to.
+     */
+    public void findVisible(Camera camera, List store) {
+        if (items == null) {
+            for (int i = 0, cSize = children.size(); i < cSize; i++) {
+                store.add(children.get(i));
+            }
+            return;
+        }
+        for (int i = 0; i < unbounded.length; i++) {
+            drawItem(null, store, unbounded[i], Camera.INSIDE_FRUSTUM);
+        }
+        if (boxQuantity > 0) {
+            int state = camera.getPlaneState();
+            cull(null, store, camera, 0);
+            camera.setPlaneState(state);
+        }
+    }
+
+    /**
+     * Culls the box against the camera and draws, or stores, the spatials of
+     * the visible part of it.
+     */
+    private void cull(Renderer r, List store, Camera camera, int box) {
+        int state = camera.getPlaneState();
+        int side = forceView ? Camera.INSIDE_FRUSTUM : camera
+                .contains(boxes[box]);
+        if (side != Camera.OUTSIDE_FRUSTUM) {
+            if (side == Camera.INSIDE_FRUSTUM || second[box] < 0) {
+                for (int i = first[box], end = i + count[box]; i < end; i++) {
+                    Spatial item = items[i];
+                    int itemSide = side;
+                    if (side != Camera.INSIDE_FRUSTUM) {
+                        int itemState = camera.getPlaneState();
+                        itemSide = camera.contains(item.getWorldBound());
+                        camera.setPlaneState(itemState);
+                    }
+                    if (itemSide != Camera.OUTSIDE_FRUSTUM) {
+                        drawItem(r, store, item, itemSide);
+                    }
+                }
+            } else {
+                cull(r, store, camera, box + 1);
+                cull(r, store, camera, second[box]);
+            }
+        }
+        camera.setPlaneState(state);
+    }
+
+    private static void drawItem(Renderer r, List store, Spatial item,
+            int side) {
+        if (item.isForceCulled()) {
+            return;
+        }
+        item.setLastFrustumIntersection(side);
+        if (r != null) {
+            item.draw(r);
+        } else {
+            store.add(item);
+        }
+    }
+
+    /**
+     * <code>findPick</code> passes the ray on to the spatials whose boxes it
+     * hits.
+     * 
+     * @see com.jme.scene.Spatial#findPick(com.jme.math.Ray,
+     *      com.jme.intersection.PickResults)
+     */
+    public void findPick(Ray toTest, PickResults results) {
+        if (items == null) {
+            super.findPick(toTest, results);
+            return;
+        }
+        if (getWorldBound() == null || !getWorldBound().intersects(toTest)
+                || boxQuantity == 0) {
+            return;
+        }
+
+        Vector3f origin = toTest.getOrigin();
+        Vector3f direction = toTest.getDirection();
+        float ox = origin.x, oy = origin.y, oz = origin.z;
+        float ix = 1 / direction.x, iy = 1 / direction.y, iz = 1 / direction.z;
+
+        int[] stack = pickStack;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int box = stack[--top];
+            if (!hits(box, ox, oy, oz, ix, iy, iz)) {
+                continue;
+            }
+            if (second[box] < 0) {
+                for (int i = first[box], end = i + count[box]; i < end; i++) {
+                    items[i].findPick(toTest, results);
+                }
+            } else {
+                stack[top++] = second[box];
+                stack[top++] = box + 1;
+            }
+        }
+    }
+
+    /**
+     * Slab test of the ray, starting at its origin, against a box.
+     */
+    private boolean hits(int box, float ox, float oy, float oz, float ix,
+            float iy, float iz) {
+        int o = 6 * box;
+        float near = 0, far = Float.POSITIVE_INFINITY;
+
+        float t1 = (bounds[o] - ox) * ix, t2 = (bounds[o + 3] - ox) * ix;
+        if (t1 > t2) {
+            float t = t1;
+            t1 = t2;
+            t2 = t;
+        }
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        t1 = (bounds[o + 1] - oy) * iy;
+        t2 = (bounds[o + 4] - oy) * iy;
+        if (t1 > t2) {
+            float t = t1;
+            t1 = t2;
+            t2 = t;
+        }
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        t1 = (bounds[o + 2] - oz) * iz;
+        t2 = (bounds[o + 5] - oz) * iz;
+        if (t1 > t2) {
+            float t = t1;
+            t1 = t2;
+            t2 = t;
+        }
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        return near <= far;
+    }
+}
@@ -52,6 +52,7 @@ import com.jme.scene.state.RenderState;
 import com.jme.system.DisplaySystem;
 import com.jme.system.JmeException;
 import com.jme.util.LoggingSystem;
+import com.jme.util.geom.BufferUtils;
 import com.jme.math.FastMath;
 
 /**
@@ -83,6 +84,12 @@ public abstract class Geometry extends Spatial implements Serializable {
 	/** The number of vertexes in this geometry. */
 	protected int vertQuantity = -1;
 
+	/**
+	 * When true the float buffers are the only store of this geometry's data
+	 * and the vertex, normal, color and texture arrays are kept null.
+	 */
+	protected boolean bufferOnly = false;
+
 	//buffers that allow for faster data processing.
 	protected transient FloatBuffer colorBuf;
 
@@ -134,8 +141,7 @@ public abstract class Geometry extends Spatial implements Serializable {
 	public Geometry(String name) {
 		super(name);
 		vertex = new Vector3f[0];
-		int textureUnits = DisplaySystem.getDisplaySystem().getRenderer()
-				.createTextureState().getNumberOfUnits();
+		int textureUnits = getTextureUnits();
 		texture = new Vector2f[textureUnits][0];
 		texBuf = new FloatBuffer[textureUnits];
 		vboTextureIDs = new int[textureUnits];
@@ -171,8 +177,7 @@ public abstract class Geometry extends Spatial implements Serializable {
 					"Geometry must include vertex information. (100)");
 		}
 
-		int textureUnits = DisplaySystem.getDisplaySystem().getRenderer()
-				.createTextureState().getNumberOfUnits();
+		int textureUnits = getTextureUnits();
 		this.texture = new Vector2f[textureUnits][0];
 		this.texBuf = new FloatBuffer[textureUnits];
 		this.vboTextureIDs = new int[textureUnits];
@@ -204,15 +209,14 @@ public abstract class Geometry extends Spatial implements Serializable {
 	public void reconstruct(Vector3f[] vertices, Vector3f[] normal,
 			ColorRGBA[] color, Vector2f[] texture) {
 
-		if (vertex == null) {
+		if (vertices == null) {
 			LoggingSystem.getLogger().log(Level.WARNING,
 					"Geometry must" + " include vertex information.");
 			throw new JmeException(
 					"Geometry must include vertex information. (101)");
 		}
 
-		int textureUnits = DisplaySystem.getDisplaySystem().getRenderer()
-				.createTextureState().getNumberOfUnits();
+		int textureUnits = getTextureUnits();
 		this.texture = new Vector2f[textureUnits][0];
 		this.texBuf = new FloatBuffer[textureUnits];
 		this.vertex = vertices;
@@ -225,6 +229,75 @@ public abstract class Geometry extends Spatial implements Serializable {
 		updateNormalBuffer();
 		updateVertexBuffer();
 		updateTextureBuffer();
+		if (bufferOnly)
+			dropArrays();
+	}
+
+	/**
+	 * Returns true if this geometry keeps its data in the float buffers only.
+	 *
+	 * @return true if buffer-only storage is enabled.
+	 * @see #setBufferOnly(boolean)
+	 */
+	public boolean isBufferOnly() {
+		return bufferOnly;
+	}
+
+	/**
+	 * <code>setBufferOnly</code> switches the storage mode of this geometry.
+	 * In buffer-only mode the float buffers are the authoritative copy of the
+	 * vertex, normal, color and texture data and the object arrays are
+	 * released, which saves one object per attribute per vertex. The array
+	 * getters still work but build a new copy from the buffer on every call,
+	 * so code on a hot path should use the indexed getters such as
+	 * {@link #getVertex(int, Vector3f)} or read the buffers directly.
+	 * Switching back rebuilds the arrays from the buffers.
+	 *
+	 * @param bufferOnly
+	 *            true to drop the object arrays, false to restore them.
+	 */
+	public void setBufferOnly(boolean bufferOnly) {
+		if (this.bufferOnly == bufferOnly)
+			return;
+		if (bufferOnly) {
+			dropArrays();
+		} else {
+			restoreArrays();
+		}
+		this.bufferOnly = bufferOnly;
+	}
+
+	/**
+	 * Releases the object arrays once their data has been written to the
+	 * buffers.
+	 */
+	private void dropArrays() {
+		vertex = null;
+		normal = null;
+		color = null;
+		if (texture != null) {
+			for (int i = 0; i < texture.length; i++)
+				texture[i] = null;
+		}
+	}
+
+	/**
+	 * Rebuilds the object arrays from the contents of the buffers.
+	 */
+	private void restoreArrays() {
+		int quantity = Math.max(vertQuantity, 0);
+		vertex = BufferUtils.getVector3Array(vertBuf, quantity);
+		if (vertex == null)
+			vertex = new Vector3f[0];
+		normal = BufferUtils.getVector3Array(normBuf, quantity);
+		color = BufferUtils.getColorArray(colorBuf, quantity);
+		if (texture != null) {
+			for (int i = 0; i < texture.length && i < texBuf.length; i++) {
+				texture[i] = BufferUtils.getVector2Array(texBuf[i], quantity);
+				if (texture[i] == null)
+					texture[i] = new Vector2f[0];
+			}
+		}
 	}
 
     /**
@@ -424,14 +497,34 @@ public abstract class Geometry extends Spatial implements Serializable {
 
 	/**
 	 * <code>getColors</code> returns the color information of the geometry.
-	 * This may be null and should be check for such a case.
+	 * This may be null and should be check for such a case. In buffer-only
+	 * mode a new array is built from the color buffer.
 	 *
 	 * @return the color array.
 	 */
 	public ColorRGBA[] getColors() {
+		if (bufferOnly)
+			return BufferUtils.getColorArray(colorBuf, vertQuantity);
 		return color;
 	}
 
+	/**
+	 * <code>getColor</code> reads a single color of this geometry into the
+	 * given store. No bounds checking is done.
+	 *
+	 * @param index
+	 *            the index of the color to read.
+	 * @param store
+	 *            the color to store the result in.
+	 * @return store
+	 */
+	public ColorRGBA getColor(int index, ColorRGBA store) {
+		if (bufferOnly)
+			return BufferUtils.populateFromBuffer(store, colorBuf, index);
+		store.set(color[index]);
+		return store;
+	}
+
 	/**
 	 * <code>setColors</code> sets the color array of this geometry.
 	 *
@@ -446,6 +539,8 @@ public abstract class Geometry extends Spatial implements Serializable {
 		}
 		this.color = color;
 		updateColorBuffer();
+		if (bufferOnly)
+			this.color = null;
 	}
 
 	/**
@@ -462,7 +557,8 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 */
 
 	public void setColor(int index, ColorRGBA value) {
-		color[index] = value;
+		if (!bufferOnly)
+			color[index] = value;
 		colorBuf.put(index * 4, value.r).put(index * 4 + 1, value.g).put(
 				index * 4 + 2, value.b).put(index * 4 + 3, value.a);
 	}
@@ -476,7 +572,7 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 *            the color to set.
 	 */
 	public void setSolidColor(ColorRGBA color) {
-		ColorRGBA colors[] = new ColorRGBA[vertex.length];
+		ColorRGBA colors[] = new ColorRGBA[vertQuantity];
 		for (int x = 0; x < colors.length; x++)
 			colors[x] = (ColorRGBA) color.clone();
 		setColors(colors);
@@ -486,7 +582,7 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 * Sets every color of this geometry's color array to a random color.
 	 */
 	public void setRandomColors() {
-		ColorRGBA colors[] = new ColorRGBA[vertex.length];
+		ColorRGBA colors[] = new ColorRGBA[vertQuantity];
 		for (int x = 0; x < colors.length; x++)
 			colors[x] = ColorRGBA.randomColor();
 		setColors(colors);
@@ -513,14 +609,33 @@ public abstract class Geometry extends Spatial implements Serializable {
 	}
 
 	/**
-	 * <code>getVertices</code> returns the vertex array for this geometry.
+	 * <code>getVertices</code> returns the vertex array for this geometry. In
+	 * buffer-only mode a new array is built from the vertex buffer.
 	 *
 	 * @return the array of vertices for this geometry.
 	 */
 	public Vector3f[] getVertices() {
+		if (bufferOnly)
+			return BufferUtils.getVector3Array(vertBuf, vertQuantity);
 		return vertex;
 	}
 
+	/**
+	 * <code>getVertex</code> reads a single vertex of this geometry into the
+	 * given store. No bounds checking is done.
+	 *
+	 * @param index
+	 *            the index of the vertex to read.
+	 * @param store
+	 *            the vector to store the result in.
+	 * @return store
+	 */
+	public Vector3f getVertex(int index, Vector3f store) {
+		if (bufferOnly)
+			return BufferUtils.populateFromBuffer(store, vertBuf, index);
+		return store.set(vertex[index]);
+	}
+
 	/**
 	 * <code>setVertices</code> sets the vertices of this geometry. The
 	 * vertices may not be null and will throw an exception if so.
@@ -533,13 +648,15 @@ public abstract class Geometry extends Spatial implements Serializable {
 			throw new JmeException(
 					"Geometry must include vertex information. (102)");
 		}
-		if (this.vertex.length != vertex.length) {
+		if (vertQuantity != vertex.length) {
 			vertBuf = null;
 		}
 		this.vertex = vertex;
 		this.vertQuantity = vertex.length;
 
 		updateVertexBuffer();
+		if (bufferOnly)
+			this.vertex = null;
 	}
 
 	/**
@@ -555,7 +672,8 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 *            the vertex to set.
 	 */
 	public void setVertex(int index, Vector3f value) {
-		vertex[index] = value;
+		if (!bufferOnly)
+			vertex[index] = value;
 		vertBuf.put(index * 3, value.x);
 		vertBuf.put(index * 3 + 1, value.y);
 		vertBuf.put(index * 3 + 2, value.z);
@@ -576,9 +694,32 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 *            the vertex to set.
 	 */
 	public void setTextureCoord(int textureUnit, int index, Vector2f value) {
+		if (bufferOnly) {
+			BufferUtils.setInBuffer(value, texBuf[textureUnit], index);
+			return;
+		}
 		this.texture[textureUnit][index] = value;
 	}
 
+	/**
+	 * <code>getTextureCoord</code> reads a single texture coordinate of a
+	 * given texture unit into the store. No bounds checking is done.
+	 *
+	 * @param textureUnit
+	 *            the texture unit to read from.
+	 * @param index
+	 *            the index of the coord to read.
+	 * @param store
+	 *            the vector to store the result in.
+	 * @return store
+	 */
+	public Vector2f getTextureCoord(int textureUnit, int index, Vector2f store) {
+		if (bufferOnly)
+			return BufferUtils.populateFromBuffer(store, texBuf[textureUnit],
+					index);
+		return store.set(texture[textureUnit][index]);
+	}
+
 	/**
 	 * <code>getVerticeAsFloatBuffer</code> returns the float buffer that
 	 * contains this geometry's vertex information.
@@ -592,14 +733,33 @@ public abstract class Geometry extends Spatial implements Serializable {
 
 	/**
 	 * <code>getNormals</code> returns the array that contains this geometry's
-	 * normal information.
+	 * normal information. In buffer-only mode a new array is built from the
+	 * normal buffer.
 	 *
 	 * @return the normal array for this geometry.
 	 */
 	public Vector3f[] getNormals() {
+		if (bufferOnly)
+			return BufferUtils.getVector3Array(normBuf, vertQuantity);
 		return normal;
 	}
 
+	/**
+	 * <code>getNormal</code> reads a single normal of this geometry into the
+	 * given store. No bounds checking is done.
+	 *
+	 * @param index
+	 *            the index of the normal to read.
+	 * @param store
+	 *            the vector to store the result in.
+	 * @return store
+	 */
+	public Vector3f getNormal(int index, Vector3f store) {
+		if (bufferOnly)
+			return BufferUtils.populateFromBuffer(store, normBuf, index);
+		return store.set(normal[index]);
+	}
+
 	/**
 	 * <code>setNormals</code> sets this geometry's normals to a new array of
 	 * normal values.
@@ -615,6 +775,8 @@ public abstract class Geometry extends Spatial implements Serializable {
 		}
 		this.normal = normal;
 		updateNormalBuffer();
+		if (bufferOnly)
+			this.normal = null;
 	}
 
 	/**
@@ -630,7 +792,8 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 *            the normal to set.
 	 */
 	public void setNormal(int index, Vector3f value) {
-		normal[index] = value;
+		if (!bufferOnly)
+			normal[index] = value;
 		normBuf.put(index * 3, value.x);
 		normBuf.put(index * 3 + 1, value.y);
 		normBuf.put(index * 3 + 2, value.z);
@@ -654,7 +817,7 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 * @return the array that contains the geometry's texture information.
 	 */
 	public Vector2f[] getTextures() {
-		return texture[0];
+		return getTextures(0);
 	}
 
 	/**
@@ -672,6 +835,9 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 */
 	public Vector2f[] getTextures(int textureUnit) {
 		if (textureUnit >= 0 && textureUnit < texture.length) {
+			if (bufferOnly)
+				return BufferUtils.getVector2Array(texBuf[textureUnit],
+						vertQuantity);
 			return texture[textureUnit];
 		} else {
 			return null;
@@ -686,13 +852,15 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 *            the new texture information for this geometry.
 	 */
 	public void setTextures(Vector2f[] texture) {
-		if (this.texture != null) {
+		if (this.texture != null && this.texture[0] != null) {
 			if (texture == null || this.texture[0].length != texture.length) {
 				texBuf[0] = null;
 			}
 		}
 		this.texture[0] = texture;
 		updateTextureBuffer();
+		if (bufferOnly)
+			this.texture[0] = null;
 	}
 
 	/**
@@ -710,13 +878,15 @@ public abstract class Geometry extends Spatial implements Serializable {
 		if (textureUnit < 0 || textureUnit >= this.texture.length) {
 			return;
 		}
-		if (this.texture != null && textures != null) {
+		if (this.texture[textureUnit] != null && textures != null) {
 			if (this.texture[textureUnit].length != textures.length) {
 				texBuf[textureUnit] = null;
 			}
 		}
 		this.texture[textureUnit] = textures;
 		updateTextureBuffer(textureUnit);
+		if (bufferOnly)
+			this.texture[textureUnit] = null;
 	}
 
 	/**
@@ -732,7 +902,8 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 *            the texture coordinate to set.
 	 */
 	public void setTexture(int index, Vector2f value) {
-		texture[0][index] = value;
+		if (!bufferOnly)
+			texture[0][index] = value;
 		texBuf[0].put(index * 2, value.x);
 		texBuf[0].put(index * 2 + 1, value.y);
 	}
@@ -752,7 +923,8 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 *            the texture unit to alter.
 	 */
 	public void setTexture(int index, Vector2f value, int textureUnit) {
-		texture[textureUnit][index] = value;
+		if (!bufferOnly)
+			texture[textureUnit][index] = value;
 		texBuf[textureUnit].put(index * 2, value.x);
 		texBuf[textureUnit].put(index * 2 + 1, value.y);
 	}
@@ -775,6 +947,10 @@ public abstract class Geometry extends Spatial implements Serializable {
 		if (toIndex < 0 || toIndex >= this.texture.length) {
 			return;
 		}
+		if (bufferOnly) {
+			texBuf[toIndex] = BufferUtils.clone(texBuf[fromIndex]);
+			return;
+		}
 		if (this.texture != null) {
 			if (this.texture[fromIndex].length != texture.length) {
 				texBuf[toIndex] = null;
@@ -839,24 +1015,59 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 */
 	public void setAllTextures(Vector2f[][] texture) {
 		this.texture = texture;
+		if (bufferOnly) {
+			for (int i = 0; i < texture.length && i < texBuf.length; i++)
+				updateTextureBuffer(i);
+			dropArrays();
+		}
 	}
 
 	/**
-	 * Returns the geometry's texture coordinate information.
+	 * Returns the geometry's texture coordinate information. In buffer-only
+	 * mode new arrays are built from the texture buffers.
 	 *
 	 * @return The geometry's texture coordinate information.
 	 */
 	public Vector2f[][] getAllTextures() {
+		if (bufferOnly) {
+			Vector2f[][] copy = new Vector2f[texture.length][];
+			for (int i = 0; i < copy.length; i++) {
+				copy[i] = getTextures(i);
+				if (copy[i] == null)
+					copy[i] = new Vector2f[0];
+			}
+			return copy;
+		}
 		return texture;
 	}
 
+	/** Texture units of the renderer, 0 until queried. */
+	private static volatile int textureUnits;
+
+	/**
+	 * Returns the number of texture units of the current renderer, or 1 when
+	 * no DisplaySystem has been created, e.g. in a simulation without display.
+	 * The renderer is only asked once, on the GL thread, so geometry can be
+	 * created by loader threads afterwards.
+	 *
+	 * @return the number of texture coordinate sets a geometry can hold.
+	 */
+	private static int getTextureUnits() {
+		if (textureUnits > 0)
+			return textureUnits;
+		DisplaySystem display = DisplaySystem.getDisplaySystem();
+		if (display == null)
+			return 1;
+		textureUnits = display.getRenderer().createTextureState().getNumberOfUnits();
+		return textureUnits;
+	}
+
 	/**
 	 * Clears all vertex, normal, texture, and color buffers by setting them to
 	 * null.
 	 */
 	public void clearBuffers() {
-		int textureUnits = DisplaySystem.getDisplaySystem().getRenderer()
-				.createTextureState().getNumberOfUnits();
+		int textureUnits = getTextureUnits();
 		vertBuf = null;
 		normBuf = null;
 		this.texBuf = new FloatBuffer[textureUnits];
@@ -871,7 +1082,11 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 */
 	public void updateModelBound() {
 		if (bound != null) {
-			bound.computeFromPoints(vertex);
+			if (bufferOnly)
+				bound.computeFromPoints(vertBuf);
+			else
+				bound.computeFromPoints(vertex);
+			boundCurrent = false;
 			updateWorldBound();
 		}
 	}
@@ -897,6 +1112,7 @@ public abstract class Geometry extends Spatial implements Serializable {
 	public void setModelBound(BoundingVolume modelBound) {
 		this.worldBound = null;
 		this.bound = modelBound;
+		boundCurrent = false;
 	}
 
 	/**
@@ -931,6 +1147,19 @@ public abstract class Geometry extends Spatial implements Serializable {
 		}
 	}
 
+	/**
+	 * <code>getState</code> returns the render state of the given type this
+	 * geometry is drawn with, as determined by the last
+	 * <code>updateRenderState</code>.
+	 *
+	 * @param type
+	 *            the type of the state, for example RenderState.RS_TEXTURE.
+	 * @return the state, or null if none applies.
+	 */
+	public RenderState getState(int type) {
+		return states[type];
+	}
+
 	/**
 	 * <code>draw</code> prepares the geometry for rendering to the display.
 	 * The renderstate is set and the subclass is responsible for rendering the
@@ -1147,7 +1376,9 @@ public abstract class Geometry extends Spatial implements Serializable {
 			return;
 		}
 		if (texture[textureUnit] == null) {
-			texBuf[textureUnit] = null;
+			// in buffer-only mode the buffer is the only copy
+			if (!bufferOnly)
+				texBuf[textureUnit] = null;
 			return;
 		}
 		int bufferLength = quantity * 2;
@@ -1181,11 +1412,12 @@ public abstract class Geometry extends Spatial implements Serializable {
 	 *         if the vertex list is not set.
 	 */
 	public Vector3f randomVertice() {
-		if (vertex == null)
+		if (vertex == null && !(bufferOnly && vertBuf != null))
 			return null;
 		int i = (int) (FastMath.nextRandomFloat() * vertQuantity);
 
-		return worldRotation.mult(vertex[i]).addLocal(worldTranslation);
+		Vector3f point = getVertex(i, new Vector3f());
+		return worldRotation.multLocal(point).addLocal(worldTranslation);
 	}
 
 	public void findPick(Ray ray, PickResults results) {
@@ -1251,6 +1483,88 @@ public abstract class Geometry extends Spatial implements Serializable {
 		colorBuf = toSet;
 	}
 
+	/**
+	 * <code>wrapVertices</code> uses the given buffer of x, y, z triples as
+	 * the vertex buffer of this geometry without copying it, for example a
+	 * buffer mapped from a file. The geometry switches to buffer-only mode,
+	 * see {@link #setBufferOnly(boolean)}.
+	 *
+	 * @param vertices
+	 *            the vertices, from position 0 to the limit.
+	 */
+	public void wrapVertices(FloatBuffer vertices) {
+		setBufferOnly(true);
+		vertBuf = vertices;
+		vertQuantity = vertices.limit() / 3;
+	}
+
+	/**
+	 * <code>wrapNormals</code> uses the given buffer as the normal buffer of
+	 * this geometry without copying it and switches to buffer-only mode.
+	 *
+	 * @param normals
+	 *            one normal per vertex.
+	 */
+	public void wrapNormals(FloatBuffer normals) {
+		setBufferOnly(true);
+		normBuf = normals;
+	}
+
+	/**
+	 * <code>wrapColors</code> uses the given buffer of r, g, b, a values as
+	 * the color buffer of this geometry without copying it and switches to
+	 * buffer-only mode.
+	 *
+	 * @param colors
+	 *            one color per vertex.
+	 */
+	public void wrapColors(FloatBuffer colors) {
+		setBufferOnly(true);
+		colorBuf = colors;
+	}
+
+	/**
+	 * <code>wrapTextures</code> uses the given buffer as the texture
+	 * coordinates of a texture unit without copying it and switches to
+	 * buffer-only mode. If the texture unit is not valid, the coordinates are
+	 * ignored.
+	 *
+	 * @param textures
+	 *            one u, v pair per vertex.
+	 * @param textureUnit
+	 *            the texture unit to set them to.
+	 */
+	public void wrapTextures(FloatBuffer textures, int textureUnit) {
+		if (textureUnit < 0 || textureUnit >= texBuf.length) {
+			return;
+		}
+		setBufferOnly(true);
+		texBuf[textureUnit] = textures;
+	}
+
+	/**
+	 * Used with Serialization. Not to be called manually.
+	 *
+	 * @param out
+	 * @throws IOException
+	 * @see java.io.Serializable
+	 */
+	private void writeObject(java.io.ObjectOutputStream out)
+			throws IOException {
+		if (!bufferOnly) {
+			out.defaultWriteObject();
+			return;
+		}
+		// the buffers are transient, so write the arrays for the duration of
+		// the call
+		restoreArrays();
+		try {
+			out.defaultWriteObject();
+		} finally {
+			dropArrays();
+		}
+	}
+
 	/**
 	 * Used with Serialization. Not to be called manually.
 	 *
@@ -1262,8 +1576,7 @@ public abstract class Geometry extends Spatial implements Serializable {
 	private void readObject(java.io.ObjectInputStream in) throws IOException,
 			ClassNotFoundException {
 		in.defaultReadObject();
-		int textureUnits = DisplaySystem.getDisplaySystem().getRenderer()
-				.createTextureState().getNumberOfUnits();
+		int textureUnits = getTextureUnits();
 		texBuf = new FloatBuffer[textureUnits];
 		if (color != null)
 			updateColorBuffer();
@@ -1276,6 +1589,8 @@ public abstract class Geometry extends Spatial implements Serializable {
 				if (texture[i] != null && texture[i].length != 0)
 					updateTextureBuffer(i);
 		}
+		if (bufferOnly)
+			dropArrays();
 	}
 
 	public Spatial putClone(Spatial store, CloneCreator properties) {
@@ -1292,7 +1607,9 @@ public abstract class Geometry extends Spatial implements Serializable {
 
 		toStore.cloneID = properties.getCloneID(this);
 
-		if (properties.isSet("vertices")) {
+		if (bufferOnly) {
+			putBufferClone(toStore, properties);
+		} else if (properties.isSet("vertices")) {
 			toStore.vertBuf = this.vertBuf;
 			toStore.vertex = this.vertex;
 			toStore.vertQuantity = this.vertQuantity;
@@ -1304,7 +1621,9 @@ public abstract class Geometry extends Spatial implements Serializable {
 			toStore.setVertices(temp);
 		}
 
-		if (properties.isSet("colors")) { // if I should shallow copy colors
+		if (bufferOnly) {
+			// already copied by putBufferClone
+		} else if (properties.isSet("colors")) { // if I should shallow copy colors
 			toStore.colorBuf = this.colorBuf;
 			toStore.color = this.color;
 		} else if (color != null) { // If I should deep copy colors
@@ -1316,7 +1635,9 @@ public abstract class Geometry extends Spatial implements Serializable {
 			toStore.setColors(temp);
 		}
 
-		if (properties.isSet("normals")) {
+		if (bufferOnly) {
+			// already copied by putBufferClone
+		} else if (properties.isSet("normals")) {
 			toStore.normBuf = this.normBuf;
 			toStore.normal = this.normal;
 		} else if (normal != null) {
@@ -1327,7 +1648,9 @@ public abstract class Geometry extends Spatial implements Serializable {
 			toStore.setNormals(temp);
 		}
 
-		if (properties.isSet("texcoords")) {
+		if (bufferOnly) {
+			// already copied by putBufferClone
+		} else if (properties.isSet("texcoords")) {
 			toStore.texBuf = this.texBuf;
 			toStore.texture = this.texture;
 		} else {
@@ -1359,6 +1682,39 @@ public abstract class Geometry extends Spatial implements Serializable {
 		return toStore;
 	}
 
+	/**
+	 * Copies the buffers of a buffer-only geometry into the clone, sharing
+	 * those the <code>CloneCreator</code> marks as shallow.
+	 *
+	 * @param toStore
+	 *            the geometry to copy to.
+	 * @param properties
+	 *            the CloneCreator object that defines what is to be cloned.
+	 */
+	private void putBufferClone(Geometry toStore, CloneCreator properties) {
+		toStore.bufferOnly = true;
+		toStore.vertex = null;
+		toStore.normal = null;
+		toStore.color = null;
+		toStore.vertQuantity = this.vertQuantity;
+		toStore.vertBuf = properties.isSet("vertices") ? this.vertBuf
+				: BufferUtils.clone(this.vertBuf);
+		toStore.colorBuf = properties.isSet("colors") ? this.colorBuf
+				: BufferUtils.clone(this.colorBuf);
+		toStore.normBuf = properties.isSet("normals") ? this.normBuf
+				: BufferUtils.clone(this.normBuf);
+		if (properties.isSet("texcoords")) {
+			toStore.texBuf = this.texBuf;
+			toStore.texture = this.texture;
+		} else {
+			toStore.texture = new Vector2f[this.texture.length][];
+			toStore.texBuf = new FloatBuffer[this.texBuf.length];
+			for (int i = 0; i < toStore.texBuf.length; i++) {
+				toStore.texBuf[i] = BufferUtils.clone(this.texBuf[i]);
+			}
+		}
+	}
+
 	/**
 	 * Returns the ID number that identifies this Geometry's clone ID.
 	 *
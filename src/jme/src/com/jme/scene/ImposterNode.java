@@ -376,6 +376,17 @@ public class ImposterNode extends Node {
 		worldBound = (BoundingVolume) standIn.getWorldBound().clone(worldBound);
 	}
 
+	/**
+	 * <code>isWorldBoundCurrent</code> returns false, the bound is copied
+	 * from the stand-in, which is not a child of this node.
+	 * 
+	 * @see com.jme.scene.Spatial#isWorldBoundCurrent()
+	 */
+	@Override
+    protected boolean isWorldBoundCurrent() {
+		return false;
+	}
+
 	/**
 	 * 
 	 * <code>updateWorldData</code> updates the world transforms from the
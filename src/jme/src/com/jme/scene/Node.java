@@ -41,6 +41,8 @@ package com.jme.scene;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 
 import com.jme.bounding.BoundingVolume;
@@ -68,6 +70,12 @@ public class Node extends Spatial implements Serializable {
     /** This node's children. */
     protected ArrayList children;
 
+    /**
+     * Largest number of children updated by one task when the children are
+     * split across threads, or 0 to update them all on the calling thread.
+     */
+    protected int parallelThreshold;
+
     /**
      * Empty Constructor to be used internally only.
      */
@@ -116,6 +124,7 @@ public class Node extends Spatial implements Serializable {
         if (!children.contains(child)) {
             child.setParent(this);
             children.add(child);
+            boundCurrent = false;
             child.setForceCull(forceCull);
             child.setForceView(forceView);
         }
@@ -142,6 +151,7 @@ public class Node extends Spatial implements Serializable {
         int index = children.indexOf(child);
         if (index != -1) {
             children.remove(index);
+            boundCurrent = false;
             LoggingSystem.getLogger().log(Level.INFO, "Child removed.");
         }
         return index;
@@ -164,6 +174,7 @@ public class Node extends Spatial implements Serializable {
             Spatial child = (Spatial) children.get(x);
             if (childName.equals(child.getName())) {
                 children.remove(x);
+                boundCurrent = false;
                 LoggingSystem.getLogger().log(Level.INFO, "Child removed.");
                 return x;
             }
@@ -182,6 +193,7 @@ public class Node extends Spatial implements Serializable {
      */
     public Spatial detachChildAt(int index) {
         LoggingSystem.getLogger().log(Level.INFO, "Child removed.");
+        boundCurrent = false;
         return (Spatial) children.remove(index);
     }
 
@@ -193,6 +205,7 @@ public class Node extends Spatial implements Serializable {
     public void detachAllChildren() {
         LoggingSystem.getLogger().log(Level.INFO, "All children removed.");
         children.clear();
+        boundCurrent = false;
     }
 
     /**
@@ -209,6 +222,7 @@ public class Node extends Spatial implements Serializable {
     public Spatial setChild(int i, Spatial child) {
         Spatial old = (Spatial) children.get(i);
         children.add(i, child);
+        boundCurrent = false;
         LoggingSystem.getLogger().log(Level.INFO,
                 "Child attached to this" + " node");
         return old;
@@ -289,6 +303,12 @@ public class Node extends Spatial implements Serializable {
     public void updateWorldData(float time) {
         super.updateWorldData(time);
 
+        if (parallelThreshold > 0 && children.size() > parallelThreshold) {
+            ForkJoinPool.commonPool().invoke(
+                    new UpdateTask(0, children.size(), time));
+            return;
+        }
+
         for (int i = 0; i < children.size(); i++) {
             
             Spatial child = (Spatial) children.get(i);
@@ -298,6 +318,70 @@ public class Node extends Spatial implements Serializable {
         }
     }
 
+    /**
+     * <code>getParallelThreshold</code> returns the largest number of
+     * children one task updates when this node splits its children across
+     * threads.
+     * 
+     * @return the parallel threshold, 0 if the children are always updated
+     *         on the calling thread.
+     * @see #setParallelThreshold(int)
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * <code>setParallelThreshold</code> lets this node update its children
+     * on the common fork/join pool once it has more children than the given
+     * threshold. The children are split into ranges of at most
+     * <code>threshold</code> children, each updated on one thread. The
+     * children's subtrees, and their controllers, must not share state. The
+     * world bound is still merged on the calling thread in child order, so it
+     * is the same as with a sequential update.
+     * 
+     * @param threshold
+     *            the largest number of children updated by one task, or 0 to
+     *            update all children on the calling thread.
+     */
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold < 0 ? 0 : threshold;
+    }
+
+    /**
+     * <code>UpdateTask</code> updates a range of this node's children,
+     * splitting it in halves until a range is no longer than the parallel
+     * threshold.
+     */
+    private class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        private final float time;
+
+        UpdateTask(int from, int to, float time) {
+            this.from = from;
+            this.to = to;
+            this.time = time;
+        }
+
+        protected void compute() {
+            if (to - from <= parallelThreshold) {
+                for (int i = from; i < to; i++) {
+                    Spatial child = (Spatial) children.get(i);
+                    if (child != null) {
+                        child.updateGeometricState(time, false);
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new UpdateTask(from, middle, time), new UpdateTask(
+                        middle, to, time));
+            }
+        }
+    }
+
     /**
      * <code>draw</code> calls the onDraw method for each child maintained by
      * this node.
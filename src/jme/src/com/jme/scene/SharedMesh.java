@@ -99,6 +99,16 @@ public class SharedMesh extends TriMesh {
 		}
 	}
 
+	/**
+	 * <code>isWorldBoundCurrent</code> returns false, the target's model
+	 * bound may change without this mesh noticing.
+	 * 
+	 * @see com.jme.scene.Spatial#isWorldBoundCurrent()
+	 */
+	protected boolean isWorldBoundCurrent() {
+		return false;
+	}
+
 	/**
 	 * <code>updateBound</code> recalculates the bounding object assigned to
 	 * the geometry. This resets it parameters to adjust for any changes to the
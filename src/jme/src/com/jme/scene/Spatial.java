@@ -35,6 +35,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.jme.bounding.BoundingVolume;
 import com.jme.intersection.CollisionResults;
@@ -91,6 +92,27 @@ public abstract class Spatial implements Serializable {
     /** Spatial's parent, or null if it has none. */
     protected transient Node parent;
 
+    /**
+     * Local transform and derived world transform seen at the last world
+     * update, or null if the world transform has to be derived again.
+     */
+    private transient float[] transformCache;
+
+    /** Incremented whenever the world vectors are derived. */
+    transient int worldVersion;
+
+    /** The parent's world version seen at the last world update. */
+    private transient int parentWorldVersion;
+
+    /** False if the world bound has to be derived again at the next update. */
+    protected transient boolean boundCurrent;
+
+    /** Spatials whose world transform was derived since the last reset. */
+    private static final AtomicInteger worldUpdateCount = new AtomicInteger();
+
+    /** Spatials whose world bound was derived since the last reset. */
+    private static final AtomicInteger boundUpdateCount = new AtomicInteger();
+
     /** List of default states all spatials take if none is set. */
     public final static RenderState[] defaultStateList = new RenderState[RenderState.RS_MAX_STATE];
 
@@ -251,6 +273,9 @@ public abstract class Spatial implements Serializable {
      */
     public void setWorldBound(BoundingVolume worldBound) {
         this.worldBound = worldBound;
+        if (parent != null) {
+            parent.boundCurrent = false;
+        }
     }
 
     /**
@@ -415,8 +440,9 @@ public abstract class Spatial implements Serializable {
     /**
      * 
      * <code>updateGeometricState</code> updates all the geometry information
-     * for the node.
-     * 
+     * for the node. The world bound is only derived again if it is no longer
+     * current, in which case the parent is told to merge its bound again.
+     *
      * @param time
      *            the frame time.
      * @param initiator
@@ -424,7 +450,14 @@ public abstract class Spatial implements Serializable {
      */
     public void updateGeometricState(float time, boolean initiator) {
         updateWorldData(time);
-        updateWorldBound();
+        if (!isWorldBoundCurrent()) {
+            boundCurrent = true;
+            updateWorldBound();
+            boundUpdateCount.incrementAndGet();
+            if (parent != null) {
+                parent.boundCurrent = false;
+            }
+        }
         if (initiator) {
             propagateBoundToRoot();            
         }
@@ -433,15 +466,19 @@ public abstract class Spatial implements Serializable {
     /**
      * 
      * <code>updateWorldData</code> updates the world transforms from the
-     * parent down to the leaf.
-     * 
+     * parent down to the leaf. The world vectors are only derived again if
+     * the local transform changed or the parent derived its world vectors
+     * since the last update. Controllers may change anything, so a spatial with
+     * controllers always derives its world bound again.
+     *
      * @param time
      *            the frame time.
      */
     protected void updateWorldData(float time) {
         // update spatial state via controllers
         Object controller;
-        for (int i = 0, gSize = geometricalControllers.size(); i < gSize; i++) {
+        int gSize = geometricalControllers.size();
+        for (int i = 0; i < gSize; i++) {
             try {
                 if ((controller = geometricalControllers.get(i)) != null) {
                     ((Controller) controller).update(time);
@@ -449,11 +486,123 @@ public abstract class Spatial implements Serializable {
             } catch (IndexOutOfBoundsException e) {
             }
         }
+        if (gSize > 0) {
+            boundCurrent = false;
+        }
+
+        if (isTransformChanged()) {
+            updateWorldVectors();
+            storeTransform(transformCache, 10, worldScale, worldRotation,
+                    worldTranslation);
+            boundCurrent = false;
+            worldUpdateCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * <code>isTransformChanged</code> compares the local transform and this
+     * spatial's world transform with the values seen at the last world update
+     * and checks whether the parent derived its world vectors since. The
+     * transforms are compared by value because the local and world getters
+     * hand out the live vectors, which callers modify in place.
+     *
+     * @return true if the world vectors have to be derived again.
+     */
+    private boolean isTransformChanged() {
+        float[] cache = transformCache;
+        if (cache == null) {
+            transformCache = new float[20];
+            storeTransform(transformCache, 0, localScale, localRotation,
+                    localTranslation);
+            parentWorldVersion = parent != null ? parent.worldVersion : 0;
+            return true;
+        }
+        boolean changed = false;
+        if (!isTransform(cache, 0, localScale, localRotation,
+                localTranslation)) {
+            storeTransform(cache, 0, localScale, localRotation,
+                    localTranslation);
+            changed = true;
+        }
+        if (parent != null && parent.worldVersion != parentWorldVersion) {
+            parentWorldVersion = parent.worldVersion;
+            changed = true;
+        }
+        return changed
+                || !isTransform(cache, 10, worldScale, worldRotation,
+                        worldTranslation);
+    }
+
+    private static boolean isTransform(float[] cache, int offset,
+            Vector3f scale, Quaternion rotation, Vector3f translation) {
+        return cache[offset] == scale.x && cache[offset + 1] == scale.y
+                && cache[offset + 2] == scale.z
+                && cache[offset + 3] == rotation.x
+                && cache[offset + 4] == rotation.y
+                && cache[offset + 5] == rotation.z
+                && cache[offset + 6] == rotation.w
+                && cache[offset + 7] == translation.x
+                && cache[offset + 8] == translation.y
+                && cache[offset + 9] == translation.z;
+    }
+
+    private static void storeTransform(float[] cache, int offset,
+            Vector3f scale, Quaternion rotation, Vector3f translation) {
+        cache[offset] = scale.x;
+        cache[offset + 1] = scale.y;
+        cache[offset + 2] = scale.z;
+        cache[offset + 3] = rotation.x;
+        cache[offset + 4] = rotation.y;
+        cache[offset + 5] = rotation.z;
+        cache[offset + 6] = rotation.w;
+        cache[offset + 7] = translation.x;
+        cache[offset + 8] = translation.y;
+        cache[offset + 9] = translation.z;
+    }
+
+    /**
+     * <code>isWorldBoundCurrent</code> returns true if the world bound does
+     * not have to be derived again during the next update. Spatials whose
+     * bound depends on something other than their own transform, model
+     * bound and children return false.
+     *
+     * @return true if the world bound is current.
+     */
+    protected boolean isWorldBoundCurrent() {
+        return boundCurrent;
+    }
 
-        updateWorldVectors();
+    /**
+     * <code>getWorldUpdateCount</code> returns the number of spatials that
+     * derived their world transform since the counters were last reset.
+     *
+     * @return the number of world transform updates.
+     */
+    public static int getWorldUpdateCount() {
+        return worldUpdateCount.get();
+    }
+
+    /**
+     * <code>getBoundUpdateCount</code> returns the number of spatials that
+     * derived their world bound since the counters were last reset.
+     *
+     * @return the number of world bound updates.
+     */
+    public static int getBoundUpdateCount() {
+        return boundUpdateCount.get();
+    }
+
+    /**
+     * <code>resetUpdateCounts</code> sets the world transform and world
+     * bound update counters back to zero, typically once per frame.
+     */
+    public static void resetUpdateCounts() {
+        worldUpdateCount.set(0);
+        boundUpdateCount.set(0);
     }
 
     public void updateWorldVectors() {
+        worldVersion++;
         updateWorldScale();
         updateWorldRotation();
         updateWorldTranslation();
@@ -599,6 +748,8 @@ public abstract class Spatial implements Serializable {
      */
     public void setParent(Node parent) {
         this.parent = parent;
+        transformCache = null;
+        boundCurrent = false;
     }
 
     /**
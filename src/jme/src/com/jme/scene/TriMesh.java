@@ -48,7 +48,9 @@ import com.jme.renderer.CloneCreator;
 import com.jme.renderer.ColorRGBA;
 import com.jme.renderer.Renderer;
 import com.jme.system.JmeException;
+import com.jme.util.IntList;
 import com.jme.util.LoggingSystem;
+import com.jme.util.geom.BufferUtils;
 import com.jme.bounding.OBBTree;
 
 /**
@@ -210,7 +212,9 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
     /**
      * Stores in the <code>vertices</code> array the vertex values of triangle
      * <code>i</code>. If <code>i</code> is an invalid triangle index,
-     * nothing happens.
+     * nothing happens. In buffer-only mode the values are copied from the
+     * vertex buffer into the vectors already in <code>vertices</code>, which
+     * are created if null.
      * 
      * @param i
      * @param vertices
@@ -219,6 +223,15 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
         // System.out.println(i + ", " + triangleQuantity);
         if (i < triangleQuantity && i >= 0) {
             int iBase = 3 * i;
+            if (bufferOnly) {
+                for (int x = 0; x < 3; x++) {
+                    if (vertices[x] == null)
+                        vertices[x] = new Vector3f();
+                    BufferUtils.populateFromBuffer(vertices[x], vertBuf,
+                            indices[iBase++]);
+                }
+                return;
+            }
             vertices[0] = vertex[indices[iBase++]];
             vertices[1] = vertex[indices[iBase++]];
             vertices[2] = vertex[indices[iBase]];
@@ -284,7 +297,8 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
         if (indices == null) {
             return;
         }
-        if (indexBuffer == null || indexBuffer.capacity() < indices.length) {
+        if (indexBuffer == null || indexBuffer.capacity() < indices.length
+                || indexBuffer.isReadOnly()) {
             indexBuffer = ByteBuffer.allocateDirect(
                     4 * (triangleQuantity >= 0 ? triangleQuantity * 3
                             : indices.length)).order(ByteOrder.nativeOrder())
@@ -320,6 +334,24 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
         indexBuffer = toSet;
     }
 
+    /**
+     * <code>wrapIndices</code> uses the given buffer as the index buffer of
+     * this <code>TriMesh</code> without copying it into a new buffer, for
+     * example a buffer mapped from a file. The index array is still filled
+     * with one bulk copy, as picking and collision read it.
+     *
+     * @param indices
+     *            the indices, from position 0 to the limit.
+     */
+    public void wrapIndices(IntBuffer indices) {
+        this.indices = new int[indices.limit()];
+        indices.rewind();
+        indices.get(this.indices);
+        indices.rewind();
+        triangleQuantity = this.indices.length / 3;
+        indexBuffer = indices;
+    }
+
     /**
      * Used with Serialization. Do not call this directly.
      * 
@@ -409,16 +441,8 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
     public boolean hasTriangleCollision(TriMesh toCheck) {
         if (collisionTree == null || toCheck.collisionTree == null)
             return false;
-        else {
-            if (worldMatrot == null)
-                worldMatrot = worldRotation.toRotationMatrix();
-            else
-                worldMatrot = worldRotation.toRotationMatrix(worldMatrot);
-            collisionTree.bounds.transform(worldMatrot, worldTranslation,
-                    worldScale, collisionTree.worldBounds);
-            toCheck.worldMatrot = toCheck.worldRotation.toRotationMatrix();
+        else
             return collisionTree.intersect(toCheck.collisionTree);
-        }
     }
 
     /**
@@ -437,17 +461,30 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
             ArrayList otherIndex) {
         if (collisionTree == null || toCheck.collisionTree == null)
             return;
-        else {
-            if (worldMatrot == null)
-                worldMatrot = worldRotation.toRotationMatrix();
-            else
-                worldMatrot = worldRotation.toRotationMatrix(worldMatrot);
-            collisionTree.bounds.transform(worldMatrot, worldTranslation,
-                    worldScale, collisionTree.worldBounds);
-            toCheck.worldMatrot = toCheck.worldRotation.toRotationMatrix();
+        else
+            collisionTree.intersect(toCheck.collisionTree, thisIndex,
+                    otherIndex);
+    }
+
+    /**
+     * This function finds all intersections between this trimesh and the
+     * checking one, as <code>findTriangleCollision</code> does, without
+     * boxing the triangle indexes.
+     * 
+     * @param toCheck
+     *            The TriMesh to check.
+     * @param thisIndex
+     *            The list of triangle indexes intersecting in this mesh.
+     * @param otherIndex
+     *            The list of triangle indexes intersecting in the given mesh.
+     */
+    public void findTriangleCollision(TriMesh toCheck, IntList thisIndex,
+            IntList otherIndex) {
+        if (collisionTree == null || toCheck.collisionTree == null)
+            return;
+        else
             collisionTree.intersect(toCheck.collisionTree, thisIndex,
                     otherIndex);
-        }
     }
 
     /**
@@ -466,18 +503,33 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
             return;
         }
         if (worldBound.intersects(toTest)) {
-            if (worldMatrot == null) {
-                worldMatrot = worldRotation.toRotationMatrix();
-            } else {
-                worldRotation.toRotationMatrix(worldMatrot);
+            if (collisionTree == null) {
+                updateCollisionTree();
+            }
+            collisionTree.intersect(toTest, results);
+        }
+    }
 
-                if (collisionTree == null) {
-                    updateCollisionTree();
-                }
-                collisionTree.bounds.transform(worldMatrot, worldTranslation,
-                        worldScale, collisionTree.worldBounds);
-                collisionTree.intersect(toTest, results);
+    /**
+     * 
+     * <code>findTrianglePick</code> determines the triangles of this trimesh
+     * that are being touched by the ray, as the <code>ArrayList</code>
+     * version does, without boxing the indices.
+     * 
+     * @param toTest
+     *            the ray to test.
+     * @param results
+     *            the indices to the triangles.
+     */
+    public void findTrianglePick(Ray toTest, IntList results) {
+        if (worldBound == null) {
+            return;
+        }
+        if (worldBound.intersects(toTest)) {
+            if (collisionTree == null) {
+                updateCollisionTree();
             }
+            collisionTree.intersect(toTest, results);
         }
     }
 
@@ -489,6 +541,10 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
      * @return This mesh's world rotation.
      */
     public Matrix3f findWorldRotMat() {
+        if (worldMatrot == null)
+            worldMatrot = worldRotation.toRotationMatrix();
+        else
+            worldRotation.toRotationMatrix(worldMatrot);
         return worldMatrot;
     }
 
@@ -540,9 +596,10 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
      * @return view of current mesh as group of triangle vertices
      */
     public Vector3f[] getMeshAsTriangles() {
+        Vector3f[] source = getVertices();
         Vector3f[] triangles = new Vector3f[indices.length];
         for (int i = 0; i < triangles.length; i++) {
-            triangles[i] = vertex[indices[i]];
+            triangles[i] = source[indices[i]];
         }
         return triangles;
     }
@@ -550,6 +607,7 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
     private boolean useStaticVBOIndex = false;
     private boolean useDynamicVBOIndex = false;
     private int vboIndexID = -1;
+    private boolean vboIndexStale = false;
 
     
     /**
@@ -601,4 +659,26 @@ public class TriMesh extends com.jme.scene.Geometry implements Serializable {
         vboIndexID = id;
     }
 
+    /**
+     * Returns true if the index buffer changed since it was copied to the
+     * static index VBO, which is then copied again before the next draw.
+     *
+     * @return If the static index VBO is out of date.
+     */
+    public boolean isVBOIndexStale() {
+        return vboIndexStale;
+    }
+
+    /**
+     * Marks the static index VBO as out of date, for meshes that change their
+     * indices now and then, such as <code>ClodMesh</code>.
+     *
+     * @param stale
+     *            true after the index buffer changed, false once it was
+     *            copied.
+     */
+    public void setVBOIndexStale(boolean stale) {
+        vboIndexStale = stale;
+    }
+
 }
\ No newline at end of file
@@ -30,12 +30,13 @@
  *
  */
 
+
 package com.jme.scene.lod;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
@@ -47,12 +48,25 @@ import com.jme.renderer.ColorRGBA;
  * enhancements made from there.<br><br>
  * This class is used by ClodMesh to create automatically generated records.
  * The reason for lack of documentation is that it should have little use to someone
- * outside the API, unless they already know how to use it.
+ * outside the API, unless they already know how to use it.<br><br>
+ * The mesh is kept in int arrays: every triangle has three half-edges that point
+ * at the record of their undirected edge, and every vertex a list of the
+ * triangles sharing it.  Edges are found by their end points in an open
+ * addressing table and wait for their collapse in an indexed d-ary heap.  The
+ * initial metrics are computed in parallel.  Edges with equal metrics are
+ * taken in the order of their end points, so the records only depend on the
+ * mesh.
  * @author Joshua Slack
  * @version $Id: ClodCreator.java,v 1.16 2004/09/01 05:20:17 mojomonkey Exp $
  */
 
-public class ClodCreator extends VETMesh {
+public class ClodCreator {
+  /** Children per node of the collapse heap. */
+  private static final int HEAP_ARITY = 4;
+
+  /** Edges per task when the initial metrics are computed in parallel. */
+  private static final int PARALLEL_EDGES = 4096;
+
   private Vector3f[] vertices;
   private Vector3f[] normals;
   private ColorRGBA[] colors;
@@ -64,41 +78,41 @@ public class ClodCreator extends VETMesh {
   private int[] permuteVertices;
   private int[] newIndices;
 
-  int heapSize;
-
-  HeapRecord[] heapArray;
-  boolean collapsing;
+  // triangles: current vertices, the edges of the half-edges vert[i]->vert[i+1]
+  // and the order of insertion, -1 once removed
+  private int[] triVerts;
+  private int[] triEdges;
+  private int[] triStamp;
+  private int nextStamp;
+
+  // vertices: the triangles sharing them
+  private int[][] vertTris;
+  private int[] vertTriCount;
+
+  // edges: end points with lo < hi, -1 if the record is free, number of
+  // triangles sharing the edge, position in the heap and metric
+  private int[] edgeLo, edgeHi;
+  private int[] edgeCount;
+  private int[] edgePos;
+  private float[] edgeMetric;
+  private int[] edgeMark;
+  private int edgeQuantity, mark;
+  private int[] freeEdges;
+  private int freeCount;
+
+  // edge record + 1 by end points, 0 for an empty slot
+  private int[] edgeTable;
+
+  private int[] heap;
+  private int heapSize;
+
+  // scratch lists of a collapse
+  private int[] collapseTris = new int[8], modifiedTris = new int[8];
+  private int[] deletedVertices = new int[8];
 
-  // for reordering vertices and triangles
-  TreeSet deletedVertices; // <int>
   ArrayList deletedEdges; // <CollapseRecord>
   CollapseRecord[] records;
 
-  private static final Vector3f tempVa=new Vector3f();
-  private static final Vector3f tempVb=new Vector3f();
-  private static final Vector3f tempVc=new Vector3f();
-
-  protected static class HeapRecord {
-    public HeapRecord() {
-      m_kEdge = new Edge( -1, -1);
-      m_iHIndex = -1;
-      m_fMetric = -1.0f;
-    }
-
-    public Edge m_kEdge;
-    public int m_iHIndex;
-    public float m_fMetric;
-
-    public int hashCode() 
-    {
-        throw new UnsupportedOperationException();    
-    }
-      public boolean equals(Object obj) {
-      HeapRecord rkH = (HeapRecord) obj;
-      return m_kEdge.equals(rkH.m_kEdge);
-    }
-  }
-
   public ClodCreator(
       Vector3f[] vertexArray,
       Vector3f[] normalArray,
@@ -122,34 +136,10 @@ public class ClodCreator extends VETMesh {
     newIndices = new int[indices.length];
 
     deletedEdges = new ArrayList();
-    deletedVertices = new TreeSet();
-
-    // Insert the triangles into the mesh.  The triangle indices are attached
-    // as extra data.
-    collapsing = false;
-    for (int i = 0; i < numbTriangles; i++) {
-//      int iV0 = m_aiConnect[3 * i];
-//      int iV1 = m_aiConnect[3 * i + 1];
-//      int iV2 = m_aiConnect[3 * i + 2];
-//      if (!(iV0 != iV1 && iV0 != iV2 && iV1 != iV2)) throw new AssertionError();
-      Triangle tri = new Triangle(indices[3 * i], indices[3 * i + 1],
-                                 indices[3 * i + 2]);
-      insertTriangle(tri);
-      setData(tri, Integer.valueOf(i));
-    }
-
-    if (triangleMap.size() != numbTriangles) {
+
+    if (!insertTriangles()) {
       // We must have duplicates...  lets weed them out and make a new Clod.
-      int redoneIndices[] = new int[triangleMap.size() * 3];
-      Iterator it = triangleMap.keySet().iterator();
-      int i = 0;
-      while (it.hasNext()) {
-        Triangle t = (Triangle) it.next();
-        redoneIndices[i * 3 + 0] = t.vert[0];
-        redoneIndices[i * 3 + 1] = t.vert[1];
-        redoneIndices[i * 3 + 2] = t.vert[2];
-        i++;
-      }
+      int redoneIndices[] = uniqueTriangles();
       ClodCreator creator = new ClodCreator(vertexArray, normalArray, colorArray, textureArray,
                                             redoneIndices);
       records = creator.getRecords();
@@ -157,24 +147,14 @@ public class ClodCreator extends VETMesh {
       // Copy the reduced indices back to the original indice array.  There will
       // be some bogus ones on the end, but thats ok because they will never be shown thanks to
       // the number of triangles field.
-      for (i = 0; i < redoneIndices.length; i++)
-        indices[i] = redoneIndices[i];
-
-        // clear the triangle map so a call to remove triangles doesn't bomb.
-      triangleMap.clear();
+      System.arraycopy(redoneIndices, 0, indices, 0, redoneIndices.length);
       return;
     }
 
-//    if (m_kVMap.size() != m_akVertex.length)throw new AssertionError();
-//    if (m_kTMap.size() != m_iTQuantity)throw new AssertionError(
-//        "triangle map size: " + m_kTMap.size() + " != m_iTQuantity: " +
-//        m_iTQuantity);
-
     initializeHeap();
 
-    collapsing = true;
     while (heapSize > 0) {
-      if (heapArray[0].m_fMetric == Float.MAX_VALUE) {
+      if (edgeMetric[heap[0]] == Float.MAX_VALUE) {
         // all remaining heap elements have infinite weight
         flushVertices();
         flushTriangles();
@@ -182,15 +162,8 @@ public class ClodCreator extends VETMesh {
       }
 
       doCollapse();
-
-//      if (! ( (m_kVMap.size()) == m_iVCurrent + 1))throw new AssertionError();
-//      if (! ( (m_kTMap.size()) == m_iTCurrent + 1))throw new AssertionError(
-//          "triangle map size: " + m_kTMap.size() + " != m_iTCurrent+1: " +
-//          (m_iTCurrent + 1));
     }
 
-    collapsing = false;
-
     // Permute the vertices and triangle connectivity so that the last
     // vertex/triangle in the array is the first vertex/triangle to be
     // removed.
@@ -205,6 +178,144 @@ public class ClodCreator extends VETMesh {
     return records;
   }
 
+  /**
+   * Builds the adjacency of the triangles.
+   * @return false if a triangle occurs more than once, whatever the order of
+   *         its vertices.
+   */
+  private boolean insertTriangles() {
+    triVerts = new int[3 * numbTriangles];
+    System.arraycopy(indices, 0, triVerts, 0, triVerts.length);
+    triEdges = new int[3 * numbTriangles];
+    triStamp = new int[numbTriangles];
+    nextStamp = numbTriangles;
+
+    vertTriCount = new int[vertices.length];
+    for (int iT = 0; iT < numbTriangles; iT++) {
+      int iV0 = triVerts[3 * iT], iV1 = triVerts[3 * iT + 1], iV2 = triVerts[3 * iT + 2];
+      vertTriCount[iV0]++;
+      if (iV1 != iV0)
+        vertTriCount[iV1]++;
+      if (iV2 != iV0 && iV2 != iV1)
+        vertTriCount[iV2]++;
+    }
+    vertTris = new int[vertices.length][];
+    for (int iV = 0; iV < vertices.length; iV++) {
+      // a collapse adds the triangles of the thrown vertex to the kept one
+      vertTris[iV] = new int[vertTriCount[iV] + 2];
+      vertTriCount[iV] = 0;
+    }
+    for (int iT = 0; iT < numbTriangles; iT++) {
+      triStamp[iT] = iT;
+      addToVertices(iT);
+    }
+
+    for (int iT = 0; iT < numbTriangles; iT++) {
+      int iV = Math.min(triVerts[3 * iT], Math.min(triVerts[3 * iT + 1], triVerts[3 * iT + 2]));
+      int[] aiTris = vertTris[iV];
+      for (int j = vertTriCount[iV] - 1; j >= 0; j--) {
+        if (aiTris[j] < iT && sameVertices(aiTris[j], iT))
+          return false;
+      }
+    }
+
+    // a closed manifold has 3/2 edges per triangle, open meshes have more
+    int iCapacity = 2 * numbTriangles + 16;
+    edgeLo = new int[iCapacity];
+    edgeHi = new int[iCapacity];
+    edgeCount = new int[iCapacity];
+    edgePos = new int[iCapacity];
+    edgeMetric = new float[iCapacity];
+    edgeMark = new int[iCapacity];
+    freeEdges = new int[iCapacity];
+    int iTable = 1;
+    while (iTable < 2 * iCapacity)
+      iTable <<= 1;
+    edgeTable = new int[iTable];
+
+    for (int iT = 0; iT < numbTriangles; iT++)
+      addToEdges(iT);
+    return true;
+  }
+
+  private boolean sameVertices(int iT0, int iT1) {
+    int iA0 = triVerts[3 * iT0], iA1 = triVerts[3 * iT0 + 1], iA2 = triVerts[3 * iT0 + 2];
+    int iB0 = triVerts[3 * iT1], iB1 = triVerts[3 * iT1 + 1], iB2 = triVerts[3 * iT1 + 2];
+    return Math.min(iA0, Math.min(iA1, iA2)) == Math.min(iB0, Math.min(iB1, iB2))
+        && Math.max(iA0, Math.max(iA1, iA2)) == Math.max(iB0, Math.max(iB1, iB2))
+        && iA0 + iA1 + iA2 == iB0 + iB1 + iB2;
+  }
+
+  /**
+   * @return the connectivity of the first of every set of equal triangles,
+   *         each rotated to start at its smallest vertex and sorted by their
+   *         vertices from the last to the first.
+   */
+  private int[] uniqueTriangles() {
+    int[] aiTris = new int[numbTriangles];
+    int iQuantity = 0;
+    for (int iT = 0; iT < numbTriangles; iT++) {
+      int iV = Math.min(triVerts[3 * iT], Math.min(triVerts[3 * iT + 1], triVerts[3 * iT + 2]));
+      int[] aiShared = vertTris[iV];
+      boolean bFirst = true;
+      for (int j = vertTriCount[iV] - 1; j >= 0 && bFirst; j--) {
+        if (aiShared[j] < iT && sameVertices(aiShared[j], iT))
+          bFirst = false;
+      }
+      if (bFirst)
+        aiTris[iQuantity++] = iT;
+    }
+
+    int[] aiSorted = new int[3 * numbTriangles];
+    sortTriangles(aiTris, iQuantity, aiSorted);
+    int[] aiIndices = new int[3 * iQuantity];
+    for (int i = 0; i < iQuantity; i++)
+      System.arraycopy(aiSorted, 3 * aiTris[i], aiIndices, 3 * i, 3);
+    return aiIndices;
+  }
+
+  /**
+   * Sorts triangles by their vertices from the last to the first, after
+   * rotating each to start at its smallest vertex.  This is the order the
+   * triangles had in the TreeMap this class used to keep them in.
+   * @param aiTris the triangles to sort, sorted in place.
+   * @param iQuantity the number of triangles in aiTris.
+   * @param aiRotated receives the rotated vertices of the sorted triangles.
+   */
+  private void sortTriangles(int[] aiTris, int iQuantity, int[] aiRotated) {
+    for (int i = 0; i < iQuantity; i++) {
+      int iT = aiTris[i];
+      int iS = firstCorner(iT);
+      for (int k = 0; k < 3; k++)
+        aiRotated[3 * iT + k] = triVerts[3 * iT + (iS + k) % 3];
+    }
+
+    // stable counting sorts from the least to the most significant vertex
+    int[] aiCount = new int[vertices.length + 1];
+    int[] aiTemp = new int[iQuantity];
+    for (int iKey = 0; iKey < 3; iKey++) {
+      Arrays.fill(aiCount, 0);
+      for (int i = 0; i < iQuantity; i++)
+        aiCount[aiRotated[3 * aiTris[i] + iKey] + 1]++;
+      for (int i = 1; i < aiCount.length; i++)
+        aiCount[i] += aiCount[i - 1];
+      for (int i = 0; i < iQuantity; i++)
+        aiTemp[aiCount[aiRotated[3 * aiTris[i] + iKey]]++] = aiTris[i];
+      System.arraycopy(aiTemp, 0, aiTris, 0, iQuantity);
+    }
+  }
+
+  /**
+   * @return the corner of a triangle the rotation VETMesh.Triangle kept the
+   *         vertices in starts at, the one of the smallest vertex.
+   */
+  private int firstCorner(int iT) {
+    int iV0 = triVerts[3 * iT], iV1 = triVerts[3 * iT + 1], iV2 = triVerts[3 * iT + 2];
+    if (iV0 < iV1)
+      return iV0 < iV2 ? 0 : 2;
+    return iV1 < iV2 ? 1 : 2;
+  }
+
   public void doCollapse() {
     // Define a 2-edge to be an edge that has exactly two triangles sharing
     // it.  An edge is collapsible if it is a 2-edge and has at least one end
@@ -215,68 +326,59 @@ public class ClodCreator extends VETMesh {
 
     // When this function is called, the metric has already been calculated
     // and is finite (so exactly two triangles must be sharing this edge).
-//    if (!(m_apkHeap[0].m_fMetric < Float.MAX_VALUE)) throw new AssertionError();
-    Edge kEdge = heapArray[0].m_kEdge;
+    int iEdge = heap[0];
 
     // test end points to see if either has only 2-edges sharing it
     int i;
     for (i = 0; i < 2; i++) {
-      ExVector pkESet = (ExVector) getEdges(kEdge.vert[i]).clone();
-      int j;
-      for (j = 0; j < pkESet.size(); j++) {
-        EdgeAttribute pkEM = (EdgeAttribute) edgeMap.get(pkESet.toArray()[j]);
-//        if (!(pkEM != null)) throw new AssertionError();
-        if (pkEM.triangleSet.size() != 2)
-          break;
-      }
-
-      if (j == pkESet.size()) {
-        // all edges sharing this end point are 2-edges
+      if (hasOnly2Edges(i == 0 ? edgeLo[iEdge] : edgeHi[iEdge]))
         break;
-      }
     }
 
     if (i < 2) {
-      int iVThrow = kEdge.vert[i];
-      int iVKeep = kEdge.vert[1 - i];
+      int iVThrow = i == 0 ? edgeLo[iEdge] : edgeHi[iEdge];
+      int iVKeep = i == 0 ? edgeHi[iEdge] : edgeLo[iEdge];
       if (!collapseCausesFolding(iVKeep, iVThrow)) {
-        remove();
+        removeFromHeap(iEdge);
         collapseEdge(iVKeep, iVThrow);
         return;
       }
     }
 
     // edge not collapsible, assign it infinite weight and update the heap
-    update(0, Float.MAX_VALUE);
+    update(iEdge, Float.MAX_VALUE);
+  }
+
+  private boolean hasOnly2Edges(int iV) {
+    int[] aiTris = vertTris[iV];
+    for (int j = vertTriCount[iV] - 1; j >= 0; j--) {
+      int iT = aiTris[j];
+      for (int k = 0; k < 3; k++) {
+        if ((triVerts[3 * iT + k] == iV || triVerts[3 * iT + (k + 1) % 3] == iV)
+            && edgeCount[triEdges[3 * iT + k]] != 2)
+          return false;
+      }
+    }
+    return true;
   }
 
   public boolean collapseCausesFolding(int iVKeep, int iVThrow) {
-    VertexAttribute pkVT = (VertexAttribute) vertexMap.get(Integer.valueOf(iVThrow));
-//    if (!(pkVT != null)) throw new AssertionError();
-
-    Edge kCollapse = new Edge(iVKeep, iVThrow);
-    for (int j = 0; j < pkVT.triangleSet.size(); j++) {
-      Triangle kT = (Triangle) pkVT.triangleSet.toArray()[j];
-      if (kCollapse.equals(new Edge(kT.vert[0], kT.vert[1]))
-          || kCollapse.equals(new Edge(kT.vert[1], kT.vert[2]))
-          || kCollapse.equals(new Edge(kT.vert[2], kT.vert[0]))) {
+    int[] aiTris = vertTris[iVThrow];
+    for (int j = 0; j < vertTriCount[iVThrow]; j++) {
+      int iT = aiTris[j];
+      if (contains(iT, iVKeep)) {
         // This triangle would be removed in a collapse, so it does not
         // contribute to any folding.
         continue;
       }
 
       for (int i = 0; i < 3; i++) {
-        if (kT.vert[i] == iVThrow) {
+        if (triVerts[3 * iT + i] == iVThrow) {
           // Test if potential replacement triangle (either ordering)
           // is in the mesh.
-          int iV0 = iVKeep;
-          int iV1 = kT.vert[ (i + 1) % 3];
-          int iV2 = kT.vert[ (i + 2) % 3];
-
-          if (triangleMap.get(new Triangle(iV0, iV1, iV2)) != null
-              || triangleMap.get(new Triangle(iV0, iV2, iV1)) != null) {
+          if (findTriangle(iVKeep, triVerts[3 * iT + (i + 1) % 3],
+                           triVerts[3 * iT + (i + 2) % 3]))
             return true;
-          }
         }
       }
     }
@@ -284,38 +386,83 @@ public class ClodCreator extends VETMesh {
     return false;
   }
 
-  public float getMetric(Edge pkE, EdgeAttribute pkEA) {
+  private boolean contains(int iT, int iV) {
+    return triVerts[3 * iT] == iV || triVerts[3 * iT + 1] == iV || triVerts[3 * iT + 2] == iV;
+  }
+
+  private boolean findTriangle(int iV0, int iV1, int iV2) {
+    int[] aiTris = vertTris[iV0];
+    for (int j = vertTriCount[iV0] - 1; j >= 0; j--) {
+      int iT = aiTris[j];
+      if (contains(iT, iV1) && contains(iT, iV2))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Computes the metric of an edge.  Reads the mesh only, so the metrics of
+   * different edges can be computed at the same time.
+   */
+  private float getMetric(int iEdge) {
     float fLengthWeight = 10.0f;
     float fAngleWeight = 1.0f;
 
     // Compute the metric for the edge.  Only manifold edges (exactly two
     // triangles sharing the edge) are allowed to collapse.
-    if (pkEA.triangleSet.size() == 2) {
+    if (edgeCount[iEdge] == 2) {
       // length contribution
-      Vector3f rkEnd0 = vertices[pkE.vert[0]];
-      Vector3f rkEnd1 = vertices[pkE.vert[1]];
-      Vector3f kDiff = rkEnd1.subtract(rkEnd0,tempVa);
-      float fMetric = fLengthWeight * kDiff.length();
-
-      // angle/area contribution
-      Triangle kT = (Triangle) pkEA.triangleSet.toArray()[0];
-      Vector3f kV0 = vertices[kT.vert[0]];
-      Vector3f kV1 = vertices[kT.vert[1]];
-      Vector3f kV2 = vertices[kT.vert[2]];
-      Vector3f kE0 = kV1.subtract(kV0,tempVa);
-      Vector3f kE1 = kV2.subtract(kV0,tempVb);
-      Vector3f kN0 = kE0.cross(kE1,tempVc);
-
-      kT = (Triangle) pkEA.triangleSet.toArray()[1];
-      kV0 = vertices[kT.vert[0]];
-      kV1 = vertices[kT.vert[1]];
-      kV2 = vertices[kT.vert[2]];
-      kE0 = kV1.subtract(kV0,tempVa);
-      kE1 = kV2.subtract(kV0,tempVb);
-      Vector3f kN1 = kE0.crossLocal(kE1);
-
-      Vector3f kCross = kN0.cross(kN1,tempVa);
-      fMetric += fAngleWeight * kCross.length();
+      Vector3f rkEnd0 = vertices[edgeLo[iEdge]];
+      Vector3f rkEnd1 = vertices[edgeHi[iEdge]];
+      float fDx = rkEnd1.x - rkEnd0.x, fDy = rkEnd1.y - rkEnd0.y, fDz = rkEnd1.z - rkEnd0.z;
+      float fMetric = fLengthWeight * (float) Math.sqrt(fDx * fDx + fDy * fDy + fDz * fDz);
+
+      // angle/area contribution, from the normals of the two triangles in
+      // the order they were inserted
+      int iT0 = -1, iT1 = -1;
+      int iV = edgeLo[iEdge];
+      int[] aiTris = vertTris[iV];
+      for (int j = vertTriCount[iV] - 1; j >= 0; j--) {
+        int iT = aiTris[j];
+        if (contains(iT, edgeHi[iEdge])) {
+          if (iT0 < 0)
+            iT0 = iT;
+          else
+            iT1 = iT;
+        }
+      }
+      if (triStamp[iT1] < triStamp[iT0]) {
+        int iT = iT0;
+        iT0 = iT1;
+        iT1 = iT;
+      }
+      int iS = firstCorner(iT0);
+      Vector3f kV0 = vertices[triVerts[3 * iT0 + iS]];
+      Vector3f kV1 = vertices[triVerts[3 * iT0 + (iS + 1) % 3]];
+      Vector3f kV2 = vertices[triVerts[3 * iT0 + (iS + 2) % 3]];
+      float fE0x = kV1.x - kV0.x, fE0y = kV1.y - kV0.y, fE0z = kV1.z - kV0.z;
+      float fE1x = kV2.x - kV0.x, fE1y = kV2.y - kV0.y, fE1z = kV2.z - kV0.z;
+      float fN0x = fE0y * fE1z - fE0z * fE1y;
+      float fN0y = fE0z * fE1x - fE0x * fE1z;
+      float fN0z = fE0x * fE1y - fE0y * fE1x;
+
+      iS = firstCorner(iT1);
+      kV0 = vertices[triVerts[3 * iT1 + iS]];
+      kV1 = vertices[triVerts[3 * iT1 + (iS + 1) % 3]];
+      kV2 = vertices[triVerts[3 * iT1 + (iS + 2) % 3]];
+      fE0x = kV1.x - kV0.x; fE0y = kV1.y - kV0.y; fE0z = kV1.z - kV0.z;
+      fE1x = kV2.x - kV0.x; fE1y = kV2.y - kV0.y; fE1z = kV2.z - kV0.z;
+      float fN1x = fE0y * fE1z - fE0z * fE1y;
+      float fN1y = fE0z * fE1x - fE0x * fE1z;
+      float fN1z = fE0x * fE1y - fE0y * fE1x;
+
+      // The object based version stored N0 x N1 into the vector holding N1,
+      // so its y and z read the components already written.  The weight is
+      // computed the same way to keep the records unchanged.
+      float fCx = fN0y * fN1z - fN0z * fN1y;
+      float fCy = fN0z * fCx - fN0x * fN1z;
+      float fCz = fN0x * fCy - fN0y * fCx;
+      fMetric += fAngleWeight * (float) Math.sqrt(fCx * fCx + fCy * fCy + fCz * fCz);
 
       return fMetric;
     }
@@ -325,146 +472,323 @@ public class ClodCreator extends VETMesh {
     return Float.MAX_VALUE;
   }
 
-  public void removeTriangle(Triangle rkT) {
-    // If the triangle is an original one, reorder the connectivity array so
-    // that the triangle occurs at the end.
-    int iTIndex = ( (Integer) getData(rkT)).intValue();
-    if (iTIndex >= 0) {
-//      if (!(m_iTCurrent >= 0)) throw new AssertionError();
-      newIndices[3 * currentTriangle] = indices[3 * iTIndex];
-      newIndices[3 * currentTriangle + 1] = indices[3 * iTIndex + 1];
-      newIndices[3 * currentTriangle + 2] = indices[3 * iTIndex + 2];
-      currentTriangle--;
+  public void collapseEdge(int iVKeep, int iVThrow) {
+    // the triangles sharing the collapse edge, in the order they were
+    // inserted, and those that only share the 'throw' vertex
+    int iTDeletions = 0, iTModifications = 0;
+    int[] aiTris = vertTris[iVThrow];
+    for (int j = 0; j < vertTriCount[iVThrow]; j++) {
+      int iT = aiTris[j];
+      if (contains(iT, iVKeep)) {
+        if (iTDeletions == collapseTris.length)
+          collapseTris = grow(collapseTris);
+        collapseTris[iTDeletions++] = iT;
+      } else {
+        if (iTModifications == modifiedTris.length)
+          modifiedTris = grow(modifiedTris);
+        modifiedTris[iTModifications++] = iT;
+      }
     }
-
-    super.removeTriangle(rkT);
-  }
-
-  public void modifyTriangle(Triangle rkT, int iVKeep, int iVThrow) {
-    // Get the index of the pre-modified triangle, then remove the triangle
-    // from the mesh.
-    int iTIndex = ( (Integer) getData(rkT)).intValue();
-    super.removeTriangle(rkT);
-
-    // replace 'throw' by 'keep'
-    for (int i = 0; i < 3; i++) {
-      if (rkT.vert[i] == iVThrow) {
-        rkT.vert[i] = iVKeep;
-        break;
+    sortByStamp(collapseTris, iTDeletions);
+    sortByStamp(modifiedTris, iTModifications);
+
+    // keep track of vertices that are deleted in the collapse, they can
+    // only be the end points and the third vertices of the removed triangles
+    int iDeleted = 0;
+    if (deletedVertices.length < iTDeletions + 2)
+      deletedVertices = new int[iTDeletions + 2];
+    deletedVertices[iDeleted++] = iVKeep;
+    deletedVertices[iDeleted++] = iVThrow;
+
+    // Remove the collapse-edge-shared triangles.  The connectivity array is
+    // reordered so that they occur at the end.
+    for (int j = 0; j < iTDeletions; j++) {
+      int iT = collapseTris[j];
+      for (int k = 0; k < 3; k++) {
+        int iV = triVerts[3 * iT + k];
+        if (iV != iVKeep && iV != iVThrow)
+          deletedVertices[iDeleted++] = iV;
       }
+      newIndices[3 * currentTriangle] = indices[3 * iT];
+      newIndices[3 * currentTriangle + 1] = indices[3 * iT + 1];
+      newIndices[3 * currentTriangle + 2] = indices[3 * iT + 2];
+      currentTriangle--;
+      removeTriangle(iT);
+      triStamp[iT] = -1;
     }
 
-    // Indices on modified triangles are the same as the indices on the
-    // pre-modified triangles.
-    insertTriangle(rkT);
-    setData(rkT, Integer.valueOf(iTIndex));
-  }
-
-  public void collapseEdge(int iVKeep, int iVThrow) {
-    // find the edge to collapse
-    Edge kCollapse = new Edge(iVKeep, iVThrow);
-    EdgeAttribute pkEM = (EdgeAttribute) edgeMap.get(kCollapse);
-//    if (pkEM == null) throw new AssertionError("Edge unexpectedly missing from EdgeMap!");
-
-    // keep track of vertices that are deleted in the collapse
-    deletedVertices.clear();
-
-    // Remove the collapse-edge-shared triangles.  Using a copy of the
-    // triangle set from the collapse edge is required since removal of the
-    // last triangle sharing the collapse edge will remove that edge from
-    // the edge map, thereby invalidating any iterator that points to data
-    // in the collapse edge.
-    ExVector kTSet = (ExVector) pkEM.triangleSet.clone(); // <Triangle>
-    int iTDeletions = kTSet.size();
-//    if (!(iTDeletions > 0)) throw new AssertionError();
-    for (int j = 0; j < kTSet.size(); j++)
-      removeTriangle( (Triangle) kTSet.toArray()[j]);
-
-      // Replace 'throw' vertices by 'keep' vertices in the remaining triangles
-      // at the 'throw' vertex.  The old triangles are removed and the modified
-      // triangles are inserted.
-    Triangle kT;
-    VertexAttribute pkVM = (VertexAttribute) vertexMap.get(Integer.valueOf(iVThrow));
-    if (pkVM != null) {
-      kTSet = (ExVector) pkVM.triangleSet.clone();
-      for (int j = 0; j < kTSet.size(); j++) {
-        kT = (Triangle) kTSet.toArray()[j];
-        modifyTriangle(kT, iVKeep, iVThrow);
+    // Replace 'throw' vertices by 'keep' vertices in the remaining triangles
+    // at the 'throw' vertex.  The old triangles are removed and the modified
+    // triangles are inserted, keeping their place in the connectivity array.
+    for (int j = 0; j < iTModifications; j++) {
+      int iT = modifiedTris[j];
+      removeTriangle(iT);
+      for (int k = 0; k < 3; k++) {
+        if (triVerts[3 * iT + k] == iVThrow) {
+          triVerts[3 * iT + k] = iVKeep;
+          break;
+        }
       }
+      triStamp[iT] = nextStamp++;
+      addToVertices(iT);
+      addToEdges(iT);
     }
 
     // The set of potentially modified edges consists of all those edges that
     // are shared by the triangles containing the 'keep' vertex.  Modify these
     // metrics and update the heap.
-    TreeSet kModified = new TreeSet(); // <Edge>
-    ExVector pkTSet = (ExVector) getTriangles(iVKeep).clone(); // <Triangle>
-    if (pkTSet != null) {
-      kTSet = (ExVector) pkTSet.clone();
-      for (int j = 0; j < kTSet.size(); j++) {
-        kT = (Triangle) kTSet.toArray()[j];
-        kModified.add(new Edge(kT.vert[0], kT.vert[1]));
-        kModified.add(new Edge(kT.vert[1], kT.vert[2]));
-        kModified.add(new Edge(kT.vert[2], kT.vert[0]));
-      }
-
-      Iterator it = kModified.iterator();
-      while (it.hasNext()) {
-        Edge pkES = (Edge) it.next();
-        pkEM = (EdgeAttribute) edgeMap.get(pkES);
-        HeapRecord pkRecord = (HeapRecord) pkEM.data;
-        float fMetric = getMetric(pkES, pkEM);
-        if (pkRecord.m_iHIndex >= 0)
-          update(pkRecord.m_iHIndex, fMetric);
+    mark++;
+    aiTris = vertTris[iVKeep];
+    for (int j = 0; j < vertTriCount[iVKeep]; j++) {
+      int iT = aiTris[j];
+      for (int k = 0; k < 3; k++) {
+        int iEdge = triEdges[3 * iT + k];
+        if (edgeMark[iEdge] != mark) {
+          edgeMark[iEdge] = mark;
+          if (edgePos[iEdge] >= 0)
+            update(iEdge, getMetric(iEdge));
+        }
       }
     }
 
-    // save vertex reordering information
-    Iterator it = deletedVertices.iterator();
-    int iV;
-    while (it.hasNext()) {
-//      if(!( 0 <= m_iVCurrent && m_iVCurrent < m_akVertex.length )) throw new AssertionError();
-      iV = ( (Integer) it.next()).intValue();
-//      if(!( 0 <= iV && iV < m_akVertex.length )) throw new AssertionError();
-      orderedVertices[currentVertex] = iV;
-      permuteVertices[iV] = currentVertex;
-      currentVertex--;
+    // save vertex reordering information, in increasing order
+    Arrays.sort(deletedVertices, 0, iDeleted);
+    int iVQuantity = 0;
+    for (int j = 0; j < iDeleted; j++) {
+      int iV = deletedVertices[j];
+      if (vertTriCount[iV] == 0 && (j == 0 || iV != deletedVertices[j - 1])) {
+        orderedVertices[currentVertex] = iV;
+        permuteVertices[iV] = currentVertex;
+        currentVertex--;
+        iVQuantity++;
+      }
     }
 
     // Save the collapse information for use in constructing the final
     // collapse records for the caller of the constructor of this class.
-    CollapseRecord kCR = new CollapseRecord(iVKeep, iVThrow, deletedVertices.size(),
+    CollapseRecord kCR = new CollapseRecord(iVKeep, iVThrow, iVQuantity,
                                             iTDeletions);
     deletedEdges.add(kCR);
   }
 
-  public void flushVertices() {
-    Iterator it = vertexMap.keySet().iterator();
-    while (it.hasNext()) {
-      Integer val = (Integer) it.next();
-      orderedVertices[currentVertex] = val.intValue();
-      permuteVertices[val.intValue()] = currentVertex;
-      currentVertex--;
+  private void sortByStamp(int[] aiTris, int iQuantity) {
+    for (int i = 1; i < iQuantity; i++) {
+      int iT = aiTris[i];
+      int j = i - 1;
+      for (; j >= 0 && triStamp[aiTris[j]] > triStamp[iT]; j--)
+        aiTris[j + 1] = aiTris[j];
+      aiTris[j + 1] = iT;
     }
+  }
 
-//    if (!(m_iVCurrent == -1)) throw new AssertionError();
+  private static int[] grow(int[] aiArray) {
+    int[] aiGrown = new int[aiArray.length * 2];
+    System.arraycopy(aiArray, 0, aiGrown, 0, aiArray.length);
+    return aiGrown;
   }
 
-  public void flushTriangles() {
-    Iterator it = triangleMap.entrySet().iterator();
-    while (it.hasNext()) {
-      Entry entry = (Entry) it.next();
-      TriangleAttribute pkTA = (TriangleAttribute) entry.getValue();
-      int iTIndex = ( (Integer) pkTA.data).intValue();
-      if (iTIndex >= 0) {
-//        if (!(m_iTCurrent >= 0)) throw new AssertionError();
-        newIndices[3 * currentTriangle] = indices[3 * iTIndex];
-        newIndices[3 * currentTriangle + 1] = indices[3 * iTIndex + 1];
-        newIndices[3 * currentTriangle + 2] = indices[3 * iTIndex + 2];
-        currentTriangle--;
+  private void addToVertices(int iT) {
+    int iV0 = triVerts[3 * iT], iV1 = triVerts[3 * iT + 1], iV2 = triVerts[3 * iT + 2];
+    addToVertex(iV0, iT);
+    if (iV1 != iV0)
+      addToVertex(iV1, iT);
+    if (iV2 != iV0 && iV2 != iV1)
+      addToVertex(iV2, iT);
+  }
+
+  private void addToVertex(int iV, int iT) {
+    if (vertTriCount[iV] == vertTris[iV].length)
+      vertTris[iV] = grow(vertTris[iV]);
+    vertTris[iV][vertTriCount[iV]++] = iT;
+  }
+
+  /**
+   * Points the half-edges of a triangle at their edges, creating the edges
+   * that do not exist yet.  A created edge enters the heap with infinite
+   * weight, the caller computes its metric once the mesh is complete.
+   */
+  private void addToEdges(int iT) {
+    for (int k = 0; k < 3; k++) {
+      int iV0 = triVerts[3 * iT + k], iV1 = triVerts[3 * iT + (k + 1) % 3];
+      int iEdge = findEdge(iV0, iV1);
+      if (iEdge < 0)
+        iEdge = createEdge(iV0, iV1);
+      triEdges[3 * iT + k] = iEdge;
+      // a degenerate triangle has an edge twice
+      if ((k == 0 || triEdges[3 * iT] != iEdge) && (k < 2 || triEdges[3 * iT + 1] != iEdge))
+        edgeCount[iEdge]++;
+    }
+  }
+
+  /**
+   * Takes a triangle out of the lists of its vertices and edges.  Edges no
+   * triangle shares any more are destroyed.
+   */
+  private void removeTriangle(int iT) {
+    int iV0 = triVerts[3 * iT], iV1 = triVerts[3 * iT + 1], iV2 = triVerts[3 * iT + 2];
+    removeFromVertex(iV0, iT);
+    if (iV1 != iV0)
+      removeFromVertex(iV1, iT);
+    if (iV2 != iV0 && iV2 != iV1)
+      removeFromVertex(iV2, iT);
+
+    int iE0 = triEdges[3 * iT], iE1 = triEdges[3 * iT + 1], iE2 = triEdges[3 * iT + 2];
+    removeFromEdge(iE0);
+    if (iE1 != iE0)
+      removeFromEdge(iE1);
+    if (iE2 != iE0 && iE2 != iE1)
+      removeFromEdge(iE2);
+  }
+
+  private void removeFromVertex(int iV, int iT) {
+    int[] aiTris = vertTris[iV];
+    int iLast = --vertTriCount[iV];
+    for (int j = 0; j <= iLast; j++) {
+      if (aiTris[j] == iT) {
+        aiTris[j] = aiTris[iLast];
+        return;
+      }
+    }
+  }
+
+  private void removeFromEdge(int iEdge) {
+    if (--edgeCount[iEdge] > 0)
+      return;
+    if (edgePos[iEdge] >= 0)
+      removeFromHeap(iEdge);
+    removeFromTable(iEdge);
+    edgeLo[iEdge] = -1;
+    freeEdges[freeCount++] = iEdge;
+  }
+
+// ---------------------- edge table ----------------------
+
+  private int slot(int iLo, int iHi) {
+    int iHash = iLo * 0x9E3779B1 + iHi * 0x85EBCA6B;
+    return (iHash ^ (iHash >>> 15)) & (edgeTable.length - 1);
+  }
+
+  private int findEdge(int iV0, int iV1) {
+    int iLo = Math.min(iV0, iV1), iHi = Math.max(iV0, iV1);
+    int iMask = edgeTable.length - 1;
+    for (int iSlot = slot(iLo, iHi); edgeTable[iSlot] != 0; iSlot = (iSlot + 1) & iMask) {
+      int iEdge = edgeTable[iSlot] - 1;
+      if (edgeLo[iEdge] == iLo && edgeHi[iEdge] == iHi)
+        return iEdge;
+    }
+    return -1;
+  }
+
+  private int createEdge(int iV0, int iV1) {
+    int iEdge;
+    if (freeCount > 0) {
+      iEdge = freeEdges[--freeCount];
+    } else {
+      if (edgeQuantity == edgeLo.length)
+        growEdges();
+      iEdge = edgeQuantity++;
+    }
+    edgeLo[iEdge] = Math.min(iV0, iV1);
+    edgeHi[iEdge] = Math.max(iV0, iV1);
+    edgeCount[iEdge] = 0;
+    edgeMark[iEdge] = 0;
+    insertIntoTable(iEdge);
+
+    // initializeHeap takes the edges of the original mesh
+    edgePos[iEdge] = -1;
+    if (heap != null) {
+      edgeMetric[iEdge] = Float.MAX_VALUE;
+      add(iEdge);
+    }
+    return iEdge;
+  }
+
+  private void growEdges() {
+    int iCapacity = edgeLo.length + edgeLo.length / 2;
+    edgeLo = copyOf(edgeLo, iCapacity);
+    edgeHi = copyOf(edgeHi, iCapacity);
+    edgeCount = copyOf(edgeCount, iCapacity);
+    edgePos = copyOf(edgePos, iCapacity);
+    edgeMark = copyOf(edgeMark, iCapacity);
+    freeEdges = copyOf(freeEdges, iCapacity);
+    float[] afMetric = new float[iCapacity];
+    System.arraycopy(edgeMetric, 0, afMetric, 0, edgeQuantity);
+    edgeMetric = afMetric;
+    if (heap != null)
+      heap = copyOf(heap, iCapacity);
+
+    if (2 * iCapacity > edgeTable.length) {
+      edgeTable = new int[2 * edgeTable.length];
+      for (int iEdge = 0; iEdge < edgeQuantity; iEdge++) {
+        if (edgeLo[iEdge] >= 0)
+          insertIntoTable(iEdge);
+      }
+    }
+  }
+
+  private static int[] copyOf(int[] aiArray, int iLength) {
+    int[] aiCopy = new int[iLength];
+    System.arraycopy(aiArray, 0, aiCopy, 0, Math.min(aiArray.length, iLength));
+    return aiCopy;
+  }
+
+  private void insertIntoTable(int iEdge) {
+    int iMask = edgeTable.length - 1;
+    int iSlot = slot(edgeLo[iEdge], edgeHi[iEdge]);
+    while (edgeTable[iSlot] != 0)
+      iSlot = (iSlot + 1) & iMask;
+    edgeTable[iSlot] = iEdge + 1;
+  }
+
+  private void removeFromTable(int iEdge) {
+    int iMask = edgeTable.length - 1;
+    int iSlot = slot(edgeLo[iEdge], edgeHi[iEdge]);
+    while (edgeTable[iSlot] != iEdge + 1)
+      iSlot = (iSlot + 1) & iMask;
+
+    // move later entries of the probe sequence into the gap, so lookups
+    // need no markers for removed entries
+    int iNext = iSlot;
+    while (true) {
+      iNext = (iNext + 1) & iMask;
+      if (edgeTable[iNext] == 0)
+        break;
+      int iOther = edgeTable[iNext] - 1;
+      int iHome = slot(edgeLo[iOther], edgeHi[iOther]);
+      if (iNext > iSlot ? (iHome <= iSlot || iHome > iNext) : (iHome <= iSlot && iHome > iNext)) {
+        edgeTable[iSlot] = edgeTable[iNext];
+        iSlot = iNext;
       }
     }
+    edgeTable[iSlot] = 0;
+  }
 
-//    if (!(m_iTCurrent == -1)) throw new AssertionError();
+  public void flushVertices() {
+    for (int iV = 0; iV < vertices.length; iV++) {
+      if (vertTriCount[iV] > 0) {
+        orderedVertices[currentVertex] = iV;
+        permuteVertices[iV] = currentVertex;
+        currentVertex--;
+      }
+    }
+  }
+
+  public void flushTriangles() {
+    int[] aiTris = new int[numbTriangles];
+    int iQuantity = 0;
+    for (int iT = 0; iT < numbTriangles; iT++) {
+      if (triStamp[iT] >= 0)
+        aiTris[iQuantity++] = iT;
+    }
+    sortTriangles(aiTris, iQuantity, new int[3 * numbTriangles]);
+
+    for (int i = 0; i < iQuantity; i++) {
+      int iTIndex = aiTris[i];
+      newIndices[3 * currentTriangle] = indices[3 * iTIndex];
+      newIndices[3 * currentTriangle + 1] = indices[3 * iTIndex + 1];
+      newIndices[3 * currentTriangle + 2] = indices[3 * iTIndex + 2];
+      currentTriangle--;
+    }
   }
 
   public void reorder() {
@@ -529,10 +853,23 @@ public class ClodCreator extends VETMesh {
       // initial record only stores the initial vertex and triangle quantities
     rakCRecord[0].numbVerts = vertices.length;
     rakCRecord[0].numbTriangles = numbTriangles;
+    rakCRecord[0].error = 0;
+
+    // chain the entries of the connectivity array by the vertex they hold,
+    // so a record does not need to search the whole array for its 'throw'
+    // vertex
+    int[] aiFirst = new int[vertices.length];
+    int[] aiNext = new int[3 * numbTriangles];
+    Arrays.fill(aiFirst, -1);
+    for (int i = 3 * numbTriangles - 1; i >= 0; i--) {
+      aiNext[i] = aiFirst[indices[i]];
+      aiFirst[indices[i]] = i;
+    }
 
     // construct the replacement arrays
     int iVQuantity = vertices.length, iTQuantity = numbTriangles;
     int iR, i;
+    int[] aiIndex = new int[16];
     for (iR = 0; iR < deletedEdges.size(); iR++) {
       CollapseRecord rkERecord = (CollapseRecord) deletedEdges.get(iR);
       CollapseRecord rkRecord = rakCRecord[iR + 1];
@@ -545,24 +882,34 @@ public class ClodCreator extends VETMesh {
       rkRecord.numbVerts = iVQuantity;
       rkRecord.numbTriangles = iTQuantity;
       rkRecord.numbIndices = 0;
+      rkRecord.error = rakCRecord[iR].error;
 
       if (iTQuantity > 0) {
+        // entries at or past iIMax belong to removed triangles, which no
+        // later record touches either, so they leave the chains
         int iIMax = 3 * iTQuantity;
-        int[] aiIndex = new int[iIMax];
-        for (i = 0; i < iIMax; i++) {
-          if (indices[i] == rkRecord.vertToThrow) {
+        for (i = aiFirst[rkRecord.vertToThrow]; i >= 0; i = aiNext[i]) {
+          if (i < iIMax) {
             indices[i] = rkRecord.vertToKeep;
+            if (rkRecord.numbIndices == aiIndex.length)
+              aiIndex = grow(aiIndex);
             aiIndex[rkRecord.numbIndices++] = i;
           }
         }
+        aiFirst[rkRecord.vertToThrow] = -1;
 
         if (rkRecord.numbIndices > 0) {
           rkRecord.indices = new int[rkRecord.numbIndices];
           for (i = 0; i < rkRecord.numbIndices; i++)
             rkRecord.indices[i] = aiIndex[i];
+          Arrays.sort(rkRecord.indices);
+          for (i = 0; i < rkRecord.numbIndices; i++) {
+            aiNext[aiIndex[i]] = aiFirst[rkRecord.vertToKeep];
+            aiFirst[rkRecord.vertToKeep] = aiIndex[i];
+          }
+          rkRecord.error = Math.max(rkRecord.error,
+              distanceToTriangles(rkRecord.vertToThrow, rkRecord.indices));
         }
-
-        aiIndex = null;
       } else {
         rkRecord.indices = null;
       }
@@ -574,263 +921,197 @@ public class ClodCreator extends VETMesh {
       CollapseRecord rkRecord = rakCRecord[iR];
       for (i = 0; i < rkRecord.numbIndices; i++) {
         int iC = rkRecord.indices[i];
-//        if (!(m_aiConnect[iC] == rkRecord.vertToKeep)) throw new AssertionError();
         indices[iC] = rkRecord.vertToThrow;
       }
     }
     return rakCRecord;
   }
 
-// ---------------------- heap operations ----------------------
-
-  public void initializeHeap() {
-    // It is possible that during an edge collapse, the number of *temporary*
-    // edges is larger than the original number of edges in the mesh.  To
-    // make sure there is enough heap space, allocate two times the number of
-    // original edges.
-    heapSize = edgeMap.size();
-    heapArray = new HeapRecord[2 * heapSize];
-
-    int iHIndex = 0;
-    Iterator it = edgeMap.entrySet().iterator();
-    while (it.hasNext()) {
-      Entry entry = (Entry) it.next();
-      Edge pkE = (Edge) entry.getKey();
-      EdgeAttribute pkEA = (EdgeAttribute) entry.getValue();
-      heapArray[iHIndex] = (HeapRecord) pkEA.data;
-      heapArray[iHIndex].m_kEdge = pkE;
-      heapArray[iHIndex].m_iHIndex = iHIndex;
-      heapArray[iHIndex].m_fMetric = getMetric(pkE, pkEA);
-      iHIndex++;
-    }
-
-    sort();
-  }
-
-  public void sort() {
-    int iLast = heapSize - 1;
-    for (int iLeft = iLast / 2; iLeft >= 0; iLeft--) {
-      HeapRecord pkRecord = heapArray[iLeft];
-      int iPa = iLeft, iCh = 2 * iLeft + 1;
-      while (iCh <= iLast) {
-        if (iCh < iLast) {
-          if (heapArray[iCh].m_fMetric > heapArray[iCh + 1].m_fMetric)
-            iCh++;
-        }
-
-        if (heapArray[iCh].m_fMetric >= pkRecord.m_fMetric)
-          break;
-
-        heapArray[iCh].m_iHIndex = iPa;
-        heapArray[iPa] = heapArray[iCh];
-        iPa = iCh;
-        iCh = 2 * iCh + 1;
-      }
-
-      pkRecord.m_iHIndex = iPa;
-      heapArray[iPa] = pkRecord;
+  /**
+   * Returns the distance of a vertex to the nearest of the triangles containing the given entries
+   * of the connectivity array.  Used as the error of a collapse, measured from the thrown vertex to
+   * the triangles that took its place.
+   */
+  private float distanceToTriangles(int iV, int[] aiEntry) {
+    Vector3f kP = vertices[iV];
+    float fMin = Float.MAX_VALUE;
+    for (int i = 0; i < aiEntry.length; i++) {
+      int iT = aiEntry[i] - aiEntry[i] % 3;
+      float fDistance = distanceToTriangle(kP, vertices[indices[iT]],
+          vertices[indices[iT + 1]], vertices[indices[iT + 2]]);
+      if (fDistance < fMin)
+        fMin = fDistance;
     }
+    return fMin == Float.MAX_VALUE ? 0 : fMin;
   }
 
-  public void add(float fMetric) {
-    // Under normal heap operations, you would have to make sure that the
-    // heap storage grows if necessary.  Increased storage demand will not
-    // happen in this application.  The creation of the heap record itself is
-    // done in OnEdgeCreate.
-    heapSize++;
-
-    int iCh = heapSize - 1;
-    HeapRecord pkRecord = heapArray[iCh];
-    pkRecord.m_fMetric = fMetric;
-    while (iCh > 0) {
-      int iPa = (iCh - 1) / 2;
-      if (heapArray[iPa].m_fMetric <= fMetric)
-        break;
-
-      heapArray[iPa].m_iHIndex = iCh;
-      heapArray[iCh] = heapArray[iPa];
-      pkRecord.m_iHIndex = iPa;
-      pkRecord.m_fMetric = fMetric;
-      heapArray[iPa] = pkRecord;
-      iCh = iPa;
+  /**
+   * Returns the distance of a point to the nearest point of a triangle.
+   */
+  private static float distanceToTriangle(Vector3f kP, Vector3f kV0, Vector3f kV1, Vector3f kV2) {
+    float fE0x = kV1.x - kV0.x, fE0y = kV1.y - kV0.y, fE0z = kV1.z - kV0.z;
+    float fE1x = kV2.x - kV0.x, fE1y = kV2.y - kV0.y, fE1z = kV2.z - kV0.z;
+    float fNx = fE0y * fE1z - fE0z * fE1y;
+    float fNy = fE0z * fE1x - fE0x * fE1z;
+    float fNz = fE0x * fE1y - fE0y * fE1x;
+    float fNN = fNx * fNx + fNy * fNy + fNz * fNz;
+    if (fNN > 0) {
+      // the projection onto the plane is inside if it is on the inner side of all edges
+      float fDx = kP.x - kV0.x, fDy = kP.y - kV0.y, fDz = kP.z - kV0.z;
+      float fPlane = (fNx * fDx + fNy * fDy + fNz * fDz) / fNN;
+      float fQx = fDx - fPlane * fNx, fQy = fDy - fPlane * fNy, fQz = fDz - fPlane * fNz;
+      // barycentric coordinates of the projection
+      float fC1x = fQy * fE1z - fQz * fE1y, fC1y = fQz * fE1x - fQx * fE1z, fC1z = fQx * fE1y - fQy * fE1x;
+      float fC2x = fE0y * fQz - fE0z * fQy, fC2y = fE0z * fQx - fE0x * fQz, fC2z = fE0x * fQy - fE0y * fQx;
+      float fB1 = (fC1x * fNx + fC1y * fNy + fC1z * fNz) / fNN;
+      float fB2 = (fC2x * fNx + fC2y * fNy + fC2z * fNz) / fNN;
+      if (fB1 >= 0 && fB2 >= 0 && fB1 + fB2 <= 1)
+        return Math.abs(fPlane) * (float) Math.sqrt(fNN);
     }
-
-    heapArray[iCh].m_fMetric = fMetric;
+    return Math.min(distanceToSegment(kP, kV0, kV1),
+        Math.min(distanceToSegment(kP, kV1, kV2), distanceToSegment(kP, kV2, kV0)));
   }
 
-  public void remove() {
-    HeapRecord pkRoot = heapArray[0];
-
-    int iLast = heapSize - 1;
-    HeapRecord pkRecord = heapArray[iLast];
-    int iPa = 0, iCh = 1;
-    while (iCh <= iLast) {
-      if (iCh < iLast) {
-        int iChP = iCh + 1;
-        if (heapArray[iCh].m_fMetric > heapArray[iChP].m_fMetric)
-          iCh = iChP;
-      }
+  private static float distanceToSegment(Vector3f kP, Vector3f kA, Vector3f kB) {
+    float fDx = kB.x - kA.x, fDy = kB.y - kA.y, fDz = kB.z - kA.z;
+    float fPx = kP.x - kA.x, fPy = kP.y - kA.y, fPz = kP.z - kA.z;
+    float fLL = fDx * fDx + fDy * fDy + fDz * fDz;
+    float fT = fLL > 0 ? (fPx * fDx + fPy * fDy + fPz * fDz) / fLL : 0;
+    if (fT < 0)
+      fT = 0;
+    else if (fT > 1)
+      fT = 1;
+    fPx -= fT * fDx;
+    fPy -= fT * fDy;
+    fPz -= fT * fDz;
+    return (float) Math.sqrt(fPx * fPx + fPy * fPy + fPz * fPz);
+  }
 
-      if (heapArray[iCh].m_fMetric >= pkRecord.m_fMetric)
-        break;
+// ---------------------- heap operations ----------------------
 
-      heapArray[iCh].m_iHIndex = iPa;
-      heapArray[iPa] = heapArray[iCh];
-      iPa = iCh;
-      iCh = 2 * iCh + 1;
+  /**
+   * Computes the metrics of the edges of the original mesh and puts all
+   * edges into the heap.
+   */
+  public void initializeHeap() {
+    if (edgeQuantity >= 2 * PARALLEL_EDGES)
+      ForkJoinPool.commonPool().invoke(new MetricTask(0, edgeQuantity));
+    else
+      computeMetrics(0, edgeQuantity);
+
+    heap = new int[edgeLo.length];
+    heapSize = edgeQuantity;
+    for (int iEdge = 0; iEdge < edgeQuantity; iEdge++) {
+      heap[iEdge] = iEdge;
+      edgePos[iEdge] = iEdge;
     }
-
-    pkRecord.m_iHIndex = iPa;
-    heapArray[iPa] = pkRecord;
-    heapSize--;
-
-    // To notify OnEdgeDestroy that this edge was already removed from the
-    // heap, but the object must be deleted by that callback.
-    pkRoot.m_iHIndex = -1;
+    for (int iPos = (heapSize - 2) / HEAP_ARITY; iPos >= 0; iPos--)
+      siftDown(iPos);
   }
 
-  public void update(int iHIndex, float fMetric) {
-    HeapRecord pkRecord = heapArray[iHIndex];
-    int iPa, iCh, iChP, iMaxCh;
-
-    if (fMetric > pkRecord.m_fMetric) {
-      pkRecord.m_fMetric = fMetric;
-
-      // new weight larger than old, propagate it towards the leaves
-      iPa = iHIndex;
-      iCh = 2 * iPa + 1;
-      while (iCh < heapSize) {
-        // at least one child exists
-        if (iCh < heapSize - 1) {
-          // two children exist
-          iChP = iCh + 1;
-          if (heapArray[iCh].m_fMetric <= heapArray[iChP].m_fMetric)
-            iMaxCh = iCh;
-          else
-            iMaxCh = iChP;
-        } else {
-          // one child exists
-          iMaxCh = iCh;
-        }
-
-        if (heapArray[iMaxCh].m_fMetric >= fMetric)
-          break;
+  private void computeMetrics(int iFrom, int iTo) {
+    for (int iEdge = iFrom; iEdge < iTo; iEdge++)
+      edgeMetric[iEdge] = getMetric(iEdge);
+  }
 
-        heapArray[iMaxCh].m_iHIndex = iPa;
-        heapArray[iPa] = heapArray[iMaxCh];
-        pkRecord.m_iHIndex = iMaxCh;
-        heapArray[iMaxCh] = pkRecord;
-        iPa = iMaxCh;
-        iCh = 2 * iPa + 1;
-      }
-    } else if (fMetric < pkRecord.m_fMetric) {
-      pkRecord.m_fMetric = fMetric;
+  /**
+   * Computes the metrics of a range of edges, splitting it among the
+   * threads of the common pool.
+   */
+  private class MetricTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
 
-      // new weight smaller than old, propagate it towards the root
-      iCh = iHIndex;
-      while (iCh > 0) {
-        // a parent exists
-        iPa = (iCh - 1) / 2;
+    private final int from, to;
 
-        if (heapArray[iPa].m_fMetric <= fMetric)
-          break;
-
-        heapArray[iPa].m_iHIndex = iCh;
-        heapArray[iCh] = heapArray[iPa];
-        pkRecord.m_iHIndex = iPa;
-        pkRecord.m_fMetric = fMetric;
-        heapArray[iPa] = pkRecord;
-        iCh = iPa;
-      }
+    MetricTask(int from, int to) {
+      this.from = from;
+      this.to = to;
     }
-  }
 
-  public boolean isValidHeap(int iStart, int iFinal) {
-    for (int iC = iStart; iC <= iFinal; iC++) {
-      int iP = (iC - 1) / 2;
-      if (iP > iStart) {
-        if (heapArray[iP].m_fMetric > heapArray[iC].m_fMetric)
-          return false;
-
-        if (heapArray[iP].m_iHIndex != iP)
-          return false;
+    protected void compute() {
+      if (to - from <= PARALLEL_EDGES) {
+        computeMetrics(from, to);
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new MetricTask(from, middle), new MetricTask(middle, to));
       }
     }
-
-    return true;
-  }
-
-  public boolean isValidHeap() {
-    return isValidHeap(0, heapSize - 1);
-  }
-
-// mesh insert/remove callbacks
-
-  public void onVertexInsert(Integer vert, boolean bCreate, VertexAttribute att) {
-    // It is possible that a 'keep' vertex was removed because the triangles
-    // sharing the collapse edge were removed first, but then the insertion
-    // of a modified triangle reinserts the 'keep' vertex.
-    if (bCreate && collapsing)
-      deletedVertices.remove(vert);
   }
 
-  public void onVertexRemove(Integer vert, boolean bDestroy, VertexAttribute att) {
-    // Keep track of vertices removed during the edge collapse.
-    if (bDestroy && collapsing)
-      deletedVertices.add(vert);
+  /**
+   * @return true if edge iE0 comes out of the heap before edge iE1, by
+   *         metric and then by end points.
+   */
+  private boolean precedes(int iE0, int iE1) {
+    float fM0 = edgeMetric[iE0], fM1 = edgeMetric[iE1];
+    if (fM0 != fM1)
+      return fM0 < fM1;
+    if (edgeHi[iE0] != edgeHi[iE1])
+      return edgeHi[iE0] < edgeHi[iE1];
+    return edgeLo[iE0] < edgeLo[iE1];
   }
 
-  public void onEdgeInsert(Edge rkE, boolean bCreate, EdgeAttribute att) {
-    if (bCreate) {
-      att.data = new HeapRecord();
-      if (collapsing) {
-        heapArray[heapSize] = (HeapRecord) att.data;
-        heapArray[heapSize].m_kEdge = rkE;
-        heapArray[heapSize].m_iHIndex = heapSize;
-        add(getMetric(rkE, (EdgeAttribute) edgeMap.get(rkE)));
-      }
-    } else {
-      if (collapsing) {
-        HeapRecord pkRecord = (HeapRecord) att.data;
-//        if (!(pkRecord.m_kEdge.equals(rkE))) throw new AssertionError();
-        if (pkRecord.m_iHIndex >= 0) {
-          update(pkRecord.m_iHIndex,
-                 getMetric(rkE, (EdgeAttribute) edgeMap.get(rkE)));
-        } else {
-//          if (!(pkRecord.m_iHIndex == -1)) throw new AssertionError();
-          pkRecord.m_iHIndex = heapSize;
-          add(getMetric(rkE, (EdgeAttribute) edgeMap.get(rkE)));
-        }
-      }
+  private void siftUp(int iPos) {
+    int iEdge = heap[iPos];
+    while (iPos > 0) {
+      int iParent = (iPos - 1) / HEAP_ARITY;
+      if (!precedes(iEdge, heap[iParent]))
+        break;
+      heap[iPos] = heap[iParent];
+      edgePos[heap[iPos]] = iPos;
+      iPos = iParent;
     }
+    heap[iPos] = iEdge;
+    edgePos[iEdge] = iPos;
   }
 
-  public void onEdgeRemove(Edge rkE, boolean bDestroy, EdgeAttribute att) {
-    // Remove the edge from the heap.  The metric of the edge is set to
-    // -INFINITY so that it has the minimum value of all edges.  The update
-    // call bubbles the edge to the root of the heap.  The edge is then
-    // removed from the root.
-
-    if (bDestroy) {
-      HeapRecord pkRecord = (HeapRecord) att.data;
-      if (pkRecord.m_iHIndex >= 0) {
-        update(pkRecord.m_iHIndex, -Float.MAX_VALUE);
-        remove();
+  private void siftDown(int iPos) {
+    int iEdge = heap[iPos];
+    while (true) {
+      int iChild = HEAP_ARITY * iPos + 1;
+      if (iChild >= heapSize)
+        break;
+      int iLast = Math.min(iChild + HEAP_ARITY, heapSize);
+      int iMin = iChild;
+      for (int i = iChild + 1; i < iLast; i++) {
+        if (precedes(heap[i], heap[iMin]))
+          iMin = i;
       }
-      pkRecord = null;
+      if (!precedes(heap[iMin], iEdge))
+        break;
+      heap[iPos] = heap[iMin];
+      edgePos[heap[iPos]] = iPos;
+      iPos = iMin;
     }
+    heap[iPos] = iEdge;
+    edgePos[iEdge] = iPos;
   }
 
-  public void onTriangleInsert(Triangle tri, boolean bCreate,
-                               TriangleAttribute att) {
-    if (bCreate)
-      att.data = Integer.valueOf( -1);
+  private void add(int iEdge) {
+    heap[heapSize] = iEdge;
+    siftUp(heapSize++);
   }
 
-  public void onTriangleRemove(Triangle tri, boolean bDestroy,
-                               TriangleAttribute att) {
-    if (bDestroy)
-      att.data = null;
+  private void removeFromHeap(int iEdge) {
+    int iPos = edgePos[iEdge];
+    edgePos[iEdge] = -1;
+    int iLast = heap[--heapSize];
+    if (iPos == heapSize)
+      return;
+    heap[iPos] = iLast;
+    edgePos[iLast] = iPos;
+    if (iPos > 0 && precedes(iLast, heap[(iPos - 1) / HEAP_ARITY]))
+      siftUp(iPos);
+    else
+      siftDown(iPos);
   }
 
+  private void update(int iEdge, float fMetric) {
+    float fOld = edgeMetric[iEdge];
+    edgeMetric[iEdge] = fMetric;
+    if (fMetric < fOld)
+      siftUp(edgePos[iEdge]);
+    else if (fMetric > fOld)
+      siftDown(edgePos[iEdge]);
+  }
 }
@@ -134,7 +134,6 @@ int currentRecord, targetRecord;
         ClodCreator creator = new ClodCreator(this.getVertices(), this.getNormals(), this.getColors(), this.getTextures(),
                                   this.getIndices());
         this.records = creator.getRecords();
-        creator.removeAllTriangles();
         creator = null;
       }
       triangleQuantity = this.records[0].numbTriangles;
@@ -200,6 +199,7 @@ int currentRecord, targetRecord;
 
     updateVertexBuffer();
     updateIndexBuffer();
+    setVBOIndexStale(true);
   }
 
   /**
@@ -85,4 +85,9 @@ public class CollapseRecord {
   public int numbIndices = 0;
   /** An integer value in the Mesh's indices array referencing a vertex to keep or throw.*/
   public int[] indices = null;
+
+  /** Estimate of how far the Mesh after this collapse is off the vertices thrown so far, in model
+   * units.  Never smaller than the error of the previous record.  Float.MAX_VALUE if unknown, such a
+   * record is never chosen by ErrorClodMesh. */
+  public float error = Float.MAX_VALUE;
 }
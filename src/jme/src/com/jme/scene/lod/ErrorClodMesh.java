@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.jme.scene.lod;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingSphere;
+import com.jme.bounding.BoundingVolume;
+import com.jme.math.Vector3f;
+import com.jme.renderer.Camera;
+import com.jme.renderer.Renderer;
+import com.jme.scene.TriMesh;
+
+/**
+ * <code>ErrorClodMesh</code> is an automatically updating ClodMesh that
+ * chooses its record from the error the records would show on the screen.
+ * The collapse records carry the model space error of each collapse, see
+ * <code>CollapseRecord.error</code>; the mesh collapses as far as the error
+ * stays within a <code>ScreenErrorBudget</code> at the distance of its
+ * bounding volume from the camera.  Large meshes are best split into blocks,
+ * so the near blocks keep their detail while the far ones collapse.<br><br>
+ * Without a budget, or with records that carry no error, it behaves like a
+ * plain ClodMesh.  The budget is not saved with the mesh and has to be set
+ * after loading.
+ * @version $Id$
+ */
+public class ErrorClodMesh extends ClodMesh {
+  private static final long serialVersionUID = 1L;
+
+  /** Part the allowed error has to change by before another record is chosen. */
+  private static final float ERROR_TOLERANCE = 0.1f;
+
+  private transient ScreenErrorBudget budget;
+  private float lastError = -1;
+  private final Vector3f center = new Vector3f();
+
+  /**
+   * Empty Constructor to be used internally only.
+   */
+  public ErrorClodMesh() {}
+
+  /**
+   * Creates a new ErrorClodMesh with the given name.  It is assumed a call
+   * to reconstruct and create will be called before this ErrorClodMesh is
+   * used.
+   * @param name The mesh's name.
+   */
+  public ErrorClodMesh(String name) {
+      super(name);
+  }
+
+  /**
+   * Creates a clod mesh that mimics the given TriMesh's geometry information.
+   * RenderState and Controller information is <b>not</b> absorbed by this
+   * ErrorClodMesh.  A null for records causes the ErrorClodMesh to generate
+   * its own records information.
+   * @param name The name of this new mesh.
+   * @param data The TriMesh to copy information into for this mesh.
+   * @param records The collapse record(s) this ClodMesh should use.
+   */
+  public ErrorClodMesh(
+      String name,
+      TriMesh data,
+      CollapseRecord[] records) {
+
+    super(name, data, records);
+  }
+
+  /**
+   * Chooses the last record whose error shows as no more than the budget.
+   * This should not be called manually, it is called during rendering.
+   * @param r The Renderer to use.
+   * @return the target record this ErrorClodMesh will use.
+   */
+  public int chooseTargetRecord(Renderer r) {
+    if (budget == null || records == null || records.length == 0
+        || getWorldBound() == null)
+      return targetRecord;
+
+    Camera camera = r.getCamera();
+    float distance = distanceTo(getWorldBound(), camera.getLocation());
+    float scale = Math.max(Math.abs(worldScale.x),
+        Math.max(Math.abs(worldScale.y), Math.abs(worldScale.z)));
+    float error = budget.getWorldError(camera, r.getHeight(), distance)
+        / (scale > 0 ? scale : 1);
+    if (Math.abs(error - lastError) <= lastError * ERROR_TOLERANCE)
+      return targetRecord; // we haven't moved enough to change the record
+
+    lastError = error;
+    targetRecord = getRecordForError(error);
+    return targetRecord;
+  }
+
+  /**
+   * Returns the last record with an error of at most the given error.  The
+   * errors of the records never decrease, so the record is found by bisection.
+   * @param error The allowed error in model space.
+   * @return The record index, 0 if no collapse is within the error.
+   */
+  public int getRecordForError(float error) {
+    int low = 0, high = records.length - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (records[mid].error <= error)
+        low = mid;
+      else
+        high = mid - 1;
+    }
+    return low;
+  }
+
+  /**
+   * Returns the distance of a point to the nearest point of a bounding volume,
+   * 0 if it is inside.
+   */
+  private float distanceTo(BoundingVolume bound, Vector3f point) {
+    bound.getCenter(center).subtractLocal(point);
+    if (bound instanceof BoundingBox) {
+      BoundingBox box = (BoundingBox) bound;
+      float dx = Math.max(Math.abs(center.x) - box.xExtent, 0);
+      float dy = Math.max(Math.abs(center.y) - box.yExtent, 0);
+      float dz = Math.max(Math.abs(center.z) - box.zExtent, 0);
+      return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+    if (bound instanceof BoundingSphere)
+      return Math.max(center.length() - ((BoundingSphere) bound).getRadius(), 0);
+    return center.length();
+  }
+
+  /**
+   * Returns the budget this mesh collapses to.
+   * @return The budget, or null if the target record is set manually.
+   */
+  public ScreenErrorBudget getBudget() {
+    return budget;
+  }
+
+  /**
+   * Sets the budget this mesh collapses to.  Several meshes may share one.
+   * @param budget The budget, or null to set the target record manually.
+   */
+  public void setBudget(ScreenErrorBudget budget) {
+    this.budget = budget;
+    lastError = -1;
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.jme.scene.lod;
+
+import com.jme.renderer.Camera;
+
+/**
+ * <code>ScreenErrorBudget</code> is the screen space error, in pixels, the
+ * ErrorClodMesh objects sharing it may show.  Each mesh converts the budget
+ * to the model space error it may have at its distance from the camera and
+ * collapses as far as its records allow.<br><br>
+ * When <code>update</code> is called every frame, the budget adapts to the
+ * frame time: it grows while frames take longer than the target frame time
+ * and shrinks again once they are clearly faster, within the given limits.
+ * It changes in steps, at most every <code>ADAPT_INTERVAL</code> seconds,
+ * so the meshes do not rebuild their index buffers every frame.
+ * @version $Id$
+ */
+public class ScreenErrorBudget {
+
+  /** Seconds between two changes of the budget. */
+  public static final float ADAPT_INTERVAL = 0.25f;
+
+  /** Factor the budget grows or shrinks by in one change. */
+  public static final float ADAPT_STEP = 1.25f;
+
+  /** Frames faster than this part of the target frame time shrink the budget. */
+  private static final float SHRINK_BELOW = 0.8f;
+
+  /** Weight of a new frame time in the smoothed frame time. */
+  private static final float SMOOTHING = 0.1f;
+
+  private float pixels;
+  private float minPixels;
+  private float maxPixels;
+  private float targetFrameTime;
+  private float frameTime = -1;
+  private float sinceChange = 0;
+
+  /**
+   * Creates a budget that stays fixed unless a target frame time is set.
+   * @param pixels The error in pixels.
+   */
+  public ScreenErrorBudget(float pixels) {
+    this(pixels, pixels, pixels, 0);
+  }
+
+  /**
+   * Creates a budget that adapts to the frame time.
+   * @param pixels The error in pixels to start with.
+   * @param minPixels The smallest error the budget shrinks to.
+   * @param maxPixels The largest error the budget grows to.
+   * @param targetFrameTime The frame time in seconds to aim at, 0 to keep
+   * the budget fixed.
+   */
+  public ScreenErrorBudget(float pixels, float minPixels, float maxPixels,
+                           float targetFrameTime) {
+    this.minPixels = minPixels;
+    this.maxPixels = maxPixels;
+    this.targetFrameTime = targetFrameTime;
+    setPixels(pixels);
+  }
+
+  /**
+   * Adapts the budget to the time the last frame took.  Call once per frame.
+   * @param time The frame time in seconds.
+   */
+  public void update(float time) {
+    if (targetFrameTime <= 0 || time <= 0)
+      return;
+
+    if (frameTime < 0)
+      frameTime = time;
+    else
+      frameTime += (time - frameTime) * SMOOTHING;
+
+    sinceChange += time;
+    if (sinceChange < ADAPT_INTERVAL)
+      return;
+
+    if (frameTime > targetFrameTime)
+      setPixels(pixels * ADAPT_STEP);
+    else if (frameTime < targetFrameTime * SHRINK_BELOW)
+      setPixels(pixels / ADAPT_STEP);
+    sinceChange = 0;
+  }
+
+  /**
+   * Returns the model space error that shows as the budget at the given
+   * distance from the camera.
+   * @param camera The camera the scene is drawn with.
+   * @param height The height of the screen in pixels.
+   * @param distance The distance from the camera.
+   * @return The allowed error in world units.
+   */
+  public float getWorldError(Camera camera, int height, float distance) {
+    float near = camera.getFrustumNear();
+    if (distance < near)
+      distance = near;
+    float size = camera.getFrustumTop() - camera.getFrustumBottom();
+    return pixels * distance * size / (near * height);
+  }
+
+  /**
+   * Returns the current error in pixels.
+   * @return The screen space error.
+   */
+  public float getPixels() {
+    return pixels;
+  }
+
+  /**
+   * Sets the current error in pixels, clamped to the limits.
+   * @param pixels The new screen space error.
+   */
+  public void setPixels(float pixels) {
+    if (pixels < minPixels)
+      pixels = minPixels;
+    else if (pixels > maxPixels)
+      pixels = maxPixels;
+    this.pixels = pixels;
+  }
+
+  /**
+   * Returns the frame time the budget adapts to.
+   * @return The target frame time in seconds, 0 if the budget is fixed.
+   */
+  public float getTargetFrameTime() {
+    return targetFrameTime;
+  }
+
+  /**
+   * Sets the frame time the budget adapts to.
+   * @param targetFrameTime The target frame time in seconds, 0 to keep the
+   * budget fixed.
+   */
+  public void setTargetFrameTime(float targetFrameTime) {
+    this.targetFrameTime = targetFrameTime;
+  }
+}
@@ -43,8 +43,8 @@ import java.util.Vector;
  * <code>VETMesh</code>
  * originally ported from David Eberly's c++, modifications and
  * enhancements made from there.<br><br>
- * This class is used as a base class for ClodCreator, and should have little use
- * outside of a base class for clod meshes.
+ * This class was the base class of ClodCreator, which now keeps its own adjacency
+ * in arrays, and should have little use outside of clod meshes.
  * @author Joshua Slack
  * @version $Id: VETMesh.java,v 1.7 2004/08/21 00:33:45 cep21 Exp $
  * @see ClodCreator
@@ -97,12 +97,33 @@ public abstract class RenderState implements Serializable {
 	/** The total number of diffrent types of RenderState. */
 	public final static int RS_MAX_STATE = 15; 
 
+	/** The id of the last state created. */
+	private static int lastStateId;
+
 	private boolean enabled = true;
 
+	private int stateId;
+
 	/**
 	 * Construts a new RenderState. The state is enabled by default.
 	 */
 	public RenderState() {
+		stateId = nextStateId();
+	}
+
+	private static synchronized int nextStateId() {
+		return ++lastStateId;
+	}
+
+	/**
+	 * Returns a number identifying this state object, unique among the states
+	 * created since the program started. The render queue sorts by it to draw
+	 * geometry sharing a state one after the other.
+	 * 
+	 * @return the id of this state.
+	 */
+	public int getStateId() {
+		return stateId;
 	}
 
 	/**
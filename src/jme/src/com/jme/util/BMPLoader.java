@@ -31,22 +31,160 @@
  */
 package com.jme.util;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  *
- * <code>BMPLoader</code> is a stub to be filled in later with non-awt dependant
- * bitmap loading code.
+ * <code>BMPLoader</code> is a bitmap loader which is independent of AWT. It
+ * reads uncompressed bitmaps with 8 bit palettes, 24 or 32 bits per pixel
+ * and writes every row to the direct buffer of the image with one bulk copy.
+ * The fourth byte of 32 bit pixels is not used as alpha, as most writers
+ * leave it zero.
  *
  * @author
  * @version $Id: BMPLoader.java,v 1.1 2004/09/06 18:17:44 renanse Exp $
  */
 public final class BMPLoader {
+
+  private static final int BI_RGB = 0;
+
   private BMPLoader() {
   }
 
-  public static com.jme.image.Image loadImage(InputStream fis) {
-    return null;
+  /**
+   * <code>loadImage</code> loads a bitmap with the first row of the picture
+   * last, which is the order OpenGL expects.
+   *
+   * @see #loadImage(InputStream, boolean)
+   */
+  public static com.jme.image.Image loadImage(InputStream fis) throws
+      IOException {
+    return loadImage(fis, true);
   }
 
+  /**
+   * <code>loadImage</code> decodes a bitmap.
+   *
+   * OUT: RGB888 jme.image.Image object
+   *
+   * @param fis
+   *            InputStream of the bitmap. It is not closed.
+   * @param flip
+   *            if true the rows are stored bottom up, as OpenGL expects.
+   * @return <code>com.jme.image.Image</code> object that contains the image,
+   *         or null if the bitmap is compressed or uses a pixel format this
+   *         loader does not support.
+   * @throws IOException
+   *             if the stream is not a valid bitmap.
+   */
+  public static com.jme.image.Image loadImage(InputStream fis, boolean flip)
+      throws IOException {
+    DataInputStream dis = new DataInputStream(new BufferedInputStream(fis,
+        8192));
+    if (dis.readUnsignedByte() != 'B' || dis.readUnsignedByte() != 'M')
+      throw new IOException("Not a bitmap file");
+    readInt(dis); // file size
+    readInt(dis); // reserved
+    int dataOffset = readInt(dis);
+
+    int infoSize = readInt(dis);
+    if (infoSize < 40)
+      return null; // OS/2 header
+    int width = readInt(dis);
+    int height = readInt(dis);
+    readShort(dis); // planes
+    int bitCount = readShort(dis);
+    int compression = readInt(dis);
+    skipFully(dis, 12); // image size, resolution
+    int colorsUsed = readInt(dis);
+    readInt(dis); // important colors
+    skipFully(dis, infoSize - 40);
+    int read = 14 + infoSize;
+
+    if (compression != BI_RGB
+        || (bitCount != 8 && bitCount != 24 && bitCount != 32))
+      return null;
+
+    // rows are stored bottom up unless the height is negative
+    boolean bottomUp = height > 0;
+    height = Math.abs(height);
+    if (width <= 0 || height == 0)
+      throw new IOException("Invalid bitmap size");
+
+    byte[] palette = null;
+    if (bitCount == 8) {
+      int colors = colorsUsed == 0 ? 256 : colorsUsed;
+      palette = new byte[colors * 4];
+      dis.readFully(palette);
+      read += palette.length;
+    }
+    if (dataOffset < read)
+      throw new IOException("Invalid bitmap data offset");
+    skipFully(dis, dataOffset - read);
+
+    int stride = ((width * bitCount + 31) / 32) * 4;
+    int outBytes = width * 3;
+    byte[] row = new byte[stride];
+    byte[] out = new byte[outBytes];
+    ByteBuffer scratch = ByteBuffer.allocateDirect(outBytes * height).order(
+        ByteOrder.nativeOrder());
+    for (int r = 0; r < height; r++) {
+      dis.readFully(row);
+      if (bitCount == 8) {
+        int colors = palette.length / 4;
+        for (int x = 0, o = 0; x < width; x++) {
+          int index = row[x] & 0xFF;
+          if (index >= colors)
+            throw new IOException("bitmap palette index out of range");
+          out[o++] = palette[index * 4 + 2];
+          out[o++] = palette[index * 4 + 1];
+          out[o++] = palette[index * 4];
+        }
+      } else {
+        int pixelBytes = bitCount / 8;
+        for (int x = 0, i = 0, o = 0; x < width; x++, i += pixelBytes) {
+          out[o++] = row[i + 2];
+          out[o++] = row[i + 1];
+          out[o++] = row[i];
+        }
+      }
+      // the row from the top of the picture
+      int y = bottomUp ? height - 1 - r : r;
+      scratch.position((flip ? height - 1 - y : y) * outBytes);
+      scratch.put(out, 0, outBytes);
+    }
+    scratch.rewind();
+
+    com.jme.image.Image textureImage = new com.jme.image.Image();
+    textureImage.setType(com.jme.image.Image.RGB888);
+    textureImage.setWidth(width);
+    textureImage.setHeight(height);
+    textureImage.setData(scratch);
+    return textureImage;
+  }
+
+  private static int readInt(DataInputStream dis) throws IOException {
+    return dis.readUnsignedByte() | dis.readUnsignedByte() << 8
+        | dis.readUnsignedByte() << 16 | dis.readUnsignedByte() << 24;
+  }
+
+  private static int readShort(DataInputStream dis) throws IOException {
+    return dis.readUnsignedByte() | dis.readUnsignedByte() << 8;
+  }
+
+  private static void skipFully(DataInputStream dis, int length)
+      throws IOException {
+    while (length > 0) {
+      int skipped = dis.skipBytes(length);
+      if (skipped <= 0)
+        throw new EOFException();
+      length -= skipped;
+    }
+  }
 }
@@ -35,6 +35,7 @@ import java.io.DataInput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import com.jme.image.Image;
 
@@ -240,11 +241,16 @@ public final class DDSLoader {
                 totalSize += sizes_[i];
             }
 
-            byte[] data = new byte[totalSize];
-            in_.readFully(data);
-
-            ByteBuffer buffer = ByteBuffer.allocateDirect(totalSize);
-            buffer.put(data);
+            // the whole mip chain goes to the direct buffer as it is, in
+            // pieces so it is never held on the heap in full
+            ByteBuffer buffer = ByteBuffer.allocateDirect(totalSize).order(
+                    ByteOrder.nativeOrder());
+            byte[] chunk = new byte[Math.min(totalSize, 8192)];
+            while (buffer.hasRemaining()) {
+                int length = Math.min(chunk.length, buffer.remaining());
+                in_.readFully(chunk, 0, length);
+                buffer.put(chunk, 0, length);
+            }
             buffer.rewind();
 
             return buffer;
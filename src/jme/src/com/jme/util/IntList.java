@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.util;
+
+/**
+ * <code>IntList</code> is a growable list of ints, as used for the triangle
+ * indices found by picking and collision. The array is kept when the list is
+ * cleared, so a list filled to the same size again does not allocate.
+ * 
+ * @version $Id$
+ */
+public final class IntList {
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private int[] values;
+
+    private int size;
+
+    /**
+     * Constructor instantiates a new, empty <code>IntList</code>.
+     */
+    public IntList() {
+        values = new int[DEFAULT_SIZE];
+    }
+
+    /**
+     * <code>add</code> appends a value to the end of the list.
+     * 
+     * @param value
+     *            the value to add.
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            int[] grown = new int[size << 1];
+            System.arraycopy(values, 0, grown, 0, size);
+            values = grown;
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * <code>get</code> returns the value at the given index.
+     * 
+     * @param index
+     *            the index of the value, less than <code>size()</code>.
+     * @return the value at the index.
+     */
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * @return the number of values in the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the list holds no values.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * <code>clear</code> removes all values, keeping the array.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return a new array holding the values of the list.
+     */
+    public int[] toArray() {
+        int[] array = new int[size];
+        System.arraycopy(values, 0, array, 0, size);
+        return array;
+    }
+}
@@ -77,13 +77,18 @@ public class LittleEndien implements DataInput{
     }
 
     public final void readFully(byte b[]) throws IOException{
-        if(b.length!=in.read(b, 0, b.length))
-            b=null;
+        readFully(b, 0, b.length);
     }
 
     public final void readFully(byte b[], int off, int len) throws IOException{
-        if(len!=in.read(b, off, len))
-            b=null;
+        // a single read may return less than asked for
+        while (len > 0) {
+            int read = in.read(b, off, len);
+            if (read < 0)
+                throw new EOFException();
+            off += read;
+            len -= read;
+        }
     }
 
     public final int skipBytes(int n) throws IOException{
@@ -31,21 +31,327 @@
  */
 package com.jme.util;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  *
- * <code>PNGLoader</code> is a stub to be filled in later with non-awt dependant
- * png loading code.
+ * <code>PNGLoader</code> is a png loader which is independent of AWT. It
+ * decodes non interlaced images with 8 bits per sample: grayscale, grayscale
+ * with alpha, truecolor, truecolor with alpha and palette images with up to
+ * 8 bits per index. The image data is inflated while it is read and every row
+ * is written to the direct buffer of the image with one bulk copy, so no
+ * intermediate image is built.
  *
  * @author
  * @version $Id: PNGLoader.java,v 1.1 2004/09/06 18:17:44 renanse Exp $
  */
 public final class PNGLoader {
+
+  private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+
+  private static final int IHDR = 0x49484452;
+  private static final int PLTE = 0x504C5445;
+  private static final int TRNS = 0x74524E53;
+  private static final int IDAT = 0x49444154;
+  private static final int IEND = 0x49454E44;
+
+  private static final int GRAY = 0;
+  private static final int TRUECOLOR = 2;
+  private static final int INDEXED = 3;
+  private static final int GRAY_ALPHA = 4;
+  private static final int TRUECOLOR_ALPHA = 6;
+
   private PNGLoader() {
   }
 
-  public static com.jme.image.Image loadImage(InputStream fis) {
-    return null;
+  /**
+   * <code>loadImage</code> loads a png with the first row of the picture
+   * last, which is the order OpenGL expects.
+   *
+   * @see #loadImage(InputStream, boolean)
+   */
+  public static com.jme.image.Image loadImage(InputStream fis) throws
+      IOException {
+    return loadImage(fis, true);
+  }
+
+  /**
+   * <code>loadImage</code> decodes a png.
+   *
+   * OUT: RGB888 or RGBA8888 jme.image.Image object
+   *
+   * @param fis
+   *            InputStream of the png. It is not closed.
+   * @param flip
+   *            if true the rows are stored bottom up, as OpenGL expects.
+   * @return <code>com.jme.image.Image</code> object that contains the image,
+   *         or null if the png uses a bit depth or interlacing this loader
+   *         does not support.
+   * @throws IOException
+   *             if the stream is not a valid png.
+   */
+  public static com.jme.image.Image loadImage(InputStream fis, boolean flip)
+      throws IOException {
+    DataInputStream dis = new DataInputStream(new BufferedInputStream(fis,
+        8192));
+    if (dis.readLong() != SIGNATURE)
+      throw new IOException("Not a png file");
+
+    if (dis.readInt() != 13 || dis.readInt() != IHDR)
+      throw new IOException("png header missing");
+    int width = dis.readInt();
+    int height = dis.readInt();
+    int bitDepth = dis.readUnsignedByte();
+    int colorType = dis.readUnsignedByte();
+    int compression = dis.readUnsignedByte();
+    int filter = dis.readUnsignedByte();
+    int interlace = dis.readUnsignedByte();
+    dis.readInt(); // crc
+    if (width <= 0 || height <= 0 || compression != 0 || filter != 0)
+      throw new IOException("Invalid png header");
+
+    int samples;
+    switch (colorType) {
+      case GRAY:
+        samples = 1;
+        break;
+      case TRUECOLOR:
+        samples = 3;
+        break;
+      case INDEXED:
+        samples = 1;
+        break;
+      case GRAY_ALPHA:
+        samples = 2;
+        break;
+      case TRUECOLOR_ALPHA:
+        samples = 4;
+        break;
+      default:
+        throw new IOException("Invalid png color type " + colorType);
+    }
+    if (interlace != 0
+        || (bitDepth != 8 && (colorType != INDEXED || bitDepth > 8)))
+      return null;
+
+    byte[] palette = null;
+    byte[] paletteAlpha = null;
+    int length = dis.readInt();
+    int type = dis.readInt();
+    while (type != IDAT) {
+      if (type == IEND)
+        throw new IOException("png without image data");
+      if (type == PLTE) {
+        palette = new byte[length];
+        dis.readFully(palette);
+      } else if (type == TRNS) {
+        if (colorType != INDEXED)
+          return null; // color keys are left to AWT
+        paletteAlpha = new byte[length];
+        dis.readFully(paletteAlpha);
+      } else {
+        skipFully(dis, length);
+      }
+      dis.readInt(); // crc
+      length = dis.readInt();
+      type = dis.readInt();
+    }
+    if (colorType == INDEXED && palette == null)
+      throw new IOException("png palette missing");
+
+    boolean hasAlpha = colorType == GRAY_ALPHA
+        || colorType == TRUECOLOR_ALPHA || paletteAlpha != null;
+    int components = hasAlpha ? 4 : 3;
+    int pixelBytes = Math.max(1, samples * bitDepth / 8);
+    int rowBytes = (width * samples * bitDepth + 7) / 8;
+    int outBytes = width * components;
+
+    Inflater inflater = new Inflater();
+    DataInputStream data = new DataInputStream(new InflaterInputStream(
+        new ImageDataStream(dis, length), inflater, 8192));
+    ByteBuffer scratch = ByteBuffer.allocateDirect(outBytes * height).order(
+        ByteOrder.nativeOrder());
+    byte[] previous = new byte[rowBytes];
+    byte[] current = new byte[rowBytes];
+    byte[] out = samples == components ? null : new byte[outBytes];
+    try {
+      for (int y = 0; y < height; y++) {
+        int rowFilter = data.readUnsignedByte();
+        data.readFully(current);
+        unfilter(rowFilter, current, previous, pixelBytes);
+
+        byte[] row = current;
+        if (out != null) {
+          expand(current, out, width, colorType, bitDepth, palette,
+              paletteAlpha);
+          row = out;
+        }
+        scratch.position((flip ? height - 1 - y : y) * outBytes);
+        scratch.put(row, 0, outBytes);
+
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+      }
+    } finally {
+      inflater.end();
+    }
+    scratch.rewind();
+
+    com.jme.image.Image textureImage = new com.jme.image.Image();
+    textureImage.setType(hasAlpha ? com.jme.image.Image.RGBA8888
+        : com.jme.image.Image.RGB888);
+    textureImage.setWidth(width);
+    textureImage.setHeight(height);
+    textureImage.setData(scratch);
+    return textureImage;
+  }
+
+  /**
+   * Reverses the filter of one row in place.
+   */
+  private static void unfilter(int filter, byte[] row, byte[] previous,
+      int bpp) throws IOException {
+    int length = row.length;
+    switch (filter) {
+      case 0:
+        break;
+      case 1: // sub
+        for (int i = bpp; i < length; i++)
+          row[i] += row[i - bpp];
+        break;
+      case 2: // up
+        for (int i = 0; i < length; i++)
+          row[i] += previous[i];
+        break;
+      case 3: // average
+        for (int i = 0; i < bpp; i++)
+          row[i] += (previous[i] & 0xFF) >> 1;
+        for (int i = bpp; i < length; i++)
+          row[i] += ((row[i - bpp] & 0xFF) + (previous[i] & 0xFF)) >> 1;
+        break;
+      case 4: // paeth
+        for (int i = 0; i < bpp; i++)
+          row[i] += previous[i];
+        for (int i = bpp; i < length; i++) {
+          int a = row[i - bpp] & 0xFF;
+          int b = previous[i] & 0xFF;
+          int c = previous[i - bpp] & 0xFF;
+          int pa = Math.abs(b - c);
+          int pb = Math.abs(a - c);
+          int pc = Math.abs(a + b - 2 * c);
+          row[i] += (pa <= pb && pa <= pc) ? a : (pb <= pc ? b : c);
+        }
+        break;
+      default:
+        throw new IOException("Invalid png row filter " + filter);
+    }
+  }
+
+  /**
+   * Expands a row of gray, gray with alpha or palette pixels to RGB or RGBA.
+   */
+  private static void expand(byte[] row, byte[] out, int width,
+      int colorType, int bitDepth, byte[] palette, byte[] paletteAlpha)
+      throws IOException {
+    int o = 0;
+    if (colorType == GRAY) {
+      for (int x = 0; x < width; x++) {
+        byte g = row[x];
+        out[o++] = g;
+        out[o++] = g;
+        out[o++] = g;
+      }
+    } else if (colorType == GRAY_ALPHA) {
+      for (int x = 0, i = 0; x < width; x++) {
+        byte g = row[i++];
+        out[o++] = g;
+        out[o++] = g;
+        out[o++] = g;
+        out[o++] = row[i++];
+      }
+    } else {
+      int perByte = 8 / bitDepth;
+      int mask = (1 << bitDepth) - 1;
+      int colors = palette.length / 3;
+      for (int x = 0; x < width; x++) {
+        int index = bitDepth == 8 ? row[x] & 0xFF : (row[x / perByte]
+            >> (8 - bitDepth * (x % perByte + 1))) & mask;
+        if (index >= colors)
+          throw new IOException("png palette index out of range");
+        out[o++] = palette[index * 3];
+        out[o++] = palette[index * 3 + 1];
+        out[o++] = palette[index * 3 + 2];
+        if (paletteAlpha != null)
+          out[o++] = index < paletteAlpha.length ? paletteAlpha[index]
+              : (byte) 0xFF;
+      }
+    }
+  }
+
+  private static void skipFully(DataInputStream dis, int length)
+      throws IOException {
+    while (length > 0) {
+      int skipped = dis.skipBytes(length);
+      if (skipped <= 0)
+        throw new EOFException();
+      length -= skipped;
+    }
+  }
+
+  /**
+   * <code>ImageDataStream</code> reads the data of consecutive IDAT chunks
+   * as one stream, so it can be inflated without joining the chunks first.
+   */
+  private static class ImageDataStream extends InputStream {
+    private final DataInputStream in;
+    private int remaining;
+
+    ImageDataStream(DataInputStream in, int length) {
+      this.in = in;
+      this.remaining = length;
+    }
+
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      while (remaining == 0) {
+        if (!nextChunk())
+          return -1;
+      }
+      if (remaining < 0)
+        return -1;
+      int read = in.read(b, off, Math.min(len, remaining));
+      if (read < 0)
+        throw new EOFException();
+      remaining -= read;
+      return read;
+    }
+
+    /**
+     * Moves to the next chunk.
+     * @return false if it is not an IDAT chunk.
+     */
+    private boolean nextChunk() throws IOException {
+      in.readInt(); // crc
+      int length = in.readInt();
+      if (in.readInt() != IDAT) {
+        remaining = -1;
+        return false;
+      }
+      remaining = length;
+      return true;
+    }
   }
 }
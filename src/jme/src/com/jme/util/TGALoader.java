@@ -36,36 +36,25 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-
-import java.awt.image.DirectColorModel;
+import java.nio.ByteOrder;
 
 /**
  *
- * <code>TextureManager</code> provides static methods for building a
- * <code>Texture</code> object. Typically, the information supplied is the
- * filename and the texture properties.
+ * <code>TGALoader</code> is a targa loader which is independent of AWT. It
+ * reads uncompressed and run length encoded truecolor targas with 24 or 32
+ * bits per pixel and writes every row to the direct buffer of the image with
+ * one bulk copy.
  *
  * @author Mark Powell
  * @version $Id: TGALoader.java,v 1.1 2004/09/06 18:17:44 renanse Exp $
  */
 public final class TGALoader {
 
-  // For TGA loading
-  private static short colorMapType;
-  private static short imageType;
-  private static int cMapStart;
-  private static int cMapLength;
-  private static short cMapDepth;
-  private static int xOffset;
-  private static int yOffset;
-  private static short imageDescriptor;
-  private static DirectColorModel cm;
-  private static int[] pixels;
+  private static final int TRUECOLOR = 2;
+  private static final int TRUECOLOR_RLE = 10;
 
-  private static short idLength;
-  private static int width;
-  private static int height;
-  private static short pixelDepth;
+  /** Set in the image descriptor if the first row is the top of the picture. */
+  private static final int TOP_ORIGIN = 0x20;
 
   private TGALoader() {
   }
@@ -79,87 +68,97 @@ public final class TGALoader {
    *
    * @return the flipped bit.
    */
-  private static short flipEndian(short signedShort) {
+  private static int flipEndian(short signedShort) {
     int input = signedShort & 0xFFFF;
-    return (short) (input << 8 | (input & 0xFF00) >>> 8);
+    return (input << 8 | (input & 0xFF00) >>> 8) & 0xFFFF;
+  }
+
+  /**
+   * <code>loadImage</code> loads a targa with the first row of the picture
+   * last, which is the order OpenGL expects.
+   *
+   * @see #loadImage(InputStream, boolean)
+   */
+  public static com.jme.image.Image loadImage(InputStream fis) throws
+      IOException {
+    return loadImage(fis, true);
   }
 
   /**
    * <code>loadImage</code> is a manual image loader which is entirely
    * independent of AWT.
    *
-   * OUT: RGB8888 or RGBA8888 jme.image.Image object
+   * OUT: RGB888 or RGBA8888 jme.image.Image object
    *
    * @param fis
-   *            InputStream of an uncompressed 24b RGB or 32b RGBA TGA
+   *            InputStream of a 24b RGB or 32b RGBA TGA, uncompressed or run
+   *            length encoded. It is not closed.
+   * @param flip
+   *            if true the rows are stored bottom up, as OpenGL expects.
    *
    * @return <code>com.jme.image.Image</code> object that contains the
    *         image, either as a RGB888 or RGBA8888
+   * @throws IOException
+   *             if the targa is not a truecolor targa or the stream ends
+   *             early.
    */
-  public static com.jme.image.Image loadImage(InputStream fis) throws
-      IOException {
-    byte red = 0;
-    byte green = 0;
-    byte blue = 0;
-    byte alpha = 0;
+  public static com.jme.image.Image loadImage(InputStream fis, boolean flip)
+      throws IOException {
     //open a stream to the file
-    BufferedInputStream bis = new BufferedInputStream(fis, 8192);
-    DataInputStream dis = new DataInputStream(bis);
+    DataInputStream dis = new DataInputStream(new BufferedInputStream(fis,
+        8192));
     //Read the TGA header
-    idLength = (short) dis.read();
-    colorMapType = (short) dis.read();
-    imageType = (short) dis.read();
-    cMapStart = flipEndian(dis.readShort());
-    cMapLength = flipEndian(dis.readShort());
-    cMapDepth = (short) dis.read();
-    xOffset = flipEndian(dis.readShort());
-    yOffset = flipEndian(dis.readShort());
-    width = flipEndian(dis.readShort());
-    height = flipEndian(dis.readShort());
-    pixelDepth = (short) dis.read();
-    imageDescriptor = (short) dis.read();
-    //Skip image ID
-    if (idLength > 0)
-        if(idLength != bis.skip(idLength))
-            throw new IOException();
-      // Allocate image data array
-    byte[] rawData = null;
-    if (pixelDepth == 32)
-      rawData = new byte[width * height * 4];
-    else
-      rawData = new byte[width * height * 3];
-    int rawDataIndex = 0;
-    // Faster than doing a 24-or-32 check on each individual pixel,
-    // just make a seperate loop for each.
-    if (pixelDepth == 24)
-      for (int i = 0; i <= (height - 1); i++) {
-        for (int j = 0; j < width; j++) {
-          blue = dis.readByte();
-          green = dis.readByte();
-          red = dis.readByte();
-          rawData[rawDataIndex++] = red;
-          rawData[rawDataIndex++] = green;
-          rawData[rawDataIndex++] = blue;
-        }
-      }
-    else if (pixelDepth == 32)
-      for (int i = 0; i <= (height - 1); i++) {
-        for (int j = 0; j < width; j++) {
-          blue = dis.readByte();
-          green = dis.readByte();
-          red = dis.readByte();
-          alpha = dis.readByte();
-          rawData[rawDataIndex++] = red;
-          rawData[rawDataIndex++] = green;
-          rawData[rawDataIndex++] = blue;
-          rawData[rawDataIndex++] = alpha;
-        }
+    int idLength = dis.readUnsignedByte();
+    int colorMapType = dis.readUnsignedByte();
+    int imageType = dis.readUnsignedByte();
+    dis.readShort(); // color map start
+    int cMapLength = flipEndian(dis.readShort());
+    int cMapDepth = dis.readUnsignedByte();
+    dis.readShort(); // x offset
+    dis.readShort(); // y offset
+    int width = flipEndian(dis.readShort());
+    int height = flipEndian(dis.readShort());
+    int pixelDepth = dis.readUnsignedByte();
+    int imageDescriptor = dis.readUnsignedByte();
+
+    if (imageType != TRUECOLOR && imageType != TRUECOLOR_RLE)
+      throw new IOException("Unsupported TGA image type " + imageType);
+    if (pixelDepth != 24 && pixelDepth != 32)
+      throw new IOException("Unsupported TGA pixel depth " + pixelDepth);
+    if (width == 0 || height == 0)
+      throw new IOException("Invalid TGA size");
+
+    //Skip image ID and a color map truecolor images do not use
+    int skip = idLength;
+    if (colorMapType != 0)
+      skip += cMapLength * ((cMapDepth + 7) / 8);
+    if (skip > 0)
+      dis.readFully(new byte[skip]);
+
+    int components = pixelDepth / 8;
+    int rowBytes = width * components;
+    boolean topOrigin = (imageDescriptor & TOP_ORIGIN) != 0;
+    ByteBuffer scratch = ByteBuffer.allocateDirect(rowBytes * height).order(
+        ByteOrder.nativeOrder());
+    byte[] row = new byte[rowBytes];
+    RunLength runs = imageType == TRUECOLOR_RLE ? new RunLength(components)
+        : null;
+    for (int r = 0; r < height; r++) {
+      if (runs != null)
+        runs.readRow(dis, row);
+      else
+        dis.readFully(row);
+      // BGR(A) to RGB(A)
+      for (int i = 0; i < rowBytes; i += components) {
+        byte blue = row[i];
+        row[i] = row[i + 2];
+        row[i + 2] = blue;
       }
-    fis.close();
-    //Get a pointer to the image memory
-    ByteBuffer scratch = ByteBuffer.allocateDirect(rawData.length);
-    scratch.clear();
-    scratch.put(rawData);
+      // the row from the top of the picture
+      int y = topOrigin ? r : height - 1 - r;
+      scratch.position((flip ? height - 1 - y : y) * rowBytes);
+      scratch.put(row);
+    }
     scratch.rewind();
     // Create the jme.image.Image object
     com.jme.image.Image textureImage = new com.jme.image.Image();
@@ -173,4 +172,42 @@ public final class TGALoader {
     return textureImage;
   }
 
+  /**
+   * <code>RunLength</code> decodes run length encoded pixels. Packets may
+   * continue across rows, so the state of the current packet is kept
+   * between rows.
+   */
+  private static class RunLength {
+    private final int components;
+    private final byte[] pixel;
+    private int count;
+    private boolean repeat;
+
+    RunLength(int components) {
+      this.components = components;
+      this.pixel = new byte[components];
+    }
+
+    void readRow(DataInputStream dis, byte[] row) throws IOException {
+      int i = 0;
+      while (i < row.length) {
+        if (count == 0) {
+          int header = dis.readUnsignedByte();
+          count = (header & 0x7F) + 1;
+          repeat = (header & 0x80) != 0;
+          if (repeat)
+            dis.readFully(pixel);
+        }
+        int n = Math.min(count, (row.length - i) / components);
+        if (repeat) {
+          for (int p = 0; p < n; p++, i += components)
+            System.arraycopy(pixel, 0, row, i, components);
+        } else {
+          dis.readFully(row, i, n * components);
+          i += n * components;
+        }
+        count -= n;
+      }
+    }
+  }
 }
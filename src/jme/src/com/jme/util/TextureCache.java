@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Level;
+
+import com.jme.image.Image;
+import com.jme.image.Texture;
+import com.jme.scene.state.TextureState;
+
+/**
+ * <code>TextureCache</code> holds the textures loaded by the
+ * <code>TextureManager</code>, keyed by <code>TextureKey</code>. Every
+ * entry keeps the texture it was uploaded with and the
+ * <code>TextureState</code> that owns its OpenGL id, and hands out clones of
+ * it. A clone counts as a reference to its entry until it is given back to
+ * <code>release</code> or garbage collected.
+ * <p>
+ * The cache has a budget in bytes of image data. When it is exceeded,
+ * entries without references are evicted, least recently used first, and
+ * their OpenGL textures deleted. Entries still referenced are never evicted,
+ * so the cache may stay above its budget while they are in use.
+ * <p>
+ * Evicting deletes OpenGL textures, so the cache must only be used from the
+ * thread that owns the OpenGL context.
+ * 
+ * @version $Id$
+ */
+public final class TextureCache {
+
+    /** Budget of a new cache, 64 MB. */
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    /** Entries by key, least recently used first. */
+    private final LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+
+    /** Entries by the image they share with their clones. */
+    private final IdentityHashMap byImage = new IdentityHashMap();
+
+    /** Clones that were garbage collected without being released. */
+    private final ReferenceQueue collected = new ReferenceQueue();
+
+    private long budget = DEFAULT_BUDGET;
+
+    private long bytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    TextureCache() {
+    }
+
+    /**
+     * <code>get</code> returns a new clone of the texture cached for the
+     * given key and counts it as a reference.
+     * 
+     * @return the clone, or null if there is no texture for the key.
+     */
+    Texture get(TextureKey key) {
+        pollCollected();
+        Entry entry = (Entry) entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.createHandle(collected);
+    }
+
+    /**
+     * <code>put</code> caches a texture that was just uploaded and evicts
+     * unreferenced entries if the cache is over its budget.
+     * 
+     * @param texture
+     *            the texture as uploaded. It stays with the cache, callers
+     *            use the returned clone.
+     * @param state
+     *            the state that uploaded it. Its first unit is deleted when
+     *            the entry is evicted.
+     * @return a clone of the texture, counted as a reference.
+     */
+    Texture put(TextureKey key, Texture texture, TextureState state) {
+        pollCollected();
+        Entry entry = new Entry(key, texture, state);
+        Entry previous = (Entry) entries.put(key, entry);
+        if (previous != null) {
+            forget(previous);
+        }
+        if (texture.getImage() != null) {
+            byImage.put(texture.getImage(), entry);
+        }
+        bytes += entry.bytes;
+        Texture handle = entry.createHandle(collected);
+        evict();
+        return handle;
+    }
+
+    /**
+     * <code>release</code> gives back a texture returned by the cache. Once
+     * all clones of an entry are released, it may be evicted.
+     * 
+     * @return false if the texture is not a clone handed out by this cache,
+     *         or was already released.
+     */
+    boolean release(Texture texture) {
+        pollCollected();
+        Entry entry = texture.getImage() != null ? (Entry) byImage
+                .get(texture.getImage()) : null;
+        if (entry == null || !entry.release(texture)) {
+            return false;
+        }
+        evict();
+        return true;
+    }
+
+    /**
+     * <code>remove</code> drops the entry of a key without deleting its
+     * OpenGL texture, which its clones may still use.
+     * 
+     * @return true if there was an entry for the key.
+     */
+    boolean remove(TextureKey key) {
+        Entry entry = (Entry) entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        forget(entry);
+        return true;
+    }
+
+    /**
+     * <code>clear</code> drops all entries without deleting their OpenGL
+     * textures.
+     */
+    void clear() {
+        entries.clear();
+        byImage.clear();
+        bytes = 0;
+        while (collected.poll() != null)
+            ;
+    }
+
+    private void forget(Entry entry) {
+        bytes -= entry.bytes;
+        if (entry.texture.getImage() != null) {
+            byImage.remove(entry.texture.getImage());
+        }
+        entry.clearHandles();
+    }
+
+    /**
+     * Counts the clones collected since the last call as released.
+     */
+    private void pollCollected() {
+        Handle handle;
+        while ((handle = (Handle) collected.poll()) != null) {
+            handle.entry.handles.remove(handle);
+        }
+    }
+
+    /**
+     * Evicts unreferenced entries, least recently used first, until the cache
+     * is within its budget.
+     */
+    private void evict() {
+        if (bytes <= budget) {
+            return;
+        }
+        pollCollected();
+        Iterator it = entries.values().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Entry entry = (Entry) it.next();
+            if (!entry.handles.isEmpty()) {
+                continue;
+            }
+            it.remove();
+            forget(entry);
+            entry.state.delete(0);
+            evictions++;
+            LoggingSystem.getLogger().log(Level.INFO,
+                    "Evicted texture " + entry.texture.getImageLocation());
+        }
+    }
+
+    /**
+     * <code>setBudget</code> sets the bytes of image data the cache keeps
+     * without references and evicts entries if it is now over the budget.
+     * 
+     * @param budget
+     *            the budget in bytes, 0 to keep only textures in use.
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the bytes of image data of all entries, referenced or not.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of cached textures.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of cached textures with clones in use.
+     */
+    public int getReferencedSize() {
+        pollCollected();
+        int referenced = 0;
+        for (Iterator it = entries.values().iterator(); it.hasNext();) {
+            if (!((Entry) it.next()).handles.isEmpty()) {
+                referenced++;
+            }
+        }
+        return referenced;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public String toString() {
+        return "TextureCache: " + getSize() + " textures (" + getBytes()
+                + " of " + getBudget() + " bytes), " + getHits() + " hits, "
+                + getMisses() + " misses, " + getEvictions() + " evictions";
+    }
+
+    /**
+     * A cached texture and the clones in use.
+     */
+    private static class Entry {
+        final TextureKey key;
+
+        final Texture texture;
+
+        final TextureState state;
+
+        final long bytes;
+
+        final List handles = new ArrayList(2);
+
+        Entry(TextureKey key, Texture texture, TextureState state) {
+            this.key = key;
+            this.texture = texture;
+            this.state = state;
+            Image image = texture.getImage();
+            this.bytes = image != null && image.getData() != null ? image
+                    .getData().capacity() : 0;
+        }
+
+        Texture createHandle(ReferenceQueue queue) {
+            Texture clone = texture.createSimpleClone();
+            handles.add(new Handle(clone, this, queue));
+            return clone;
+        }
+
+        boolean release(Texture clone) {
+            for (int i = handles.size() - 1; i >= 0; i--) {
+                Handle handle = (Handle) handles.get(i);
+                if (handle.get() == clone) {
+                    handle.clear();
+                    handles.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void clearHandles() {
+            for (int i = 0; i < handles.size(); i++) {
+                ((Handle) handles.get(i)).clear();
+            }
+            handles.clear();
+        }
+    }
+
+    /**
+     * Tracks a clone of an entry without keeping it alive.
+     */
+    private static class Handle extends WeakReference {
+        final Entry entry;
+
+        Handle(Texture clone, Entry entry, ReferenceQueue queue) {
+            super(clone, queue);
+            this.entry = entry;
+        }
+    }
+}
@@ -36,21 +36,18 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.PixelGrabber;
-import java.io.DataInputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.logging.Level;
 
 import javax.imageio.ImageIO;
 
-import com.jme.image.BitmapHeader;
 import com.jme.image.Image;
 import com.jme.image.Texture;
 import com.jme.scene.state.TextureState;
@@ -68,7 +65,13 @@ import com.jme.system.DisplaySystem;
  */
 final public class TextureManager {
 
-    private static HashMap m_tCache = new HashMap();
+    private static final TextureCache m_tCache = new TextureCache();
+
+    /**
+     * Images decoded ahead of time by <code>preloadImage</code>, keyed by
+     * url and flip, taken by the next <code>loadTexture</code> of that url.
+     */
+    private static final HashMap m_preloaded = new HashMap();
     public static boolean COMPRESS_BY_DEFAULT = true;
     
     private static int maxTextureSize = -1;
@@ -194,41 +197,24 @@ final public class TextureManager {
 
         TextureKey tkey = new TextureKey(file, minFilter, magFilter,
                 anisoLevel, flipped);
-        Texture texture = (Texture) m_tCache.get(tkey);
+        Texture texture = m_tCache.get(tkey);
+        com.jme.image.Image imageData = takePreloadedImage(file, flipped);
 
         if (texture != null) {
             // Uncomment if you want to see when this occurs.
             // System.err.println("******** REUSING TEXTURE ********");
-            Texture tClone = texture.createSimpleClone();
-            return tClone;
+            return texture;
         }
 
-        // TODO: Some types currently require making a java.awt.Image object as
-        // an intermediate step. Rewrite each type to avoid AWT at all costs.
-        com.jme.image.Image imageData = null;
-        try {
-            /*
-            String fileExt = fileName.substring(fileName.lastIndexOf('.'));
-            if (".TGA".equalsIgnoreCase(fileExt)) { // TGA, direct to imageData
-                imageData = TGALoader.loadImage(file.openStream());
-            } else if (".DDS".equalsIgnoreCase(fileExt)) { // DDS, direct to
-                                                            // imageData
-                imageData = DDSLoader.loadImage(file.openStream());
-            } else if (".BMP".equalsIgnoreCase(fileExt)) { // BMP, awtImage to
-                                                            // imageData
-                java.awt.Image image = loadBMPImage(file.openStream());
-                imageData = loadImage(image, flipped);
-            } else { 
-                */
-                // Anything else
-                java.awt.Image image = ImageIO.read(file);
-                imageData = loadImage(image, flipped);
-           // }
-        } catch (IOException e) {
-            // e.printStackTrace();
-            LoggingSystem.getLogger().log(Level.WARNING,
-                    "Could not load: " + file + " (" + e.getClass() + ")");
-            return null;
+        if (imageData == null) {
+            try {
+                imageData = decodeImage(file, flipped);
+            } catch (IOException e) {
+                // e.printStackTrace();
+                LoggingSystem.getLogger().log(Level.WARNING,
+                        "Could not load: " + file + " (" + e.getClass() + ")");
+                return null;
+            }
         }
         if (null == imageData) {
             LoggingSystem.getLogger().log(Level.WARNING,
@@ -242,8 +228,10 @@ final public class TextureManager {
         TextureState state = DisplaySystem.getDisplaySystem().getRenderer()
                 .createTextureState();
 
-        // we've already guessed the format. override if given.
-        if (imageType != Image.GUESS_FORMAT_NO_S3TC
+        // we've already guessed the format. override if given, unless the
+        // file itself was compressed.
+        if (!imageData.isCompressedType()
+                && imageType != Image.GUESS_FORMAT_NO_S3TC
                 && imageType != Image.GUESS_FORMAT)
             imageData.setType(imageType);
         else if (imageType == Image.GUESS_FORMAT && state.isS3TCAvailable()) {
@@ -267,8 +255,126 @@ final public class TextureManager {
         state.setTexture(texture);
         state.apply();
 
-        m_tCache.put(tkey, texture);
-        return texture;
+        // the cache keeps the uploaded texture, callers get a clone
+        return m_tCache.put(tkey, texture, state);
+    }
+
+    /**
+     * <code>preloadImage</code> decodes the image at the given url so that a
+     * later <code>loadTexture</code> of the same url and flip only has to
+     * upload it. Unlike <code>loadTexture</code> this needs no OpenGL context
+     * and may be called from any thread, e.g. to decode the textures of a
+     * level in parallel while the GL thread is busy.
+     * 
+     * @param file
+     *            the url of the texture image.
+     * @param flipped
+     *            If true, the images Y values are flipped.
+     * @return false if the image could not be decoded.
+     */
+    public static boolean preloadImage(URL file, boolean flipped) {
+        if (file == null)
+            return false;
+        com.jme.image.Image imageData;
+        try {
+            imageData = decodeImage(file, flipped);
+            if (imageData == null)
+                return false;
+        } catch (IOException e) {
+            LoggingSystem.getLogger().log(Level.WARNING,
+                    "Could not preload: " + file + " (" + e.getClass() + ")");
+            return false;
+        }
+        synchronized (m_preloaded) {
+            m_preloaded.put(preloadKey(file, flipped), imageData);
+        }
+        return true;
+    }
+
+    /**
+     * <code>decodeImage</code> reads TGA, DDS, PNG and BMP files with the
+     * loaders of this package, which write the rows straight to the direct
+     * buffer of the image. DDS files are used as they are, including their
+     * mip maps. Other formats, and the variants of PNG and BMP the loaders do
+     * not support, are read with ImageIO. Images that are not a power of two
+     * or too large for the card are scaled with AWT.
+     * 
+     * @return the image, or null if there is no reader for it.
+     */
+    private static com.jme.image.Image decodeImage(URL file, boolean flipped)
+            throws IOException {
+        String fileName = file.getFile();
+        String fileExt = fileName.substring(fileName.lastIndexOf('.') + 1);
+        com.jme.image.Image imageData = null;
+        if ("TGA".equalsIgnoreCase(fileExt) || "DDS".equalsIgnoreCase(fileExt)
+                || "PNG".equalsIgnoreCase(fileExt)
+                || "BMP".equalsIgnoreCase(fileExt)) {
+            InputStream in = new BufferedInputStream(file.openStream(), 8192);
+            try {
+                if ("TGA".equalsIgnoreCase(fileExt)) {
+                    imageData = TGALoader.loadImage(in, flipped);
+                } else if ("DDS".equalsIgnoreCase(fileExt)) {
+                    return DDSLoader.loadImage(in);
+                } else if ("PNG".equalsIgnoreCase(fileExt)) {
+                    imageData = PNGLoader.loadImage(in, flipped);
+                } else {
+                    imageData = BMPLoader.loadImage(in, flipped);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        if (imageData != null) {
+            int limit = getTextureSizeLimit();
+            int width = imageData.getWidth();
+            int height = imageData.getHeight();
+            if (width == nearestPower(width) && height == nearestPower(height)
+                    && width <= limit && height <= limit)
+                return imageData;
+            return loadImage(toAWTImage(imageData, flipped), flipped);
+        }
+
+        java.awt.Image image = ImageIO.read(file);
+        if (image == null)
+            return null;
+        return loadImage(image, flipped);
+    }
+
+    /**
+     * Copies a decoded RGB888 or RGBA8888 image to a
+     * <code>BufferedImage</code>, so it can be scaled.
+     */
+    private static BufferedImage toAWTImage(com.jme.image.Image imageData,
+            boolean flipped) {
+        boolean hasAlpha = imageData.getType() == com.jme.image.Image.RGBA8888;
+        int width = imageData.getWidth();
+        int height = imageData.getHeight();
+        int rowBytes = width * (hasAlpha ? 4 : 3);
+        BufferedImage image = new BufferedImage(width, height,
+                hasAlpha ? BufferedImage.TYPE_4BYTE_ABGR
+                        : BufferedImage.TYPE_3BYTE_BGR);
+        ByteBuffer data = imageData.getData();
+        byte[] row = new byte[rowBytes];
+        for (int y = 0; y < height; y++) {
+            data.position((flipped ? height - 1 - y : y) * rowBytes);
+            data.get(row);
+            image.getRaster().setDataElements(0, y, width, 1, row);
+        }
+        data.rewind();
+        return image;
+    }
+
+    private static com.jme.image.Image takePreloadedImage(URL file, boolean flipped) {
+        synchronized (m_preloaded) {
+            if (m_preloaded.isEmpty())
+                return null;
+            return (com.jme.image.Image) m_preloaded.remove(preloadKey(file, flipped));
+        }
+    }
+
+    private static String preloadKey(URL file, boolean flipped) {
+        return (flipped ? "f:" : "n:") + file;
     }
 
     public static com.jme.image.Texture loadTexture(java.awt.Image image,
@@ -332,13 +438,12 @@ final public class TextureManager {
         maxTextureSize=max;
     }
 
-    public static com.jme.image.Image loadImage(java.awt.Image image, boolean flipImage)
+    /**
+     * @return the largest texture size to load images with, 128 if the size
+     *         supported by the card was not set.
+     */
+    private static int getTextureSizeLimit()
     {
-        boolean hasAlpha = hasAlpha(image);
-        int width = image.getWidth(null);
-        int height = image.getHeight(null);
-
-        // scale textures to it to max supported size and make it power of 2
         int maxSize = getMaxSupportedTxtSize();
         if(maxSize==-1)
         {
@@ -346,6 +451,17 @@ final public class TextureManager {
             maxSize=128;
         }
         // System.out.println("max texture size: "+maxSize);
+        return maxSize;
+    }
+
+    public static com.jme.image.Image loadImage(java.awt.Image image, boolean flipImage)
+    {
+        boolean hasAlpha = hasAlpha(image);
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+
+        // scale textures to it to max supported size and make it power of 2
+        int maxSize = getTextureSizeLimit();
 
         // resize the image if the actual texture size is larger than the hw support
         height = nearestPower(height);
@@ -396,14 +512,14 @@ final public class TextureManager {
         ByteBuffer scratch = ByteBuffer.allocateDirect(components * tex.getWidth() * tex.getHeight()).order(
                 ByteOrder.nativeOrder());
 
-        // flip horizontally
-
+        // flip vertically, one row at a time
+        int rowBytes = newWidth * components;
         for (int y = 0; y < newHeight; y++)
-            for (int x = 0; x < newWidth * components; x++)
-            {
-                scratch.put((x + ((newHeight - 1) - y) * newWidth * components), data[(x + y * (newWidth)
-                        * components)]);
-            }
+        {
+            scratch.position((flipImage ? newHeight - 1 - y : y) * rowBytes);
+            scratch.put(data, y * rowBytes, rowBytes);
+        }
+        scratch.rewind();
 
         data = null;
 
@@ -417,39 +533,6 @@ final public class TextureManager {
         return textureImage;
     }
    
-    /**
-     * <code>loadBMPImage</code> because bitmap is not directly supported by Java, we must load it manually. The
-     * requires opening a stream to the file and reading in each byte. After the image data is read, it is used to
-     * create a new <code>Image</code> object. This object is returned to be used for normal use.
-     * 
-     * @param fs
-     *            The bitmap file stream.
-     * @return <code>Image</code> object that contains the bitmap information.
-     */
-    private static java.awt.Image loadBMPImage(InputStream fs) {
-        try {
-            DataInputStream dis = new DataInputStream(fs);
-            BitmapHeader bh = new BitmapHeader();
-            byte[] data = new byte[dis.available()];
-            dis.readFully(data);
-            dis.close();
-            bh.read(data);
-            if (bh.bitcount == 24) {
-                return (bh.readMap24(data));
-            }
-            if (bh.bitcount == 32) {
-                return (bh.readMap32(data));
-            }
-            if (bh.bitcount == 8) {
-                return (bh.readMap8(data));
-            }
-        } catch (IOException e) {
-            LoggingSystem.getLogger().log(Level.WARNING,
-                    "Error while loading bitmap texture.");
-        }
-        return null;
-    }
-
     /**
      * <code>hasAlpha</code> returns true if the specified image has
      * transparent pixels
@@ -481,26 +564,42 @@ final public class TextureManager {
         return false;
     }
 
+    /**
+     * <code>releaseTexture</code> tells the cache that a texture returned by
+     * <code>loadTexture</code> is no longer used. Once all textures loaded
+     * from the same key are released or garbage collected, the cache may
+     * evict the key and delete its OpenGL texture.
+     * 
+     * @param texture
+     *            a texture returned by <code>loadTexture</code>.
+     * @return false if the texture was not loaded through the cache or was
+     *         already released.
+     */
     public static boolean releaseTexture(Texture texture) {
-        Collection c = m_tCache.keySet();
-        Iterator it = c.iterator();
-        TextureKey key;
-        Texture next;
-        while (it.hasNext()) {
-            key = (TextureKey) it.next();
-            next = (Texture) m_tCache.get(key);
-            if (texture.equals(next)) {
-                return releaseTexture(key);
-            }
-        }
-        return false;
+        return m_tCache.release(texture);
     }
 
+    /**
+     * <code>releaseTexture</code> removes the given key from the cache
+     * without deleting its OpenGL texture, so the next
+     * <code>loadTexture</code> of it loads the image again.
+     */
     public static boolean releaseTexture(TextureKey tKey) {
-        return m_tCache.remove(tKey) != null;
+        return m_tCache.remove(tKey);
+    }
+
+    /**
+     * <code>getTextureCache</code> returns the cache of loaded textures, to
+     * set its budget or read its statistics.
+     */
+    public static TextureCache getTextureCache() {
+        return m_tCache;
     }
 
     public static void clearCache() {
         m_tCache.clear();
+        synchronized (m_preloaded) {
+            m_preloaded.clear();
+        }
     }
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.util.geom;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import com.jme.math.Vector2f;
+import com.jme.math.Vector3f;
+import com.jme.renderer.ColorRGBA;
+
+/**
+ * <code>BufferUtils</code> is a helper class for reading and writing vertex
+ * attributes held in direct <code>FloatBuffer</code>s. All accessors use
+ * absolute indexing, so the buffer's position and limit are never changed.
+ */
+public final class BufferUtils {
+
+    private BufferUtils() {
+    }
+
+    /**
+     * Creates a new direct, native ordered <code>FloatBuffer</code> with room
+     * for the given number of floats.
+     * 
+     * @param size
+     *            the number of floats the buffer should hold.
+     * @return the new buffer.
+     */
+    public static FloatBuffer createFloatBuffer(int size) {
+        FloatBuffer buf = ByteBuffer.allocateDirect(4 * size).order(
+                ByteOrder.nativeOrder()).asFloatBuffer();
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Creates a direct copy of the given buffer's contents up to its limit.
+     * 
+     * @param buf
+     *            the buffer to copy. May be null.
+     * @return the copy, or null if <code>buf</code> was null.
+     */
+    public static FloatBuffer clone(FloatBuffer buf) {
+        if (buf == null) {
+            return null;
+        }
+        FloatBuffer copy = createFloatBuffer(buf.limit());
+        FloatBuffer src = buf.duplicate();
+        src.rewind();
+        copy.put(src);
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Reads the vector at the given vertex index into <code>store</code>.
+     * 
+     * @param store
+     *            the vector to fill.
+     * @param buf
+     *            the buffer holding three floats per vertex.
+     * @param index
+     *            the vertex index.
+     * @return store
+     */
+    public static Vector3f populateFromBuffer(Vector3f store, FloatBuffer buf,
+            int index) {
+        int i = index * 3;
+        store.x = buf.get(i);
+        store.y = buf.get(i + 1);
+        store.z = buf.get(i + 2);
+        return store;
+    }
+
+    /**
+     * Reads the vector at the given vertex index into <code>store</code>.
+     * 
+     * @param store
+     *            the vector to fill.
+     * @param buf
+     *            the buffer holding two floats per vertex.
+     * @param index
+     *            the vertex index.
+     * @return store
+     */
+    public static Vector2f populateFromBuffer(Vector2f store, FloatBuffer buf,
+            int index) {
+        int i = index * 2;
+        store.x = buf.get(i);
+        store.y = buf.get(i + 1);
+        return store;
+    }
+
+    /**
+     * Reads the color at the given vertex index into <code>store</code>.
+     * 
+     * @param store
+     *            the color to fill.
+     * @param buf
+     *            the buffer holding four floats per vertex.
+     * @param index
+     *            the vertex index.
+     * @return store
+     */
+    public static ColorRGBA populateFromBuffer(ColorRGBA store,
+            FloatBuffer buf, int index) {
+        int i = index * 4;
+        store.r = buf.get(i);
+        store.g = buf.get(i + 1);
+        store.b = buf.get(i + 2);
+        store.a = buf.get(i + 3);
+        return store;
+    }
+
+    /**
+     * Writes a vector into the buffer at the given vertex index.
+     * 
+     * @param vector
+     *            the value to write.
+     * @param buf
+     *            the buffer holding three floats per vertex.
+     * @param index
+     *            the vertex index.
+     */
+    public static void setInBuffer(Vector3f vector, FloatBuffer buf, int index) {
+        int i = index * 3;
+        buf.put(i, vector.x);
+        buf.put(i + 1, vector.y);
+        buf.put(i + 2, vector.z);
+    }
+
+    /**
+     * Writes a texture coordinate into the buffer at the given vertex index.
+     * 
+     * @param vector
+     *            the value to write.
+     * @param buf
+     *            the buffer holding two floats per vertex.
+     * @param index
+     *            the vertex index.
+     */
+    public static void setInBuffer(Vector2f vector, FloatBuffer buf, int index) {
+        int i = index * 2;
+        buf.put(i, vector.x);
+        buf.put(i + 1, vector.y);
+    }
+
+    /**
+     * Writes a color into the buffer at the given vertex index.
+     * 
+     * @param color
+     *            the value to write.
+     * @param buf
+     *            the buffer holding four floats per vertex.
+     * @param index
+     *            the vertex index.
+     */
+    public static void setInBuffer(ColorRGBA color, FloatBuffer buf, int index) {
+        int i = index * 4;
+        buf.put(i, color.r);
+        buf.put(i + 1, color.g);
+        buf.put(i + 2, color.b);
+        buf.put(i + 3, color.a);
+    }
+
+    /**
+     * Builds a new <code>Vector3f</code> array from the first
+     * <code>quantity</code> vertices of the buffer.
+     * 
+     * @param buf
+     *            the buffer holding three floats per vertex. May be null.
+     * @param quantity
+     *            the number of vertices to read.
+     * @return the new array, or null if <code>buf</code> was null.
+     */
+    public static Vector3f[] getVector3Array(FloatBuffer buf, int quantity) {
+        if (buf == null) {
+            return null;
+        }
+        Vector3f[] array = new Vector3f[quantity];
+        for (int i = 0; i < quantity; i++) {
+            array[i] = populateFromBuffer(new Vector3f(), buf, i);
+        }
+        return array;
+    }
+
+    /**
+     * Builds a new <code>Vector2f</code> array from the first
+     * <code>quantity</code> vertices of the buffer.
+     * 
+     * @param buf
+     *            the buffer holding two floats per vertex. May be null.
+     * @param quantity
+     *            the number of vertices to read.
+     * @return the new array, or null if <code>buf</code> was null.
+     */
+    public static Vector2f[] getVector2Array(FloatBuffer buf, int quantity) {
+        if (buf == null) {
+            return null;
+        }
+        Vector2f[] array = new Vector2f[quantity];
+        for (int i = 0; i < quantity; i++) {
+            array[i] = populateFromBuffer(new Vector2f(), buf, i);
+        }
+        return array;
+    }
+
+    /**
+     * Builds a new <code>ColorRGBA</code> array from the first
+     * <code>quantity</code> vertices of the buffer.
+     * 
+     * @param buf
+     *            the buffer holding four floats per vertex. May be null.
+     * @param quantity
+     *            the number of vertices to read.
+     * @return the new array, or null if <code>buf</code> was null.
+     */
+    public static ColorRGBA[] getColorArray(FloatBuffer buf, int quantity) {
+        if (buf == null) {
+            return null;
+        }
+        ColorRGBA[] array = new ColorRGBA[quantity];
+        for (int i = 0; i < quantity; i++) {
+            array[i] = populateFromBuffer(new ColorRGBA(), buf, i);
+        }
+        return array;
+    }
+}
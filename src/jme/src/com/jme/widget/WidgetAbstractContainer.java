@@ -1346,6 +1346,16 @@ public abstract class WidgetAbstractContainer extends Node implements Widget {
 				super.getWorldBound()));
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see jme.scene.Spatial#isWorldBoundCurrent()
+	 */
+	@Override
+    protected boolean isWorldBoundCurrent() {
+		return false;
+	}
+
 	/*
 	 * ************************************************************* Spatial
 	 * implementation - end
@@ -755,6 +755,14 @@ public abstract class WidgetAbstractImpl extends Spatial implements Widget {
 
     }
 
+    /**
+     * @see com.jme.scene.Spatial#isWorldBoundCurrent()
+     */
+    @Override
+    protected boolean isWorldBoundCurrent() {
+        return false;
+    }
+
     protected boolean isCulled(WidgetBoundingRectangle bound) {
         float w = viewRectangle.getWidth();
         float h = viewRectangle.getHeight();
@@ -31,6 +31,8 @@
  */
 package com.jme.widget.bounds;
 
+import java.nio.FloatBuffer;
+
 import com.jme.bounding.BoundingBox;
 import com.jme.bounding.BoundingSphere;
 import com.jme.bounding.BoundingVolume;
@@ -624,6 +626,14 @@ public class WidgetBoundingRectangle implements BoundingVolume {
 
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.jme.bounding.BoundingVolume#computeFromPoints(java.nio.FloatBuffer)
+	 */
+	public void computeFromPoints(FloatBuffer points) {
+	}
+
 	public int getCheckPlane(int index) {
 		return checkPlanes[index];
 	}
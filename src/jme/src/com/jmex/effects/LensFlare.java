@@ -38,12 +38,15 @@ import com.jme.system.DisplaySystem;
 import com.jme.scene.*;
 import com.jme.system.JmeException;
 import com.jme.intersection.*;
+import com.jme.util.IntList;
 
 import java.util.ArrayList;
 
 /**
- * <code>LensFlare</code> Lens flare effect for jME. Notice that currently, it
- * doesn't do occlusion culling.
+ * <code>LensFlare</code> Lens flare effect for jME. If a root node is set, the
+ * flare picks the scene to find out how much of it is occluded. Otherwise it
+ * is drawn at the intensity set by the application, which can fade it by its
+ * own occlusion test; at intensity 0 it is not drawn at all.
  * 
  * The easiest way to use this class is to use the LensFlareFactory to create
  * your LensFlare and then attach it as a child to a lightnode. Optionally you
@@ -178,6 +181,10 @@ public class LensFlare extends Node {
             return;
         } else
             setForceCull(false);
+        if (rootNode == null && intensity <= 0) {
+            // faded out by the application
+            return;
+        }
         // define a line from light src to one opposite across the center point
         // draw main flare at src point
 
@@ -370,7 +377,7 @@ public class LensFlare extends Node {
 
     private Vector2f screenPos = new Vector2f();
 
-    private ArrayList pickTriangles = new ArrayList();
+    private IntList pickTriangles = new IntList();
 
     private ArrayList pickBoundsGeoms = new ArrayList();
 
@@ -31,7 +31,11 @@
 package com.jmex.effects;
 
 import java.io.Serializable;
+import java.nio.FloatBuffer;
 
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingSphere;
+import com.jme.bounding.BoundingVolume;
 import com.jme.math.FastMath;
 import com.jme.math.Line;
 import com.jme.math.Matrix3f;
@@ -46,6 +50,7 @@ import com.jme.scene.Geometry;
 import com.jme.scene.TriMesh;
 import com.jme.scene.state.LightState;
 import com.jme.scene.state.TextureState;
+import com.jme.util.geom.BufferUtils;
 
 /**
  * <code>ParticleManager</code>
@@ -59,6 +64,15 @@ import com.jme.scene.state.TextureState;
  *
  * See the method comments for more usage information.
  *
+ * The particles are kept as a structure of arrays: one float array per
+ * coordinate of position and velocity and one each for age, life span, size
+ * and spin. <code>update</code> first integrates all positions in tight loops
+ * over these arrays, then ages, respawns and colours the particles while
+ * tracking the bounds of the living ones, so the model bound is set without
+ * another pass over the vertices. <code>draw</code> writes the billboarded
+ * quads and their colours straight into the vertex and colour buffers of the
+ * TriMesh. {@link Particle} is only a view of one index of these arrays.
+ *
  * note: The idea of using one TriMesh to control particles and much of the code
  *       related to picking starting angles was kindly donated by Java Cool Dude.
  *
@@ -95,9 +109,28 @@ public class ParticleManager extends Controller implements Serializable {
     private Vector3f originCenter;
     private Vector3f invScale; 
     private Matrix3f rotMatrix;
+
+    // particle state, one entry per particle
+    private float[] positionX, positionY, positionZ;
+    private float[] velocityX, velocityY, velocityZ;
+    private float[] age, lifeSpan, size, spinAngle;
+    private byte[] status;
+    // current and start colour and change to the end colour, 4 floats per
+    // particle
+    private float[] currentColors, startColors, colorChanges;
+
+    // quad vertices and colours, 12 and 16 floats per particle
+    private float[] vertices, colors;
+    private transient FloatBuffer vertexBuffer, colorBuffer;
+
+    // bounds of the living particles after the last update
+    private float minX, minY, minZ, maxX, maxY, maxZ, maxSize;
+    private boolean anyAlive;
+
+    // state of the generator for the random drift, never 0
+    private int driftSeed;
+
     private Particle particles[];
-    private Vector3f geometryCoordinates[];
-    private ColorRGBA appearanceColors[];
     private ColorRGBA startColor;
     private ColorRGBA endColor;
     private float releaseVariance;
@@ -166,8 +199,25 @@ public class ParticleManager extends Controller implements Serializable {
         controlFlow = false;
         precision = .01f; // 10ms
         
-        geometryCoordinates = new Vector3f[noParticles << 2];
+        positionX = new float[noParticles];
+        positionY = new float[noParticles];
+        positionZ = new float[noParticles];
+        velocityX = new float[noParticles];
+        velocityY = new float[noParticles];
+        velocityZ = new float[noParticles];
+        age = new float[noParticles];
+        lifeSpan = new float[noParticles];
+        size = new float[noParticles];
+        spinAngle = new float[noParticles];
+        status = new byte[noParticles];
+        currentColors = new float[noParticles << 2];
+        startColors = new float[noParticles << 2];
+        colorChanges = new float[noParticles << 2];
+        vertices = new float[noParticles * 12];
+        colors = new float[noParticles << 4];
+
         int[] indices = new int[noParticles * 6];
+        float[] texCoords = new float[noParticles << 3];
         for (int j = 0; j < noParticles; j++) {
             indices[0 + j * 6] = j * 4 + 2;
             indices[1 + j * 6] = j * 4 + 1;
@@ -175,11 +225,12 @@ public class ParticleManager extends Controller implements Serializable {
             indices[3 + j * 6] = j * 4 + 3;
             indices[4 + j * 6] = j * 4 + 2;
             indices[5 + j * 6] = j * 4 + 0;
+            for (int a = 0; a < 4; a++) {
+                texCoords[(j << 3) + (a << 1)] = sharedTextureData[a].x;
+                texCoords[(j << 3) + (a << 1) + 1] = sharedTextureData[a].y;
+            }
         }
         
-        appearanceColors = new ColorRGBA[noParticles << 2];
-        particles = new Particle[noParticles];
-        
         // overriding the worldRotation allows the programmer to attach the particles
         // to things which have changing rotation without ruining the particle bill-
         // boarding.
@@ -195,47 +246,29 @@ public class ParticleManager extends Controller implements Serializable {
             }
             public void draw( Renderer r ) {
                 if (isActive()) {
-                    Camera camera = r.getCamera();
-	                for (int i = 0; i < particles.length; i++) {
-	                    Particle particle = particles[i];
-	                    if (particle.status == Particle.ALIVE) {
-	                        particle.updateVerts(camera);
-	                    }
-	                }
-                    
-                    particlesGeometry.updateVertexBuffer();
-                    particlesGeometry.updateColorBuffer();
+                    updateQuads(r.getCamera());
                 }
                 super.draw(r);
             }
         };
-        particlesGeometry.setVertices(geometryCoordinates);
-        particlesGeometry.setColors(appearanceColors);
-        particlesGeometry.setTextures(new Vector2f[noParticles << 2], 0);
+        createBuffers();
+        FloatBuffer texBuffer = BufferUtils.createFloatBuffer(texCoords.length);
+        texBuffer.put(texCoords).rewind();
+        particlesGeometry.wrapTextures(texBuffer, 0);
         particlesGeometry.setIndices(indices);
         particlesGeometry.setRenderQueueMode(Renderer.QUEUE_TRANSPARENT);
         particlesGeometry.setLightCombineMode(LightState.OFF);
         particlesGeometry.setTextureCombineMode(TextureState.REPLACE);
         
         invScale = new Vector3f();
+        driftSeed = FastMath.rand.nextInt() | 1;
         
-        Vector3f speed = new Vector3f();
-        Vector3f location = new Vector3f();
-        updateRotationMatrix();
         for (int k = 0; k < noParticles; k++) {
-            float life = getRandomLifeSpan();
-            getRandomSpeed(speed);
-            particles[k] = new Particle(this, speed, location, life);
-            for (int a = 3; a >= 0; a--) {
-                particlesGeometry.setTextureCoord(0, (k << 2) + a, sharedTextureData[a]);
-                geometryCoordinates[ (k << 2) + a] = particles[k].verts[a];
-                appearanceColors[ (k << 2) + a] = particles[k].currColor;
-            }
-            
+            lifeSpan[k] = getRandomLifeSpan();
+            size[k] = startSize;
+            status[k] = Particle.AVAILABLE;
         }
         
-        particlesGeometry.updateTextureBuffer();
-        
         particlesGeometry.setDynamicVBOVertexEnabled(true);
         particlesGeometry.setStaticVBOIndexEnabled(true);
         particlesGeometry.setStaticVBOTextureEnabled(true);
@@ -285,12 +318,28 @@ public class ParticleManager extends Controller implements Serializable {
                 
                 invScale.set(particlesGeometry.getLocalScale());
                 invScale.set(1f/invScale.x,1f/invScale.y,1f/invScale.z);
-                int i = 0;
+
+                float millis = timePassed * 1000f;
+                integrate(millis, particleSpinSpeed * timePassed * 100f);
+
+                minX = minY = minZ = Float.POSITIVE_INFINITY;
+                maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+                maxSize = 0;
+                anyAlive = false;
                 boolean dead = true;
-                while (i < noParticles) {
-                    if (particles[i].updateAndCheck(timePassed) &&
-                            (!controlFlow || particlesToCreate > 0)) {
-                        if (particles[i].status == Particle.DEAD &&
+                for (int i = 0; i < noParticles; i++) {
+                    if (status[i] == Particle.ALIVE) {
+                        age[i] += millis;
+                        if (age[i] <= lifeSpan[i]) {
+                            dead = false;
+                            age(i);
+                            continue;
+                        }
+                        status[i] = Particle.DEAD;
+                        setAlpha(i, 0);
+                    }
+                    if (!controlFlow || particlesToCreate > 0) {
+                        if (status[i] == Particle.DEAD &&
                                 getRepeatType() == RT_CLAMP) {
                             
                         } else {
@@ -299,44 +348,294 @@ public class ParticleManager extends Controller implements Serializable {
                                 released++;
                                 particlesToCreate--;
                             }
-                            getRandomSpeed(particleSpeed);
-                            particles[i].recreateParticle(particleSpeed, getRandomLifeSpan());
-                            particles[i].status = Particle.ALIVE;
-                            
-                            switch (getGeometry()) {
-                            case GS_LINE:
-                                particles[i].location.set(getLine().random());
-                                break;
-                            case GS_RECTANGLE:
-                                particles[i].location.set(getRectangle().random());
-                                break;
-                            case GS_MESH:
-                                particles[i].location.set(getGeoMesh().randomVertice());
-                                break;
-                            case GS_POINT:
-                            default:
-                                particles[i].location.set(originCenter);
-                            break;
-                            }
-                            particles[i].location.multLocal(invScale);
+                            respawn(i);
                         }
                     } else dead = false;
-                    i++;
                 }
                 if (dead) setActive(false);
+                updateModelBound();
             }
-            if (particlesGeometry.getModelBound() != null) {
-                particlesGeometry.getModelBound().computeFromPoints(particlesGeometry.getVertices());
+        }
+    }
+
+    /**
+     * Moves all particles by their velocity and accelerates them by the
+     * gravity. Dead particles are moved as well, which keeps the loops free
+     * of branches; their state is reset when they respawn.
+     *
+     * @param millis milliseconds passed.
+     * @param spin angle every particle spins by.
+     */
+    private void integrate(float millis, float spin) {
+        float gx = gravityForce.x * millis;
+        float gy = gravityForce.y * millis;
+        float gz = gravityForce.z * millis;
+        float[] px = positionX, py = positionY, pz = positionZ;
+        float[] vx = velocityX, vy = velocityY, vz = velocityZ;
+        int n = noParticles;
+        for (int i = 0; i < n; i++) {
+            vx[i] += gx;
+            px[i] += vx[i] * millis;
+        }
+        for (int i = 0; i < n; i++) {
+            vy[i] += gy;
+            py[i] += vy[i] * millis;
+        }
+        for (int i = 0; i < n; i++) {
+            vz[i] += gz;
+            pz[i] += vz[i] * millis;
+        }
+        if (spin != 0) {
+            float[] angle = spinAngle;
+            for (int i = 0; i < n; i++) {
+                angle[i] += spin;
             }
         }
     }
+
+    /**
+     * Applies the random drift to a living particle, interpolates its size
+     * and colour by its age and adds it to the bounds.
+     *
+     * @param i index of the particle.
+     */
+    private void age(int i) {
+        if (randomMod != 0.0f) {
+            positionX[i] += randomMod * 2 * (nextDrift() - .5f);
+            positionZ[i] += randomMod * 2 * (nextDrift() - .5f);
+        }
+
+        float lifeRatio = age[i] / lifeSpan[i];
+
+        // update the size, currently, the size
+        // updates both the x and y values. So you always
+        // get a square
+        size[i] = startSize - (startSize - endSize) * lifeRatio;
+
+        int c = i << 2;
+        setColor(i, startColors[c] - colorChanges[c] * lifeRatio,
+                startColors[c + 1] - colorChanges[c + 1] * lifeRatio,
+                startColors[c + 2] - colorChanges[c + 2] * lifeRatio,
+                startColors[c + 3] - colorChanges[c + 3] * lifeRatio);
+        addToBounds(i);
+    }
+
+    /**
+     * Recreates a particle at the emitter with a new velocity and life span
+     * and resets its colour and size to the start values.
+     *
+     * @param i index of the particle.
+     */
+    private void respawn(int i) {
+        getRandomSpeed(particleSpeed);
+        velocityX[i] = particleSpeed.x;
+        velocityY[i] = particleSpeed.y;
+        velocityZ[i] = particleSpeed.z;
+        lifeSpan[i] = getRandomLifeSpan();
+        age[i] = 0;
+        spinAngle[i] = 0;
+        size[i] = startSize;
+        status[i] = Particle.ALIVE;
+
+        int c = i << 2;
+        startColors[c] = startColor.r;
+        startColors[c + 1] = startColor.g;
+        startColors[c + 2] = startColor.b;
+        startColors[c + 3] = startColor.a;
+        colorChanges[c] = startColor.r - endColor.r;
+        colorChanges[c + 1] = startColor.g - endColor.g;
+        colorChanges[c + 2] = startColor.b - endColor.b;
+        colorChanges[c + 3] = startColor.a - endColor.a;
+        setColor(i, startColor.r, startColor.g, startColor.b, startColor.a);
+
+        Vector3f location;
+        switch (getGeometry()) {
+        case GS_LINE:
+            location = getLine().random();
+            break;
+        case GS_RECTANGLE:
+            location = getRectangle().random();
+            break;
+        case GS_MESH:
+            location = getGeoMesh().randomVertice();
+            break;
+        case GS_POINT:
+        default:
+            location = originCenter;
+        break;
+        }
+        positionX[i] = location.x * invScale.x;
+        positionY[i] = location.y * invScale.y;
+        positionZ[i] = location.z * invScale.z;
+        addToBounds(i);
+    }
+
+    /**
+     * The drift needs two random numbers per particle and update, so it uses
+     * a xorshift generator of its own rather than the synchronized one of
+     * <code>FastMath</code>.
+     *
+     * @return a random float in [0, 1).
+     */
+    private float nextDrift() {
+        int x = driftSeed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        driftSeed = x;
+        return (x >>> 8) * (1f / (1 << 24));
+    }
+
+    private void setColor(int i, float r, float g, float b, float a) {
+        int c = i << 2;
+        currentColors[c] = r;
+        currentColors[c + 1] = g;
+        currentColors[c + 2] = b;
+        currentColors[c + 3] = a;
+    }
+
+    private void setAlpha(int i, float a) {
+        currentColors[(i << 2) + 3] = a;
+    }
+
+    private void addToBounds(int i) {
+        float x = positionX[i], y = positionY[i], z = positionZ[i];
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+        if (z < minZ) minZ = z;
+        if (z > maxZ) maxZ = z;
+        if (size[i] > maxSize) maxSize = size[i];
+        anyAlive = true;
+    }
+
+    /**
+     * Sets the model bound from the bounds of the particle centers tracked
+     * during the update, grown by the largest quad. A quad spins around its
+     * center, so its corners stay within size * sqrt(2) of it. Bound types
+     * other than boxes and spheres are computed from the quad vertices.
+     */
+    private void updateModelBound() {
+        BoundingVolume bound = particlesGeometry.getModelBound();
+        if (bound == null) {
+            return;
+        }
+        if (!anyAlive) {
+            minX = minY = minZ = maxX = maxY = maxZ = maxSize = 0;
+        }
+        float grow = maxSize * FastMath.sqrt(2);
+        float cx = (minX + maxX) * .5f;
+        float cy = (minY + maxY) * .5f;
+        float cz = (minZ + maxZ) * .5f;
+        float ex = (maxX - minX) * .5f + grow;
+        float ey = (maxY - minY) * .5f + grow;
+        float ez = (maxZ - minZ) * .5f + grow;
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            box.center.set(cx, cy, cz);
+            box.xExtent = ex;
+            box.yExtent = ey;
+            box.zExtent = ez;
+        } else if (bound instanceof BoundingSphere) {
+            BoundingSphere sphere = (BoundingSphere) bound;
+            if (sphere.getCenter() == null) {
+                sphere.setCenter(new Vector3f(cx, cy, cz));
+            } else {
+                sphere.getCenter().set(cx, cy, cz);
+            }
+            sphere.setRadius(FastMath.sqrt(ex * ex + ey * ey + ez * ez));
+        } else {
+            bound.computeFromPoints(vertexBuffer);
+        }
+    }
+
+    /**
+     * Writes the quads of all particles, facing the given camera, and their
+     * colours into the buffers of the TriMesh. Particles which are not alive
+     * get a quad of size zero. This is left to drawing, so systems which are
+     * culled do not pay for it.
+     */
+    private void updateQuads(Camera cam) {
+        Vector3f left = cam.getLeft(), up = cam.getUp();
+        float[] v = vertices;
+        for (int i = 0; i < noParticles; i++) {
+            float s = status[i] == Particle.ALIVE ? size[i] : 0;
+            float xx, xy, xz, yx, yy, yz;
+            if (spinAngle[i] == 0) {
+                xx = left.x * s; xy = left.y * s; xz = left.z * s;
+                yx = up.x * s; yy = up.y * s; yz = up.z * s;
+            } else {
+                float cA = FastMath.cos(spinAngle[i]) * s;
+                float sA = FastMath.sin(spinAngle[i]) * s;
+                xx = left.x * cA + up.x * sA;
+                xy = left.y * cA + up.y * sA;
+                xz = left.z * cA + up.z * sA;
+                yx = up.x * cA - left.x * sA;
+                yy = up.y * cA - left.y * sA;
+                yz = up.z * cA - left.z * sA;
+            }
+            float x = positionX[i], y = positionY[i], z = positionZ[i];
+            int j = i * 12;
+            // Q3, Q4, Q1, Q2
+            v[j] = x - xx - yx; v[j + 1] = y - xy - yy; v[j + 2] = z - xz - yz;
+            v[j + 3] = x + xx - yx; v[j + 4] = y + xy - yy; v[j + 5] = z + xz - yz;
+            v[j + 6] = x + xx + yx; v[j + 7] = y + xy + yy; v[j + 8] = z + xz + yz;
+            v[j + 9] = x - xx + yx; v[j + 10] = y - xy + yy; v[j + 11] = z - xz + yz;
+        }
+        float[] c = colors, current = currentColors;
+        for (int i = 0, j = 0, n = noParticles << 2; i < n; i += 4) {
+            float r = current[i], g = current[i + 1], b = current[i + 2], a = current[i + 3];
+            for (int end = j + 16; j < end; j += 4) {
+                c[j] = r;
+                c[j + 1] = g;
+                c[j + 2] = b;
+                c[j + 3] = a;
+            }
+        }
+        if (vertexBuffer == null) {
+            createBuffers();
+        }
+        vertexBuffer.clear();
+        vertexBuffer.put(vertices).rewind();
+        colorBuffer.clear();
+        colorBuffer.put(colors).rewind();
+    }
+
+    /**
+     * Creates the vertex and colour buffers of the TriMesh, again after
+     * deserialization.
+     */
+    private void createBuffers() {
+        vertexBuffer = BufferUtils.createFloatBuffer(vertices.length);
+        colorBuffer = BufferUtils.createFloatBuffer(colors.length);
+        particlesGeometry.wrapVertices(vertexBuffer);
+        particlesGeometry.wrapColors(colorBuffer);
+    }
+
+    /**
+     * Stores the position of a particle.
+     *
+     * @see Particle#getPosition()
+     */
+    Vector3f getPosition(int i, Vector3f store) {
+        return store.set(positionX[i], positionY[i], positionZ[i]);
+    }
+
+    int getStatus(int i) {
+        return status[i];
+    }
+
+    void resetAge(int i) {
+        age[i] = 0;
+    }
     
     /**
      * Force all dead particles back to life.
      */
     public void forceRespawn() {
         for (int i = noParticles; --i >= 0; ) {
-            particles[i].status = Particle.AVAILABLE;
+            status[i] = Particle.AVAILABLE;
         }
         setActive(true);
     }
@@ -974,7 +1273,16 @@ public class ParticleManager extends Controller implements Serializable {
         return manager;
     }
     
+    /**
+     * @return views of the particles of this manager.
+     */
     public Particle[] getParticleArray() {
+        if (particles == null) {
+            particles = new Particle[noParticles];
+            for (int i = 0; i < noParticles; i++) {
+                particles[i] = new Particle(this, i);
+            }
+        }
         return particles;
     }
 }
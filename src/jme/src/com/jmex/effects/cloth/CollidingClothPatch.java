@@ -39,6 +39,7 @@ import com.jme.intersection.TriangleCollisionResults;
 import com.jme.math.SpringNode;
 import com.jme.math.Vector3f;
 import com.jme.scene.TriMesh;
+import com.jme.util.IntList;
 
 /**
  * <code>CollidingClothPatch</code> is a ClothPatch with the ability to interact
@@ -98,10 +99,10 @@ public class CollidingClothPatch extends ClothPatch {
 			findCollisions((TriMesh)colliders.get(x), results);
 			for (int y = results.getNumber(); --y >= 0; ) {
 				data = results.getCollisionData(y);
-				for (int i = 0; i < data.getSourceTris().size(); i++) {
-					int srcTriIndex = ((Integer) data.getSourceTris().get(i)).intValue();
-					int tgtTriIndex = ((Integer) data.getTargetTris().get(i)).intValue();
-					handleCollision((TriMesh)data.getTargetMesh(), srcTriIndex, tgtTriIndex);
+				IntList source = data.getSourceTriangles();
+				IntList target = data.getTargetTriangles();
+				for (int i = 0; i < source.size(); i++) {
+					handleCollision((TriMesh)data.getTargetMesh(), source.get(i), target.get(i));
 				}
 			}
 		}
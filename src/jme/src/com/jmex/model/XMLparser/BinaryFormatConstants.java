@@ -10,6 +10,11 @@ package com.jmex.model.XMLparser;
 public interface BinaryFormatConstants {
     // -- File identifier
     static final long BEGIN_FILE=1234567l;
+    // -- Identifier of files whose vertex data is stored in aligned blocks, followed by the version
+    static final long BEGIN_ALIGNED_FILE=7654321l;
+    static final int ALIGNED_VERSION=1;
+    // -- Offset in the file every block payload starts at a multiple of
+    static final int BLOCK_ALIGNMENT=16;
 
     // -- Block identifiers.  Each of these need to be different
     static final byte BEGIN_TAG=0;
@@ -35,6 +40,9 @@ public interface BinaryFormatConstants {
     static final byte DATA_SHORTARRAY = 14;
     static final byte DATA_V2F = 15;
     static final byte DATA_MATRIX3 = 16;
+    // Only in aligned files: little endian payloads, starting at a multiple of BLOCK_ALIGNMENT
+    static final byte DATA_FLOATBLOCK = 17;
+    static final byte DATA_INTBLOCK = 18;
     // -- Data type identifiers
 
     float XYZ_SCALE = 1/64.0f;
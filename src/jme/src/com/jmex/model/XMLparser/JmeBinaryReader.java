@@ -4,6 +4,7 @@ import com.jme.scene.*;
 import com.jme.scene.lod.ClodMesh;
 import com.jme.scene.lod.CollapseRecord;
 import com.jme.scene.lod.AreaClodMesh;
+import com.jme.scene.lod.ErrorClodMesh;
 import com.jme.scene.shape.Box;
 import com.jme.scene.state.*;
 import com.jme.math.*;
@@ -15,6 +16,7 @@ import com.jme.image.Image;
 import com.jme.image.Texture;
 import com.jme.util.TextureManager;
 import com.jme.util.LoggingSystem;
+import com.jme.util.geom.BufferUtils;
 import com.jme.animation.SpatialTransformer;
 import com.jme.bounding.BoundingSphere;
 import com.jme.bounding.BoundingBox;
@@ -32,8 +34,16 @@ import com.jmex.terrain.TerrainPage;
 
 import java.io.InputStream;
 import java.io.DataInputStream;
+import java.io.RandomAccessFile;
 import java.io.IOException;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 import java.util.Hashtable;
 import java.util.HashMap;
@@ -81,14 +91,32 @@ public class JmeBinaryReader {
     private Renderer renderer;
     private DataInputStream myIn;
 
+    /**
+     * The file being loaded by loadBinaryFormat(File), myIn reads from it.
+     */
+    private ByteBuffer mapped;
+
+    /**
+     * If true, texture states are only recorded while loading, see setDeferTextureStates.
+     */
+    private boolean deferTextureStates;
+
+    /**
+     * Spatials and the DeferredTextureState each of them gets, in pairs.
+     */
+    private ArrayList deferredTargets=new ArrayList();
+
     private final static boolean DEBUG=false;
 
     /**
-     * Constructs a new JmeBinaryReader.  This must be called after a DisplaySystem
-     * has been initialized.
+     * Constructs a new JmeBinaryReader.  This should be called after a DisplaySystem
+     * has been initialized.  Without a DisplaySystem the reader loads geometry only:
+     * render states and textures are skipped, which is enough for simulations
+     * that never draw the scene.
      */
     public JmeBinaryReader(){
-        renderer=DisplaySystem.getDisplaySystem().getRenderer();
+        DisplaySystem display=DisplaySystem.getDisplaySystem();
+        renderer=(display==null ? null : display.getRenderer());
     }
 
 
@@ -143,6 +171,70 @@ public class JmeBinaryReader {
         return loadBinaryFormat(new Node("XML loaded scene"),binaryJme);
     }
 
+    /**
+     * Maps the given file into memory and converts it to a Node.  The vertex data of
+     * files in the aligned format is not read, the buffers of the geometry point into the
+     * mapped file, so loading mostly costs the page faults of touching it.  Such geometry
+     * is in buffer-only mode.  The mapping is private: changes to the buffers are not
+     * written back.  As the JDK only maps writable files privately, a file that is not
+     * writable is read into one direct buffer instead.  Files in the old format are read
+     * as usual.  Some platforms do not allow replacing a file while it is mapped.
+     * @param binaryJme The binary format jME scene
+     * @return A Node representing the binary file
+     * @throws IOException If anything wierd goes on while reading
+     */
+    public Node loadBinaryFormat(File binaryJme) throws IOException {
+        boolean writable=binaryJme.canWrite();
+        RandomAccessFile in=new RandomAccessFile(binaryJme,writable ? "rw" : "r");
+        try {
+            FileChannel channel=in.getChannel();
+            if (writable)
+                mapped=channel.map(FileChannel.MapMode.PRIVATE,0,channel.size());
+            else{
+                mapped=ByteBuffer.allocateDirect((int) channel.size());
+                while (mapped.hasRemaining() && channel.read(mapped)>=0);
+                mapped.flip();
+            }
+        } finally {
+            in.close();
+        }
+        try {
+            return loadBinaryFormat(new MappedInputStream(mapped));
+        } finally {
+            mapped=null;
+        }
+    }
+
+    /**
+     * Reads the tags of the binaryJme InputStream without building a scene.  Each tag is
+     * added to tags as two entries: its name, then a HashMap of its attributes for a
+     * begin tag or null for an end tag.
+     * @param binaryJme InputStream with the jME Scene
+     * @param tags List to add the tags to
+     * @throws IOException If anything wierd goes on while reading.
+     */
+    void readTags(InputStream binaryJme, List tags) throws IOException {
+        clearValues();
+        myIn=new DataInputStream(binaryJme);
+        readHeader();
+        byte flag=myIn.readByte();
+        while (flag!=BinaryFormatConstants.END_FILE){
+            if (flag==BinaryFormatConstants.BEGIN_TAG){
+                tags.add(myIn.readUTF().trim());
+                readInObjects(attributes);
+                tags.add(new HashMap(attributes));
+            } else if (flag==BinaryFormatConstants.END_TAG){
+                tags.add(myIn.readUTF());
+                tags.add(null);
+            } else{
+                throw new IOException("Unknown flag:" + flag);
+            }
+            flag=myIn.readByte();
+        }
+        clearValues();
+        binaryJme.close();
+    }
+
     /**
      * Processes a BEGIN_TAG flag, which signals that a tag has begun.  Attributes for the
      * tag are read, and if needed an object is pushed on the stack
@@ -163,9 +255,20 @@ public class JmeBinaryReader {
         } else if (tagName.equals("materialstate")){
             s.push(buildMaterial(attributes));
         } else if (tagName.equals("texturestate")){
-            s.push(renderer.createTextureState());
+            if (renderer==null)
+                s.push(null);
+            else if (deferTextureStates)
+                s.push(new DeferredTextureState());
+            else
+                s.push(renderer.createTextureState());
         } else if (tagName.equals("texture")){
-            Texture t=buildTexture(attributes);
+            Texture t=null;
+            if (s.peek() instanceof DeferredTextureState){
+                HashMap textureAttributes=new HashMap(attributes);
+                ((DeferredTextureState) s.peek()).textures.add(textureAttributes);
+                TextureManager.preloadImage(getTextureURL(textureAttributes),getTextureFlip());
+            } else if (renderer!=null)
+                t=buildTexture(attributes);
             if (t!=null){
                 TextureState ts=(TextureState) s.pop();
                 Integer retrieveNumber=(Integer)attributes.get("texnum");
@@ -185,6 +288,8 @@ public class JmeBinaryReader {
             s.push(processTerrainBlock(new TerrainBlock((String) attributes.get("name")),attributes));
         } else if (tagName.equals("areaclod")){
             s.push(processAreaClod(new AreaClodMesh((String) attributes.get("name")),attributes));
+        } else if (tagName.equals("errorclod")){
+            s.push(processSpatial(new ErrorClodMesh((String) attributes.get("name")),attributes));
         } else if (tagName.equals("clodrecords")){
             s.push(new CollapseRecord[((Integer)attributes.get("numrec")).intValue()]);
         } else if (tagName.equals("crecord")){
@@ -195,6 +300,8 @@ public class JmeBinaryReader {
             Geometry geo=(Geometry) s.pop();
             if (attributes.get("q3vert")!=null)
                 geo.setVertices(decodeShortCompress((short[])attributes.get("q3vert")));
+            else if (attributes.get("data") instanceof FloatBuffer)
+                geo.wrapVertices((FloatBuffer) attributes.get("data"));
             else
                 geo.setVertices((Vector3f[]) attributes.get("data"));
             s.push(geo);
@@ -202,23 +309,33 @@ public class JmeBinaryReader {
             Geometry geo=(Geometry) s.pop();
             if (attributes.get("q3norm")!=null)
                 geo.setNormals(decodeLatLong((byte[])attributes.get("q3norm")));
+            else if (attributes.get("data") instanceof FloatBuffer)
+                geo.wrapNormals((FloatBuffer) attributes.get("data"));
             else
                 geo.setNormals((Vector3f[]) attributes.get("data"));
             s.push(geo);
         } else if (tagName.equals("texturecoords")){
             Geometry geo=(Geometry) s.pop();
-            if (attributes.get("texindex")==null)
+            if (attributes.get("data") instanceof FloatBuffer)
+                geo.wrapTextures((FloatBuffer) attributes.get("data"),attributes.get("texindex")==null ? 0 : ((Integer)attributes.get("texindex")).intValue());
+            else if (attributes.get("texindex")==null)
                 geo.setTextures((Vector2f[]) attributes.get("data"));
             else
                 geo.setTextures((Vector2f[]) attributes.get("data"),((Integer)attributes.get("texindex")).intValue());
             s.push(geo);
         } else if (tagName.equals("color")){
             Geometry geo=(Geometry) s.pop();
-            geo.setColors((ColorRGBA[]) attributes.get("data"));
+            if (attributes.get("data") instanceof FloatBuffer)
+                geo.wrapColors((FloatBuffer) attributes.get("data"));
+            else
+                geo.setColors((ColorRGBA[]) attributes.get("data"));
             s.push(geo);
         } else if (tagName.equals("index")){
             TriMesh m=(TriMesh) s.pop();
-            m.setIndices((int[]) attributes.get("data"));
+            if (attributes.get("data") instanceof IntBuffer)
+                m.wrapIndices((IntBuffer) attributes.get("data"));
+            else
+                m.setIndices((int[]) attributes.get("data"));
             s.push(m);
         } else if (tagName.equals("origvertex")){
             JointMesh jm=(JointMesh) s.pop();
@@ -309,11 +426,11 @@ public class JmeBinaryReader {
             s.push(buildLightState(attributes));
         } else if (tagName.equals("spotlight")){
             LightState parentLS=(LightState) s.pop();
-            parentLS.attach(buildSpotLight(attributes));
+            if (parentLS!=null) parentLS.attach(buildSpotLight(attributes));
             s.push(parentLS);
         } else if (tagName.equals("pointlight")){
             LightState parentLS=(LightState) s.pop();
-            parentLS.attach(buildPointLight(attributes));
+            if (parentLS!=null) parentLS.attach(buildPointLight(attributes));
             s.push(parentLS);
         } else if (tagName.equals("jmefile")){
             if (attributes.get("file")!=null){
@@ -381,7 +498,7 @@ public class JmeBinaryReader {
         }
         if (attributes.containsKey("sharedident")){
             Object temp=s.pop();
-            repeatShare.put(attributes.get("sharedident"),temp);
+            if (temp!=null) repeatShare.put(attributes.get("sharedident"),temp);
             s.push(temp);
         }
         return;
@@ -413,7 +530,13 @@ public class JmeBinaryReader {
             s.push(parentNode);
         } else if (tagName.equals("repeatobject")){
             Object childObject=s.pop();
-            if (childObject instanceof RenderState){
+            if (childObject==null){
+                // a render state skipped by a headless load
+            } else if (childObject instanceof DeferredTextureState){
+                parentSpatial=(Spatial) s.pop();
+                attachTextureState(parentSpatial,childObject);
+                s.push(parentSpatial);
+            } else if (childObject instanceof RenderState){
                 parentSpatial=(Spatial) s.pop();
                 parentSpatial.setRenderState((RenderState) childObject);
                 s.push(parentSpatial);
@@ -430,22 +553,22 @@ public class JmeBinaryReader {
         } else if (tagName.equals("materialstate")){
             MaterialState childMaterial=(MaterialState) s.pop();
             parentSpatial=(Spatial) s.pop();
-            parentSpatial.setRenderState(childMaterial);
+            if (childMaterial!=null) parentSpatial.setRenderState(childMaterial);
             s.push(parentSpatial);
         } else if (tagName.equals("texturestate")){
-            TextureState childMaterial=(TextureState) s.pop();
+            Object childState=s.pop();
             parentSpatial=(Spatial) s.pop();
-            parentSpatial.setRenderState(childMaterial);
+            attachTextureState(parentSpatial,childState);
             s.push(parentSpatial);
         } else if (tagName.equals("texture")){
         } else if (tagName.equals("cullstate")){
             CullState childCull=(CullState) s.pop();
             parentSpatial=(Spatial)s.pop();
-            parentSpatial.setRenderState(childCull);
+            if (childCull!=null) parentSpatial.setRenderState(childCull);
             s.push(parentSpatial);
         }
         else if (tagName.equals("mesh") || tagName.equals("jointmesh")
-                || tagName.equals("clod")|| tagName.equals("areaclod") ||tagName.equals("terrainblock")){
+                || tagName.equals("clod")|| tagName.equals("areaclod") || tagName.equals("errorclod") ||tagName.equals("terrainblock")){
             Geometry childMesh=(Geometry) s.pop();
             if (childMesh.getModelBound()==null){
                 if ("box".equals(properties.get("bound")))
@@ -473,7 +596,11 @@ public class JmeBinaryReader {
             // Nothing to do, these only identify XML areas
         } else if (tagName.equals("xmlloadable")){
             Object o=s.pop();
-            if (o instanceof RenderState){
+            if (o instanceof DeferredTextureState){
+                parentSpatial=(Spatial) s.pop();
+                attachTextureState(parentSpatial,o);
+                s.push(parentSpatial);
+            } else if (o instanceof RenderState){
                 parentSpatial=(Spatial) s.pop();
                 parentSpatial.setRenderState((RenderState) o);
                 s.push(parentSpatial);
@@ -497,7 +624,11 @@ public class JmeBinaryReader {
             shares.put(XMLShare.myIdent,XMLShare.whatIReallyAm);
         } else if (tagName.equals("publicobject")){
             Object o=s.pop();
-            if (o instanceof RenderState){
+            if (o instanceof DeferredTextureState){
+                parentSpatial=(Spatial) s.pop();
+                attachTextureState(parentSpatial,o);
+                s.push(parentSpatial);
+            } else if (o instanceof RenderState){
                 parentSpatial=(Spatial) s.pop();
                 parentSpatial.setRenderState((RenderState) o);
                 s.push(parentSpatial);
@@ -538,7 +669,7 @@ public class JmeBinaryReader {
         } else if (tagName.equals("lightstate")){
             LightState ls=(LightState) s.pop();
             parentSpatial=(Spatial) s.pop();
-            parentSpatial.setRenderState(ls);
+            if (ls!=null) parentSpatial.setRenderState(ls);
             s.push(parentSpatial);
         } else if (tagName.equals("keyframepointintime")){
             TriMesh parentMesh=(TriMesh) s.pop();
@@ -575,7 +706,7 @@ public class JmeBinaryReader {
         } else if (tagName.equals("wirestate")){
             WireframeState ws=(WireframeState) s.pop();
             parentSpatial=(Spatial) s.pop();
-            parentSpatial.setRenderState(ws);
+            if (ws!=null) parentSpatial.setRenderState(ws);
             s.push(parentSpatial);
         } else if (tagName.equals("crecord") || tagName.equals("sptscale") || tagName.equals("sptrot") || tagName.equals("spttrans")){ // nothing to do at these ends
 
@@ -621,6 +752,8 @@ public class JmeBinaryReader {
         temp.numbVerts=((Integer)attributes.get("numv")).intValue();
         temp.vertToKeep=((Integer)attributes.get("vkeep")).intValue();
         temp.vertToThrow=((Integer)attributes.get("vthrow")).intValue();
+        if (attributes.get("error")!=null)
+            temp.error=((Float)attributes.get("error")).floatValue();
         CollapseRecord[] toPut=(CollapseRecord[]) s.pop();
         toPut[((Integer)attributes.get("index")).intValue()]=temp;
         s.push(toPut);
@@ -688,6 +821,7 @@ public class JmeBinaryReader {
     }
 
     private Object buildCullState(HashMap attributes) {
+        if (renderer==null) return null;
         CullState cs=renderer.createCullState();
         cs.setEnabled(true);
         String state=(String) attributes.get("cull");
@@ -720,6 +854,7 @@ public class JmeBinaryReader {
     }
 
     private WireframeState buildWireState(HashMap attributes) {
+        if (renderer==null) return null;
         WireframeState ws=renderer.createWireframeState();
         ws.setFace(((Integer)attributes.get("facetype")).intValue());
         ws.setLineWidth(((Float)attributes.get("width")).floatValue());
@@ -738,6 +873,7 @@ public class JmeBinaryReader {
     }
 
     private LightState buildLightState(HashMap attributes) {
+        if (renderer==null) return null;
         LightState ls=renderer.createLightState();
         ls.setEnabled(true);
         return ls;
@@ -785,7 +921,7 @@ public class JmeBinaryReader {
         int filter = Texture.FM_LINEAR;
         int imageType = TextureManager.COMPRESS_BY_DEFAULT ? Image.GUESS_FORMAT : Image.GUESS_FORMAT_NO_S3TC;
         float aniso = 1.0f;
-        boolean flip = true;
+        boolean flip = getTextureFlip();
         
         if (properties.containsKey("tex_mm"))
             mipMap = ((Integer)properties.get("tex_mm")).intValue();
@@ -795,40 +931,18 @@ public class JmeBinaryReader {
             imageType = ((Integer)properties.get("tex_type")).intValue();
         if (properties.containsKey("tex_aniso"))
             aniso = ((Float)properties.get("tex_aniso")).floatValue();
-        if (properties.containsKey("tex_flip"))
-            flip = ((Boolean)properties.get("tex_flip")).booleanValue();
         
         try {
-            if (atts.get("URL")!=null && !atts.get("URL").equals("null")){
-                p=TextureManager.loadTexture(
-                        (URL) atts.get("URL"),
+            URL url=getTextureURL(atts);
+            if (url!=null){
+                p=TextureManager.loadTexture(url,
                         mipMap,
                         filter,
                         imageType,
                         aniso,
                         flip);
-            } else if (atts.get("file")!=null && !atts.get("file").equals("null")){
-                URL context;
-                if (properties.containsKey("texurl")){
-                    context=new URL((URL) properties.get("texurl"),(String) atts.get("file"));
-                } else if (properties.containsKey("texclasspath")){
-                    context=JmeBinaryReader.class.getClassLoader().getResource(
-                            (String)properties.get("texclasspath")+(String)atts.get("file")
-                    );
-                } else {
-                    context=new File((String) atts.get("file")).toURI().toURL();
-                }
-                p=TextureManager.loadTexture(context,
-                        mipMap,
-                        filter,
-                        imageType,
-                        aniso,
-                        flip);
-                if (p==null) {
-                    return p;
-                } else{
+                if (p!=null && !hasURL(atts))
                     p.setImageLocation("file:/"+atts.get("file"));
-                }
             }
             if (p==null)
                 LoggingSystem.getLogger().log(Level.INFO,"Unable to load file: " + atts.get("file"));
@@ -845,6 +959,52 @@ public class JmeBinaryReader {
         return p;
     }
 
+    private static boolean hasURL(HashMap atts){
+        return atts.get("URL")!=null && !atts.get("URL").equals("null");
+    }
+
+    /**
+     * Finds the image of a texture tag, using the "texurl" or "texclasspath" property for
+     * relative file names.
+     * @param atts The attributes of the Texture
+     * @return The url of the image, or null if the tag names none
+     */
+    private URL getTextureURL(HashMap atts) throws MalformedURLException {
+        if (hasURL(atts))
+            return (URL) atts.get("URL");
+        if (atts.get("file")==null || atts.get("file").equals("null"))
+            return null;
+        if (properties.containsKey("texurl"))
+            return new URL((URL) properties.get("texurl"),(String) atts.get("file"));
+        if (properties.containsKey("texclasspath"))
+            return JmeBinaryReader.class.getClassLoader().getResource(
+                    (String)properties.get("texclasspath")+(String)atts.get("file"));
+        return new File((String) atts.get("file")).toURI().toURL();
+    }
+
+    private boolean getTextureFlip(){
+        if (properties.containsKey("tex_flip"))
+            return ((Boolean)properties.get("tex_flip")).booleanValue();
+        return true;
+    }
+
+    /**
+     * Gives a Spatial a TextureState, or remembers a deferred one for createDeferredStates.
+     * @param parent The Spatial, may be an XMLSharedNode while a shared state is read
+     * @param state A TextureState, DeferredTextureState or null if skipped
+     */
+    private void attachTextureState(Spatial parent, Object state){
+        if (state instanceof DeferredTextureState){
+            if (parent instanceof XMLSharedNode){
+                ((XMLSharedNode) parent).whatIReallyAm=state;
+            } else {
+                deferredTargets.add(parent);
+                deferredTargets.add(state);
+            }
+        } else if (state!=null)
+            parent.setRenderState((TextureState) state);
+    }
+
     /**
      * Changes a Spatial's parameters acording to the attributes.
      * @param toAdd The spatial to change
@@ -869,6 +1029,7 @@ public class JmeBinaryReader {
      * @return A new material state
      */
     private MaterialState buildMaterial(HashMap atts) {
+        if (renderer==null) return null;
         MaterialState m=renderer.createMaterialState();
         m.setAlpha(((Float)atts.get("alpha")).floatValue());
         m.setAmbient((ColorRGBA) atts.get("ambient"));
@@ -951,12 +1112,70 @@ public class JmeBinaryReader {
                 case BinaryFormatConstants.DATA_MATRIX3:
                     atribMap.put(name,getMat3());
                     break;
+                case BinaryFormatConstants.DATA_FLOATBLOCK:
+                    atribMap.put(name,getFloatBlock());
+                    break;
+                case BinaryFormatConstants.DATA_INTBLOCK:
+                    atribMap.put(name,getIntBlock());
+                    break;
                 default:
                     throw new IOException("Unknown data type:" + type);
             }
         }
     }
 
+    private FloatBuffer getFloatBlock() throws IOException {
+        int length=myIn.readInt();
+        ByteBuffer block=getBlock(length*4);
+        if (block.order()==ByteOrder.nativeOrder())
+            return block.asFloatBuffer();
+        FloatBuffer copy=BufferUtils.createFloatBuffer(length);
+        copy.put(block.asFloatBuffer());
+        copy.flip();
+        return copy;
+    }
+
+    private IntBuffer getIntBlock() throws IOException {
+        int length=myIn.readInt();
+        ByteBuffer block=getBlock(length*4);
+        if (block.order()==ByteOrder.nativeOrder())
+            return block.asIntBuffer();
+        IntBuffer copy=ByteBuffer.allocateDirect(length*4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        copy.put(block.asIntBuffer());
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Skips the padding in front of a block and returns its payload, a slice of the
+     * mapped file if there is one, else a copy.
+     * @param bytes The length of the payload
+     * @return The payload in little endian order
+     * @throws IOException If reading goes wrong
+     */
+    private ByteBuffer getBlock(int bytes) throws IOException {
+        int padding=myIn.readUnsignedByte();
+        ByteBuffer block;
+        if (mapped!=null){
+            mapped.position(mapped.position()+padding);
+            block=mapped.slice();
+            block.limit(bytes);
+            mapped.position(mapped.position()+bytes);
+        } else{
+            for (int i=0;i<padding;i++)
+                myIn.readByte();
+            block=ByteBuffer.allocateDirect(bytes);
+            byte[] chunk=new byte[Math.min(bytes,65536)];
+            while (block.hasRemaining()){
+                int length=Math.min(chunk.length,block.remaining());
+                myIn.readFully(chunk,0,length);
+                block.put(chunk,0,length);
+            }
+            block.flip();
+        }
+        return block.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     private Matrix3f getMat3() throws IOException {
         Matrix3f m=new Matrix3f();
         m.m00=myIn.readFloat();
@@ -1060,7 +1279,12 @@ public class JmeBinaryReader {
     }
 
     private void readHeader() throws IOException {
-        if (BinaryFormatConstants.BEGIN_FILE!=myIn.readLong()){
+        long header=myIn.readLong();
+        if (header==BinaryFormatConstants.BEGIN_ALIGNED_FILE){
+            int version=myIn.readInt();
+            if (version>BinaryFormatConstants.ALIGNED_VERSION)
+                throw new IOException("Unknown version " + version + " of the aligned binary format");
+        } else if (header!=BinaryFormatConstants.BEGIN_FILE){
             throw new IOException("Binary Header doesn't match.  Maybe wrong file?");
         }
     }
@@ -1079,6 +1303,77 @@ public class JmeBinaryReader {
         properties.put(key,property);
     }
 
+    /**
+     * If set, texture states are not created while loading, because that needs the
+     * OpenGL context, which only one thread owns.  The images of the textures are
+     * decoded ahead with TextureManager.preloadImage instead, so files can be loaded
+     * on worker threads.  The states are created and attached by createDeferredStates,
+     * which must then be called on the GL thread.
+     * @param defer True to defer the texture states of the following loads
+     */
+    public void setDeferTextureStates(boolean defer) {
+        deferTextureStates=defer;
+    }
+
+    /**
+     * Creates the texture states deferred by the loads since the last call and attaches
+     * them to their spatials.  Must be called on the thread owning the OpenGL context,
+     * followed by updateRenderState of the loaded scenes.
+     */
+    public void createDeferredStates() {
+        for (int i=0;i<deferredTargets.size();i+=2){
+            Spatial target=(Spatial) deferredTargets.get(i);
+            DeferredTextureState deferred=(DeferredTextureState) deferredTargets.get(i+1);
+            if (deferred.state==null){
+                // states shared in the file stay shared
+                deferred.state=renderer.createTextureState();
+                for (int j=0;j<deferred.textures.size();j++){
+                    HashMap atts=(HashMap) deferred.textures.get(j);
+                    Texture t=buildTexture(atts);
+                    if (t!=null){
+                        Integer retrieveNumber=(Integer)atts.get("texnum");
+                        deferred.state.setTexture(t,(retrieveNumber==null ? 0 : retrieveNumber.intValue()));
+                    }
+                }
+            }
+            target.setRenderState(deferred.state);
+        }
+        deferredTargets.clear();
+    }
+
+    /**
+     * The textures of a texture state that is created later, on the GL thread.
+     */
+    private static class DeferredTextureState {
+        /** Attributes of each texture tag */
+        ArrayList textures=new ArrayList();
+        TextureState state;
+    }
+
+    /**
+     * Reads a mapped file.  It does not buffer, so the position of the file is
+     * always that of the reader, which lets getBlock slice the payloads out of it.
+     */
+    private static class MappedInputStream extends InputStream {
+        private ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer){
+            this.buffer=buffer;
+        }
+
+        public int read(){
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        public int read(byte[] b,int off,int len){
+            if (len==0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            len=Math.min(len,buffer.remaining());
+            buffer.get(b,off,len);
+            return len;
+        }
+    }
+
     /**
      * Removes a property.  This is equivalent to setProperty(key,null)
      * @param key The property to remove
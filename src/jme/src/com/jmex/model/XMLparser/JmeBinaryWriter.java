@@ -4,6 +4,7 @@ import com.jme.scene.*;
 import com.jme.scene.lod.ClodMesh;
 import com.jme.scene.lod.CollapseRecord;
 import com.jme.scene.lod.AreaClodMesh;
+import com.jme.scene.lod.ErrorClodMesh;
 import com.jme.scene.state.*;
 import com.jme.math.*;
 import com.jme.renderer.ColorRGBA;
@@ -23,9 +24,14 @@ import com.jme.bounding.OrientedBoundingBox;
 import com.jme.image.Texture;
 
 
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 
 import java.util.*;
 import java.net.URL;
@@ -58,6 +64,12 @@ public class JmeBinaryWriter {
     private static final Vector3f DEFAULT_TRANSLATION = new Vector3f();
     private static final Vector3f DEFAULT_SCALE = new Vector3f(1,1,1);
 
+    /** Tags of the meshes whose data writeAligned stores in blocks */
+    private static final Set WRAPPED_MESHES=new HashSet(Arrays.asList(new String[]{"mesh","clod","areaclod","errorclod","terrainblock"}));
+
+    /** Tags of the data of a mesh */
+    private static final Set WRAPPED_DATA=new HashSet(Arrays.asList(new String[]{"vertex","normal","color","texturecoords","index"}));
+
 
     /**
      * Holds properties that modify how JmeBinaryWriter writes a file.
@@ -92,6 +104,87 @@ public class JmeBinaryWriter {
         myOut.close();
     }
 
+    /**
+     * Rewrites a file of jME's binary format in the aligned format, tag by tag without
+     * building the scene, so nothing a load would drop, like textures that cannot be
+     * found, gets lost.  The vertex data of meshes that are not animated is stored in
+     * aligned blocks, see setProperty.
+     * @param binaryJme InputStream with the jME scene, in either format
+     * @param bin The OutputStream that will store the aligned format
+     * @throws IOException If anything wierd happens.
+     */
+    public void writeAligned(InputStream binaryJme,OutputStream bin) throws IOException {
+        ArrayList tags=new ArrayList();
+        new JmeBinaryReader().readTags(binaryJme,tags);
+
+        // find the meshes that are morphed by their KeyframeController
+        HashSet animated=new HashSet();
+        Stack open=new Stack();
+        for (int i=0;i<tags.size();i+=2){
+            if (tags.get(i+1)==null)
+                open.pop();
+            else{
+                open.push(Integer.valueOf(i));
+                if ("keyframecontroller".equals(tags.get(i)))
+                    animated.addAll(open);
+            }
+        }
+
+        myOut=new DataOutputStream(bin);
+        myOut.writeLong(BinaryFormatConstants.BEGIN_ALIGNED_FILE);
+        myOut.writeInt(BinaryFormatConstants.ALIGNED_VERSION);
+        for (int i=0;i<tags.size();i+=2){
+            String name=(String) tags.get(i);
+            HashMap atts=(HashMap) tags.get(i+1);
+            if (atts==null){
+                open.pop();
+                writeEndTag(name);
+                continue;
+            }
+            Integer parent=open.isEmpty() ? null : (Integer) open.peek();
+            if (parent!=null && !animated.contains(parent) && WRAPPED_MESHES.contains(tags.get(parent.intValue()))
+                    && WRAPPED_DATA.contains(name))
+                atts.put("data",toBuffer(atts.get("data")));
+            atts.values().removeAll(Collections.singleton(null));
+            open.push(Integer.valueOf(i));
+            writeTag(name,atts);
+        }
+        myOut.writeByte(BinaryFormatConstants.END_FILE);
+        myOut.close();
+    }
+
+    /**
+     * Converts the arrays of a data tag to the buffers written as blocks.
+     * @param data The "data" attribute of the tag
+     * @return The data as FloatBuffer or IntBuffer, or data if it is no array
+     */
+    private static Object toBuffer(Object data){
+        if (data instanceof Vector3f[]){
+            Vector3f[] array=(Vector3f[]) data;
+            FloatBuffer buf=FloatBuffer.allocate(array.length*3);
+            for (int i=0;i<array.length;i++)
+                buf.put(array[i].x).put(array[i].y).put(array[i].z);
+            buf.flip();
+            return buf;
+        } else if (data instanceof Vector2f[]){
+            Vector2f[] array=(Vector2f[]) data;
+            FloatBuffer buf=FloatBuffer.allocate(array.length*2);
+            for (int i=0;i<array.length;i++)
+                buf.put(array[i].x).put(array[i].y);
+            buf.flip();
+            return buf;
+        } else if (data instanceof ColorRGBA[]){
+            ColorRGBA[] array=(ColorRGBA[]) data;
+            FloatBuffer buf=FloatBuffer.allocate(array.length*4);
+            for (int i=0;i<array.length;i++)
+                buf.put(array[i].r).put(array[i].g).put(array[i].b).put(array[i].a);
+            buf.flip();
+            return buf;
+        } else if (data instanceof int[])
+            return IntBuffer.wrap((int[]) data);
+        return data;
+    }
+
     /**
      * Looks to see if the given Spatial is already contained in the entireScene.
      * If it is, then place it in sharedObjects.  If not, then look thru its Controllers/RenderStates
@@ -339,11 +432,12 @@ public class JmeBinaryWriter {
         if (sharedObjects.containsKey(clodMesh))
             atts.put("sharedident",sharedObjects.get(clodMesh));
         putSpatialAtts(clodMesh,atts);
-        writeTag("clod",atts);
+        String tag=clodMesh instanceof ErrorClodMesh ? "errorclod" : "clod";
+        writeTag(tag,atts);
         writeTriMeshTags(clodMesh);
         writeRecords(clodMesh.getRecords());
         writeSpatialChildren(clodMesh);
-        writeEndTag("clod");
+        writeEndTag(tag);
     }
 
     private void writeRecords(CollapseRecord[] records) throws IOException {
@@ -360,6 +454,8 @@ public class JmeBinaryWriter {
             atts.put("numv",Integer.valueOf(records[i].numbVerts));
             atts.put("vkeep",Integer.valueOf(records[i].vertToKeep));
             atts.put("vthrow",Integer.valueOf(records[i].vertToThrow));
+            if (records[i].error!=Float.MAX_VALUE)
+                atts.put("error",Float.valueOf(records[i].error));
             if (records[i].indices!=null)
                 atts.put("indexary",records[i].indices);
             writeTag("crecord",atts);
@@ -617,7 +713,7 @@ public class JmeBinaryWriter {
         atts.clear();
         atts.put("time",Float.valueOf(pointInTime.time));
         writeTag("keyframepointintime",atts);
-        writeTriMeshTags(pointInTime.newShape);
+        writeTriMeshTags(pointInTime.newShape,false);
         writeEndTag("keyframepointintime");
     }
 
@@ -627,7 +723,37 @@ public class JmeBinaryWriter {
      * @throws IOException
      */
     private void writeTriMeshTags(TriMesh triMesh) throws IOException {
+        writeTriMeshTags(triMesh,isWrapped(triMesh));
+    }
+
+    /**
+     * Returns true if the data of the given mesh is written in aligned blocks, which
+     * the reader uses as the buffers of the mesh.  Meshes animated by changing their
+     * vertex arrays keep the arrays.
+     * @param triMesh The TriMesh to look at
+     * @return true if the "aligned" property is set and the mesh is not animated
+     */
+    private boolean isWrapped(TriMesh triMesh) {
+        if (properties.get("aligned")==null || triMesh instanceof JointMesh)
+            return false;
+        for (int i=0;i<triMesh.getControllers().size();i++)
+            if (triMesh.getController(i) instanceof KeyframeController)
+                return false;
+        return true;
+    }
+
+    /**
+     * Writes the inner tags of a TriMesh (Verticies, Normals, ect) to binary format.
+     * @param triMesh The TriMesh whos tags are to be written
+     * @param wrapped True to write the buffers of the mesh as aligned blocks
+     * @throws IOException
+     */
+    private void writeTriMeshTags(TriMesh triMesh,boolean wrapped) throws IOException {
         if (triMesh==null) return;
+        if (wrapped){
+            writeTriMeshBlocks(triMesh);
+            return;
+        }
         HashMap atts=new HashMap();
         atts.clear();
         if (triMesh.getVertices()!=null){
@@ -676,6 +802,48 @@ public class JmeBinaryWriter {
             writeBounds(triMesh.getModelBound());
     }
 
+    /**
+     * Writes the inner tags of a TriMesh with its buffers as aligned blocks.
+     * @param triMesh The TriMesh whos tags are to be written
+     * @throws IOException
+     */
+    private void writeTriMeshBlocks(TriMesh triMesh) throws IOException {
+        HashMap atts=new HashMap();
+        if (triMesh.getVerticeAsFloatBuffer()!=null)
+            atts.put("data",triMesh.getVerticeAsFloatBuffer());
+        writeTag("vertex",atts);
+        writeEndTag("vertex");
+
+        if (triMesh.getNormalAsFloatBuffer()!=null)
+            atts.put("data",triMesh.getNormalAsFloatBuffer());
+        writeTag("normal",atts);
+        writeEndTag("normal");
+
+        if (triMesh.getColorAsFloatBuffer()!=null)
+            atts.put("data",triMesh.getColorAsFloatBuffer());
+        writeTag("color",atts);
+        writeEndTag("color");
+
+        for (int i=0;i<triMesh.getNumberOfUnits();i++){
+            FloatBuffer textures=triMesh.getTextureAsFloatBuffer(i);
+            if (textures!=null && textures.limit()>0) {
+                if (i!=0)
+                    atts.put("texindex",Integer.valueOf(i));
+                atts.put("data",textures);
+                writeTag("texturecoords",atts);
+                writeEndTag("texturecoords");
+            }
+        }
+
+        if (triMesh.getIndices()!=null)
+            atts.put("data",IntBuffer.wrap(triMesh.getIndices()));
+        writeTag("index",atts);
+        writeEndTag("index");
+
+        if (triMesh.getModelBound()!=null)
+            writeBounds(triMesh.getModelBound());
+    }
+
     private void writeBounds(BoundingVolume bound) throws IOException {
         if (bound==null) return;
         if (bound instanceof BoundingBox)
@@ -1055,12 +1223,51 @@ public class JmeBinaryWriter {
                 writeShortArray((short[])attrib);
             else if (attrib instanceof Matrix3f)
                 writeMatrix3((Matrix3f)attrib);
+            else if (attrib instanceof FloatBuffer)
+                writeFloatBlock((FloatBuffer)attrib);
+            else if (attrib instanceof IntBuffer)
+                writeIntBlock((IntBuffer)attrib);
             else
                 throw new IOException("unknown class type for " + attrib + " of " + attrib.getClass());
             i.remove();
         }
     }
 
+    private void writeFloatBlock(FloatBuffer buf) throws IOException {
+        myOut.writeByte(BinaryFormatConstants.DATA_FLOATBLOCK);
+        myOut.writeInt(buf.limit());
+        byte[] block=new byte[buf.limit()*4];
+        FloatBuffer source=buf.duplicate();
+        source.rewind();
+        ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(source);
+        writeBlock(block);
+    }
+
+    private void writeIntBlock(IntBuffer buf) throws IOException {
+        myOut.writeByte(BinaryFormatConstants.DATA_INTBLOCK);
+        myOut.writeInt(buf.limit());
+        byte[] block=new byte[buf.limit()*4];
+        IntBuffer source=buf.duplicate();
+        source.rewind();
+        ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(source);
+        writeBlock(block);
+    }
+
+    /**
+     * Writes the padding that moves the payload to the next multiple of BLOCK_ALIGNMENT,
+     * then the payload.  The offset is counted from the start of the file.
+     * @param block The payload
+     * @throws IOException
+     */
+    private void writeBlock(byte[] block) throws IOException {
+        int alignment=BinaryFormatConstants.BLOCK_ALIGNMENT;
+        int padding=(alignment-(myOut.size()+1)%alignment)%alignment;
+        myOut.writeByte(padding);
+        for (int i=0;i<padding;i++)
+            myOut.writeByte(0);
+        myOut.write(block);
+    }
+
     private void writeMatrix3(Matrix3f m) throws IOException {
         myOut.writeByte(BinaryFormatConstants.DATA_MATRIX3);
         myOut.writeFloat(m.m00);
@@ -1232,7 +1439,11 @@ public class JmeBinaryWriter {
      */
     private void writeHeader() throws IOException {
         if (DEBUG) System.out.println("Writting file begin");
-        myOut.writeLong(BinaryFormatConstants.BEGIN_FILE);
+        if (properties.get("aligned")!=null){
+            myOut.writeLong(BinaryFormatConstants.BEGIN_ALIGNED_FILE);
+            myOut.writeInt(BinaryFormatConstants.ALIGNED_VERSION);
+        } else
+            myOut.writeLong(BinaryFormatConstants.BEGIN_FILE);
         writeTag("scene",null);
     }
 
@@ -1240,6 +1451,11 @@ public class JmeBinaryWriter {
      * Adds a property .  Properties can tell this how to save the binary file.<br><br>
      * The only keys currently used are:<br>
      * key -> PropertyDataType<br>
+     * "q3vert", "q3norm" --> (any) Compress vertices and normals<br>
+     * "jointmesh" --> "astrimesh" ; Write JointMeshes as plain meshes<br>
+     * "aligned" --> (any) Write the aligned format: the vertex, normal, color, texture
+     * coordinate and index data of meshes that are not animated is stored in blocks that
+     * JmeBinaryReader.loadBinaryFormat(File) maps into memory instead of reading them<br>
      *
      * @param key Key to add (For example "texdir")
      * @param property Property for that key to have (For example "c:\\blarg\\")
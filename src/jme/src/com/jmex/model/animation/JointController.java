@@ -79,11 +79,11 @@ public class JointController extends Controller {
     private TransformMatrix[] inverseChainMatrix;
 
     // Internal worker classes
-    private final static Quaternion unSyncbeginAngle = new Quaternion();
+    private final Quaternion unSyncbeginAngle = new Quaternion();
 
-    private final static Vector3f unSyncbeginPos = new Vector3f();
+    private final Vector3f unSyncbeginPos = new Vector3f();
 
-    private final static TransformMatrix tempUnSyncd = new TransformMatrix();
+    private final TransformMatrix tempUnSyncd = new TransformMatrix();
 
     /**
      * Tells update that it should be called every <code>skipRate</code>
@@ -14,6 +14,7 @@ import com.jme.util.LoggingSystem;
 import com.jmex.sound.openAL.objects.Listener;
 import com.jmex.sound.openAL.objects.MusicStream;
 import com.jmex.sound.openAL.objects.Sample3D;
+import com.jmex.sound.openAL.objects.util.JMEAudioInputStream;
 import com.jmex.sound.openAL.objects.util.StreamPlayer;
 import com.jmex.sound.openAL.objects.util.dsp.Equalizer;
 import com.jmex.sound.openAL.scene.Configuration;
@@ -241,16 +242,31 @@ public class SoundSystem {
      * @return the stream identifier
      */
     public static int createStream(String file, boolean loadIntoMemory){
+        return addStream(new MusicStream(file, loadIntoMemory));
+    }
+    
+    /**
+     * Creates a stream playing sound generated by the game, e.g. a
+     * synthesizer, and returns an identifier for it
+     * @param source the generated sound, it should not end
+     * @param latency how much sound is produced ahead, in milliseconds
+     * @return the stream identifier
+     */
+    public static int createStream(JMEAudioInputStream source, int latency){
+        return addStream(new MusicStream(source, latency));
+    }
+    
+    private static int addStream(MusicStream created){
         if(stream==null){
             stream=new MusicStream[1];
-            stream[0]=new MusicStream(file, loadIntoMemory);
+            stream[0]=created;
             return 0;
         }else{
             MusicStream[] tmp=new MusicStream[stream.length];
             System.arraycopy(stream, 0, tmp, 0, tmp.length);
             stream=new MusicStream[tmp.length+1];
             System.arraycopy(tmp, 0, stream, 0, tmp.length);
-            stream[tmp.length]=new MusicStream(file, loadIntoMemory);
+            stream[tmp.length]=created;
             return tmp.length;
         }
     }
@@ -34,12 +34,7 @@
  */
 package com.jmex.sound.openAL.objects;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
+import com.jmex.sound.openAL.objects.util.JMEAudioInputStream;
 import com.jmex.sound.openAL.objects.util.StreamPlayer;
 import com.jmex.sound.openAL.scene.Configuration;
 import com.jmex.sound.openAL.scene.Playable;
@@ -49,21 +44,31 @@ import com.jmex.sound.openAL.scene.Playable;
 
 
 
+/**
+ * <code>MusicStream</code> is a music file played by the
+ * <code>StreamPlayer</code>, which decodes it ahead in the background.
+ */
 public class MusicStream extends Playable{
     
-    private ByteBuffer memoryData;
-    private boolean opened=true;
-    private boolean memory;
     private String streamFile;    
     
+    /**
+     * @param file the ogg or wav file to play
+     * @param memoryLoad ignored, streams are decoded ahead into a ring of
+     *            buffers sized by <code>StreamPlayer.setLatency</code>
+     *            instead of being loaded whole
+     */
     public MusicStream(String file, boolean memoryLoad){
         this.streamFile=file;
-        if(memoryLoad){
-           
-        }else{
-            sourceNumber=StreamPlayer.getInstance().openStream(file);
-        }
-            
+        sourceNumber=StreamPlayer.getInstance().openStream(file);
+    }
+
+    /**
+     * @param source a stream generated by the game, it should not end
+     * @param latency how much sound is produced ahead, in milliseconds
+     */
+    public MusicStream(JMEAudioInputStream source, int latency){
+        sourceNumber=StreamPlayer.getInstance().openStream(source, latency);
     }
 
     public void setConfiguration(Configuration conf){
@@ -106,38 +111,6 @@ public class MusicStream extends Playable{
         return (int)StreamPlayer.getInstance().length(sourceNumber);
     }
     
-    /**
-     * Reads the file into a ByteBuffer
-     * @param filename Name of file to load
-     * @return ByteBuffer containing file data
-     */
-    static protected ByteBuffer getData(String filename) {
-        ByteBuffer buffer = null;
-        try {
-            BufferedInputStream bis = new BufferedInputStream(MusicStream.class.getClassLoader().getResourceAsStream(filename));
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            int bufferLength = 4096;
-            byte[] readBuffer = new byte[bufferLength];
-            int read = -1;
-            while ((read = bis.read(readBuffer, 0, bufferLength)) != -1) {
-                baos.write(readBuffer, 0, read);
-            }
-            //done reading, close
-            bis.close();
-            // place it in a buffer
-            buffer = ByteBuffer.allocateDirect(baos.size());
-            buffer.order(ByteOrder.nativeOrder());
-            buffer.put(baos.toByteArray());
-            buffer.flip();
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-        }
-        return buffer;
-    }
-
-
-    
-
     public boolean isOpened() {
         return sourceNumber !=-1;
     }
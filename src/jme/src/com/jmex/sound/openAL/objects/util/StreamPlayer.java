@@ -38,21 +38,41 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.openal.AL10;
 
 import com.jcraft.jorbis.VorbisFile;
+import com.jme.util.LoggingSystem;
 import com.jmex.sound.openAL.objects.util.dsp.BandpassFilter;
 import com.jmex.sound.openAL.objects.util.dsp.Equalizer;
 
 /**
+ * <code>StreamPlayer</code> plays ogg and wav streams through OpenAL. One
+ * shared worker thread serves all streams: whenever OpenAL has finished with
+ * one of the buffers queued for a stream, the worker decodes the next part of
+ * the stream straight into it and queues it again. The queue holds about the
+ * latency target of sound and the worker sleeps for half a buffer between
+ * rounds, so a stream only stutters if the worker is held up for longer than
+ * the sound queued in OpenAL. While no stream is playing, or all of them are
+ * paused, the worker waits until one is played or resumed.
+ * 
  * @author Arman
  */
 public class StreamPlayer{
     
+    /** Default latency target in milliseconds. */
+    public static final int DEFAULT_LATENCY = 500;
+
+    /** Number of OpenAL buffers queued per stream. */
+    private static final int AL_BUFFERS = 4;
+
     private static StreamPlayer instance;
-    private Player[] player;
+    private volatile Player[] player;
+    private Thread worker;
+    private int latency = DEFAULT_LATENCY;
     private Equalizer equalizer;
     private BandpassFilter filter;
     
@@ -68,6 +88,24 @@ public class StreamPlayer{
         return instance;
     }
     
+    /**
+     * Sets how much sound, in milliseconds, is queued in OpenAL for streams
+     * opened afterwards. Larger values survive longer stalls of the worker
+     * thread at the cost of memory.
+     * 
+     * @param millis the latency target, at least 40 ms.
+     */
+    public void setLatency(int millis){
+        latency = Math.max(millis, 40);
+    }
+
+    /**
+     * @return the latency target in milliseconds.
+     */
+    public int getLatency(){
+        return latency;
+    }
+
     public void setEqualizer(Equalizer e){
         if(this.equalizer==null){
             this.equalizer=e;
@@ -83,7 +121,24 @@ public class StreamPlayer{
     public int openStream(String file){
         JMEAudioInputStream tmp=open(file, true);
         if(tmp==null) return -1;
-        int streamNumber=add(tmp);
+        return attach(tmp, latency);
+    }
+    
+    /**
+     * Opens a stream generated by the game, e.g. synthesized sound. Such a
+     * stream has no file name; it is never closed when it stops and simply
+     * continues when played again, so it should not end on its own.
+     * @param source the stream to play
+     * @param millis the latency target of this stream, see
+     *            <code>setLatency</code>
+     * @return a unique stream id.
+     */
+    public int openStream(JMEAudioInputStream source, int millis){
+        return attach(source, Math.max(millis, 40));
+    }
+    
+    private int attach(JMEAudioInputStream tmp, int millis){
+        int streamNumber=add(tmp, millis);
         if(equalizer !=null){
             filter=new BandpassFilter(equalizer.getFrequencies());
             filter.init(tmp.rate());
@@ -234,26 +289,25 @@ public class StreamPlayer{
         
     } 
     
-    private int add(JMEAudioInputStream tmpStream){
+    private synchronized int add(JMEAudioInputStream tmpStream, int millis){
+        Player created=new Player(tmpStream, generateSource(), millis);
         if(player==null){
-            player=new Player[1];
-            player[0]=new Player(tmpStream, generateSource());
+            player=new Player[] {created};
             return 0;
         }else{
-            Player[] tmp=new Player[player.length];
-            System.arraycopy(player, 0, tmp, 0, tmp.length);
-            player=new Player[tmp.length+1];
-            System.arraycopy(tmp, 0, player, 0, tmp.length);
-            player[tmp.length]=new Player(tmpStream, generateSource());
-            return tmp.length;
+            Player[] tmp=new Player[player.length+1];
+            System.arraycopy(player, 0, tmp, 0, player.length);
+            tmp[player.length]=created;
+            player=tmp;
+            return player.length-1;
         }
     }
     
     public void play(int streamNumber){
         if(player==null) return;
         if(streamNumber<0 || streamNumber>=player.length) return;
-        if(player[streamNumber].playing()) return;
-        new Thread(player[streamNumber]).start();
+        if(!player[streamNumber].start()) return;
+        wakeWorker();
     }
     
     public float length(int streamNumber){
@@ -262,116 +316,270 @@ public class StreamPlayer{
         return player[streamNumber].getStreamLength();
     }
     
+    /**
+     * Starts the worker thread if needed and wakes it up.
+     */
+    private synchronized void wakeWorker(){
+        if(worker==null){
+            worker=new Thread(new Worker(), "jME stream decoder");
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MAX_PRIORITY);
+            worker.start();
+        }
+        LockSupport.unpark(worker);
+    }
     
+    /**
+     * Serves all active streams in rounds, sleeping in between while no
+     * OpenAL buffer can have finished. Paused streams are not waited for.
+     */
+    private class Worker implements Runnable{
+        public void run(){
+            while(true){
+                long sleep=Long.MAX_VALUE;
+                Player[] players=player;
+                for(int i=0; players !=null && i<players.length; i++){
+                    if(players[i].isActive()){
+                        boolean playing=true;
+                        try{
+                            playing=players[i].service();
+                        }catch(Exception e){
+                            LoggingSystem.getLogger().log(Level.WARNING,
+                                    "Stopping stream "+i, e);
+                            players[i].stop();
+                        }
+                        if(playing){
+                            sleep=Math.min(sleep, players[i].getSlotNanos()/2);
+                        }
+                    }
+                }
+                if(sleep==Long.MAX_VALUE){
+                    LockSupport.park();
+                }else{
+                    LockSupport.parkNanos(sleep);
+                }
+            }
+        }
+    }
     
     /**
-     * The thread that updates the sound.
+     * The state of one stream. The flags are set by the game under the lock
+     * of the player, everything else is only touched by the worker.
      */
-    private class Player implements Runnable{
-        // at what interval update is called.
+    private class Player{
         private int source;
         private JMEAudioInputStream stream;
-        //temporary buffer
-        private ByteBuffer dataBuffer = ByteBuffer.allocateDirect(4096*20);
+        // decoded sound on its way to an OpenAL buffer
+        private ByteBuffer pcm;
+        // duration of one OpenAL buffer
+        private long slotNanos;
 
-        // front and back buffers
-        private IntBuffer buffers = BufferUtils.createIntBuffer(4);
-        // set to true when player is initalized.
-        private boolean initialized = false;
-        private boolean paused;
-        private boolean stopped;
+        private IntBuffer buffers = BufferUtils.createIntBuffer(AL_BUFFERS);
+        // buffer ids not queued since the stream ran out
+        private IntBuffer idle = BufferUtils.createIntBuffer(AL_BUFFERS);
+        private IntBuffer single = BufferUtils.createIntBuffer(1);
+        private boolean started;
+        private boolean endOfStream;
+        // the stream reached its end and must be reopened to play again
         private boolean finished;
-        private boolean looping;
 
-        /** Creates the PlayerThread */
-        Player(JMEAudioInputStream current, int sourceNumber) {
-            
+        private volatile boolean active;
+        private volatile boolean paused;
+        private volatile boolean stopped;
+        private volatile boolean looping;
+        // played again before the worker carried out a stop
+        private boolean restart;
+
+        /** Creates the Player */
+        Player(JMEAudioInputStream current, int sourceNumber, int millis) {
             this.source=sourceNumber;
             stream=current;
             AL10.alGenBuffers(buffers);
-            
-            
+            createBuffer(millis);
         }
         
+        /**
+         * Sizes the OpenAL buffers by the latency target: AL_BUFFERS of them
+         * hold the latency together, whole sample frames each.
+         */
+        private void createBuffer(int millis){
+            int frameBytes=stream.getAudioChannels()*2;
+            int bytesPerSecond=stream.rate()*frameBytes;
+            int slotMillis=millis/AL_BUFFERS;
+            int slotBytes=Math.max(bytesPerSecond/1000*slotMillis/frameBytes, 1)*frameBytes;
+            pcm=BufferUtils.createByteBuffer(slotBytes);
+            slotNanos=slotBytes*1000000000L/bytesPerSecond;
+        }
         
         public float getStreamLength(){
             return stream.getLength();
         }
         
-           
-        
+        long getSlotNanos(){
+            return slotNanos;
+        }
         
+        boolean isActive(){
+            return active;
+        }
         
         /**
-         * Copies data from the ogg stream to openal. Must be called often.
-         * @return true if sound is still playing, false if the end of file is reached.
+         * @return false if the stream is already playing.
          */
-        public synchronized boolean update() {
-            if(paused) return true;
-            boolean active = true;
-            int processed = AL10.alGetSourcei(source, AL10.AL_BUFFERS_PROCESSED);
-            while (processed-- > 0) {
-                IntBuffer buffer = BufferUtils.createIntBuffer(1);
-                
-                AL10.alSourceUnqueueBuffers(source, buffer);
-                active = stream(buffer.get(0));
-                buffer.rewind();
-                AL10.alSourceQueueBuffers(source, buffer);
-               
+        synchronized boolean start(){
+            paused=false;
+            if(active){
+                if(!stopped) return false;
+                // the worker has not carried out the stop yet
+                restart=true;
+                return true;
             }
-
-            return active;
+            stopped=false;
+            active=true;
+            return true;
         }
         
-        
         /**
-         * reloads a buffer
-         * @return true if success, false if read failed or end of file.
+         * Called by the worker every round while the stream is active.
+         * 
+         * @return true if the stream is playing and wants to be served
+         *         again, false if the worker may wait for the game.
          */
-        protected boolean stream(int buffer) {
-            try {
-                int bytesRead = stream.read(dataBuffer, 0, dataBuffer.capacity());
-                if (bytesRead >= 0) {
-                    dataBuffer.rewind();
-                    int format = stream.getChannels();
-                    AL10.alBufferData(buffer, format, dataBuffer, stream.rate());
-                    return true;
+        boolean service() throws IOException{
+            if(stopped){
+                halt();
+                return halted();
+            }
+            int state=AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
+            if(paused){
+                if(state==AL10.AL_PLAYING) AL10.alSourcePause(source);
+                // pause() wakes the worker again
+                return false;
+            }
+            if(!started){
+                if(finished && !reopen()){
+                    return halted();
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                begin();
+                return true;
             }
-            
-            return false;
+            feed();
+            int queued=AL10.alGetSourcei(source, AL10.AL_BUFFERS_QUEUED);
+            if(state !=AL10.AL_PLAYING && queued>0){
+                // resumed after a pause, or the queue ran dry during a stall
+                AL10.alSourcePlay(source);
+            }else if(queued==0 && endOfStream){
+                halt();
+                return halted();
+            }
+            return true;
         }
         
+        /**
+         * Called by the worker once the stream stopped: it goes inactive
+         * unless it was played again in the meantime.
+         * 
+         * @return true if the stream plays again.
+         */
+        private synchronized boolean halted(){
+            stopped=false;
+            active=restart;
+            restart=false;
+            return active;
+        }
         
         /**
-         * Plays the Ogg stream. update() must be called regularly so that the data
-         * is copied to OpenAl
+         * Queues the first buffers and starts the source.
          */
-        public boolean play() {
+        private void begin() throws IOException{
             AL10.alSource3f(source, AL10.AL_POSITION, 0, 0, 0);
             AL10.alSource3f(source, AL10.AL_VELOCITY, 0, 0, 0);
             AL10.alSource3f(source, AL10.AL_DIRECTION, 0, 0, 0);
             AL10.alSourcef(source, AL10.AL_ROLLOFF_FACTOR, 0);
             AL10.alSourcei(source, AL10.AL_SOURCE_RELATIVE, AL10.AL_TRUE);
-            if (playing()) {
-                return true;
+            idle.clear();
+            for(int i=0; i<buffers.capacity(); i++){
+                idle.put(buffers.get(i));
             }
-
-            for (int i=0; i<buffers.capacity(); i++) {
-                if (!stream(buffers.get(i))) {
-                    return false;
+            started=true;
+            feed();
+            AL10.alSourcePlay(source);
+        }
+        
+        /**
+         * Decodes into the buffers OpenAL has finished with and queues them
+         * again. At the end of the stream it is reopened if looping, so loops
+         * have no gap.
+         */
+        private void feed() throws IOException{
+            int processed=AL10.alGetSourcei(source, AL10.AL_BUFFERS_PROCESSED);
+            while(processed-- > 0){
+                single.clear();
+                AL10.alSourceUnqueueBuffers(source, single);
+                idle.put(single.get(0));
+            }
+            while(idle.position()>0 && !endOfStream){
+                pcm.clear();
+                int bytesRead=stream.read(pcm, 0, pcm.capacity());
+                if(bytesRead>0){
+                    pcm.position(0).limit(bytesRead);
+                    int buffer=idle.get(idle.position()-1);
+                    idle.position(idle.position()-1);
+                    AL10.alBufferData(buffer, stream.getChannels(), pcm, stream.rate());
+                    single.clear();
+                    single.put(0, buffer);
+                    AL10.alSourceQueueBuffers(source, single);
+                }else if(!looping || !reopen()){
+                    endOfStream=true;
                 }
             }
-
-            AL10.alSourceQueueBuffers(source, buffers);
-            AL10.alSourcePlay(source);
+        }
+        
+        /**
+         * Stops the source and unqueues its buffers for the next play.
+         */
+        private void halt(){
+            AL10.alSourceStop(source);
+            int queued=AL10.alGetSourcei(source, AL10.AL_BUFFERS_QUEUED);
+            while(queued-- > 0){
+                single.clear();
+                AL10.alSourceUnqueueBuffers(source, single);
+            }
+            // the next play starts over from a reopened stream, generated
+            // streams continue where they stopped
+            if(stream.getFileName() !=null){
+                finished=true;
+                try{
+                    stream.close();
+                }catch(IOException e){
+                    //do nothing
+                }
+            }
+            started=false;
+            endOfStream=false;
+        }
+        
+        private boolean reopen(){
+            if(stream.getFileName()==null) return false;
+            try{
+                stream.close();
+            }catch(IOException e){
+                //do nothing
+            }
+            JMEAudioInputStream reopened=open(stream.getFileName(), false);
+            if(reopened==null) return false;
+            reopened.setLength(stream.getLength());
+            stream=reopened;
             finished=false;
             return true;
         }
         
         public void close(){
+            if(active){
+                // the worker closes the stream when it halts
+                stop();
+                return;
+            }
             try {
                 stream.close();
             } catch (IOException e) {
@@ -379,17 +587,17 @@ public class StreamPlayer{
             }
         }
         
-        public boolean pause(){
+        public synchronized boolean pause(){
             paused=!paused;
+            if(!paused && active) wakeWorker();
             return paused;
         }
         
-        public void stop(){
+        public synchronized void stop(){
             stopped=true;
+            restart=false;
+            if(active) wakeWorker();
         }
-
-        
-        
         
         /**
          * check if the source is playing
@@ -398,31 +606,6 @@ public class StreamPlayer{
             return (AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE) == AL10.AL_PLAYING);
         }
         
-        /** Calls update at an interval */
-        public void run() {
-            if(finished){
-                float length=stream.getLength();
-                stream=open(stream.getFileName(), false);
-                if(stream==null) return;
-                
-            }
-            play();
-            try {
-                while (update() && !stopped) {
-                    Thread.sleep(2);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            finished=true;
-            try {
-                stream.close();
-            } catch (IOException e1) {
-                //do nothing
-            }
-            if(looping && !stopped) run();
-        }
-        
         public boolean isLooping() {
             return looping;
         }
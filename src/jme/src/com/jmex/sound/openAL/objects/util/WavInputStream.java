@@ -62,18 +62,26 @@ public class WavInputStream extends JMEAudioInputStream{
      *         no more data because the end of the stream has been reached. 
      */
     public int read(ByteBuffer b, int off, int len) throws IOException {
-        byte[] buffer=new byte[b.capacity()];
-        int bytesRead=read(buffer, off, len);
+        if(readBuffer==null || readBuffer.length<len){
+            readBuffer=new byte[len];
+        }
+        byte[] buffer=readBuffer;
+        int bytesRead=read(buffer, 0, len);
         if(bytesRead>0 && filters.size()>0){
             Iterator it=filters.iterator();
             while(it.hasNext()){
                 buffer=((Filter)it.next()).filter(buffer);
             }
         }
-        b.put(buffer);
         b.position(off);
+        if(bytesRead>0){
+            b.put(buffer, 0, bytesRead);
+        }
         return bytesRead;
     }
+
+    // reused by read(ByteBuffer, int, int)
+    private byte[] readBuffer;
     
     
     //this allows us to read binary data from the stream
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.bench;
+
+import java.util.Random;
+
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+
+/**
+ * <code>Benchmark</code> is one measured operation of the
+ * {@link BenchmarkRunner}. <code>run</code> performs the operation a given
+ * number of times, cycling through inputs prepared by <code>setUp</code>, and
+ * hands every result to one of the <code>consume</code> methods so the
+ * compiler cannot drop the work.
+ * 
+ * @version $Id$
+ */
+public abstract class Benchmark {
+
+    /** Number of prepared inputs of each kind, a power of two. */
+    protected static final int INPUTS = 1024;
+
+    /** Mask to cycle an operation counter through the inputs. */
+    protected static final int MASK = INPUTS - 1;
+
+    /** Seed of the input data, the same in every run. */
+    private static final long SEED = 20050801L;
+
+    private static float floatSink;
+
+    private static Object objectSink;
+
+    private final String name;
+
+    /**
+     * @param name
+     *            the name the benchmark is reported and filtered by, e.g.
+     *            "Quaternion.mult".
+     */
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * <code>setUp</code> prepares the inputs. It is called once before the
+     * warmup.
+     */
+    public void setUp() {
+    }
+
+    /**
+     * <code>run</code> performs the measured operation.
+     * 
+     * @param operations
+     *            the number of times to perform it.
+     */
+    public abstract void run(int operations);
+
+    /**
+     * @return a random generator seeded the same way on every run, so the
+     *         inputs and with them the branches taken do not change between
+     *         runs.
+     */
+    protected static Random random() {
+        return new Random(SEED);
+    }
+
+    /**
+     * @return <code>INPUTS</code> vectors with coordinates in
+     *         [-range, range).
+     */
+    protected static Vector3f[] vectors(Random random, float range) {
+        Vector3f[] vectors = new Vector3f[INPUTS];
+        for (int i = 0; i < INPUTS; i++)
+            vectors[i] = new Vector3f(range * (2 * random.nextFloat() - 1),
+                    range * (2 * random.nextFloat() - 1), range
+                            * (2 * random.nextFloat() - 1));
+        return vectors;
+    }
+
+    /**
+     * @return <code>INPUTS</code> random unit rotations.
+     */
+    protected static Quaternion[] rotations(Random random) {
+        Quaternion[] rotations = new Quaternion[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            rotations[i] = new Quaternion();
+            rotations[i].fromAngles(new float[] {
+                    6.2831855f * random.nextFloat(),
+                    6.2831855f * random.nextFloat(),
+                    6.2831855f * random.nextFloat() });
+        }
+        return rotations;
+    }
+
+    protected static void consume(float value) {
+        floatSink += value;
+    }
+
+    protected static void consume(boolean value) {
+        if (value)
+            floatSink++;
+    }
+
+    protected static void consume(Object value) {
+        objectSink = value;
+    }
+
+    /**
+     * @return a value depending on everything consumed, which the runner
+     *         prints so the sinks are not dead stores.
+     */
+    static float getSink() {
+        return floatSink + (objectSink == null ? 0 : 1);
+    }
+}
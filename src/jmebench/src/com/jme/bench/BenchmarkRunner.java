@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.logging.Level;
+
+import com.jme.util.LoggingSystem;
+
+/**
+ * <code>BenchmarkRunner</code> measures the benchmarks of this module and
+ * prints one line per benchmark: the mean time per operation with its error
+ * and the bytes allocated per operation.
+ * <p>
+ * Every benchmark is first run until one call to <code>run</code> takes
+ * about the requested iteration time, then for a number of warmup iterations
+ * so the JIT has compiled it, and finally for the measured iterations. The
+ * error is half the width of the 99% confidence interval of the mean.
+ * Allocated bytes are read from the per-thread allocation counter of the VM,
+ * if it has one.
+ * <p>
+ * Options:
+ * <ul>
+ * <li>-warmup n: warmup iterations, default 5</li>
+ * <li>-iterations n: measured iterations, default 10</li>
+ * <li>-time ms: time per iteration, default 200</li>
+ * <li>-filter text: run only the benchmarks whose name contains text</li>
+ * <li>-out file: also write the results to file, which can be used as a
+ * baseline later</li>
+ * <li>-baseline file: compare with the results in file</li>
+ * </ul>
+ * 
+ * @version $Id$
+ */
+public class BenchmarkRunner {
+
+    /** Student's t for a 99% two sided interval, by degrees of freedom. */
+    private static final float[] T_99 = { 63.657f, 9.925f, 5.841f, 4.604f,
+            4.032f, 3.707f, 3.499f, 3.355f, 3.250f, 3.169f, 3.106f, 3.055f,
+            3.012f, 2.977f, 2.947f, 2.921f, 2.898f, 2.878f, 2.861f, 2.845f };
+
+    private static final float T_99_LIMIT = 2.576f;
+
+    private int warmup = 5;
+
+    private int iterations = 10;
+
+    private long iterationTime = 200;
+
+    private String filter;
+
+    private String out;
+
+    private String baseline;
+
+    private final java.lang.management.ThreadMXBean threads = ManagementFactory
+            .getThreadMXBean();
+
+    private boolean allocationCounted;
+
+    public static void main(String[] args) throws IOException {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 == args.length) {
+                usage("missing value for " + arg);
+            }
+            String value = args[++i];
+            if ("-warmup".equals(arg)) {
+                runner.warmup = Integer.parseInt(value);
+            } else if ("-iterations".equals(arg)) {
+                runner.iterations = Integer.parseInt(value);
+            } else if ("-time".equals(arg)) {
+                runner.iterationTime = Long.parseLong(value);
+            } else if ("-filter".equals(arg)) {
+                runner.filter = value;
+            } else if ("-out".equals(arg)) {
+                runner.out = value;
+            } else if ("-baseline".equals(arg)) {
+                runner.baseline = value;
+            } else {
+                usage("unknown option " + arg);
+            }
+        }
+        if (runner.iterations < 2) {
+            usage("at least 2 iterations are needed for an error");
+        }
+
+        // jME logs every node and mesh it creates at INFO
+        LoggingSystem.getLoggingSystem().setLevel(Level.WARNING);
+        List benchmarks = new ArrayList();
+        MathBenchmarks.addTo(benchmarks);
+        BoundingBenchmarks.addTo(benchmarks);
+        ParticleBenchmarks.addTo(benchmarks);
+        RenderQueueBenchmarks.addTo(benchmarks);
+        ClodBenchmarks.addTo(benchmarks);
+        SceneBenchmarks.addTo(benchmarks);
+        BvhBenchmarks.addTo(benchmarks);
+        CollisionBenchmarks.addTo(benchmarks);
+        CarBenchmarks.addTo(benchmarks);
+        runner.run(benchmarks);
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("usage: BenchmarkRunner [-warmup n] [-iterations n]"
+                + " [-time ms] [-filter text] [-out file] [-baseline file]");
+        System.exit(1);
+    }
+
+    private void run(List benchmarks) throws IOException {
+        allocationCounted = enableAllocationCounting();
+        Map previous = baseline != null ? read(baseline) : null;
+
+        StringWriter results = new StringWriter();
+        PrintWriter report = new PrintWriter(results);
+        report.println("# java " + System.getProperty("java.version") + ", "
+                + System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.vm.version") + ", "
+                + System.getProperty("os.name") + " "
+                + System.getProperty("os.arch") + ", "
+                + Runtime.getRuntime().availableProcessors() + " cpus");
+        report.println("# " + warmup + " warmup and " + iterations
+                + " measured iterations of " + iterationTime + " ms");
+        report.println(format("# benchmark", "ns/op", "error", "B/op"));
+        System.out.print(results);
+
+        for (int i = 0; i < benchmarks.size(); i++) {
+            Benchmark benchmark = (Benchmark) benchmarks.get(i);
+            if (filter != null && benchmark.getName().indexOf(filter) < 0) {
+                continue;
+            }
+            String line = measure(benchmark);
+            report.println(line);
+            System.out.print(line);
+            if (previous != null) {
+                System.out.print(compare(line, (String) previous
+                        .get(benchmark.getName())));
+            }
+            System.out.println();
+        }
+        report.flush();
+        // keeps the results of all operations alive
+        System.out.println("# sink " + Benchmark.getSink());
+
+        if (out != null) {
+            FileWriter writer = new FileWriter(out);
+            try {
+                writer.write(results.toString());
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    private boolean enableAllocationCounting() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported()) {
+            return false;
+        }
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        return allocations.isThreadAllocatedMemoryEnabled();
+    }
+
+    private long allocatedBytes() {
+        if (!allocationCounted) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private String measure(Benchmark benchmark) {
+        benchmark.setUp();
+
+        int operations = calibrate(benchmark);
+        for (int i = 0; i < warmup; i++) {
+            benchmark.run(operations);
+        }
+
+        double[] nanos = new double[iterations];
+        long bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            benchmark.run(operations);
+            long time = System.nanoTime() - start;
+            bytes += allocatedBytes() - allocated;
+            nanos[i] = (double) time / operations;
+        }
+
+        double mean = 0;
+        for (int i = 0; i < iterations; i++) {
+            mean += nanos[i];
+        }
+        mean /= iterations;
+        double variance = 0;
+        for (int i = 0; i < iterations; i++) {
+            variance += (nanos[i] - mean) * (nanos[i] - mean);
+        }
+        variance /= iterations - 1;
+        double t = iterations - 1 <= T_99.length ? T_99[iterations - 2]
+                : T_99_LIMIT;
+        double error = t * Math.sqrt(variance / iterations);
+
+        String allocation = allocationCounted ? number((double) bytes
+                / ((long) operations * iterations)) : "n/a";
+        return format(benchmark.getName(), number(mean), number(error),
+                allocation);
+    }
+
+    /**
+     * @return the number of operations one call to <code>run</code> needs
+     *         to take about the iteration time.
+     */
+    private int calibrate(Benchmark benchmark) {
+        long target = iterationTime * 1000000L;
+        int operations = 1;
+        while (true) {
+            long start = System.nanoTime();
+            benchmark.run(operations);
+            long time = System.nanoTime() - start;
+            if (time >= target / 10 || operations >= Integer.MAX_VALUE / 2) {
+                long scaled = operations * target / Math.max(time, 1);
+                return (int) Math.max(1, Math.min(scaled, Integer.MAX_VALUE));
+            }
+            operations *= 2;
+        }
+    }
+
+    private static String format(String name, String time, String error,
+            String allocation) {
+        StringBuffer line = new StringBuffer(name);
+        pad(line, 48 - time.length());
+        line.append(time);
+        pad(line, 60 - error.length());
+        line.append(error);
+        pad(line, 72 - allocation.length());
+        line.append(allocation);
+        return line.toString();
+    }
+
+    private static void pad(StringBuffer line, int length) {
+        line.append(' ');
+        while (line.length() < length) {
+            line.append(' ');
+        }
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.US, "%.3f", new Object[] { new Double(
+                value) });
+    }
+
+    /**
+     * @return the change of the time and allocation against the baseline
+     *         line of the same benchmark.
+     */
+    private static String compare(String line, String base) {
+        if (base == null) {
+            return "   (new)";
+        }
+        StringTokenizer now = new StringTokenizer(line);
+        StringTokenizer then = new StringTokenizer(base);
+        now.nextToken();
+        then.nextToken();
+        double time = Double.parseDouble(now.nextToken());
+        double baseTime = Double.parseDouble(then.nextToken());
+        now.nextToken();
+        then.nextToken();
+        String allocation = now.nextToken();
+        String baseAllocation = then.nextToken();
+
+        StringBuffer change = new StringBuffer("   ");
+        change.append(String.format(Locale.US, "%+.1f%%",
+                new Object[] { new Double(100 * (time - baseTime) / baseTime) }));
+        if (!allocation.equals(baseAllocation)) {
+            change.append(", B/op was ").append(baseAllocation);
+        }
+        return change.toString();
+    }
+
+    /**
+     * @return the result lines of a file written with -out, by benchmark
+     *         name.
+     */
+    private static Map read(String file) throws IOException {
+        Map lines = new HashMap();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                lines.put(new StringTokenizer(line).nextToken(), line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
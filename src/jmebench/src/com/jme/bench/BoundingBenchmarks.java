@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.bench;
+
+import java.util.List;
+import java.util.Random;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingSphere;
+import com.jme.bounding.OBB2;
+import com.jme.bounding.OrientedBoundingBox;
+import com.jme.math.Quaternion;
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+
+/**
+ * <code>BoundingBenchmarks</code> covers the bounding volume operations of
+ * the scene update and of picking and collision: merging the bounds of
+ * children, transforming model bounds to world bounds, ray intersection and
+ * box/box intersection. The volumes are spread over a cube of 200 units with
+ * extents between 1 and 10, so the intersection tests see a mix of hits and
+ * misses.
+ * 
+ * @version $Id$
+ */
+public final class BoundingBenchmarks {
+
+    private static final Vector3f UNIT_SCALE = new Vector3f(1, 1, 1);
+
+    private static final BoundingBox[] BOXES;
+
+    private static final BoundingBox[] OTHER_BOXES;
+
+    private static final BoundingSphere[] SPHERES;
+
+    private static final BoundingSphere[] OTHER_SPHERES;
+
+    private static final OBB2[] OBBS;
+
+    private static final OBB2[] OTHER_OBBS;
+
+    private static final OrientedBoundingBox[] ORIENTED_BOXES;
+
+    private static final OrientedBoundingBox[] OTHER_ORIENTED_BOXES;
+
+    private static final Quaternion[] ROTATIONS;
+
+    private static final Vector3f[] TRANSLATIONS;
+
+    private static final Ray[] RAYS;
+
+    static {
+        Random random = Benchmark.random();
+        Vector3f[] centers = Benchmark.vectors(random, 100);
+        Vector3f[] otherCenters = Benchmark.vectors(random, 100);
+        Vector3f[] extents = extents(random);
+        Vector3f[] otherExtents = extents(random);
+        Quaternion[] orientations = Benchmark.rotations(random);
+        Quaternion[] otherOrientations = Benchmark.rotations(random);
+        ROTATIONS = Benchmark.rotations(random);
+        TRANSLATIONS = Benchmark.vectors(random, 100);
+        Vector3f[] origins = Benchmark.vectors(random, 100);
+        Vector3f[] directions = Benchmark.vectors(random, 1);
+
+        BOXES = new BoundingBox[Benchmark.INPUTS];
+        OTHER_BOXES = new BoundingBox[Benchmark.INPUTS];
+        SPHERES = new BoundingSphere[Benchmark.INPUTS];
+        OTHER_SPHERES = new BoundingSphere[Benchmark.INPUTS];
+        OBBS = new OBB2[Benchmark.INPUTS];
+        OTHER_OBBS = new OBB2[Benchmark.INPUTS];
+        ORIENTED_BOXES = new OrientedBoundingBox[Benchmark.INPUTS];
+        OTHER_ORIENTED_BOXES = new OrientedBoundingBox[Benchmark.INPUTS];
+        RAYS = new Ray[Benchmark.INPUTS];
+        for (int i = 0; i < Benchmark.INPUTS; i++) {
+            BOXES[i] = box(centers[i], extents[i]);
+            OTHER_BOXES[i] = box(otherCenters[i], otherExtents[i]);
+            SPHERES[i] = new BoundingSphere(extents[i].length(), centers[i]);
+            OTHER_SPHERES[i] = new BoundingSphere(otherExtents[i].length(),
+                    otherCenters[i]);
+            OBBS[i] = obb(centers[i], extents[i], orientations[i]);
+            OTHER_OBBS[i] = obb(otherCenters[i], otherExtents[i],
+                    otherOrientations[i]);
+            ORIENTED_BOXES[i] = orientedBox(centers[i], extents[i],
+                    orientations[i]);
+            OTHER_ORIENTED_BOXES[i] = orientedBox(otherCenters[i],
+                    otherExtents[i], otherOrientations[i]);
+            RAYS[i] = new Ray(origins[i], directions[i].normalizeLocal());
+        }
+    }
+
+    private BoundingBenchmarks() {
+    }
+
+    private static Vector3f[] extents(Random random) {
+        Vector3f[] extents = new Vector3f[Benchmark.INPUTS];
+        for (int i = 0; i < Benchmark.INPUTS; i++)
+            extents[i] = new Vector3f(1 + 9 * random.nextFloat(),
+                    1 + 9 * random.nextFloat(), 1 + 9 * random.nextFloat());
+        return extents;
+    }
+
+    private static BoundingBox box(Vector3f center, Vector3f extent) {
+        return new BoundingBox(new Vector3f(center), extent.x, extent.y,
+                extent.z);
+    }
+
+    private static OBB2 obb(Vector3f center, Vector3f extent,
+            Quaternion orientation) {
+        OBB2 axisAligned = new OBB2();
+        axisAligned.extent.set(extent);
+        return (OBB2) axisAligned.transform(orientation, center, UNIT_SCALE,
+                new OBB2());
+    }
+
+    private static OrientedBoundingBox orientedBox(Vector3f center,
+            Vector3f extent, Quaternion orientation) {
+        OrientedBoundingBox axisAligned = new OrientedBoundingBox();
+        axisAligned.getExtent().set(extent);
+        return (OrientedBoundingBox) axisAligned.transform(orientation,
+                center, UNIT_SCALE, new OrientedBoundingBox());
+    }
+
+    /**
+     * Adds the bounding volume benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        benchmarks.add(new Benchmark("BoundingBox.merge") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(BOXES[i & MASK].merge(OTHER_BOXES[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("BoundingBox.mergeLocal") {
+            private final BoundingBox store = new BoundingBox();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    BOXES[i & MASK].clone(store);
+                    store.mergeLocal(OTHER_BOXES[i & MASK]);
+                    consume(store.xExtent);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("BoundingSphere.merge") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(SPHERES[i & MASK].merge(OTHER_SPHERES[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("BoundingSphere.mergeLocal") {
+            private final BoundingSphere store = new BoundingSphere(0,
+                    new Vector3f());
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    SPHERES[i & MASK].clone(store);
+                    store.mergeLocal(OTHER_SPHERES[i & MASK]);
+                    consume(store.getRadius());
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("BoundingBox.transform") {
+            private final BoundingBox store = new BoundingBox();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    BOXES[i & MASK].transform(ROTATIONS[i & MASK],
+                            TRANSLATIONS[i & MASK], UNIT_SCALE, store);
+                    consume(store.xExtent);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("BoundingSphere.transform") {
+            private final BoundingSphere store = new BoundingSphere(0,
+                    new Vector3f());
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    SPHERES[i & MASK].transform(ROTATIONS[i & MASK],
+                            TRANSLATIONS[i & MASK], UNIT_SCALE, store);
+                    consume(store.getRadius());
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("OBB2.transform") {
+            private final OBB2 store = new OBB2();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    OBBS[i & MASK].transform(ROTATIONS[i & MASK],
+                            TRANSLATIONS[i & MASK], UNIT_SCALE, store);
+                    consume(store.center.x);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("BoundingBox.intersects(Ray)") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(BOXES[i & MASK].intersects(RAYS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("BoundingSphere.intersects(Ray)") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(SPHERES[i & MASK].intersects(RAYS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("OBB2.intersects(Ray)") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(OBBS[i & MASK].intersects(RAYS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("BoundingBox.intersects(BoundingBox)") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(BOXES[i & MASK]
+                            .intersectsBoundingBox(OTHER_BOXES[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("OBB2.intersection(OBB2)") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(OBBS[i & MASK].intersection(OTHER_OBBS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("OrientedBoundingBox.intersects(OBB)") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(ORIENTED_BOXES[i & MASK]
+                            .intersectsOrientedBoundingBox(OTHER_ORIENTED_BOXES[i
+                                    & MASK]));
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.jme.bench;
+
+import java.util.List;
+import java.util.Random;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.intersection.BoundingPickResults;
+import com.jme.intersection.PickResults;
+import com.jme.math.Quaternion;
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+import com.jme.renderer.AbstractCamera;
+import com.jme.renderer.Camera;
+import com.jme.renderer.CountingRenderer;
+import com.jme.scene.BvhNode;
+import com.jme.scene.Node;
+import com.jme.scene.shape.Box;
+import com.jmex.model.XMLparser.Converters.DummyDisplaySystem;
+
+/**
+ * <code>BvhBenchmarks</code> compares a <code>BvhNode</code> with a plain
+ * node over the same static scene, a flat grid of 64 by 64 boxes the way a
+ * loaded model keeps its parts. Culling draws one frame through a counting
+ * renderer with a camera turned a little further each frame. Picking passes
+ * one random ray from above the grid down into it. Both variants draw and
+ * pick the same boxes; <code>setUp</code> checks that.
+ * 
+ * @version $Id$
+ */
+public final class BvhBenchmarks {
+
+    /** Number of boxes along each side of the grid. */
+    private static final int SIDE = 64;
+
+    /** Distance between the centers of neighbouring boxes. */
+    private static final float SPACING = 4;
+
+    /** Number of camera directions the cull benchmarks cycle through. */
+    private static final int DIRECTIONS = 16;
+
+    private BvhBenchmarks() {
+    }
+
+    /**
+     * @return a node with the grid of boxes attached, updated once.
+     */
+    private static Node scene(Node root) {
+        for (int x = 0; x < SIDE; x++) {
+            for (int z = 0; z < SIDE; z++) {
+                Box box = new Box("box" + x + "," + z,
+                        new Vector3f(-1, -1, -1), new Vector3f(1, 1, 1));
+                box.getLocalTranslation().set(SPACING * x, 0, SPACING * z);
+                box.setModelBound(new BoundingBox());
+                box.updateModelBound();
+                root.attachChild(box);
+            }
+        }
+        root.updateGeometricState(0, true);
+        return root;
+    }
+
+    /**
+     * @return a hierarchy over the grid, built.
+     */
+    private static BvhNode bvhScene() {
+        BvhNode root = (BvhNode) scene(new BvhNode("bvh"));
+        root.build();
+        return root;
+    }
+
+    /**
+     * @return a renderer counting the draw calls of a dummy display, culling
+     *         with the given camera.
+     */
+    private static CountingRenderer renderer(final Camera camera) {
+        return new CountingRenderer(new DummyDisplaySystem().getRenderer()) {
+            public Camera getCamera() {
+                return camera;
+            }
+        };
+    }
+
+    /**
+     * Puts the camera in the middle of the grid, looking into the given one
+     * of <code>DIRECTIONS</code> directions.
+     */
+    private static void turn(Camera camera, int direction) {
+        float angle = 6.2831855f * direction / DIRECTIONS;
+        float center = SPACING * SIDE / 2;
+        camera.setFrame(new Vector3f(center, 10, center), new Quaternion()
+                .fromAngleNormalAxis(angle, new Vector3f(0, 1, 0)));
+        camera.update();
+    }
+
+    /**
+     * @return <code>INPUTS</code> rays from random points above the grid
+     *         down into it.
+     */
+    private static Ray[] rays(Random random) {
+        Ray[] rays = new Ray[Benchmark.INPUTS];
+        float size = SPACING * SIDE;
+        for (int i = 0; i < Benchmark.INPUTS; i++) {
+            Vector3f direction = new Vector3f(random.nextFloat() - 0.5f, -1,
+                    random.nextFloat() - 0.5f).normalizeLocal();
+            rays[i] = new Ray(new Vector3f(size * random.nextFloat(), 20,
+                    size * random.nextFloat()), direction);
+        }
+        return rays;
+    }
+
+    /**
+     * @return the number of boxes drawn by each frame, added up.
+     */
+    private static int draw(Node root, CountingRenderer renderer,
+            Camera camera) {
+        int drawn = 0;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            turn(camera, d);
+            root.onDraw(renderer);
+            renderer.displayBackBuffer();
+            drawn += renderer.getDrawCalls();
+        }
+        return drawn;
+    }
+
+    /**
+     * @return the number of boxes picked by all rays, added up.
+     */
+    private static int pick(Node root, Ray[] rays) {
+        PickResults results = new BoundingPickResults();
+        int picked = 0;
+        for (int i = 0; i < Benchmark.INPUTS; i++) {
+            results.clear();
+            root.findPick(rays[i], results);
+            picked += results.getNumber();
+        }
+        return picked;
+    }
+
+    /**
+     * Adds the hierarchy benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        benchmarks.add(new CullBenchmark("Node.onDraw(4096)", false));
+        benchmarks.add(new CullBenchmark("BvhNode.onDraw(4096)", true));
+        benchmarks.add(new PickBenchmark("Node.findPick(4096)", false));
+        benchmarks.add(new PickBenchmark("BvhNode.findPick(4096)", true));
+    }
+
+    /**
+     * Draws one frame of the grid per operation.
+     */
+    private static final class CullBenchmark extends Benchmark {
+
+        private final boolean bvh;
+
+        private Node root;
+
+        private Camera camera;
+
+        private CountingRenderer renderer;
+
+        CullBenchmark(String name, boolean bvh) {
+            super(name);
+            this.bvh = bvh;
+        }
+
+        public void setUp() {
+            camera = new GridCamera();
+            camera.setFrustumPerspective(60, 1, 1, 100);
+            renderer = renderer(camera);
+            root = bvh ? bvhScene() : scene(new Node("root"));
+            if (draw(root, renderer, camera) != draw(scene(new Node("root")),
+                    renderer, camera))
+                throw new IllegalStateException(getName()
+                        + " draws other boxes than the plain node");
+        }
+
+        public void run(int operations) {
+            for (int i = 0; i < operations; i++) {
+                turn(camera, i % DIRECTIONS);
+                root.onDraw(renderer);
+                renderer.displayBackBuffer();
+            }
+            consume(renderer.getDrawCalls());
+        }
+    }
+
+    /**
+     * Passes one ray into the grid per operation.
+     */
+    private static final class PickBenchmark extends Benchmark {
+
+        private final boolean bvh;
+
+        private Node root;
+
+        private Ray[] rays;
+
+        private PickResults results;
+
+        PickBenchmark(String name, boolean bvh) {
+            super(name);
+            this.bvh = bvh;
+        }
+
+        public void setUp() {
+            rays = rays(random());
+            results = new BoundingPickResults();
+            root = bvh ? bvhScene() : scene(new Node("root"));
+            if (pick(root, rays) != pick(scene(new Node("root")), rays))
+                throw new IllegalStateException(getName()
+                        + " picks other boxes than the plain node");
+        }
+
+        public void run(int operations) {
+            for (int i = 0; i < operations; i++) {
+                results.clear();
+                root.findPick(rays[i & MASK], results);
+            }
+            consume(results.getNumber());
+        }
+    }
+
+    /**
+     * Camera that only keeps its frustum, for culling without a display.
+     */
+    private static final class GridCamera extends AbstractCamera {
+
+        private static final long serialVersionUID = 1L;
+
+        public void resize(int width, int height) {
+        }
+
+        public void onViewPortChange() {
+        }
+    }
+}
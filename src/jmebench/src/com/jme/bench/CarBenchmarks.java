@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.jme.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+
+import javax.imageio.ImageIO;
+
+import org.odejava.Odejava;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.math.Vector3f;
+import com.jme.scene.Node;
+import com.jme.scene.shape.Box;
+import com.jme.system.JmeException;
+import com.jme.util.LoggingSystem;
+import com.jmex.physics.DynamicPhysicsObject;
+import com.jmex.physics.PhysicsWorld;
+import com.jmex.physics.types.PhysicsCylinder;
+import com.jmex.physics.vehicle.Car;
+
+/**
+ * <code>CarBenchmarks</code> covers the per step powertrain update of a car
+ * set up like the golf of the racer: a front driven chassis of 1400 kg on
+ * four wheels, in first gear with half throttle. ODE is loaded from
+ * <code>java.library.path</code>; without it the benchmarks are skipped.
+ *
+ * @version $Id$
+ */
+public final class CarBenchmarks {
+
+    /** Step size of the racer's physics. */
+    private static final float STEP = 0.01f;
+
+    private CarBenchmarks() {
+    }
+
+    /**
+     * @return a box of the given extents with a bound, updated once.
+     */
+    private static Node part(String name, Vector3f location, float x,
+            float y, float z) {
+        Box box = new Box(name, new Vector3f(), x, y, z);
+        box.setModelBound(new BoundingBox());
+        box.updateModelBound();
+        Node node = new Node(name);
+        node.attachChild(box);
+        node.getLocalTranslation().set(location);
+        node.updateGeometricState(0, true);
+        return node;
+    }
+
+    /**
+     * Draws a torque curve like the racer's engine picture: a yellow line
+     * rising to its peak at two thirds of the rpm range.
+     *
+     * @return the picture in a temporary file, deleted on exit together
+     *         with the table cached next to it.
+     */
+    private static String torqueCurve() throws IOException {
+        int w = 96, h = 48;
+        BufferedImage image = new BufferedImage(w, h,
+                BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < w; x++) {
+            int peak = 2 * w / 3;
+            int top = x < peak ? h - 1 - (h - 1) * x / peak : (h - 1)
+                    * (x - peak) / (2 * (w - peak));
+            for (int y = top; y < h; y++) {
+                image.setRGB(x, y, y == top ? 0xFFFF00 : 0xFFFFFF);
+            }
+        }
+        File file = File.createTempFile("torque", ".png");
+        file.deleteOnExit();
+        new File(file.getPath() + ".nmc").deleteOnExit();
+        ImageIO.write(image, "png", file);
+        return file.getPath();
+    }
+
+    /**
+     * Adds the car benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        if (!Odejava.init()) {
+            LoggingSystem.getLogger().log(Level.WARNING,
+                    "ODE could not be loaded, skipping the car benchmarks");
+            return;
+        }
+        benchmarks.add(new Benchmark("Car.update") {
+            private Car car;
+
+            public void setUp() {
+                PhysicsWorld.create();
+                PhysicsWorld.getInstance().setStepSize(STEP);
+                PhysicsWorld.getInstance().setUpdateRate(-1);
+
+                DynamicPhysicsObject chassis = new DynamicPhysicsObject(part(
+                        "chassis", new Vector3f(), 2, 0.7f, 0.9f), 140);
+                DynamicPhysicsObject[] wheels = new DynamicPhysicsObject[4];
+                for (int i = 0; i < wheels.length; i++) {
+                    wheels[i] = new DynamicPhysicsObject(part("wheel" + i,
+                            new Vector3f(), 0.32f, 0.32f, 0.1f),
+                            new PhysicsCylinder(0.32f, 0.19f), 2.5f);
+                }
+                try {
+                    car = new Car(chassis, wheels, 50, 0.75f, 0.00025f,
+                            true, false, new Vector3f(1.16f, -0.84f, 0),
+                            new Vector3f(-1.33f, -0.82f, 0), 1.5f,
+                            torqueCurve(), 1000, 7000, 120, 280);
+                } catch (IOException e) {
+                    throw new JmeException("torque curve: " + e.getMessage());
+                }
+                car.addToWorld();
+                car.setCurrentGear(1);
+                car.setGasPedal(0.5f);
+                car.setSteeringWheel(0.1f);
+                // get the wheels turning, the world is not stepped while
+                // measuring so only the update itself is counted
+                for (int i = 0; i < 50; i++) {
+                    car.update(STEP);
+                    PhysicsWorld.getInstance().update(STEP);
+                }
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    car.update(STEP);
+                }
+                consume(car.getCurrentRPM());
+            }
+        });
+    }
+}
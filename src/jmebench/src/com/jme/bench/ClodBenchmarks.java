@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.bench;
+
+import java.util.List;
+import java.util.Random;
+
+import com.jme.math.Vector2f;
+import com.jme.math.Vector3f;
+import com.jme.scene.lod.ClodCreator;
+import com.jme.scene.lod.CollapseRecord;
+
+/**
+ * <code>ClodBenchmarks</code> covers the creation of the collapse records of
+ * a <code>ClodMesh</code> from a terrain: a heightmap of 256 by 256 vertices
+ * 4 units apart, with rolling hills and some noise. One operation copies the
+ * arrays <code>ClodCreator</code> reorders in place and creates the records.
+ * <code>setUp</code> checks that the records collapse the mesh step by step
+ * and expand it back to the original connectivity, and that the records of
+ * a small heightmap without equal edge metrics are the ones the creator based
+ * on <code>VETMesh</code> made.
+ * 
+ * @version $Id$
+ */
+public final class ClodBenchmarks {
+
+    /** Vertices per side of the heightmap. */
+    private static final int SIZE = 256;
+
+    /** Vertices per side of the heightmap with known records. */
+    private static final int GOLDEN_SIZE = 5;
+
+    /**
+     * The records the <code>VETMesh</code> based creator made for the golden
+     * heightmap, each {keep, throw, vertices, triangles, indices...}.
+     */
+    private static final int[][] GOLDEN_RECORDS = {
+            { -1, -1, 25, 32 },
+            { 18, 24, 24, 30, 8, 34, 38, 61 },
+            { 22, 23, 23, 28, 7, 14, 17 },
+            { 3, 22, 22, 26, 7, 11, 14, 17, 55 },
+            { 14, 21, 21, 24, 6, 15, 26, 37 },
+            { 1, 20, 20, 22, 19, 44, 49, 53 },
+            { 12, 19, 19, 20, 3, 27, 31 },
+            { 16, 18, 18, 18, 4, 8, 34, 38 },
+            { 1, 17, 17, 16, 5, 22, 28 },
+            { 2, 16, 16, 14, 4, 8, 34, 38 } };
+
+    /** The connectivity of the golden heightmap as reordered by it. */
+    private static final int[] GOLDEN_INDICES = { 5, 1, 0, 19, 18, 17, 21,
+            23, 24, 6, 4, 22, 8, 6, 23, 21, 8, 23, 7, 20, 5, 9, 17, 7, 10, 8,
+            21, 19, 17, 9, 11, 19, 9, 13, 24, 12, 13, 21, 24, 15, 10, 14, 16,
+            2, 20, 16, 3, 2, 17, 20, 7, 17, 16, 20, 18, 22, 16, 18, 16, 17,
+            12, 24, 19, 12, 19, 11, 20, 1, 5, 20, 2, 1, 14, 21, 13, 14, 10,
+            21, 22, 3, 16, 22, 4, 3, 23, 22, 18, 23, 6, 22, 24, 18, 19, 24,
+            23, 18 };
+
+    private ClodBenchmarks() {
+    }
+
+    private static Vector3f[] heightmap(Random random) {
+        Vector3f[] vertices = new Vector3f[SIZE * SIZE];
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                float height = (float) (20 * Math.sin(x * 0.07)
+                        * Math.cos(z * 0.05) + 5 * Math.sin(x * 0.31 + z
+                        * 0.17)) + random.nextFloat();
+                vertices[z * SIZE + x] = new Vector3f(4 * x, height, 4 * z);
+            }
+        }
+        return vertices;
+    }
+
+    private static Vector2f[] textureCoords(Vector3f[] vertices) {
+        Vector2f[] coords = new Vector2f[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            coords[i] = new Vector2f(vertices[i].x / (4 * SIZE), vertices[i].z
+                    / (4 * SIZE));
+        }
+        return coords;
+    }
+
+    private static int[] indices(int size) {
+        int[] indices = new int[(size - 1) * (size - 1) * 6];
+        int i = 0;
+        for (int z = 0; z < size - 1; z++) {
+            for (int x = 0; x < size - 1; x++) {
+                int corner = z * size + x;
+                indices[i++] = corner;
+                indices[i++] = corner + size;
+                indices[i++] = corner + 1;
+                indices[i++] = corner + 1;
+                indices[i++] = corner + size;
+                indices[i++] = corner + size + 1;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Collapses the reordered connectivity with all records and expands it
+     * again, as <code>ClodMesh</code> does.
+     */
+    private static void check(CollapseRecord[] records, int[] indices) {
+        int[] collapsed = indices.clone();
+        if (records[0].numbTriangles * 3 != indices.length)
+            throw new IllegalStateException("first record has "
+                    + records[0].numbTriangles + " triangles");
+        for (int r = 1; r < records.length; r++) {
+            CollapseRecord record = records[r];
+            if (record.numbTriangles >= records[r - 1].numbTriangles
+                    || record.error < records[r - 1].error)
+                throw new IllegalStateException("record " + r
+                        + " does not reduce the mesh");
+            for (int i = 0; i < record.numbIndices; i++) {
+                if (collapsed[record.indices[i]] != record.vertToThrow)
+                    throw new IllegalStateException("record " + r
+                            + " replaces a vertex it does not throw");
+                collapsed[record.indices[i]] = record.vertToKeep;
+            }
+        }
+        for (int r = records.length - 1; r > 0; r--) {
+            CollapseRecord record = records[r];
+            for (int i = 0; i < record.numbIndices; i++) {
+                collapsed[record.indices[i]] = record.vertToThrow;
+            }
+        }
+        for (int i = 0; i < indices.length; i++) {
+            if (collapsed[i] != indices[i])
+                throw new IllegalStateException("expanding the records does"
+                        + " not restore index " + i);
+        }
+    }
+
+    /**
+     * Compares the records of a heightmap of random heights, 4 units apart,
+     * with the golden ones.
+     */
+    private static void checkGolden() {
+        Random random = Benchmark.random();
+        int size = GOLDEN_SIZE;
+        Vector3f[] vertices = new Vector3f[size * size];
+        Vector2f[] coords = new Vector2f[size * size];
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                vertices[z * size + x] = new Vector3f(4f * x,
+                        3 * random.nextFloat(), 4f * z);
+                coords[z * size + x] = new Vector2f(x / (float) size, z
+                        / (float) size);
+            }
+        }
+        int[] indices = indices(size);
+        CollapseRecord[] records = new ClodCreator(vertices, null, null,
+                coords, indices).getRecords();
+
+        if (records.length != GOLDEN_RECORDS.length)
+            throw new IllegalStateException(records.length
+                    + " records instead of " + GOLDEN_RECORDS.length);
+        for (int r = 0; r < records.length; r++) {
+            CollapseRecord record = records[r];
+            int[] golden = GOLDEN_RECORDS[r];
+            boolean equal = record.vertToKeep == golden[0]
+                    && record.vertToThrow == golden[1]
+                    && record.numbVerts == golden[2]
+                    && record.numbTriangles == golden[3]
+                    && record.numbIndices == golden.length - 4;
+            for (int i = 0; equal && i < record.numbIndices; i++) {
+                equal = record.indices[i] == golden[4 + i];
+            }
+            if (!equal)
+                throw new IllegalStateException("record " + r
+                        + " differs from the golden one");
+        }
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] != GOLDEN_INDICES[i])
+                throw new IllegalStateException("reordered index " + i
+                        + " differs from the golden one");
+        }
+    }
+
+    /**
+     * Adds the continuous level of detail benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        benchmarks.add(new Benchmark("ClodCreator(" + SIZE + "x" + SIZE + ")") {
+            private Vector3f[] vertices;
+
+            private Vector2f[] coords;
+
+            private int[] indices;
+
+            public void setUp() {
+                checkGolden();
+
+                vertices = heightmap(random());
+                coords = textureCoords(vertices);
+                indices = indices(SIZE);
+
+                int[] reordered = indices.clone();
+                CollapseRecord[] records = new ClodCreator(
+                        vertices.clone(), null, null,
+                        coords.clone(), reordered).getRecords();
+                check(records, reordered);
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(new ClodCreator(vertices.clone(),
+                            null, null, coords.clone(),
+                            indices.clone()).getRecords());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.jme.bench;
+
+import java.util.List;
+import java.util.Random;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.intersection.CollisionResults;
+import com.jme.intersection.PickResults;
+import com.jme.intersection.TriangleCollisionResults;
+import com.jme.intersection.TrianglePickResults;
+import com.jme.math.Quaternion;
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+import com.jme.scene.shape.Sphere;
+
+/**
+ * <code>CollisionBenchmarks</code> covers the triangle accurate queries on
+ * the collision tree of a sphere of about 8k triangles: building the tree,
+ * picking it with rays from outside through its bound, and colliding it with
+ * a second sphere overlapping half of it, turned by a different rotation for
+ * every operation.
+ * 
+ * @version $Id$
+ */
+public final class CollisionBenchmarks {
+
+    /** Samples of the spheres along each direction, about 8k triangles. */
+    private static final int SAMPLES = 64;
+
+    private CollisionBenchmarks() {
+    }
+
+    /**
+     * @return a sphere of radius 1 at the given location, updated once.
+     */
+    private static Sphere sphere(String name, Vector3f center) {
+        Sphere sphere = new Sphere(name, SAMPLES, SAMPLES, 1);
+        sphere.setModelBound(new BoundingBox());
+        sphere.updateModelBound();
+        sphere.getLocalTranslation().set(center);
+        sphere.updateGeometricState(0, true);
+        return sphere;
+    }
+
+    /**
+     * @return <code>INPUTS</code> rays from points on a sphere of radius 3
+     *         through random points within the sphere of radius 1.
+     */
+    private static Ray[] rays(Random random) {
+        Vector3f[] from = Benchmark.vectors(random, 1);
+        Vector3f[] to = Benchmark.vectors(random, 0.7f);
+        Ray[] rays = new Ray[Benchmark.INPUTS];
+        for (int i = 0; i < rays.length; i++) {
+            Vector3f origin = from[i].normalizeLocal().multLocal(3);
+            rays[i] = new Ray(origin, to[i].subtract(origin)
+                    .normalizeLocal());
+        }
+        return rays;
+    }
+
+    /**
+     * Adds the collision benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        benchmarks.add(new Benchmark("OBBTree.construct(8k)") {
+            private Sphere sphere;
+
+            public void setUp() {
+                sphere = sphere("sphere", new Vector3f());
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    sphere.updateCollisionTree();
+                }
+                consume(sphere);
+            }
+        });
+        benchmarks.add(new Benchmark("TrianglePickResults(8k)") {
+            private Sphere sphere;
+
+            private Ray[] rays;
+
+            private PickResults results;
+
+            public void setUp() {
+                sphere = sphere("sphere", new Vector3f());
+                sphere.updateCollisionTree();
+                rays = rays(random());
+                results = new TrianglePickResults();
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    results.clear();
+                    sphere.findPick(rays[i & MASK], results);
+                }
+                consume(results.getNumber());
+            }
+        });
+        benchmarks.add(new Benchmark("TriangleCollisionResults(8k)") {
+            private Sphere sphere, other;
+
+            private Quaternion[] rotations;
+
+            private CollisionResults results;
+
+            public void setUp() {
+                sphere = sphere("sphere", new Vector3f());
+                sphere.updateCollisionTree();
+                other = sphere("other", new Vector3f(1, 0, 0));
+                other.updateCollisionTree();
+                rotations = rotations(random());
+                results = new TriangleCollisionResults();
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    other.getLocalRotation().set(rotations[i & MASK]);
+                    other.updateGeometricState(0, true);
+                    results.clear();
+                    sphere.findCollisions(other, results);
+                }
+                consume(results.getNumber());
+            }
+        });
+        benchmarks.add(new Benchmark("TriMesh.hasTriangleCollision(8k)") {
+            private Sphere sphere, other;
+
+            private Quaternion[] rotations;
+
+            public void setUp() {
+                sphere = sphere("sphere", new Vector3f());
+                sphere.updateCollisionTree();
+                other = sphere("other", new Vector3f(1.9f, 0, 0));
+                other.updateCollisionTree();
+                rotations = rotations(random());
+            }
+
+            public void run(int operations) {
+                boolean hit = false;
+                for (int i = 0; i < operations; i++) {
+                    other.getLocalRotation().set(rotations[i & MASK]);
+                    other.updateGeometricState(0, true);
+                    hit ^= sphere.hasTriangleCollision(other);
+                }
+                consume(hit);
+            }
+        });
+    }
+}
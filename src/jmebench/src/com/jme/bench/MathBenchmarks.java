@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.bench;
+
+import java.util.List;
+import java.util.Random;
+
+import com.jme.math.FastMath;
+import com.jme.math.Matrix3f;
+import com.jme.math.Matrix4f;
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+
+/**
+ * <code>MathBenchmarks</code> covers the vector, matrix and quaternion
+ * operations run for every spatial on every frame. Where jME offers both, the
+ * allocating form (<code>mult</code>) is measured next to the form writing
+ * to a store or to this (<code>mult</code> with store,
+ * <code>multLocal</code>), so the cost of the garbage shows in the time and
+ * the bytes per operation.
+ * 
+ * @version $Id$
+ */
+public final class MathBenchmarks {
+
+    private static final Vector3f[] VECTORS;
+
+    private static final Vector3f[] OTHER_VECTORS;
+
+    private static final Quaternion[] ROTATIONS;
+
+    private static final Quaternion[] OTHER_ROTATIONS;
+
+    private static final float[] AMOUNTS;
+
+    private static final Matrix3f[] MATRICES;
+
+    private static final Matrix4f[] TRANSFORMS;
+
+    private static final Matrix4f[] OTHER_TRANSFORMS;
+
+    static {
+        Random random = Benchmark.random();
+        VECTORS = Benchmark.vectors(random, 100);
+        OTHER_VECTORS = Benchmark.vectors(random, 100);
+        ROTATIONS = Benchmark.rotations(random);
+        OTHER_ROTATIONS = Benchmark.rotations(random);
+        AMOUNTS = new float[Benchmark.INPUTS];
+        MATRICES = new Matrix3f[Benchmark.INPUTS];
+        TRANSFORMS = new Matrix4f[Benchmark.INPUTS];
+        OTHER_TRANSFORMS = new Matrix4f[Benchmark.INPUTS];
+        for (int i = 0; i < Benchmark.INPUTS; i++) {
+            AMOUNTS[i] = random.nextFloat();
+            MATRICES[i] = new Matrix3f();
+            MATRICES[i].set(ROTATIONS[i]);
+            TRANSFORMS[i] = transform(ROTATIONS[i], VECTORS[i]);
+            OTHER_TRANSFORMS[i] = transform(OTHER_ROTATIONS[i],
+                    OTHER_VECTORS[i]);
+        }
+    }
+
+    private MathBenchmarks() {
+    }
+
+    private static Matrix4f transform(Quaternion rotation, Vector3f translation) {
+        Matrix4f transform = new Matrix4f();
+        transform.set(rotation);
+        transform.setTranslation(new float[] { translation.x, translation.y,
+                translation.z });
+        return transform;
+    }
+
+    /**
+     * Adds the math benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        benchmarks.add(new Benchmark("Quaternion.mult") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(ROTATIONS[i & MASK].mult(OTHER_ROTATIONS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Quaternion.mult(store)") {
+            private final Quaternion store = new Quaternion();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    ROTATIONS[i & MASK].mult(OTHER_ROTATIONS[i & MASK], store);
+                    consume(store.w);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Quaternion.multLocal") {
+            private final Quaternion store = new Quaternion();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    store.set(ROTATIONS[i & MASK]).multLocal(
+                            OTHER_ROTATIONS[i & MASK]);
+                    consume(store.w);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Quaternion.slerp") {
+            private final Quaternion store = new Quaternion();
+
+            private final Quaternion end = new Quaternion();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    // slerp may negate its second argument
+                    end.set(OTHER_ROTATIONS[i & MASK]);
+                    store.slerp(ROTATIONS[i & MASK], end, AMOUNTS[i & MASK]);
+                    consume(store.w);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Quaternion.mult(Vector3f)") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(ROTATIONS[i & MASK].mult(VECTORS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Quaternion.mult(Vector3f,store)") {
+            private final Vector3f store = new Vector3f();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    ROTATIONS[i & MASK].mult(VECTORS[i & MASK], store);
+                    consume(store.x);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Vector3f.mult") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(VECTORS[i & MASK].mult(OTHER_VECTORS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Vector3f.multLocal") {
+            private final Vector3f store = new Vector3f();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    store.set(VECTORS[i & MASK]).multLocal(
+                            OTHER_VECTORS[i & MASK]);
+                    consume(store.x);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Vector3f.cross") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(VECTORS[i & MASK].cross(OTHER_VECTORS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Vector3f.cross(store)") {
+            private final Vector3f store = new Vector3f();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    VECTORS[i & MASK].cross(OTHER_VECTORS[i & MASK], store);
+                    consume(store.x);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Matrix3f.mult(Vector3f)") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(MATRICES[i & MASK].mult(VECTORS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Matrix3f.mult(Vector3f,store)") {
+            private final Vector3f store = new Vector3f();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    MATRICES[i & MASK].mult(VECTORS[i & MASK], store);
+                    consume(store.x);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Matrix4f.mult") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(TRANSFORMS[i & MASK]
+                            .mult(OTHER_TRANSFORMS[i & MASK]));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Matrix4f.mult(store)") {
+            private final Matrix4f store = new Matrix4f();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    TRANSFORMS[i & MASK].mult(OTHER_TRANSFORMS[i & MASK],
+                            store);
+                    consume(store.m00);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("Matrix4f.multLocal") {
+            private final Matrix4f store = new Matrix4f();
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    store.copy(TRANSFORMS[i & MASK]);
+                    store.multLocal(OTHER_TRANSFORMS[i & MASK]);
+                    consume(store.m00);
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("FastMath.invSqrt") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(FastMath.invSqrt(AMOUNTS[i & MASK] + 1));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark("FastMath.sin") {
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    consume(FastMath.sin(AMOUNTS[i & MASK] * FastMath.TWO_PI));
+                }
+            }
+        });
+    }
+}
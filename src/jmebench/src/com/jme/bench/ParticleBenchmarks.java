@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.bench;
+
+import java.util.List;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.math.FastMath;
+import com.jme.math.Vector3f;
+import com.jme.renderer.ColorRGBA;
+import com.jmex.effects.ParticleManager;
+
+/**
+ * <code>ParticleBenchmarks</code> covers the per frame update of a
+ * <code>ParticleManager</code>: moving, aging and respawning the particles
+ * and refreshing the model bound. One operation is one update of the whole
+ * system with 20 ms passed, so every particle is touched each time.
+ * 
+ * @version $Id$
+ */
+public final class ParticleBenchmarks {
+
+    /** Number of particles of the benchmarked systems. */
+    private static final int PARTICLES = 1000;
+
+    private ParticleBenchmarks() {
+    }
+
+    /**
+     * @return a smoke like system as the racer uses it, with a box bound.
+     */
+    private static ParticleManager smoke() {
+        FastMath.rand.setSeed(Benchmark.random().nextLong());
+        ParticleManager manager = new ParticleManager(PARTICLES);
+        manager.setGravityForce(new Vector3f(0.0f, 0.0002f, 0.0f));
+        manager.setEmissionDirection(new Vector3f(0.0f, 1.0f, 0.0f));
+        manager.setEmissionMaximumAngle(0.2f);
+        manager.setInitialVelocity(0.01f);
+        manager.setParticlesMinimumLifeTime(1000f);
+        manager.setStartSize(1.0f);
+        manager.setEndSize(6.0f);
+        manager.setStartColor(new ColorRGBA(0.6f, 0.6f, 0.6f, 0.5f));
+        manager.setEndColor(new ColorRGBA(0.8f, 0.8f, 0.8f, 0.0f));
+        manager.setRandomMod(0.05f);
+        manager.getParticles().setModelBound(new BoundingBox());
+        manager.warmUp(5);
+        return manager;
+    }
+
+    /**
+     * Adds the particle benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        benchmarks.add(new Benchmark("ParticleManager.update(" + PARTICLES
+                + ")") {
+            private ParticleManager manager;
+
+            public void setUp() {
+                manager = smoke();
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    manager.update(0.02f);
+                }
+                consume(manager.getParticles().getModelBound());
+            }
+        });
+        benchmarks.add(new Benchmark("ParticleManager.update(spin,flow)") {
+            private ParticleManager manager;
+
+            public void setUp() {
+                manager = smoke();
+                manager.setParticleSpinSpeed(0.5f);
+                manager.setControlFlow(true);
+                manager.setReleaseRate(PARTICLES);
+                manager.warmUp(5);
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    manager.update(0.02f);
+                }
+                consume(manager.getParticles().getModelBound());
+            }
+        });
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.jme.bench;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import com.jme.renderer.SpatialList;
+import com.jme.scene.Node;
+
+/**
+ * <code>RenderQueueBenchmarks</code> compares the radix sort of
+ * <code>SpatialList</code> with sorting the spatials by a comparator, as the
+ * render queue did before. The entries look like an opaque bucket: keys
+ * taken from 32 combinations of render states and squared distances of up to
+ * 1000 units. One operation fills the list with all entries and sorts it.
+ * <code>setUp</code> checks that both sorts give the same order.
+ * 
+ * @version $Id$
+ */
+public final class RenderQueueBenchmarks {
+
+    private static final int STATE_KEYS = 32;
+
+    private static final Comparator BY_KEY = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            Entry e1 = (Entry) o1;
+            Entry e2 = (Entry) o2;
+            if (e1.key != e2.key)
+                return e1.key < e2.key ? -1 : 1;
+            if (e1.value < e2.value)
+                return -1;
+            else if (e1.value > e2.value)
+                return 1;
+            else
+                return 0;
+        }
+    };
+
+    private RenderQueueBenchmarks() {
+    }
+
+    /**
+     * A spatial carrying the keys the comparator reads.
+     */
+    private static class Entry extends Node {
+
+        private static final long serialVersionUID = 1L;
+
+        long key;
+
+        float value;
+
+        Entry(long key, float value) {
+            super("entry");
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static Entry[] entries(int size) {
+        Random random = Benchmark.random();
+        long[] stateKeys = new long[STATE_KEYS];
+        for (int i = 0; i < STATE_KEYS; i++) {
+            stateKeys[i] = (long) random.nextInt(64) << 48
+                    | (long) random.nextInt(64) << 32
+                    | random.nextInt(16) << 16 | random.nextInt(4);
+        }
+        Entry[] entries = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            float distance = 1000 * random.nextFloat();
+            entries[i] = new Entry(stateKeys[random.nextInt(STATE_KEYS)],
+                    distance * distance);
+        }
+        return entries;
+    }
+
+    private static void fill(SpatialList list, Entry[] entries) {
+        list.clear();
+        for (int i = 0; i < entries.length; i++) {
+            list.add(entries[i], entries[i].key, entries[i].value);
+        }
+    }
+
+    private static String label(int size) {
+        return size >= 1000 ? size / 1000 + "k" : String.valueOf(size);
+    }
+
+    /**
+     * Adds the render queue benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        int[] sizes = { 1000, 10000, 100000 };
+        for (int s = 0; s < sizes.length; s++) {
+            final int size = sizes[s];
+            benchmarks.add(new Benchmark("SpatialList.sort(" + label(size)
+                    + ")") {
+                private Entry[] entries;
+
+                private final SpatialList list = new SpatialList();
+
+                public void setUp() {
+                    entries = entries(size);
+                    Entry[] sorted = entries.clone();
+                    Arrays.sort(sorted, BY_KEY);
+                    fill(list, entries);
+                    list.sort();
+                    for (int i = 0; i < size; i++) {
+                        if (list.get(i) != sorted[i])
+                            throw new IllegalStateException(
+                                    "radix and comparator order differ at "
+                                            + i);
+                    }
+                }
+
+                public void run(int operations) {
+                    for (int i = 0; i < operations; i++) {
+                        fill(list, entries);
+                        list.sort();
+                    }
+                    consume(list.get(0));
+                }
+            });
+            benchmarks.add(new Benchmark("Arrays.sort(" + label(size) + ")") {
+                private Entry[] entries;
+
+                private Entry[] list;
+
+                public void setUp() {
+                    entries = entries(size);
+                    list = new Entry[size];
+                }
+
+                public void run(int operations) {
+                    for (int i = 0; i < operations; i++) {
+                        System.arraycopy(entries, 0, list, 0, size);
+                        Arrays.sort(list, BY_KEY);
+                    }
+                    consume(list[0]);
+                }
+            });
+        }
+    }
+}
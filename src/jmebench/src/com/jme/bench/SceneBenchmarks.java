@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the Mojo Monkey Coding, jME, jMonkey Engine, nor the
+ * names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.jme.bench;
+
+import java.util.List;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.math.Vector3f;
+import com.jme.scene.Controller;
+import com.jme.scene.Node;
+import com.jme.scene.TriMesh;
+import com.jme.scene.shape.Box;
+
+/**
+ * <code>SceneBenchmarks</code> covers <code>updateGeometricState</code> on a
+ * scene of 10 groups with 100 boxes each, every box with a bounding box. One
+ * operation is one update from the root, with nothing, one group or the
+ * whole scene moved since the previous update.
+ * <p>
+ * The large scene has 500 groups of 100 triangles, about 50k spatials, and
+ * every group is spun by a controller, so each update derives everything. It
+ * is updated on the calling thread and split across the fork/join pool in
+ * ranges of 16 groups; the ratio of the two is the scaling on this machine.
+ * 
+ * @version $Id$
+ */
+public final class SceneBenchmarks {
+
+    /** Number of groups below the root. */
+    private static final int GROUPS = 10;
+
+    /** Number of boxes in each group. */
+    private static final int BOXES = 100;
+
+    /** Number of groups below the root of the large scene. */
+    private static final int LARGE_GROUPS = 500;
+
+    /** Number of triangles in each group of the large scene. */
+    private static final int TRIANGLES = 100;
+
+    /** Groups updated by one task when the large scene is split. */
+    private static final int THRESHOLD = 16;
+
+    /** Axis the groups of the large scene spin around. */
+    private static final Vector3f UP = new Vector3f(0, 1, 0);
+
+    private SceneBenchmarks() {
+    }
+
+    /**
+     * @return a root with the groups and boxes placed on a grid, updated
+     *         once.
+     */
+    private static Node scene() {
+        Node root = new Node("root");
+        for (int g = 0; g < GROUPS; g++) {
+            Node group = new Node("group" + g);
+            group.getLocalTranslation().set(0, 0, 10 * g);
+            for (int b = 0; b < BOXES; b++) {
+                Box box = new Box("box" + b, new Vector3f(-1, -1, -1),
+                        new Vector3f(1, 1, 1));
+                box.getLocalTranslation().set(3 * b, 0, 0);
+                box.setModelBound(new BoundingBox());
+                box.updateModelBound();
+                group.attachChild(box);
+            }
+            root.attachChild(group);
+        }
+        root.updateGeometricState(0, true);
+        return root;
+    }
+
+    /**
+     * @return a root with the groups of triangles of the large scene, each
+     *         group spun by a controller, updated once.
+     */
+    private static Node largeScene() {
+        Vector3f[] vertices = { new Vector3f(0, 0, 0), new Vector3f(1, 0, 0),
+                new Vector3f(0, 1, 0) };
+        int[] indices = { 0, 1, 2 };
+        Node root = new Node("root");
+        for (int g = 0; g < LARGE_GROUPS; g++) {
+            final Node group = new Node("group" + g);
+            group.getLocalTranslation().set(10 * (g % 25), 0, 10 * (g / 25));
+            for (int t = 0; t < TRIANGLES; t++) {
+                TriMesh triangle = new TriMesh("triangle" + t, vertices, null,
+                        null, null, indices);
+                triangle.getLocalTranslation().set(t % 10, 0, t / 10);
+                triangle.setModelBound(new BoundingBox());
+                triangle.updateModelBound();
+                group.attachChild(triangle);
+            }
+            group.addController(new Controller() {
+                private static final long serialVersionUID = 1L;
+
+                private float angle;
+
+                public void update(float time) {
+                    angle += time;
+                    group.getLocalRotation().fromAngleNormalAxis(angle,
+                            UP);
+                }
+            });
+            root.attachChild(group);
+        }
+        root.updateGeometricState(0, true);
+        return root;
+    }
+
+    /**
+     * Adds the scene benchmarks to the given list.
+     */
+    static void addTo(List benchmarks) {
+        benchmarks.add(new Benchmark("Node.updateGeometricState(static)") {
+            private Node root;
+
+            public void setUp() {
+                root = scene();
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    root.updateGeometricState(0.02f, true);
+                }
+                consume(root.getWorldBound());
+            }
+        });
+        benchmarks.add(new Benchmark("Node.updateGeometricState(group)") {
+            private Node root;
+
+            public void setUp() {
+                root = scene();
+            }
+
+            public void run(int operations) {
+                Vector3f moving = root.getChild(0).getLocalTranslation();
+                for (int i = 0; i < operations; i++) {
+                    moving.x = i & 1;
+                    root.updateGeometricState(0.02f, true);
+                }
+                consume(root.getWorldBound());
+            }
+        });
+        benchmarks.add(new Benchmark("Node.updateGeometricState(all)") {
+            private Node root;
+
+            public void setUp() {
+                root = scene();
+            }
+
+            public void run(int operations) {
+                Vector3f moving = root.getLocalTranslation();
+                for (int i = 0; i < operations; i++) {
+                    moving.x = i & 1;
+                    root.updateGeometricState(0.02f, true);
+                }
+                consume(root.getWorldBound());
+            }
+        });
+        benchmarks.add(new Benchmark("Node.updateGeometricState(50k)") {
+            private Node root;
+
+            public void setUp() {
+                root = largeScene();
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    root.updateGeometricState(0.02f, true);
+                }
+                consume(root.getWorldBound());
+            }
+        });
+        benchmarks.add(new Benchmark(
+                "Node.updateGeometricState(50k,parallel)") {
+            private Node root;
+
+            public void setUp() {
+                root = largeScene();
+                root.setParallelThreshold(THRESHOLD);
+            }
+
+            public void run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    root.updateGeometricState(0.02f, true);
+                }
+                consume(root.getWorldBound());
+            }
+        });
+    }
+}
@@ -35,6 +35,7 @@ import java.util.ArrayList;
 
 import org.odejava.Body;
 
+import com.jme.app.TransformSnapshot;
 import com.jme.math.Vector3f;
 import com.jme.math.Quaternion;
 
@@ -52,14 +53,20 @@ class PhysicsSynchronizer extends PhysicsUpdateAction {
 	/** Contains the <code>DynamicPhysicsObject</code>s to synchronize. */
 	private ArrayList objects;
 	
+	/**
+	 * If set, transforms of objects in the snapshot are published to it
+	 * instead of being written to their spatials.
+	 */
+	private TransformSnapshot snapshot;
+	
 	/** Temp variables to flatline memory usage. */
-	private static final Vector3f odePos = new Vector3f();
+	private final Vector3f odePos = new Vector3f();
 	
 	/** Temp variables to flatline memory usage. */
-	private static final Quaternion odeRot = new Quaternion();
+	private final Quaternion odeRot = new Quaternion();
 	
 	/** Temp variables to flatline memory usage. */
-	private static final Quaternion inverseWorldRotation = new Quaternion();
+	private final Quaternion inverseWorldRotation = new Quaternion();
 
 	/**
 	 * Constructor.
@@ -126,6 +133,24 @@ class PhysicsSynchronizer extends PhysicsUpdateAction {
 		objects.remove(obj);
 	}
 	
+	/**
+	 * Sets the snapshot to publish transforms to. Objects that are part of the
+	 * snapshot are no longer written to directly, their spatials are updated
+	 * by the reader of the snapshot instead.
+	 * 
+	 * @param snapshot the snapshot, or null to write to the spatials again.
+	 */
+	public void setTransformSnapshot(TransformSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+	
+	/**
+	 * @return the snapshot transforms are published to, or null.
+	 */
+	public TransformSnapshot getTransformSnapshot() {
+		return snapshot;
+	}
+	
 	/**
 	 * Removes all objects from the list.
 	 */
@@ -149,6 +174,7 @@ class PhysicsSynchronizer extends PhysicsUpdateAction {
 	 * @see com.jmex.physics.PhysicsUpdateAction#afterStep()
 	 */
 	public void afterUpdate( PhysicsWorld world ) {
+		TransformSnapshot snap = snapshot;
 		for (int i = objects.size() - 1; i >= 0; i--) {
 			DynamicPhysicsObject obj = (DynamicPhysicsObject) objects.get(i);
 			Body odeEntity = obj.getPhysicalEntity();
@@ -157,8 +183,16 @@ class PhysicsSynchronizer extends PhysicsUpdateAction {
 			odeEntity.getPosition(odePos);
 			odeEntity.getQuaternion(odeRot);
 		
-			setWorldTranslation(jmeEntity );
-			setWorldRotation(jmeEntity );
+			int index = snap != null ? snap.indexOf(jmeEntity) : -1;
+			if (index >= 0) {
+				snap.setWorldTransform(index, odePos, odeRot);
+			} else {
+				setWorldTranslation(jmeEntity );
+				setWorldRotation(jmeEntity );
+			}
+		}
+		if (snap != null) {
+			snap.publish();
 		}
 	}
 	
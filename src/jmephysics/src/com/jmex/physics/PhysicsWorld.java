@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 
+import com.jme.app.TransformSnapshot;
 import com.jme.math.Vector3f;
 import com.jme.util.LoggingSystem;
 import com.jmex.physics.contact.PhysicsCallBack;
@@ -101,6 +102,9 @@ public class PhysicsWorld {
 	// The singleton instance.
 	private static PhysicsWorld instance;
 
+	/** Worlds created for single threads, see <code>createLocal()</code>. */
+	private static final ThreadLocal localInstance = new ThreadLocal();
+
 	// The space to add bodys to.
 	private World world;
 
@@ -256,12 +260,45 @@ public class PhysicsWorld {
 	}
 
 	/**
-	 * Forces a return of the singleton instance.
+	 * Creates a new <code>PhysicsWorld</code> that is returned by
+	 * <code>getInstance()</code> on the calling thread only, until
+	 * <code>releaseLocal()</code> is called. This allows independent
+	 * simulations, e.g. headless batch runs, on several threads at once.
+	 * Objects, joints and vehicles created on that thread are added to it.
+	 * 
+	 * @return The world of the calling thread.
+	 */
+	public static PhysicsWorld createLocal() {
+		if (localInstance.get() != null) {
+			throw new IllegalStateException("thread already has a PhysicsWorld");
+		}
+		PhysicsWorld world = new PhysicsWorld();
+		localInstance.set(world);
+		return world;
+	}
+
+	/**
+	 * Deletes the world created by <code>createLocal()</code> on the calling
+	 * thread. Afterwards <code>getInstance()</code> returns the singleton
+	 * again.
+	 */
+	public static void releaseLocal() {
+		PhysicsWorld world = (PhysicsWorld) localInstance.get();
+		if (world != null) {
+			localInstance.set(null);
+			world.delete();
+		}
+	}
+
+	/**
+	 * Forces a return of the singleton instance, or of the world created by
+	 * <code>createLocal()</code> on the calling thread.
 	 * 
 	 * @return The singleton.
 	 */
 	public static PhysicsWorld getInstance() {
-      return instance;
+		PhysicsWorld local = (PhysicsWorld) localInstance.get();
+		return local != null ? local : instance;
 	}
 
 	/**
@@ -648,11 +685,15 @@ public class PhysicsWorld {
 	 * Clean up the system. Should be called before ending your application.
 	 */
 	public void cleanup() {
+		delete();
+		Ode.dCloseODE();
+		instance = null;
+	}
+
+	private void delete() {
 		space.delete();
 		collision.delete();
 		world.delete();
-		Ode.dCloseODE();
-		instance = null;
 	}
 
 	/**
@@ -774,6 +815,25 @@ public class PhysicsWorld {
 		return callBack;
 	}
 	
+	/**
+	 * Makes the world publish the transforms of the objects in the given
+	 * snapshot after each update instead of writing them to their spatials.
+	 * Use this when the physics runs on another thread than the rendering;
+	 * the render thread then calls <code>TransformSnapshot.apply()</code>.
+	 * 
+	 * @param snapshot the snapshot, or null to write to the spatials again.
+	 */
+	public void setTransformSnapshot(TransformSnapshot snapshot) {
+		synchronizer.setTransformSnapshot(snapshot);
+	}
+	
+	/**
+	 * @return the snapshot transforms are published to, or null.
+	 */
+	public TransformSnapshot getTransformSnapshot() {
+		return synchronizer.getTransformSnapshot();
+	}
+	
 	/**
 	 * Adds a <code>PhysicsUpdateAction</code> to perform each physics update.
 	 * 
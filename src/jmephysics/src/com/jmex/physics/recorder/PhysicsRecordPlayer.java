@@ -31,162 +31,399 @@
 package com.jmex.physics.recorder;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.logging.Level;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
-
+import com.jme.math.Quaternion;
 import com.jme.math.Vector3f;
 import com.jme.util.LoggingSystem;
 import com.jmex.physics.DynamicPhysicsObject;
 
 /**
- * Plays a recording made by the <code>PhysicsRecorder</code> into an object.
+ * Plays a recording made by the <code>PhysicsRecorder</code> into a number of
+ * objects. The samples are decoded from the channel while playing, so only
+ * the keyframe index is kept in memory. <code>seek</code> finds the keyframe
+ * before the requested time with a binary search and decodes forward from
+ * there.
  * 
  * @author Ahmed
  */
 public class PhysicsRecordPlayer {
 
-	/** the times that the forces would act */
-	private float[] time;
+	/** the objects to act on, may be null to only read the values */
+	private DynamicPhysicsObject[] objects;
+
+	private FileChannel channel;
+
+	private int objectCount;
+
+	private int sampleSize;
+
+	private int keyframeInterval;
+
+	private int sampleCount;
+
+	private float duration;
 
-	/** the force on the object at the recorded time */
-	private Vector3f[] force;
+	/** file offsets of the keyframes */
+	private long[] keyOffsets;
 
-	/** the torque on the object at the recorded time */
-	private Vector3f[] torque;
+	/** the times of the keyframes */
+	private float[] keyTimes;
 
-	/** the angular velocity of the object at that time */
-	private Vector3f[] angularVelocity;
+	/** decode buffer and the file offset of its end */
+	private ByteBuffer in;
 
-	/** the linear velocity of the object at that time */
-	private Vector3f[] linearVelocity;
+	private long readPosition;
 
-	/** the object to act on */
-	private DynamicPhysicsObject obj;
+	/** index of the next sample to decode */
+	private int nextSample;
+
+	/** bits of the sample that is currently played */
+	private int[] current;
+
+	private float currentTime = -1;
+
+	/** bits of the next sample, decoded ahead */
+	private int[] next;
+
+	private float nextTime;
+
+	private boolean hasNext;
 
 	// interal uses
-	private int counter = 0;
 	private float relativeTime = 0.0f;
 
+	private Vector3f tmpVec = new Vector3f();
+
+	private Quaternion tmpQuat = new Quaternion();
+
 	/**
-	 * Create the recordplayer with the give file and the object to act on.
+	 * Create the recordplayer with the given file and the object to act on.
 	 * 
 	 * @param f,
-	 *            the input stream
+	 *            the channel to read from
 	 * @param obj,
 	 *            the object to act on.
+	 * @throws IOException
 	 */
-	public PhysicsRecordPlayer(InputStream f, DynamicPhysicsObject obj) {
-		this.obj = obj;
-		SAXParserFactory factory = SAXParserFactory.newInstance();
-		factory.setValidating(true);
-		try {
-			SAXParser parser = factory.newSAXParser();
-			parser.parse(f, new XMLParser());
-		} catch (ParserConfigurationException pce) {
-			LoggingSystem.getLogger().log(Level.INFO,
-					"Error occured during parsing: " + pce.getMessage());
-		} catch (SAXException saxE) {
-			LoggingSystem.getLogger().log(Level.INFO,
-					"Error occured during parsing: " + saxE.getMessage());
-		} catch (IOException ioe) {
-			LoggingSystem.getLogger().log(Level.INFO,
-					"Error occured during parsing: " + ioe.getMessage());
+	public PhysicsRecordPlayer(FileChannel f, DynamicPhysicsObject obj)
+			throws IOException {
+		this(f, new DynamicPhysicsObject[] { obj });
+	}
+
+	/**
+	 * Create the recordplayer with the given file and the objects to act on.
+	 * 
+	 * @param f,
+	 *            the channel to read from
+	 * @param objects,
+	 *            the objects to act on in the order they were recorded, or
+	 *            null to only read the values.
+	 * @throws IOException
+	 */
+	public PhysicsRecordPlayer(FileChannel f, DynamicPhysicsObject[] objects)
+			throws IOException {
+		channel = f;
+		ByteBuffer header = ByteBuffer.allocate(PhysicsRecorder.HEADER_SIZE);
+		readFully(header, 0);
+		if (header.getInt() != PhysicsRecorder.MAGIC) {
+			throw new IOException("not a physics recording");
+		}
+		int version = header.getInt();
+		if (version != PhysicsRecorder.VERSION) {
+			throw new IOException("unsupported recording version " + version);
+		}
+		objectCount = header.getInt();
+		if (header.getInt() != PhysicsRecorder.FLOATS_PER_OBJECT) {
+			throw new IOException("unsupported sample layout");
+		}
+		keyframeInterval = header.getInt();
+		if (objects != null && objects.length != objectCount) {
+			throw new IllegalArgumentException("recording holds " + objectCount
+					+ " objects, got " + objects.length);
 		}
-		// reset the counter
-		counter = 0;
+		this.objects = objects;
+		sampleSize = objectCount * PhysicsRecorder.FLOATS_PER_OBJECT;
+
+		ByteBuffer trailer = ByteBuffer.allocate(PhysicsRecorder.TRAILER_SIZE);
+		readFully(trailer, channel.size() - PhysicsRecorder.TRAILER_SIZE);
+		int keyCount = trailer.getInt();
+		sampleCount = trailer.getInt();
+		duration = trailer.getFloat();
+		long indexOffset = trailer.getLong();
+		if (trailer.getInt() != PhysicsRecorder.TRAILER_MAGIC) {
+			throw new IOException("recording was not closed");
+		}
+
+		ByteBuffer index = ByteBuffer.allocate(keyCount
+				* PhysicsRecorder.INDEX_ENTRY_SIZE);
+		readFully(index, indexOffset);
+		keyOffsets = new long[keyCount];
+		keyTimes = new float[keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			keyOffsets[i] = index.getLong();
+			keyTimes[i] = index.getFloat();
+		}
+
+		in = ByteBuffer.allocateDirect(Math.max(1 << 16,
+				2 * PhysicsRecorder.maxSampleBytes(sampleSize)));
+		current = new int[sampleSize];
+		next = new int[sampleSize];
+		seek(0);
+	}
+
+	private void readFully(ByteBuffer buf, long offset) throws IOException {
+		while (buf.hasRemaining()) {
+			int read = channel.read(buf, offset);
+			if (read < 0) {
+				throw new IOException("unexpected end of recording");
+			}
+			offset += read;
+		}
+		buf.flip();
+	}
+
+	/**
+	 * @return the number of recorded objects.
+	 */
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * @return the number of samples in the recording.
+	 */
+	public int getSampleCount() {
+		return sampleCount;
 	}
 
 	/**
-	 * Play the file onto the object
+	 * @return the time of the last sample.
+	 */
+	public float getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return the time of the sample currently played.
+	 */
+	public float getCurrentTime() {
+		return currentTime;
+	}
+
+	/**
+	 * Positions the playback at the last sample at or before the given time.
 	 * 
 	 * @param time
+	 * @throws IOException
 	 */
-	public void play(float time) {
-		relativeTime += time;
-		for (int i = counter; i < this.time.length; i++) {
-			if (relativeTime >= this.time[i]) {
-				obj.addForce(force[i]);
-				obj.addTorque(torque[i]);
-				obj.setAngularVelocity(angularVelocity[i]);
-				obj.setLinearVelocity(linearVelocity[i]);
-				counter++;
-				break;
+	public void seek(float time) throws IOException {
+		relativeTime = time;
+		currentTime = -1;
+		hasNext = false;
+		if (keyTimes.length == 0) {
+			return;
+		}
+		int low = 0;
+		int high = keyTimes.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (keyTimes[mid] <= time) {
+				low = mid;
+			} else {
+				high = mid - 1;
 			}
 		}
+		nextSample = low * keyframeInterval;
+		readPosition = keyOffsets[low];
+		in.clear().flip();
+		hasNext = decode();
+		advance(time);
+	}
+
+	/**
+	 * Moves the next sample to the current one while it is due.
+	 */
+	private void advance(float time) throws IOException {
+		while (hasNext && (nextTime <= time || currentTime < 0)) {
+			int[] tmp = current;
+			current = next;
+			next = tmp;
+			currentTime = nextTime;
+			hasNext = decode();
+		}
 	}
 
 	/**
-	 * Internal class used to parse the xml
+	 * Decodes the next sample into <code>next</code>.
 	 * 
-	 * @author Ahmed
-	 */
-	class XMLParser extends DefaultHandler {
-
-		/**
-		 * parse the elements
-		 */
-		public void startElement(String URI, String localName, String qName, Attributes attrib) {
-			if (qName.equalsIgnoreCase("record")) {
-				String numOfRecords = attrib.getValue("entries");
-				int t = Integer.parseInt(numOfRecords);
-				time = new float[t];
-				force = new Vector3f[t];
-				torque = new Vector3f[t];
-				angularVelocity = new Vector3f[t];
-				linearVelocity = new Vector3f[t];
-			} else if (qName.equalsIgnoreCase("entry")) {
-				float tmpTime = Float.parseFloat(attrib.getValue("time"));
-				time[counter] = tmpTime;
-			} else if (qName.equalsIgnoreCase("force")) {
-				String strForce = attrib.getValue("value");
-
-				force[counter] = splitString(strForce);
-			} else if (qName.equalsIgnoreCase("torque")) {
-				String strTorque = attrib.getValue("value");
-
-				torque[counter] = splitString(strTorque);
-			} else if (qName.equalsIgnoreCase("angularVelocity")) {
-				String angVel = attrib.getValue("value");
-
-				angularVelocity[counter] = splitString(angVel);
-			} else if (qName.equalsIgnoreCase("linearVelocity")) {
-				String linVel = attrib.getValue("value");
-
-				linearVelocity[counter] = splitString(linVel);
-			}
+	 * @return false at the end of the recording.
+	 */
+	private boolean decode() throws IOException {
+		if (nextSample >= sampleCount) {
+			return false;
+		}
+		fill(PhysicsRecorder.maxSampleBytes(sampleSize));
+		boolean keyframe = nextSample % keyframeInterval == 0;
+		nextTime = in.getFloat();
+		for (int i = 0; i < sampleSize; i++) {
+			next[i] = keyframe ? in.getInt() : getVarInt() ^ current[i];
 		}
+		nextSample++;
+		return true;
+	}
 
-		/**
-		 * Process the end elements
-		 */
-		public void endElement(String URI, String localName, String qName) {
-			if (qName.equalsIgnoreCase("entry")) {
-				counter++;
+	/**
+	 * Makes sure the decode buffer holds the given number of bytes, or
+	 * everything up to the end of the file.
+	 */
+	private void fill(int bytes) throws IOException {
+		if (in.remaining() >= bytes) {
+			return;
+		}
+		in.compact();
+		while (in.position() < bytes) {
+			int read = channel.read(in, readPosition);
+			if (read <= 0) {
+				break;
 			}
+			readPosition += read;
 		}
+		in.flip();
+	}
 
-		/**
-		 * Split a string like "0 0 0" and returns a Vector3f object
-		 * 
-		 * @param str
-		 * @return
-		 */
-		private Vector3f splitString(String str) {
-			String[] compStrForces = str.split(" ");
-			float[] compForces = new float[3];
-			compForces[0] = Float.parseFloat(compStrForces[0]);
-			compForces[1] = Float.parseFloat(compStrForces[1]);
-			compForces[2] = Float.parseFloat(compStrForces[2]);
+	private int getVarInt() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
 
-			return new Vector3f(compForces[0], compForces[1], compForces[2]);
+	/**
+	 * Play the file onto the objects
+	 * 
+	 * @param time
+	 */
+	public void play(float time) {
+		relativeTime += time;
+		try {
+			advance(relativeTime);
+		} catch (IOException ioe) {
+			LoggingSystem.getLogger().log(Level.WARNING,
+					"Error reading recording: " + ioe.getMessage());
+			hasNext = false;
+		}
+		if (objects == null || currentTime < 0) {
+			return;
 		}
+		for (int i = 0; i < objects.length; i++) {
+			DynamicPhysicsObject obj = objects[i];
+			obj.getPhysicalEntity().setPosition(getPosition(i, tmpVec));
+			obj.getPhysicalEntity().setQuaternion(getRotation(i, tmpQuat));
+			obj.setLinearVelocity(getLinearVelocity(i, tmpVec));
+			obj.setAngularVelocity(getAngularVelocity(i, tmpVec));
+		}
+	}
+
+	/**
+	 * @return true if there are samples left to play.
+	 */
+	public boolean isPlaying() {
+		return hasNext;
+	}
+
+	private float value(int object, int offset) {
+		return Float.intBitsToFloat(current[object
+				* PhysicsRecorder.FLOATS_PER_OBJECT + offset]);
+	}
+
+	private Vector3f vector(int object, int offset, Vector3f store) {
+		if (store == null) {
+			store = new Vector3f();
+		}
+		store.x = value(object, offset);
+		store.y = value(object, offset + 1);
+		store.z = value(object, offset + 2);
+		return store;
+	}
+
+	/**
+	 * @param object
+	 *            the index of the object.
+	 * @param store
+	 *            the vector to store the result in, or null.
+	 * @return the position of the object in the current sample.
+	 */
+	public Vector3f getPosition(int object, Vector3f store) {
+		return vector(object, PhysicsRecorder.POSITION, store);
+	}
+
+	/**
+	 * @param object
+	 *            the index of the object.
+	 * @param store
+	 *            the quaternion to store the result in, or null.
+	 * @return the rotation of the object in the current sample.
+	 */
+	public Quaternion getRotation(int object, Quaternion store) {
+		if (store == null) {
+			store = new Quaternion();
+		}
+		store.x = value(object, PhysicsRecorder.ROTATION);
+		store.y = value(object, PhysicsRecorder.ROTATION + 1);
+		store.z = value(object, PhysicsRecorder.ROTATION + 2);
+		store.w = value(object, PhysicsRecorder.ROTATION + 3);
+		return store;
+	}
+
+	/**
+	 * @param object
+	 *            the index of the object.
+	 * @param store
+	 *            the vector to store the result in, or null.
+	 * @return the linear velocity of the object in the current sample.
+	 */
+	public Vector3f getLinearVelocity(int object, Vector3f store) {
+		return vector(object, PhysicsRecorder.LINEAR_VELOCITY, store);
+	}
+
+	/**
+	 * @param object
+	 *            the index of the object.
+	 * @param store
+	 *            the vector to store the result in, or null.
+	 * @return the angular velocity of the object in the current sample.
+	 */
+	public Vector3f getAngularVelocity(int object, Vector3f store) {
+		return vector(object, PhysicsRecorder.ANGULAR_VELOCITY, store);
+	}
+
+	/**
+	 * @param object
+	 *            the index of the object.
+	 * @param store
+	 *            the vector to store the result in, or null.
+	 * @return the force on the object in the current sample.
+	 */
+	public Vector3f getForce(int object, Vector3f store) {
+		return vector(object, PhysicsRecorder.FORCE, store);
+	}
+
+	/**
+	 * @param object
+	 *            the index of the object.
+	 * @param store
+	 *            the vector to store the result in, or null.
+	 * @return the torque on the object in the current sample.
+	 */
+	public Vector3f getTorque(int object, Vector3f store) {
+		return vector(object, PhysicsRecorder.TORQUE, store);
 	}
 }
@@ -32,28 +32,77 @@ package com.jmex.physics.recorder;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.logging.Level;
 
+import com.jme.math.Quaternion;
 import com.jme.math.Vector3f;
+import com.jme.util.LoggingSystem;
 import com.jmex.physics.DynamicPhysicsObject;
 
 /**
- * Recorder used to record the forces and torques applied to a body at any given
- * time.
+ * Recorder used to record the state of a number of bodies over time. For each
+ * object the position, rotation, linear and angular velocity, force and
+ * torque are sampled into a preallocated ring buffer.
  * <p>
- * Notice that the position and rotation of the object will not be stored. Only
- * the forces acting on the object. It only stores the Force and the Torque
+ * The samples can be streamed to a channel while recording. The stream is a
+ * compact binary format: every <code>keyframeInterval</code>-th sample is
+ * stored in full, the samples in between store each value as the xor with
+ * the previous sample, written as a variable length integer. Values that did
+ * not change take a single byte. When the recording is closed an index of
+ * all keyframes is appended, so <code>PhysicsRecordPlayer</code> can seek to
+ * any time with a binary search.
+ * </p>
+ * <p>
+ * File layout: header (magic, version, object count, floats per object,
+ * keyframe interval, time interval), samples (time followed by the values),
+ * keyframe index (offset and time of each keyframe), trailer (keyframe count,
+ * sample count, time of the last sample, index offset, magic).
+ * </p>
  * 
  * @author Ahmed
  */
 public class PhysicsRecorder {
 
-	/** An ArrayList containing all the points in time of the physics object */
-	private ArrayList pointsInTime;
+	/** Identifies a recording. */
+	public static final int MAGIC = 0x50524543;
+
+	/** Ends a recording. */
+	public static final int TRAILER_MAGIC = 0x50454E44;
+
+	/** Version of the stream format. */
+	public static final int VERSION = 1;
+
+	/** Size of the header in bytes. */
+	public static final int HEADER_SIZE = 24;
+
+	/** Size of the trailer in bytes. */
+	public static final int TRAILER_SIZE = 24;
+
+	/** Size of a keyframe index entry in bytes. */
+	public static final int INDEX_ENTRY_SIZE = 12;
+
+	/** Offsets of the values of an object within a sample. */
+	public static final int POSITION = 0;
+	public static final int ROTATION = 3;
+	public static final int LINEAR_VELOCITY = 7;
+	public static final int ANGULAR_VELOCITY = 10;
+	public static final int FORCE = 13;
+	public static final int TORQUE = 16;
 
-	/** The physics object under survaliance. */
-	private DynamicPhysicsObject obj;
+	/** Number of floats stored per object and sample. */
+	public static final int FLOATS_PER_OBJECT = 19;
+
+	/** Default number of samples between two keyframes. */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+
+	/** Default number of samples held by the ring buffer. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/** The physics objects under survaliance. */
+	private DynamicPhysicsObject[] objects;
 
 	/** how long to wait on each recording */
 	private float timeInterval;
@@ -64,8 +113,49 @@ public class PhysicsRecorder {
 	/** how long the recording has been going on */
 	private float runningTime = 0.0f;
 
+	/** Number of floats per sample. */
+	private int sampleSize;
+
+	/** Ring buffer of sample times. */
+	private float[] ringTimes;
+
+	/** Ring buffer of sample values, <code>sampleSize</code> per sample. */
+	private float[] ringValues;
+
+	/** Index of the oldest sample in the ring. */
+	private int head;
+
+	/** Number of samples in the ring. */
+	private int count;
+
+	/** The channel samples are streamed to, or null. */
+	private WritableByteChannel channel;
+
+	private ByteBuffer out;
+
+	/** Bytes written to the channel so far. */
+	private long position;
+
+	private int keyframeInterval;
+
+	/** Number of samples written to the channel so far. */
+	private int samplesWritten;
+
+	private float lastTime;
+
+	/** Bits of the last written sample, the base of the next delta. */
+	private int[] previous;
+
+	private long[] keyOffsets;
+
+	private float[] keyTimes;
+
+	private int keyCount;
+
 	// some objects to remove object creation
-	private PointInTime tmpPointInTime;
+	private Vector3f tmpVec = new Vector3f();
+
+	private Quaternion tmpQuat = new Quaternion();
 
 	/**
 	 * Constructor for the physics.
@@ -76,9 +166,47 @@ public class PhysicsRecorder {
 	 *            How many seconds pass per recording.
 	 */
 	public PhysicsRecorder(DynamicPhysicsObject obj, float timeInterval) {
-		pointsInTime = new ArrayList();
-		this.obj = obj;
+		this(new DynamicPhysicsObject[] { obj }, timeInterval,
+				DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor for the physics.
+	 * 
+	 * @param objects,
+	 *            The DynamicPhysicsObjects under question.
+	 * @param timeInterval,
+	 *            How many seconds pass per recording.
+	 * @param capacity,
+	 *            How many samples the ring buffer holds. While streaming, the
+	 *            ring is written out whenever it is full; otherwise the oldest
+	 *            samples are overwritten.
+	 */
+	public PhysicsRecorder(DynamicPhysicsObject[] objects, float timeInterval,
+			int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.objects = objects.clone();
 		this.timeInterval = timeInterval;
+		sampleSize = objects.length * FLOATS_PER_OBJECT;
+		ringTimes = new float[capacity];
+		ringValues = new float[capacity * sampleSize];
+		previous = new int[sampleSize];
+		keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+		keyOffsets = new long[16];
+		keyTimes = new float[16];
+		out = ByteBuffer.allocateDirect(Math.max(1 << 16,
+				2 * maxSampleBytes(sampleSize)));
+	}
+
+	/**
+	 * @param sampleSize
+	 *            the number of floats per sample.
+	 * @return the maximum number of bytes a sample can take in the stream.
+	 */
+	static int maxSampleBytes(int sampleSize) {
+		return 4 + sampleSize * 5;
 	}
 
 	/**
@@ -99,7 +227,35 @@ public class PhysicsRecorder {
 	}
 
 	/**
-	 * Record the force on the object.
+	 * Sets the number of samples between two keyframes. Smaller intervals seek
+	 * faster, larger ones compress better. Must be set before
+	 * <code>start</code>.
+	 * 
+	 * @param interval
+	 */
+	public void setKeyframeInterval(int interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		keyframeInterval = interval;
+	}
+
+	/**
+	 * @return the number of samples between two keyframes.
+	 */
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	/**
+	 * @return the number of samples currently held by the ring buffer.
+	 */
+	public int getBufferedSamples() {
+		return count;
+	}
+
+	/**
+	 * Record the state of the objects.
 	 * 
 	 * @param dt,
 	 *            the time interval that has passed since last frame.
@@ -108,90 +264,208 @@ public class PhysicsRecorder {
 		runningTime += dt;
 		currentTime += dt;
 		if (currentTime >= timeInterval) {
-			tmpPointInTime = new PointInTime();
-			tmpPointInTime.force.set(obj.getForce());
-			tmpPointInTime.torque.set(obj.getTorque());
-			tmpPointInTime.time = runningTime;
-			pointsInTime.add(tmpPointInTime);
+			if (count == ringTimes.length) {
+				if (channel != null) {
+					try {
+						flush();
+					} catch (IOException e) {
+						LoggingSystem.getLogger().log(Level.WARNING,
+								"Error streaming recording, stopped: " + e.getMessage());
+						channel = null;
+					}
+				}
+				if (count == ringTimes.length) {
+					// not streaming, forget the oldest sample
+					head = (head + 1) % ringTimes.length;
+					count--;
+				}
+			}
+			int slot = (head + count) % ringTimes.length;
+			ringTimes[slot] = runningTime;
+			int offset = slot * sampleSize;
+			for (int i = 0; i < objects.length; i++) {
+				sample(objects[i], ringValues, offset);
+				offset += FLOATS_PER_OBJECT;
+			}
+			count++;
 			currentTime = 0.0f;
 		}
 	}
 
 	/**
-	 * Save the points in time into the file.
-	 * 
-	 * @param f
-	 * @throws IOException
+	 * Stores the state of an object.
 	 */
-	public void save(OutputStream output) throws IOException {
-
-		// the line seperator:
-		String lineSep = System.getProperty("line.separator");
-
-		// the string to write;
-		String write = "<record entries=\"" + pointsInTime.size() + "\">" + lineSep;
-
-		// begin the xml
-		output.write(write.getBytes());
+	private void sample(DynamicPhysicsObject obj, float[] store, int offset) {
+		obj.getPhysicalEntity().getPosition(tmpVec);
+		put(tmpVec, store, offset + POSITION);
+		obj.getPhysicalEntity().getQuaternion(tmpQuat);
+		store[offset + ROTATION] = tmpQuat.x;
+		store[offset + ROTATION + 1] = tmpQuat.y;
+		store[offset + ROTATION + 2] = tmpQuat.z;
+		store[offset + ROTATION + 3] = tmpQuat.w;
+		put(obj.getLinearVelocity(tmpVec), store, offset + LINEAR_VELOCITY);
+		put(obj.getAngularVelocity(tmpVec), store, offset + ANGULAR_VELOCITY);
+		put(obj.getForce(tmpVec), store, offset + FORCE);
+		put(obj.getTorque(tmpVec), store, offset + TORQUE);
+	}
 
-		// loop through the keys and get their values and output
-		Iterator it = pointsInTime.iterator();
-		while (it.hasNext()) {
-			tmpPointInTime = (PointInTime) it.next();
-			// create a new entry
-			write = "\t<entry time=\"" + tmpPointInTime.time + "\">" + lineSep;
-			output.write(write.getBytes());
+	private static void put(Vector3f vec, float[] store, int offset) {
+		store[offset] = vec.x;
+		store[offset + 1] = vec.y;
+		store[offset + 2] = vec.z;
+	}
 
-			// output the force
-			write = "\t\t<force value=\"" + tmpPointInTime.force.x + " " + tmpPointInTime.force.y
-					+ " " + tmpPointInTime.force.z + "\"/>" + lineSep;
-			output.write(write.getBytes());
+	/**
+	 * Starts streaming to the given channel. The header is written right
+	 * away, samples whenever the ring buffer is full or <code>flush</code> is
+	 * called. Samples already in the ring buffer become the first samples of
+	 * the stream.
+	 * 
+	 * @param channel
+	 *            the channel to write to, usually a <code>FileChannel</code>.
+	 * @throws IOException
+	 */
+	public void start(WritableByteChannel channel) throws IOException {
+		this.channel = channel;
+		position = 0;
+		samplesWritten = 0;
+		lastTime = 0;
+		keyCount = 0;
+		out.clear();
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(objects.length);
+		out.putInt(FLOATS_PER_OBJECT);
+		out.putInt(keyframeInterval);
+		out.putFloat(timeInterval);
+		write();
+	}
 
-			// output the torque
-			write = "\t\t<torque value=\"" + tmpPointInTime.torque.x + " "
-					+ tmpPointInTime.torque.y + " " + tmpPointInTime.torque.z + "\"/>" + lineSep;
-			output.write(write.getBytes());
+	/**
+	 * Writes all samples in the ring buffer to the channel and empties the
+	 * ring.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (channel == null) {
+			throw new IllegalStateException("not streaming");
+		}
+		int maxBytes = maxSampleBytes(sampleSize);
+		while (count > 0) {
+			if (out.remaining() < maxBytes) {
+				write();
+			}
+			encode(ringTimes[head], ringValues, head * sampleSize);
+			head = (head + 1) % ringTimes.length;
+			count--;
+		}
+		write();
+	}
 
-			// close the entry
-			write = "\t</entry>" + lineSep;
-			output.write(write.getBytes());
+	/**
+	 * Appends a sample to the output buffer.
+	 */
+	private void encode(float time, float[] values, int offset) {
+		boolean keyframe = samplesWritten % keyframeInterval == 0;
+		if (keyframe) {
+			if (keyCount == keyOffsets.length) {
+				long[] offsets = new long[keyCount * 2];
+				System.arraycopy(keyOffsets, 0, offsets, 0, keyCount);
+				keyOffsets = offsets;
+				float[] times = new float[keyCount * 2];
+				System.arraycopy(keyTimes, 0, times, 0, keyCount);
+				keyTimes = times;
+			}
+			keyOffsets[keyCount] = position + out.position();
+			keyTimes[keyCount] = time;
+			keyCount++;
+		}
+		out.putFloat(time);
+		for (int i = 0; i < sampleSize; i++) {
+			int bits = Float.floatToRawIntBits(values[offset + i]);
+			if (keyframe) {
+				out.putInt(bits);
+			} else {
+				putVarInt(out, bits ^ previous[i]);
+			}
+			previous[i] = bits;
 		}
+		samplesWritten++;
+		lastTime = time;
+	}
 
-		// close the xml
-		write = "</record>" + lineSep;
-		output.write(write.getBytes());
+	/**
+	 * Writes an unsigned int in groups of 7 bits, lowest first.
+	 */
+	static void putVarInt(ByteBuffer buf, int value) {
+		while ((value & ~0x7F) != 0) {
+			buf.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
 
-		output.flush();
-		output.close();
+	/**
+	 * Writes the output buffer to the channel.
+	 */
+	private void write() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			position += channel.write(out);
+		}
+		out.clear();
 	}
 
 	/**
-	 * Save to a file and clear the history.
+	 * Writes the remaining samples, the keyframe index and the trailer, and
+	 * closes the channel.
 	 * 
-	 * @param f
 	 * @throws IOException
 	 */
-	public void saveAndClear(OutputStream f) throws IOException {
-		save(f);
-		pointsInTime.clear();
+	public void close() throws IOException {
+		flush();
+		long indexOffset = position;
+		for (int i = 0; i < keyCount; i++) {
+			if (out.remaining() < INDEX_ENTRY_SIZE + TRAILER_SIZE) {
+				write();
+			}
+			out.putLong(keyOffsets[i]);
+			out.putFloat(keyTimes[i]);
+		}
+		if (out.remaining() < TRAILER_SIZE) {
+			write();
+		}
+		out.putInt(keyCount);
+		out.putInt(samplesWritten);
+		out.putFloat(lastTime);
+		out.putLong(indexOffset);
+		out.putInt(TRAILER_MAGIC);
+		write();
+		channel.close();
+		channel = null;
 	}
 
 	/**
-	 * A holding class for all the different variables in the
-	 * DynamicPhysicsObject.
+	 * Save the samples in the ring buffer into the stream and close it.
 	 * 
-	 * @author Ahmed
+	 * @param output
+	 * @throws IOException
 	 */
-	class PointInTime {
-		public float time;
-		public Vector3f force;
-		public Vector3f torque;
-
-		public PointInTime() {
-			time = 0;
-			force = new Vector3f();
-			torque = new Vector3f();
-		}
+	public void save(OutputStream output) throws IOException {
+		start(Channels.newChannel(output));
+		close();
 	}
 
+	/**
+	 * Save to a stream and clear the history.
+	 * 
+	 * @param f
+	 * @throws IOException
+	 */
+	public void saveAndClear(OutputStream f) throws IOException {
+		save(f);
+		head = 0;
+		count = 0;
+	}
 }
@@ -58,7 +58,8 @@ public class Car extends Vehicle
 
 	private int currentGear = 0;
 
-	private float lastRPM = 0;
+	/** Written by the physics thread, read by the gauges. */
+	private volatile float lastRPM = 0;
 
 	private boolean isAccelerating = false;
 
@@ -270,7 +271,7 @@ public class Car extends Vehicle
 		}
 		else
 		{
-			float newMax = getSteeringWheelMax() / (1.0f+0.125f*this.getChassis().getLinearVelocity().length());
+			float newMax = getSteeringWheelMax() / (1.0f+0.125f*this.getChassis().getLinearVelocity(velocity).length());
 			//System.out.println(getSteeringWheelMax()+"/"+newMax+"/"+(1.0f+0.125f*this.getChassis().getLinearVelocity().length()));
             /*
             System.out.println(FastMath.log(0.1f));
@@ -309,9 +310,12 @@ public class Car extends Vehicle
 
 	float airDensity = 1.29f; //kg/m3
 
+	/** Temp variable used on the physics thread, to flatline memory usage. */
+	private final Vector3f velocity = new Vector3f();
+
 	public float calculateDrag_and_RollFriction()
 	{
-		float speed = this.getChassis().getLinearVelocity().length();
+		float speed = this.getChassis().getLinearVelocity(velocity).length();
 
 		float Fdrag = 0.005f*0.5f * dragCoefficient * carFrontalArea * airDensity * speed * speed * (speed*0.85f);
 		float Frr = 5*0.005f*9.81f * tyreRollFriction * 10*this.getChassis().getMass();
@@ -331,9 +335,12 @@ public class Car extends Vehicle
 
 	Vector3f Fdrive = new Vector3f();
 	Vector3f carDirection = new Vector3f();
+	Quaternion chassisRotation = new Quaternion();
 	public Vector3f calculateFdrive(float currentEngineTorque, float gearRatio)
 	{
-		carDirection.set(this.getChassis().getSpatial().getLocalRotation().getRotationColumn(2));
+		// read the body, the spatial belongs to the render thread
+		this.getChassis().getPhysicalEntity().getQuaternion(chassisRotation);
+		chassisRotation.getRotationColumn(2, carDirection);
 
 		carDirection.normalizeLocal();
 		//475*2.66*3.42*0.7/0.33
@@ -348,16 +355,27 @@ public class Car extends Vehicle
 		return Fdrive;
 	}
 
+	/**
+	 * @return the magnitude of <code>calculateFdrive</code>, without computing its direction.
+	 */
+	public float calculateDriveForce(float currentEngineTorque, float gearRatio)
+	{
+		return FastMath.abs(currentEngineTorque * gearRatio * differentialRatio * transmissionEfficency / wheelRadius);
+	}
+
 	public float acceleration(float currentEngineTorque, float gearRatio)
 	{
-		float F = calculateFdrive(currentEngineTorque, gearRatio).length();
+		float F = calculateDriveForce(currentEngineTorque, gearRatio);
 		//System.out.println("mass: "+this.getMass());
 		return F / this.getMass();
 	}
 
+	/**
+	 * @return the engine speed computed by the last powertrain update.
+	 */
 	public float getCurrentRPM()
 	{
-		return getRPM(currentGear);
+		return lastRPM;
 	}
 
 	public float getMinRPM()
@@ -378,11 +396,11 @@ public class Car extends Vehicle
 
 
 		// back calculation from wheel speed
-		tmp.set(this.getWheels()[frontDriven?1:3].getAngularVelocity());
+		this.getWheels()[frontDriven?1:3].getAngularVelocity(tmp);
 
 		float speed = tmp.length();
 
-		tmp.set(this.getWheels()[frontDriven?0:2].getAngularVelocity());
+		this.getWheels()[frontDriven?0:2].getAngularVelocity(tmp);
 
 		float speed2 = tmp.length();
 
@@ -439,7 +457,15 @@ public class Car extends Vehicle
 
 	public Vector3f calculateEngineTorque(float rpm, int gear)
 	{
-		return calculateFdrive(gearBox.getTorque((int)rpm) * getGasPedal(), gearBox.getGearRatio(gear));
+		return calculateFdrive(gearBox.getTorque(rpm) * getGasPedal(), gearBox.getGearRatio(gear));
+	}
+
+	/**
+	 * @return the magnitude of <code>calculateEngineTorque</code>, without computing its direction.
+	 */
+	public float calculateEngineForce(float rpm, int gear)
+	{
+		return calculateDriveForce(gearBox.getTorque(rpm) * getGasPedal(), gearBox.getGearRatio(gear));
 	}
 
 	/**
@@ -528,191 +554,130 @@ public class Car extends Vehicle
 
 	}
 
+	/**
+	 * @param rate
+	 *            how fast the clutch closes again, in clutch travel per second.
+	 */
+	public void setClutchTime(float rate)
+	{
+		clutch.setclutchTime(rate);
+	}
+
+	public float getClutchTime()
+	{
+		return clutch.getClutchTime();
+	}
+
+	/**
+	 * @param gear
+	 *            -1 (reverse) or 1 to 6, neutral has no ratio
+	 * @param ratio
+	 *            the new transmission ratio of that gear.
+	 */
+	public void setGearRatio(int gear, float ratio)
+	{
+		if (gear != 0)
+			gearBox.setGearRatio(gear == -1 ? 0 : gear, ratio);
+	}
+
+	public float getGearRatio(int gear)
+	{
+		return gearBox.getGearRatio(gear);
+	}
+
+	/** The result of the last powertrain update, reused every step. */
+	private final WheelTorques wheelTorques = new WheelTorques();
+
+	/**
+	 * @return the joint motor settings of the last powertrain update.
+	 */
+	public WheelTorques getWheelTorques()
+	{
+		return wheelTorques;
+	}
+
 	public void updatePowerOnWheels()
 	{
-        /*
-        if(averageRPMCounter<8f)
-        {
-            averageRPMCounter++;
-            intermediateAverageRPM+=getRPM(currentGear);
-        }
-        else
-        {
-            averageRPM=intermediateAverageRPM/8f;
-            averageRPMCounter=0;
-            intermediateAverageRPM=0;
-
-        }
-        */
-		//System.out.println("ca: "+chassis.getAngularVelocity().length()+" cl:
-		// "+chassis.getLinearVelocity().length());
-		//System.out.println("cf: "+chassis.getForce().length());
-		//System.out.println("ct: "+chassis.getTorque().length());
-		//System.out.println("f w0: "+wheels[0].getForce()+"w1: "+wheels[1].getForce()+"w2: "+wheels[2].getForce()+"w3:
-		// "+wheels[3].getForce());
-		//System.out.println("t w0: "+wheels[0].getTorque()+"w1: "+wheels[1].getTorque()+"w2:
-		// "+wheels[2].getTorque()+"w3: "+wheels[3].getTorque());
-
-		//System.out.println("va w0: "+wheels[0].getAngularVelocity().length()+"w1:
-		// "+wheels[1].getAngularVelocity().length()+"w2: "+wheels[2].getAngularVelocity().length()+"w3:
-		// "+wheels[3].getAngularVelocity().length());
-
-		float currentTorque = 0;
-		float currentTorque2 = 0;
-		if (isBraking)
-		{
-			currentTorque = (brakePower - calculateEngineTorque(getRPM(currentGear), currentGear).length())
-					+ calculateDrag_and_RollFriction();
+		// evaluate the engine and the resistance once per step
+		float rpm = getRPM(currentGear);
+		float engineForce = calculateEngineForce(rpm, currentGear);
+		float resistance = calculateDrag_and_RollFriction();
 
-			currentTorque2 = (brakePower * brakeBalance - calculateEngineTorque(getRPM(currentGear), currentGear)
-					.length())
-					+ calculateDrag_and_RollFriction();
-		}
-		else
+		computeWheelTorques(engineForce, resistance, wheelTorques);
+
+		for (int i = 0; i < WheelTorques.WHEELS; i++)
 		{
-			currentTorque = (currentGear==0?0:clutch.getPosition()) * calculateEngineTorque(getRPM(currentGear), currentGear).length()
-					- calculateDrag_and_RollFriction();
+			float desiredVelocity = wheelTorques.desiredVelocity[i];
+			if (desiredVelocity == desiredVelocity) // not NaN
+				joints[i].setDesiredAngularVelocityAroundAxis2(desiredVelocity);
+			joints[i].setMaxTorqueOnAxis2(wheelTorques.maxTorque[i]);
+			if (wheelTorques.releaseAxis1)
+				joints[i].setMaxTorqueOnAxis1(0);
 		}
+	}
 
-		//System.out.println("engine: "+calculateEngineTorque(getRPM(currentGear), currentGear).length());
-		//System.out.println("drag: "+calculateDrag_and_RollFriction());
+	/**
+	 * Distributes the engine force and the resistance to the wheel joints.
+	 *
+	 * @param engineForce
+	 *            magnitude of the drive force of the engine
+	 * @param resistance
+	 *            air drag and roll friction
+	 * @param store
+	 *            receives the joint motor settings
+	 */
+	private void computeWheelTorques(float engineForce, float resistance, WheelTorques store)
+	{
+		store.clear();
 
 		if (isBraking)
 		{
-			//System.out.println("braking...");
-			currentTorque = FastMath.abs(currentTorque);
-			currentTorque2 = FastMath.abs(currentTorque2);
-
-			joints[0].setDesiredAngularVelocityAroundAxis2(0);
-			joints[1].setDesiredAngularVelocityAroundAxis2(0);
-			joints[2].setDesiredAngularVelocityAroundAxis2(0);
-			joints[3].setDesiredAngularVelocityAroundAxis2(0);
-
-			joints[0].setMaxTorqueOnAxis2(currentTorque);
-			joints[1].setMaxTorqueOnAxis2(currentTorque);
-			joints[2].setMaxTorqueOnAxis2(currentTorque2);
-			joints[3].setMaxTorqueOnAxis2(currentTorque2);
-
-			joints[0].setMaxTorqueOnAxis1(0);
-			joints[1].setMaxTorqueOnAxis1(0);
-			joints[2].setMaxTorqueOnAxis1(0);
-			joints[3].setMaxTorqueOnAxis1(0);
-			//System.out.println("drag/rr currentTorque :"+currentTorque);
-			//currentTorque=0;
-		}
-		else
-		{
-			//System.out.println("currentTorque: "+currentTorque);
-			if (currentTorque < 0f) // just rolling no gas or brake
-			{
-				currentTorque = FastMath.abs(currentTorque); // air and roll friction
-
-				joints[0].setDesiredAngularVelocityAroundAxis2(0);
-				joints[1].setDesiredAngularVelocityAroundAxis2(0);
-				joints[2].setDesiredAngularVelocityAroundAxis2(0);
-				joints[3].setDesiredAngularVelocityAroundAxis2(0);
+			float front = FastMath.abs((brakePower - engineForce) + resistance);
+			float rear = FastMath.abs((brakePower * brakeBalance - engineForce) + resistance);
 
-				joints[0].setMaxTorqueOnAxis2(currentTorque);
-				joints[1].setMaxTorqueOnAxis2(currentTorque);
-				joints[2].setMaxTorqueOnAxis2(currentTorque);
-				joints[3].setMaxTorqueOnAxis2(currentTorque);
+			for (int i = 0; i < WheelTorques.WHEELS; i++)
+				store.desiredVelocity[i] = 0;
 
-			}
-			else
-			{
-				//BHP = 2*pi*'M*n - RPM*Torque/5252
-
-				//P = RPM(M) * N
-				// gas
+			store.maxTorque[0] = front;
+			store.maxTorque[1] = front;
+			store.maxTorque[2] = rear;
+			store.maxTorque[3] = rear;
+			store.releaseAxis1 = true;
+			return;
+		}
 
-				//System.out.println("accelerating...");
+		float currentTorque = (currentGear==0?0:clutch.getPosition()) * engineForce - resistance;
 
-				if (!fourWheeled)
-				{
-					if (!frontDriven)
-					{
-						byte differential = 0; // both wheels get the power
-						float epsilon = 1.25f;//2.0f;//0.125f;
-/*
-                        //offenes differential
-                        if (wheels[2].getAngularVelocity().length() > wheels[3].getAngularVelocity().length() + epsilon)
-                            differential = 1; // left wheel gets the power
-                        else
-                            if (wheels[3].getAngularVelocity().length() > wheels[2].getAngularVelocity().length()
-                                    + epsilon)
-                                differential = 2; // right wheel gets the power
-*/
-						//System.out.println("diff: "+differential );
-						joints[0].setMaxTorqueOnAxis2(0);
-						joints[1].setMaxTorqueOnAxis2(0);
-						joints[2].setMaxTorqueOnAxis2((differential == 1 || differential == 0) ? currentTorque : 0);
-						joints[3].setMaxTorqueOnAxis2((differential == 2 || differential == 0) ? currentTorque : 0);
-
-						joints[0].setMaxTorqueOnAxis1(0);
-						joints[1].setMaxTorqueOnAxis1(0);
-						joints[2].setMaxTorqueOnAxis1(0);
-						joints[3].setMaxTorqueOnAxis1(0);
-					}
-					else
-					{
-						byte differential = 0; // both wheels get the power
-						float epsilon = 1.25f;
-                        /*
-                        //offenes differential
-                        if (wheels[0].getAngularVelocity().length() > wheels[1].getAngularVelocity().length() + epsilon)
-                            differential = 1; // left wheel gets the power
-                        else
-                            if (wheels[1].getAngularVelocity().length() > wheels[0].getAngularVelocity().length()
-                                    + epsilon)
-                                differential = 2; // right wheel gets the power
-                            */
-						//System.out.println("diff: "+differential );
-						joints[2].setMaxTorqueOnAxis2(0);
-						joints[3].setMaxTorqueOnAxis2(0);
-						joints[0].setMaxTorqueOnAxis2((differential == 1 || differential == 0) ? currentTorque : 0);
-						joints[1].setMaxTorqueOnAxis2((differential == 2 || differential == 0) ? currentTorque : 0);
-
-						joints[0].setMaxTorqueOnAxis1(0);
-						joints[1].setMaxTorqueOnAxis1(0);
-						joints[2].setMaxTorqueOnAxis1(0);
-						joints[3].setMaxTorqueOnAxis1(0);
-					}
-
-				}
-				else
-				{
-					byte differential = 0; // both wheels get the power
-					float epsilon = 1.25f;
-/*
-                    //offenes differential
-                    if (wheels[2].getAngularVelocity().length() > wheels[3].getAngularVelocity().length() + epsilon)
-                        differential = 1; // left wheel gets the power
-                    else
-                        if (wheels[3].getAngularVelocity().length() > wheels[2].getAngularVelocity().length()
-                                + epsilon)
-                            differential = 2; // right wheel gets the power
-*/
-					joints[0].setMaxTorqueOnAxis2((differential == 1 || differential == 0) ? currentTorque*0.5f : 0);
-					joints[1].setMaxTorqueOnAxis2((differential == 2 || differential == 0) ? currentTorque*0.5f : 0);
-					joints[2].setMaxTorqueOnAxis2((differential == 1 || differential == 0) ? currentTorque*0.5f : 0);
-					joints[3].setMaxTorqueOnAxis2((differential == 2 || differential == 0) ? currentTorque*0.5f : 0);
-
-					joints[0].setMaxTorqueOnAxis1(0);
-					joints[1].setMaxTorqueOnAxis1(0);
-					joints[2].setMaxTorqueOnAxis1(0);
-					joints[3].setMaxTorqueOnAxis1(0);
-				}
+		if (currentTorque < 0f) // just rolling no gas or brake
+		{
+			currentTorque = FastMath.abs(currentTorque); // air and roll friction
 
+			for (int i = 0; i < WheelTorques.WHEELS; i++)
+			{
+				store.desiredVelocity[i] = 0;
+				store.maxTorque[i] = currentTorque;
 			}
+			return;
 		}
 
-		//car speed by 2 pi times the wheel radius
-
-		//Vector3f tmp = new Vector3f(this.getWheels()[0].getAngularVelocity());//.getLinearVelocity()) ;
-		//System.out.println("front:"+tmp.length()+"/"+tmp.lengthSquared());
-		//System.out.println("tyre: "+this.getWheels()[0].getLinearVelocity().length()/(FastMath.PI*2.0f*wheelRadius));
-		//System.out.println("car: "+this.chassis.getLinearVelocity().length()/(FastMath.PI*2.0f*wheelRadius));
-
+		// gas; the open differential is disabled, both wheels of an axle get the power
+		if (fourWheeled)
+		{
+			for (int i = 0; i < WheelTorques.WHEELS; i++)
+				store.maxTorque[i] = currentTorque * 0.5f;
+		}
+		else
+		if (frontDriven)
+		{
+			store.maxTorque[0] = currentTorque;
+			store.maxTorque[1] = currentTorque;
+		}
+		else
+		{
+			store.maxTorque[2] = currentTorque;
+			store.maxTorque[3] = currentTorque;
+		}
+		store.releaseAxis1 = true;
 	}
 
 	/**
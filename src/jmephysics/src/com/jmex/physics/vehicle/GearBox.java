@@ -78,37 +78,10 @@ public class GearBox
             gearRatios[gear]=ratio;        
     }
     
-    float getTorque(int rpm)
+    float getTorque(float rpm)
     {
-        // in 100rpm steps
-        //System.out.println("torque/rpm: "+curve.covertRPM2Nm(rpm)+"/"+rpm);
-        return 0.005f*curve.covertRPM2Nm(rpm); // divide by 5000
-        /*
-        int irpm=(int)Math.round(rpm*0.001f);
-        int irpm2=irpm;
-        
-        irpm*=1000;
-       
-        irpm2-=irpm;
-        if(irpm2>250)
-            irpm=500;
-        else
-            irpm2=0;
-        
-        
-        irpm+=irpm2;
-                
-        //System.out.println("getTorque: "+irpm);
-        if(RPM2Torque.containsKey(Integer.valueOf(irpm)))
-        {
-            Integer i = (Integer)RPM2Torque.get(Integer.valueOf(irpm));
-        
-
-            return i.intValue();
-        }
-        else
-            return 0;
-        */
+        //System.out.println("torque/rpm: "+curve.getTorque(rpm)+"/"+rpm);
+        return 0.005f*curve.getTorque(rpm); // divide by 5000
     }
     
     
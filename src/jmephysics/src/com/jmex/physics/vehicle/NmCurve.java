@@ -1,16 +1,21 @@
 package com.jmex.physics.vehicle;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.HashMap;
+import java.util.logging.Level;
 
 import javax.imageio.ImageIO;
 
+import com.jme.util.LoggingSystem;
+
 /*
  * Created on 19.04.2005
  *
@@ -19,48 +24,60 @@ import javax.imageio.ImageIO;
  */
 
 /**
- * @author tommy
+ * Torque curve of an engine, read from a picture of the curve. The curve is
+ * drawn in yellow; its bounding box is mapped to the given rpm and Nm ranges.
+ * The picture is decoded once and sampled into a table every
+ * <code>RPM_STEP</code> rpm, lookups interpolate linearly between the samples.
+ * The table is cached next to the picture in a small binary file.
  *
- * TODO To change the template for this generated type comment go to
- * Window - Preferences - Java - Code Style - Code Templates
+ * @author tommy
  */
 public class NmCurve
 {
-    HashMap RPM2Torque = null;
+    /** Distance of the table samples in rpm. */
+    static final int RPM_STEP = 100;
+
+    /** Identifies a cache file, followed by the version. */
+    private static final int CACHE_MAGIC = 0x4E6D4376;
+
+    private static final int CACHE_VERSION = 1;
+
+    private static final String CACHE_SUFFIX = ".nmc";
+
+    /** Torque at minRPM + i * RPM_STEP. */
+    float[] torque;
+
     float maxRPM, minRPM;
 
-    float getNm(String pic, float rpm, float minrpm, float maxrpm, float minnm, float maxnm) throws IOException
+    /**
+     * Decodes the picture once and samples the curve.
+     */
+    private float[] extract(String pic, float minrpm, float maxrpm, float minnm, float maxnm, int samples)
+            throws IOException
     {
-        int w, h;
-        float Nm = Float.MIN_VALUE;
         BufferedImage inputBuffer = ImageIO.read(new File(pic));
-       
-        w = inputBuffer.getWidth();
-        h = inputBuffer.getHeight();
-        /* xmin, xmax, ymin and ymax of rpm and Nm */
-        int rpm_x_min = Integer.MAX_VALUE;
-        int rpm_y_min = Integer.MAX_VALUE;
-        int rpm_x_max = Integer.MIN_VALUE;
-        int rpm_y_max = Integer.MIN_VALUE;
+        if (inputBuffer == null)
+            throw new IOException("unsupported image: " + pic);
+
+        int w = inputBuffer.getWidth();
+        int h = inputBuffer.getHeight();
+        int[] pixels = inputBuffer.getRGB(0, 0, w, h, null, 0, w);
+
+        /* xmin, xmax, ymin and ymax of Nm, top of the curve in every column */
         int nm_x_min = Integer.MAX_VALUE;
         int nm_y_min = Integer.MAX_VALUE;
         int nm_x_max = Integer.MIN_VALUE;
         int nm_y_max = Integer.MIN_VALUE;
+        int[] top = new int[w];
 
-        for (int y = h - 1; y >= 0; y--)
+        for (int y = 0; y < h; y++)
         {
+            int y_flip = h - y;
+            int row = y * w;
             for (int x = 0; x < w; x++)
             {
-                int color = inputBuffer.getRGB(x, y);
-                int a = ((color >> 24) & 255);
-                int r = ((color >> 16) & 255);
-                int g = ((color >> 8) & 255);
-                int b = ((color) & 255);
-
-                if (r == 255 && g == 255 && b == 0) /* Nm - YELLOW */
+                if ((pixels[row + x] & 0xFFFFFF) == 0xFFFF00) /* Nm - YELLOW */
                 {
-                    int y_flip = h - y;
-
                     if (nm_x_min > x)
                         nm_x_min = x;
 
@@ -72,112 +89,167 @@ public class NmCurve
 
                     if (nm_y_max < y_flip)
                         nm_y_max = y_flip;
+
+                    if (top[x] < y_flip)
+                        top[x] = y_flip;
                 }
             }
+        }
+
+        float[] table = new float[samples];
+        for (int i = 0; i < samples; i++)
+        {
+            float rpm = (int) minrpm + i * RPM_STEP;
+
+            //convert rpm into pixel range
+            float rpm2pixel = nm_x_min
+                    + ((nm_x_max - nm_x_min) / (maxrpm - minrpm) * ((rpm - minrpm) < 0 ? 0 : (rpm - minrpm)));
+            int x = (int) rpm2pixel;
 
+            if (x >= 0 && x < w && top[x] > 0)
+                table[i] = minnm + (((maxnm - minnm) / (nm_y_max - nm_y_min) * (top[x] - nm_y_min)));
+            else
+                table[i] = Float.MIN_VALUE;
         }
-        float rpmRange = maxrpm - minrpm;
+        return table;
+    }
+
+    void buildLookUpTable(String pic, float minrpm, float maxrpm, float minnm, float maxnm) throws IOException
+    {
+        maxRPM = maxrpm;
+        minRPM = minrpm;
 
-        float nmXRange = nm_x_max - nm_x_min;
-        float nmYRange = nm_y_max - nm_y_min;
+        int samples = ((int) maxrpm - (int) minrpm) / RPM_STEP + 1;
+        File cache = new File(pic + CACHE_SUFFIX);
 
-        float rpm2pixel;
+        torque = null;
+        if (cache.exists() && cache.lastModified() >= new File(pic).lastModified())
+        {
+            torque = readCache(cache, minrpm, maxrpm, minnm, maxnm, samples);
+        }
+
+        if (torque == null)
+        {
+            torque = extract(pic, minrpm, maxrpm, minnm, maxnm, samples);
 
-        //convert rpm into pixel range
-        rpm2pixel = nm_x_min
-                + ((nm_x_max - nm_x_min) / (maxrpm - minrpm) * ((rpm - minrpm) < 0 ? 0 : (rpm - minrpm)));
+            // save it for faster loading next time
+            try
+            {
+                writeCache(cache, minrpm, maxrpm, minnm, maxnm);
+            }
+            catch (IOException e)
+            {
+                LoggingSystem.getLogger().log(Level.WARNING, "Could not write torque cache " + cache + ": " + e.getMessage());
+            }
+        }
+    }
 
-        for (int y = h - 1; y >= 0; y--)
+    /**
+     * @return the cached table, or null if the cache does not match the given ranges.
+     */
+    private float[] readCache(File cache, float minrpm, float maxrpm, float minnm, float maxnm, int samples)
+    {
+        DataInputStream in = null;
+        try
         {
-            int color = inputBuffer.getRGB((int) rpm2pixel, y);
-            int a = ((color >> 24) & 255);
-            int r = ((color >> 16) & 255);
-            int g = ((color >> 8) & 255);
-            int b = ((color) & 255);
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)));
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+                return null;
+            if (in.readFloat() != minrpm || in.readFloat() != maxrpm || in.readFloat() != minnm
+                    || in.readFloat() != maxnm || in.readInt() != RPM_STEP || in.readInt() != samples)
+                return null;
+
+            float[] table = new float[samples];
+            for (int i = 0; i < samples; i++)
+                table[i] = in.readFloat();
+            return table;
+        }
+        catch (IOException e)
+        {
+            LoggingSystem.getLogger().log(Level.WARNING, "Ignoring torque cache " + cache + ": " + e.getMessage());
+            return null;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
 
-            if (r == 255 && g == 255 && b == 0) // Nm - YELLOW
+    /**
+     * Writes the table to a temporary file and moves it over the cache, so
+     * curves loaded concurrently never see a partially written cache.
+     */
+    private void writeCache(File cache, float minrpm, float maxrpm, float minnm, float maxnm) throws IOException
+    {
+        File tmp = File.createTempFile(cache.getName(), ".tmp", cache.getAbsoluteFile().getParentFile());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        boolean written = false;
+        try
+        {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeFloat(minrpm);
+            out.writeFloat(maxrpm);
+            out.writeFloat(minnm);
+            out.writeFloat(maxnm);
+            out.writeInt(RPM_STEP);
+            out.writeInt(torque.length);
+            for (int i = 0; i < torque.length; i++)
+                out.writeFloat(torque[i]);
+            out.close();
+            written = true;
+        }
+        finally
+        {
+            if (!written)
             {
-                float tmp = ((minnm + (((maxnm - minnm) / (nm_y_max - nm_y_min) * (((h - y) - nm_y_min))))));
-                if (tmp > Nm)
-                    Nm = tmp;
+                close(out);
+                tmp.delete();
             }
         }
 
-        return Nm;
+        if (!tmp.renameTo(cache))
+        {
+            // some platforms do not replace an existing file on rename
+            cache.delete();
+            if (!tmp.renameTo(cache))
+            {
+                tmp.delete();
+                throw new IOException("could not replace " + cache);
+            }
+        }
     }
-    
-    void buildLookUpTable(String pic, float minrpm, float maxrpm, float minnm, float maxnm) throws IOException
+
+    private static void close(Closeable in)
     {
-        maxRPM = maxrpm;
-        minRPM = minrpm;
-        
-        if(!(new File(pic+".oos").exists()))
+        if (in == null)
+            return;
+        try
         {
-	        RPM2Torque = new HashMap();
-	        for(int i=(int)minrpm; i<=(int)maxrpm; i+=100 )
-	        {
-	            RPM2Torque.put(Integer.valueOf(i), Float.valueOf(getNm(pic, i, minrpm, maxrpm, minnm, maxnm)));
-	        }   
-	        
-	        // save it to stream for faster loading next time
-	        FileOutputStream fos = null;
-	        try{
-	            fos=new FileOutputStream(pic+".oos");
-	            ObjectOutputStream oos = new ObjectOutputStream(fos);
-	            oos.writeObject(RPM2Torque);
-	            oos.flush();
-	            fos.close();
-	            //System.out.println(RPM2Torque.toString());
-
-	        }
-	        catch(IOException e)
-	        {
-	            e.printStackTrace();
-	        }
+            in.close();
         }
-        else
+        catch (IOException e)
         {
-	        FileInputStream fis = null;
-	        try{
-	            RPM2Torque = null;
-	            fis=new FileInputStream(pic+".oos");
-	            ObjectInputStream ois = new ObjectInputStream(fis);
-	            RPM2Torque = (HashMap)ois.readObject();
-	            fis.close();
-	            
-	            //System.out.println(RPM2Torque.toString());
-	        }
-	        catch(IOException e)
-	        {
-	            e.printStackTrace();
-	        }
-	        catch(ClassNotFoundException e)
-	        {
-	            e.printStackTrace();
-	        }
-           
+            // nothing left to do
         }
-        
     }
-    
-    float covertRPM2Nm(int rpm)
+
+    /**
+     * @param rpm
+     *            the engine speed
+     * @return the torque at the given speed, interpolated between the samples, or 0 outside the rpm range.
+     */
+    float getTorque(float rpm)
     {
-        if(rpm<minRPM)
+        if (rpm < minRPM || rpm > maxRPM)
             return 0f;
-        else
-            if(rpm>maxRPM)
-                return 0f;
-        
-        if(RPM2Torque.containsKey(Integer.valueOf(rpm)))
-            return ((Float)RPM2Torque.get(Integer.valueOf(rpm))).floatValue();
-        //else
-        //{
-
-            int irpm=Math.round(rpm*0.01f);
-            irpm*=100; 
-            //System.out.println("irpm: "+irpm);
-            return ((Float)RPM2Torque.get(Integer.valueOf(irpm))).floatValue();
-
-        //}
+
+        float pos = (rpm - (int) minRPM) * (1f / RPM_STEP);
+        int i = (int) pos;
+        if (i >= torque.length - 1)
+            return torque[torque.length - 1];
+
+        float t0 = torque[i];
+        return t0 + (torque[i + 1] - t0) * (pos - i);
     }
 }
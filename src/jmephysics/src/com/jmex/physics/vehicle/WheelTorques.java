@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived frosetGasPedalm this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.physics.vehicle;
+
+/**
+ * The motor settings of the four wheel joints computed by one powertrain step of a <code>Car</code>. Reused every
+ * step, so the powertrain does not allocate.
+ *
+ * @see com.jmex.physics.vehicle.Car#getWheelTorques()
+ */
+public final class WheelTorques
+{
+	/** Number of wheels of a car. */
+	public static final int WHEELS = 4;
+
+	/** Maximum torque on axis 2 of each wheel joint. */
+	final float[] maxTorque = new float[WHEELS];
+
+	/** Desired angular velocity around axis 2 of each wheel joint, NaN to keep the current one. */
+	final float[] desiredVelocity = new float[WHEELS];
+
+	/** Signals if the torque on axis 1 is released on all joints. */
+	boolean releaseAxis1;
+
+	WheelTorques()
+	{
+		clear();
+	}
+
+	void clear()
+	{
+		for (int i = 0; i < WHEELS; i++)
+		{
+			maxTorque[i] = 0;
+			desiredVelocity[i] = Float.NaN;
+		}
+		releaseAxis1 = false;
+	}
+
+	/**
+	 * @param wheel
+	 *            the number of the wheel
+	 * @return the maximum torque on axis 2 of the wheel joint.
+	 */
+	public float getMaxTorque(int wheel)
+	{
+		return maxTorque[wheel];
+	}
+
+	/**
+	 * @param wheel
+	 *            the number of the wheel
+	 * @return the desired angular velocity around axis 2 of the wheel joint, or NaN if it was left unchanged.
+	 */
+	public float getDesiredVelocity(int wheel)
+	{
+		return desiredVelocity[wheel];
+	}
+}
@@ -27,7 +27,7 @@
  */
 package org.odejava;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.odejava.ode.Ode;
@@ -109,32 +109,10 @@ public abstract class Geom {
     private Spatial graphics;
 
 	/**
-	 * Lookup map of Geoms to their native addresses.
+	 * Lookup map of Geoms to their native addresses. Worlds may be stepped
+	 * and Geoms finalized on different threads, so the map is concurrent.
 	 */
-	private static HashMap geomNativeAddr = new HashMap();
-
-   private static MutableInteger tmp_addess = new MutableInteger();
-
-   private static class MutableInteger {
-      public int value;
-
-      public MutableInteger() {};
-
-      public MutableInteger( int value ) {
-         this.value = value;
-      }
-
-      public int hashCode() {
-         return value;
-      }
-
-      public boolean equals( Object obj ) {
-         if (obj instanceof MutableInteger) {
-            return value == ((MutableInteger)obj).value;
-         }
-         return false;
-      }
-   }
+	private static final ConcurrentHashMap geomNativeAddr = new ConcurrentHashMap();
 
    /**
 	 * Create a generic items of geometry with an associated name. The name
@@ -193,8 +171,8 @@ public abstract class Geom {
 		}
 
 		// TODO: remove from Space
-      tmp_addess.value = nativeAddr;
-      geomNativeAddr.remove( tmp_addess );
+		// only our own entry, the address may already belong to a new geom
+		geomNativeAddr.remove(Integer.valueOf(nativeAddr), this);
 		// Odejava.odeLog.debug("dGeomDestory(geomId: " + geomId + ")");
 		Ode.dGeomDestroy(geomId);
 		space = null;
@@ -240,11 +218,11 @@ public abstract class Geom {
 		// contains native address instead of Swig C pointer values
 		nativeAddr = Odejava.getNativeAddr(geomId.getSwigCPtr());
 
-		geomNativeAddr.put(new MutableInteger( nativeAddr ), this);
+		geomNativeAddr.put(Integer.valueOf(nativeAddr), this);
 	}
 
 	/**
-	 * Performs lookup of a WeakHashMap and returns the Geom with the native
+	 * Performs lookup of the map and returns the Geom with the native
 	 * address equal to the one passed or null if none exist.
 	 * 
 	 * @param nativeAddress
@@ -253,8 +231,7 @@ public abstract class Geom {
 	 *         if none can be found.
 	 */
 	public static Geom getGeomFromNativeAddr(int nativeAddress) {
-      tmp_addess.value = nativeAddress;
-      return (Geom) geomNativeAddr.get( tmp_addess );
+		return (Geom) geomNativeAddr.get(Integer.valueOf(nativeAddress));
 	}
 
 	/**
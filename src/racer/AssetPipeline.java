@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+import com.jme.scene.Node;
+import com.jme.system.JmeException;
+import com.jme.util.LoggingSystem;
+import com.jme.util.TextureManager;
+import com.jmex.model.XMLparser.JmeBinaryReader;
+import com.jmex.model.XMLparser.JmeBinaryWriter;
+import com.jmex.model.XMLparser.Converters.FormatConverter;
+
+/**
+ * Loads the models and textures of the game on worker threads while the GL thread sets up everything else.
+ * <p>
+ * Models are parsed with texture states deferred (see <code>JmeBinaryReader.setDeferTextureStates</code>) and their
+ * images are decoded on the workers, <code>getModel</code> then finishes a model on the GL thread. Converting a model
+ * from its 3DS or MS3D source is skipped while the hash of the source matches the one stored next to the converted
+ * .jme file.
+ * </p>
+ */
+public class AssetPipeline
+{
+    /** Next to a converted model, holds the converter and hash of the source it was made from. */
+    private static final String HASH_SUFFIX = ".sha1";
+
+    /**
+     * Work done on a model after loading, e.g. <code>VertexUtil</code> calls. Processors given to
+     * <code>loadModel</code> run on a worker thread and must not touch render states or anything else that needs
+     * the OpenGL context.
+     */
+    public interface ModelProcessor
+    {
+        void process(Node model);
+    }
+
+    private static class PendingModel
+    {
+        Future future;
+
+        JmeBinaryReader reader;
+    }
+
+    private final ExecutorService pool;
+
+    /** Model name -> PendingModel */
+    private final HashMap models = new HashMap();
+
+    private final List textures = new ArrayList();
+
+    public AssetPipeline()
+    {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public AssetPipeline(int threads)
+    {
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int count;
+
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "asset loader " + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Converts a model source to the aligned jME format, which <code>RaceSetup.loadModel</code> maps into memory,
+     * unless it was converted before from the same content. Runs on the calling thread since the converters create
+     * render states.
+     * 
+     * @param source
+     *            the .3ds, .ms3d, ... file, nothing is done if it does not exist
+     * @param converter
+     *            the converter for the format of the source
+     * @param target
+     *            the .jme file to write
+     * @param reader
+     *            if not null, the converted model is read back with this reader, given to <code>processor</code> and
+     *            written again, e.g. to apply the reader's "bound" property
+     * @param processor
+     *            work to do on the converted model on the calling thread, or null
+     * @return true if the model was converted
+     */
+    public boolean convert(File source, FormatConverter converter, File target, JmeBinaryReader reader,
+            ModelProcessor processor) throws IOException
+    {
+        if (!source.isFile())
+            return false;
+
+        byte[] data = readFully(new FileInputStream(source));
+        String hash = converter.getClass().getName() + ' ' + sha1(data);
+        File hashFile = new File(target.getPath() + HASH_SUFFIX);
+        if (target.isFile() && hash.equals(readHash(hashFile)))
+            return false;
+
+        LoggingSystem.getLogger().log(Level.INFO, "Converting " + source + " to " + target);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter.convert(new ByteArrayInputStream(data), out);
+        ByteArrayOutputStream aligned = new ByteArrayOutputStream();
+        JmeBinaryWriter writer = new JmeBinaryWriter();
+        writer.setProperty("aligned", Boolean.TRUE);
+        if (reader != null)
+        {
+            Node model = reader.loadBinaryFormat(new ByteArrayInputStream(out.toByteArray()));
+            if (processor != null)
+                processor.process(model);
+            writer.writeScene(model, aligned);
+        }
+        else
+            writer.writeAligned(new ByteArrayInputStream(out.toByteArray()), aligned);
+        write(target, aligned.toByteArray());
+        write(hashFile, hash.getBytes("UTF-8"));
+        return true;
+    }
+
+    /**
+     * Builds a model from another model in the jME format, e.g. one with levels of detail, unless it was built before
+     * from the same content with the same key. Runs on the calling thread since reading the model creates render
+     * states.
+     * 
+     * @param source
+     *            the .jme file to build from, nothing is done if it does not exist
+     * @param target
+     *            the .jme file to write
+     * @param reader
+     *            the reader for the source
+     * @param processor
+     *            turns the source model into the target model
+     * @param key
+     *            names what <code>processor</code> does and must change with it
+     * @return true if the model was built
+     */
+    public boolean derive(File source, File target, JmeBinaryReader reader, ModelProcessor processor, String key)
+            throws IOException
+    {
+        if (!source.isFile())
+            return false;
+
+        byte[] data = readFully(new FileInputStream(source));
+        String hash = key + ' ' + sha1(data);
+        File hashFile = new File(target.getPath() + HASH_SUFFIX);
+        if (target.isFile() && hash.equals(readHash(hashFile)))
+            return false;
+
+        LoggingSystem.getLogger().log(Level.INFO, "Building " + target + " from " + source);
+        Node model = reader.loadBinaryFormat(new ByteArrayInputStream(data));
+        processor.process(model);
+        ByteArrayOutputStream aligned = new ByteArrayOutputStream();
+        JmeBinaryWriter writer = new JmeBinaryWriter();
+        writer.setProperty("aligned", Boolean.TRUE);
+        writer.writeScene(model, aligned);
+        write(target, aligned.toByteArray());
+        write(hashFile, hash.getBytes("UTF-8"));
+        return true;
+    }
+
+    /**
+     * Starts loading one of the game models, see <code>RaceSetup</code> for the names.
+     * 
+     * @param reader
+     *            the reader with its properties set, only used for this model
+     * @param processor
+     *            work to do on the loaded model on the worker thread, or null
+     */
+    public void loadModel(String name, JmeBinaryReader reader, ModelProcessor processor)
+    {
+        loadModel(name, reader, processor, null);
+    }
+
+    /**
+     * Starts loading one of the game models, see <code>RaceSetup</code> for the names.
+     * 
+     * @param reader
+     *            the reader with its properties set, only used for this model
+     * @param processor
+     *            work to do on the loaded model on the worker thread, or null
+     * @param cacheKey
+     *            if not null, the geometry made by <code>processor</code> is kept in a <code>MeshCache</code> next
+     *            to the model and the processor only runs again once the model or the key changed. The key names
+     *            what the processor does and must change with it.
+     */
+    public void loadModel(final String name, final JmeBinaryReader reader, final ModelProcessor processor,
+            final String cacheKey)
+    {
+        reader.setDeferTextureStates(true);
+
+        PendingModel pending = new PendingModel();
+        pending.reader = reader;
+        pending.future = pool.submit(new Callable()
+        {
+            public Object call() throws IOException
+            {
+                Node model = RaceSetup.loadModel(reader, name);
+                if (processor != null)
+                    process(name, model, processor, cacheKey);
+                return model;
+            }
+        });
+        models.put(name, pending);
+    }
+
+    private static void process(String name, Node model, ModelProcessor processor, String cacheKey)
+    {
+        File jme = cacheKey != null ? MeshCache.modelFile(name) : null;
+        if (jme != null && MeshCache.load(model, jme, cacheKey))
+            return;
+
+        processor.process(model);
+        if (jme != null)
+        {
+            try
+            {
+                MeshCache.save(model, jme, cacheKey);
+            }
+            catch (IOException e)
+            {
+                LoggingSystem.getLogger().log(Level.WARNING, "Could not write mesh cache of " + name + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Starts decoding a texture image, the next <code>TextureManager.loadTexture</code> of the same url and flip
+     * uploads it without decoding again once <code>awaitTextures</code> returned.
+     */
+    public void preloadTexture(final URL url, final boolean flipped)
+    {
+        textures.add(pool.submit(new Runnable()
+        {
+            public void run()
+            {
+                TextureManager.preloadImage(url, flipped);
+            }
+        }));
+    }
+
+    /**
+     * Waits until all images given to <code>preloadTexture</code> so far are decoded.
+     */
+    public void awaitTextures()
+    {
+        try
+        {
+            for (int i = 0; i < textures.size(); i++)
+                waitFor((Future) textures.get(i));
+        }
+        catch (IOException e)
+        {
+            // preloadImage logs and does not throw
+        }
+        textures.clear();
+    }
+
+    /**
+     * Waits for a model started by <code>loadModel</code> and creates its texture states. Must be called on the GL
+     * thread.
+     * 
+     * @return the loaded model
+     */
+    public Node getModel(String name) throws IOException
+    {
+        PendingModel pending = (PendingModel) models.remove(name);
+        if (pending == null)
+            throw new JmeException("Model is not loading: " + name);
+
+        Node model = (Node) waitFor(pending.future);
+        pending.reader.createDeferredStates();
+        model.updateRenderState();
+        return model;
+    }
+
+    /**
+     * Stops the worker threads once all started work is done.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    private static Object waitFor(Future future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new JmeException("Interrupted while loading assets");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new JmeException("Could not load asset: " + cause);
+        }
+    }
+
+    private static String sha1(byte[] data)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuffer hex = new StringBuffer(digest.length * 2);
+            for (int i = 0; i < digest.length; i++)
+            {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new JmeException("SHA-1 not available");
+        }
+    }
+
+    private static String readHash(File hashFile)
+    {
+        if (!hashFile.isFile())
+            return null;
+        try
+        {
+            return new String(readFully(new FileInputStream(hashFile)), "UTF-8").trim();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes to a temporary file first, so an interrupted conversion never leaves a broken model behind.
+     */
+    private static void write(File file, byte[] data) throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        OutputStream out = new FileOutputStream(tmp);
+        try
+        {
+            out.write(data);
+        }
+        finally
+        {
+            out.close();
+        }
+        if (!tmp.renameTo(file))
+        {
+            file.delete();
+            if (!tmp.renameTo(file))
+            {
+                tmp.delete();
+                throw new IOException("could not replace " + file);
+            }
+        }
+    }
+}
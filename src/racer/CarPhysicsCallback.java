@@ -10,11 +10,12 @@ import com.jmex.physics.contact.PhysicsCallBack;
 
 public class CarPhysicsCallback implements PhysicsCallBack
 {
-    static private float mu, mu2, slip1, slip2, slip2Factor;
-    static private PhysicsObject tw1, tw2, tw3, tw4;
-    static float fDir[]=new float[3];
-    static Vector3f direction = new Vector3f(0, -1, 0);
-    static Vector3f tireRollDiretion = new Vector3f();
+    // per instance, every simulated world gets its own callback
+    private float mu, mu2, slip1, slip2, slip2Factor;
+    private PhysicsObject tw1, tw2, tw3, tw4;
+    private float fDir[]=new float[3];
+    private Vector3f direction = new Vector3f(0, -1, 0);
+    private Vector3f tireRollDiretion = new Vector3f();
 
 
     
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.lwjgl.openal.AL10;
+
+import com.jmex.physics.vehicle.Car;
+import com.jmex.sound.openAL.SoundSystem;
+import com.jmex.sound.openAL.objects.util.JMEAudioInputStream;
+
+/**
+ * The sound of the car's engine, synthesized by an <code>EngineSynth</code> and played as an endless stream through
+ * <code>SoundSystem</code>. <code>update</code> is called every physics step and only hands rpm and load to the
+ * synthesizer; the stream decoder thread renders the samples.
+ */
+public class EngineSound
+{
+    /** Sound produced ahead of OpenAL, short so the engine answers the pedal quickly. */
+    public static final int LATENCY = 80;
+
+    private final EngineSynth synth;
+
+    private final int stream;
+
+    /**
+     * Creates the stream, <code>SoundSystem</code> must be usable.
+     * 
+     * @param cylinders
+     *            number of cylinders of the engine.
+     */
+    public EngineSound(int cylinders)
+    {
+        synth = new EngineSynth(22050, cylinders);
+        stream = SoundSystem.createStream(new Source(synth), LATENCY);
+    }
+
+    /**
+     * Passes the state of the car to the synthesizer. The engine is loaded by the gas pedal, fully only while the
+     * clutch is closed and a gear is in.
+     */
+    public void update(Car car)
+    {
+        float engaged = car.getCurrentGear() == 0 ? 0 : car.getClutchPosition();
+        synth.setTarget(car.getCurrentRPM(), car.getGasPedal() * (0.4f + 0.6f * engaged));
+    }
+
+    public void play()
+    {
+        synth.settle();
+        SoundSystem.playStream(stream);
+    }
+
+    public void stop()
+    {
+        SoundSystem.stopStream(stream);
+    }
+
+    /**
+     * The synthesizer as an audio stream that never ends.
+     */
+    private static class Source extends JMEAudioInputStream
+    {
+        private final EngineSynth synth;
+
+        /** The array of the last <code>read(byte[], int, int)</code>, wrapped once. */
+        private byte[] array;
+
+        private ByteBuffer wrapped;
+
+        /** One sample for <code>read()</code>, handed out a byte at a time. */
+        private final ByteBuffer sample = ByteBuffer.allocate(2).order(ByteOrder.nativeOrder());
+
+        Source(EngineSynth synth)
+        {
+            super(null);
+            this.synth = synth;
+            sample.position(sample.limit());
+        }
+
+        public int read(ByteBuffer buffer, int offset, int length)
+        {
+            return synth.render(buffer, offset, length);
+        }
+
+        public int read(byte[] b, int off, int len)
+        {
+            if (len <= 0)
+                return 0;
+            int pending = 0;
+            if (sample.hasRemaining())
+            {
+                // the rest of a sample started by read()
+                b[off] = sample.get();
+                pending = 1;
+            }
+            if (b != array)
+            {
+                array = b;
+                wrapped = ByteBuffer.wrap(b).order(ByteOrder.nativeOrder());
+            }
+            return pending + synth.render(wrapped, off + pending, len - pending);
+        }
+
+        public int read()
+        {
+            if (!sample.hasRemaining())
+            {
+                synth.render(sample, 0, 2);
+                sample.position(0);
+            }
+            return sample.get() & 0xFF;
+        }
+
+        public int getChannels()
+        {
+            return AL10.AL_FORMAT_MONO16;
+        }
+
+        public int getAudioChannels()
+        {
+            return 1;
+        }
+
+        public int rate()
+        {
+            return synth.getRate();
+        }
+
+        protected void setLength(float time)
+        {
+        }
+
+        protected float getLength()
+        {
+            return 0;
+        }
+
+        public void close() throws IOException
+        {
+            // nothing to release
+        }
+    }
+}
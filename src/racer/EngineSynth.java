@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Additive synthesis of an engine sound from rpm and load. A four-stroke engine fires every cylinder once per engine
+ * cycle of two revolutions; the sound is built from harmonics of the cycle, strongest at multiples of the cylinder
+ * count, plus combustion noise pulsing with the firing. Load makes the sound louder, brighter and noisier.
+ * <p>
+ * The targets are set by one thread, typically each physics step, and <code>render</code> is called by another. Rpm
+ * and load glide towards the targets sample by sample, so steps of the physics rate are not heard. Rendering
+ * allocates nothing. The output is mono 16 bit PCM in native byte order, as OpenAL expects.
+ * </p>
+ * <p>
+ * <code>main</code> renders a rev up and down to a WAV file, to listen to the sound without the game.
+ * </p>
+ */
+public final class EngineSynth
+{
+    /** Harmonics of the engine cycle that are synthesized. */
+    private static final int HARMONICS = 48;
+
+    private static final int TABLE_BITS = 13;
+
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    private static final float[] SINE = new float[TABLE_SIZE];
+
+    static
+    {
+        for (int i = 0; i < TABLE_SIZE; i++)
+            SINE[i] = (float) Math.sin(2 * Math.PI * i / TABLE_SIZE);
+    }
+
+    /** Time for rpm and load to glide to a new target, in seconds. */
+    private static final float GLIDE = 0.02f;
+
+    private final int rate;
+
+    private final int cylinders;
+
+    /** Per sample glide factor. */
+    private final float glide;
+
+    /** Amplitude of each harmonic, refreshed once per block from the load. */
+    private final float[] amplitude = new float[HARMONICS + 1];
+
+    private volatile float targetRpm;
+
+    private volatile float targetLoad;
+
+    private float rpm;
+
+    private float load;
+
+    /** Position in the engine cycle, 0 to 1. */
+    private float phase;
+
+    private int noiseSeed = 0x2545F491;
+
+    private float noise;
+
+    /**
+     * @param rate
+     *            sample rate in Hz.
+     * @param cylinders
+     *            number of cylinders, sets the firing order.
+     */
+    public EngineSynth(int rate, int cylinders)
+    {
+        this.rate = rate;
+        this.cylinders = cylinders;
+        glide = 1f - (float) Math.exp(-1.0 / (GLIDE * rate));
+    }
+
+    public int getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * Sets what the engine is doing. Safe to call from another thread than the one rendering.
+     * 
+     * @param rpm
+     *            engine speed.
+     * @param load
+     *            0 (coasting) to 1 (full throttle, clutch closed).
+     */
+    public void setTarget(float rpm, float load)
+    {
+        targetRpm = rpm < 0 ? 0 : rpm;
+        targetLoad = load < 0 ? 0 : load > 1 ? 1 : load;
+    }
+
+    /**
+     * Jumps to the targets without gliding, e.g. after a reset.
+     */
+    public void settle()
+    {
+        rpm = targetRpm;
+        load = targetLoad;
+    }
+
+    /**
+     * Renders samples into the buffer at the given offset, leaving the position behind them.
+     * 
+     * @param out
+     *            the buffer, its byte order is used.
+     * @param offset
+     *            byte offset of the first sample.
+     * @param bytes
+     *            number of bytes to render, rounded down to whole samples.
+     * @return the number of bytes rendered.
+     */
+    public int render(ByteBuffer out, int offset, int bytes)
+    {
+        int samples = bytes >> 1;
+        float toRpm = targetRpm;
+        float toLoad = targetLoad;
+        float cycleStep = 1f / (120f * rate);
+
+        // the tone changes slowly with the load, the block is short enough to keep it constant
+        float tilt = 1.8f - 0.9f * load;
+        for (int k = 1; k <= HARMONICS; k++)
+        {
+            // the engine fires cylinders times per cycle, those harmonics dominate, the others come from
+            // cylinders not firing quite alike
+            float a = k < cylinders ? 1f : (float) Math.pow(k / (float) cylinders, -tilt);
+            amplitude[k] = k % cylinders == 0 ? a : 0.15f * a;
+        }
+        // highest harmonic below Nyquist at the highest rpm of this block
+        float topRpm = Math.max(rpm, toRpm);
+        int harmonics = topRpm > 0 ? (int) (rate * 0.45f / (topRpm / 120f)) : HARMONICS;
+        if (harmonics > HARMONICS)
+            harmonics = HARMONICS;
+
+        int pos = offset;
+        for (int i = 0; i < samples; i++)
+        {
+            rpm += (toRpm - rpm) * glide;
+            load += (toLoad - load) * glide;
+
+            phase += rpm * cycleStep;
+            phase -= (int) phase;
+
+            float tone = 0;
+            int p = (int) (phase * TABLE_SIZE);
+            for (int k = 1; k <= harmonics; k++)
+                tone += amplitude[k] * SINE[(p * k) & (TABLE_SIZE - 1)];
+
+            // combustion noise, low passed and pulsing with every firing
+            noiseSeed ^= noiseSeed << 13;
+            noiseSeed ^= noiseSeed >>> 17;
+            noiseSeed ^= noiseSeed << 5;
+            noise += (noiseSeed * (1f / Integer.MAX_VALUE) - noise) * 0.3f;
+            float pulse = 0.5f + 0.5f * SINE[(p * cylinders + TABLE_SIZE / 4) & (TABLE_SIZE - 1)];
+
+            float x = (0.2f + 0.5f * load) * tone * 0.5f + (0.05f + 0.3f * load) * pulse * pulse * noise;
+
+            // soft clip
+            if (x > 3)
+                x = 3;
+            else if (x < -3)
+                x = -3;
+            x = x * (27 + x * x) / (27 + 9 * x * x);
+
+            out.putShort(pos, (short) (x * 32000));
+            pos += 2;
+        }
+        out.position(pos);
+        return samples << 1;
+    }
+
+    /**
+     * Renders a rev from idle to the given rpm under full load and back to a WAV file, stepping the targets at 120
+     * Hz like the game's physics would.
+     * 
+     * @param args
+     *            file [maxRpm] [cylinders]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("usage: EngineSynth file.wav [maxRpm] [cylinders]");
+            System.exit(1);
+        }
+        float maxRpm = args.length > 1 ? Float.parseFloat(args[1]) : 7000f;
+        int cylinders = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+
+        int rate = 44100;
+        EngineSynth synth = new EngineSynth(rate, cylinders);
+        float idle = 900f;
+        float seconds = 8f;
+        int steps = (int) (seconds * 120);
+        int stepBytes = rate / 120 * 2;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[0])));
+        try
+        {
+            writeWavHeader(out, rate, steps * stepBytes);
+            ByteBuffer block = ByteBuffer.allocate(stepBytes).order(ByteOrder.LITTLE_ENDIAN);
+            synth.setTarget(idle, 0);
+            synth.settle();
+            for (int s = 0; s < steps; s++)
+            {
+                float t = s / 120f;
+                if (t < 1.5f)
+                    synth.setTarget(idle, 0.05f);
+                else if (t < 5f)
+                    synth.setTarget(idle + (maxRpm - idle) * (t - 1.5f) / 3.5f, 1f);
+                else
+                    synth.setTarget(Math.max(idle, maxRpm - (maxRpm - idle) * (t - 5f) / 2f), 0f);
+                synth.render(block, 0, stepBytes);
+                out.write(block.array(), 0, stepBytes);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void writeWavHeader(DataOutputStream out, int rate, int dataBytes) throws IOException
+    {
+        out.writeBytes("RIFF");
+        out.writeInt(Integer.reverseBytes(36 + dataBytes));
+        out.writeBytes("WAVEfmt ");
+        out.writeInt(Integer.reverseBytes(16));
+        out.writeShort(Short.reverseBytes((short) 1)); // PCM
+        out.writeShort(Short.reverseBytes((short) 1)); // mono
+        out.writeInt(Integer.reverseBytes(rate));
+        out.writeInt(Integer.reverseBytes(rate * 2));
+        out.writeShort(Short.reverseBytes((short) 2));
+        out.writeShort(Short.reverseBytes((short) 16));
+        out.writeBytes("data");
+        out.writeInt(Integer.reverseBytes(dataBytes));
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+import org.odejava.Odejava;
+
+import com.jme.util.LoggingSystem;
+
+/**
+ * Runs many quarter mile races without display in parallel, e.g. to tune gear ratios and clutch timing.
+ * 
+ * <pre>
+ *  java HeadlessRacer trace.txt [-threads n] [-runs n] [-step s] [-timeout s]
+ *                               [-clutch from:to:step] [-gear g=from:to:step ...]
+ * </pre>
+ * 
+ * Every combination of the swept values is raced <code>-runs</code> times, one line is printed per race and the
+ * fastest combination at the end. See <code>InputTrace</code> for the trace format.
+ * <p>
+ * <code>-threads</code> races run at the same time, one per core by default. The libodejava shipped with jmephysics
+ * keeps its trimesh colliders and contact buffer in globals, so two worlds can't be stepped in one process at once.
+ * Each of the parallel races therefore runs in a worker JVM started with the same class path and arguments, which
+ * races every n-th simulation and reports the results on its standard output.
+ * </p>
+ */
+public class HeadlessRacer
+{
+    /** Prefix of the result lines a worker prints, anything else on its output is passed through. */
+    private static final String RESULT = "result ";
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private int runs = 1;
+
+    private float stepSize = RaceSimulation.STEP_SIZE;
+
+    private float timeout = 60f;
+
+    /** Swept parameters, {from, to, step}, null if not swept. */
+    private float[] clutchSweep;
+
+    private final float[][] gearSweeps = new float[8][];
+
+    private InputTrace trace;
+
+    /** The arguments as given, passed on to the workers. */
+    private String[] arguments;
+
+    /** Set in a worker: races the simulations whose index modulo <code>workers</code> is <code>worker</code>. */
+    private int worker = -1;
+
+    private int workers;
+
+    public static void main(String[] args)
+    {
+        HeadlessRacer app = new HeadlessRacer();
+        try
+        {
+            app.parseArguments(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println("usage: HeadlessRacer trace [-threads n] [-runs n] [-step s] [-timeout s]"
+                    + " [-clutch from:to:step] [-gear g=from:to:step ...]");
+            System.exit(1);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Can't read trace: " + e.getMessage());
+            System.exit(1);
+        }
+
+        try
+        {
+            app.race();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private void parseArguments(String[] args) throws IOException
+    {
+        arguments = args;
+        String traceFile = null;
+        for (int i = 0; i < args.length; i++)
+        {
+            String arg = args[i];
+            if (!arg.startsWith("-"))
+            {
+                traceFile = arg;
+                continue;
+            }
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("missing value for " + arg);
+            String value = args[++i];
+            try
+            {
+                if (arg.equals("-threads"))
+                    threads = Integer.parseInt(value);
+                else if (arg.equals("-runs"))
+                    runs = Integer.parseInt(value);
+                else if (arg.equals("-step"))
+                    stepSize = Float.parseFloat(value);
+                else if (arg.equals("-timeout"))
+                    timeout = Float.parseFloat(value);
+                else if (arg.equals("-worker"))
+                {
+                    int slash = value.indexOf('/');
+                    if (slash < 0)
+                        throw new IllegalArgumentException("expected i/n but got " + value);
+                    worker = Integer.parseInt(value.substring(0, slash));
+                    workers = Integer.parseInt(value.substring(slash + 1));
+                    if (worker < 0 || worker >= workers)
+                        throw new IllegalArgumentException("no such worker: " + value);
+                }
+                else if (arg.equals("-clutch"))
+                    clutchSweep = parseSweep(value);
+                else if (arg.equals("-gear"))
+                {
+                    int eq = value.indexOf('=');
+                    if (eq < 0)
+                        throw new IllegalArgumentException("expected g=from:to:step but got " + value);
+                    int gear = Integer.parseInt(value.substring(0, eq));
+                    if (gear < -1 || gear > 6 || gear == 0)
+                        throw new IllegalArgumentException("no such gear: " + gear);
+                    gearSweeps[gear + 1] = parseSweep(value.substring(eq + 1));
+                }
+                else
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("not a number: " + value);
+            }
+        }
+        if (traceFile == null)
+            throw new IllegalArgumentException("no trace given");
+        if (threads < 1 || runs < 1 || stepSize <= 0)
+            throw new IllegalArgumentException("threads, runs and step must be positive");
+
+        Reader in = new FileReader(traceFile);
+        try
+        {
+            trace = InputTrace.parse(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses from:to:step, or a single value.
+     */
+    private static float[] parseSweep(String value)
+    {
+        String[] parts = value.split(":");
+        if (parts.length == 1)
+        {
+            float v = Float.parseFloat(parts[0]);
+            return new float[] { v, v, 1 };
+        }
+        if (parts.length != 3)
+            throw new IllegalArgumentException("expected from:to:step but got " + value);
+        float[] sweep = { Float.parseFloat(parts[0]), Float.parseFloat(parts[1]), Float.parseFloat(parts[2]) };
+        if (sweep[2] <= 0 || sweep[1] < sweep[0])
+            throw new IllegalArgumentException("empty sweep " + value);
+        return sweep;
+    }
+
+    /**
+     * @return the values of a sweep, or the single value NaN (= default) if the parameter is not swept.
+     */
+    private static float[] valuesOf(float[] sweep)
+    {
+        if (sweep == null)
+            return new float[] { Float.NaN };
+        int count = (int) Math.floor((sweep[1] - sweep[0]) / sweep[2] + 1e-4f) + 1;
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++)
+            values[i] = sweep[0] + i * sweep[2];
+        return values;
+    }
+
+    /**
+     * Creates a simulation for every combination of the swept parameters.
+     */
+    private List createSimulations()
+    {
+        float[][] values = new float[gearSweeps.length + 1][];
+        values[0] = valuesOf(clutchSweep);
+        for (int g = 0; g < gearSweeps.length; g++)
+            values[g + 1] = valuesOf(gearSweeps[g]);
+
+        List simulations = new ArrayList();
+        int[] index = new int[values.length];
+        while (true)
+        {
+            for (int r = 0; r < runs; r++)
+            {
+                RaceSimulation simulation = new RaceSimulation(trace);
+                simulation.setStepSize(stepSize);
+                simulation.setTimeout(timeout);
+                simulation.setClutchTime(values[0][index[0]]);
+                for (int g = 0; g < gearSweeps.length; g++)
+                    if (!Float.isNaN(values[g + 1][index[g + 1]]))
+                        simulation.setGearRatio(g - 1, values[g + 1][index[g + 1]]);
+                simulations.add(simulation);
+            }
+
+            // next combination, like counting with mixed digits
+            int d = 0;
+            while (d < index.length && ++index[d] == values[d].length)
+                index[d++] = 0;
+            if (d == index.length)
+                return simulations;
+        }
+    }
+
+    private void race() throws IOException, InterruptedException, ExecutionException
+    {
+        LoggingSystem.getLogger().setLevel(Level.WARNING);
+
+        List simulations = createSimulations();
+        if (worker >= 0)
+        {
+            raceShare(simulations);
+            return;
+        }
+
+        int processes = Math.min(threads, simulations.size());
+        System.out.println("Racing " + simulations.size() + " times on " + processes + " threads");
+
+        long start = System.nanoTime();
+        if (processes == 1)
+        {
+            raceAll(simulations);
+        }
+        else
+        {
+            ExecutorService pool = Executors.newFixedThreadPool(processes);
+            try
+            {
+                List workers = new ArrayList();
+                for (int i = 0; i < processes; i++)
+                    workers.add(new Worker(i, processes, simulations));
+                List done = pool.invokeAll(workers);
+                for (int i = 0; i < done.size(); i++)
+                    ((Future) done.get(i)).get();
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        long duration = System.nanoTime() - start;
+
+        RaceSimulation best = null;
+        long totalSteps = 0;
+        for (int i = 0; i < simulations.size(); i++)
+        {
+            RaceSimulation simulation = (RaceSimulation) simulations.get(i);
+            totalSteps += simulation.getSteps();
+            System.out.println(describe(simulation));
+            if (!Float.isNaN(simulation.getRaceTime())
+                    && (best == null || simulation.getRaceTime() < best.getRaceTime()))
+                best = simulation;
+        }
+
+        System.out.println(totalSteps + " steps in " + (duration / 1000000) + " ms ("
+                + (long) (totalSteps / (duration / 1e9)) + " steps/s)");
+        if (best != null)
+            System.out.println("best: " + describe(best));
+        else
+            System.out.println("no race reached the finish line");
+    }
+
+    /**
+     * Races all simulations one after the other in this process.
+     */
+    private static void raceAll(List simulations) throws IOException
+    {
+        if (!Odejava.init())
+            throw new IllegalStateException("Could not load ODE");
+        for (int i = 0; i < simulations.size(); i++)
+            ((RaceSimulation) simulations.get(i)).run();
+    }
+
+    /**
+     * Worker side: races this worker's share of the simulations and prints a result line for each.
+     */
+    private void raceShare(List simulations) throws IOException
+    {
+        if (!Odejava.init())
+            throw new IllegalStateException("Could not load ODE");
+        for (int i = worker; i < simulations.size(); i += workers)
+        {
+            RaceSimulation simulation = (RaceSimulation) simulations.get(i);
+            simulation.run();
+            System.out.println(RESULT + i + " " + simulation.getRaceTime() + " " + simulation.getTopSpeed() + " "
+                    + simulation.getSteps());
+        }
+        System.out.flush();
+    }
+
+    /**
+     * Starts one worker JVM and copies the results it prints into the simulations.
+     */
+    private class Worker implements Callable
+    {
+        private final int index;
+
+        private final int count;
+
+        private final List simulations;
+
+        Worker(int index, int count, List simulations)
+        {
+            this.index = index;
+            this.count = count;
+            this.simulations = simulations;
+        }
+
+        public Object call() throws IOException, InterruptedException
+        {
+            List command = new ArrayList();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(HeadlessRacer.class.getName());
+            for (int i = 0; i < arguments.length; i++)
+                command.add(arguments[i]);
+            command.add("-worker");
+            command.add(index + "/" + count);
+
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            Process process = builder.start();
+            process.getOutputStream().close();
+            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            try
+            {
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    if (!line.startsWith(RESULT))
+                    {
+                        System.out.println(line);
+                        continue;
+                    }
+                    String[] fields = line.substring(RESULT.length()).split(" ");
+                    RaceSimulation simulation = (RaceSimulation) simulations.get(Integer.parseInt(fields[0]));
+                    simulation.setResult(Float.parseFloat(fields[1]), Float.parseFloat(fields[2]), Integer
+                            .parseInt(fields[3]));
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            int exit = process.waitFor();
+            if (exit != 0)
+                throw new IOException("worker " + index + " exited with " + exit);
+            return null;
+        }
+    }
+
+    private String describe(RaceSimulation simulation)
+    {
+        StringBuffer line = new StringBuffer();
+        line.append(Float.isNaN(simulation.getRaceTime()) ? "DNF" : simulation.getRaceTime() + "s");
+        line.append(" top ").append(simulation.getTopSpeed() * 3.6f).append("km/h");
+        if (!Float.isNaN(simulation.getClutchTime()))
+            line.append(" clutch ").append(simulation.getClutchTime());
+        for (int g = -1; g <= 6; g++)
+            if (!Float.isNaN(simulation.getGearRatio(g)))
+                line.append(" gear").append(g).append(' ').append(simulation.getGearRatio(g));
+        return line.toString();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.StringTokenizer;
+
+import com.jmex.physics.vehicle.Car;
+
+/**
+ * A scripted drive, replacing the keyboard in headless races. A trace is text with one event per line:
+ * 
+ * <pre>
+ *  # time(s) command [value]
+ *  0.0  clutch 1
+ *  0.0  shiftup
+ *  0.0  gas 1
+ *  2.3  clutch 1
+ *  2.3  shiftup
+ * </pre>
+ * 
+ * <code>gas</code>, <code>brake</code> and <code>steer</code> set a pedal or the steering wheel until the next event
+ * changes it, the car is put to neutral while neither gas nor brake is pressed, like <code>CarHandler</code> does.
+ * <code>clutch</code> opens the clutch by the given amount (1 = fully), it closes again at the car's clutch time.
+ * <code>shiftup</code>, <code>shiftdown</code> and <code>gear n</code> change the gear. Events must be ordered by
+ * time.
+ * <p>
+ * A trace is immutable once parsed and can be shared by simulations running in parallel, the position in the trace
+ * is kept by the caller.
+ * </p>
+ */
+public final class InputTrace
+{
+    public static final int GAS = 0;
+
+    public static final int BRAKE = 1;
+
+    public static final int STEER = 2;
+
+    public static final int CLUTCH = 3;
+
+    public static final int SHIFT_UP = 4;
+
+    public static final int SHIFT_DOWN = 5;
+
+    public static final int GEAR = 6;
+
+    private static final String[] NAMES = { "gas", "brake", "steer", "clutch", "shiftup", "shiftdown", "gear" };
+
+    private final float[] times;
+
+    private final int[] commands;
+
+    private final float[] values;
+
+    private InputTrace(float[] times, int[] commands, float[] values)
+    {
+        this.times = times;
+        this.commands = commands;
+        this.values = values;
+    }
+
+    /**
+     * Parses a trace, see the class comment for the format. Empty lines and lines starting with '#' are skipped.
+     * 
+     * @throws IOException
+     *             if the trace can't be read or contains an invalid line
+     */
+    public static InputTrace parse(Reader source) throws IOException
+    {
+        BufferedReader in = new BufferedReader(source);
+        float[] times = new float[16];
+        int[] commands = new int[16];
+        float[] values = new float[16];
+        int count = 0;
+
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null)
+        {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == '#')
+                continue;
+
+            StringTokenizer tokens = new StringTokenizer(line);
+            try
+            {
+                float time = Float.parseFloat(tokens.nextToken());
+                int command = commandOf(tokens.nextToken());
+                float value = tokens.hasMoreTokens() ? Float.parseFloat(tokens.nextToken()) : 1f;
+                if (command < 0)
+                    throw new IOException("line " + lineNumber + ": unknown command in '" + line + "'");
+                if (count > 0 && time < times[count - 1])
+                    throw new IOException("line " + lineNumber + ": time goes backwards in '" + line + "'");
+
+                if (count == times.length)
+                {
+                    times = grow(times);
+                    values = grow(values);
+                    int[] c = new int[count * 2];
+                    System.arraycopy(commands, 0, c, 0, count);
+                    commands = c;
+                }
+                times[count] = time;
+                commands[count] = command;
+                values[count] = value;
+                count++;
+            }
+            catch (RuntimeException e)
+            {
+                // NumberFormatException or NoSuchElementException
+                throw new IOException("line " + lineNumber + ": can't parse '" + line + "'");
+            }
+        }
+
+        float[] t = new float[count];
+        int[] c = new int[count];
+        float[] v = new float[count];
+        System.arraycopy(times, 0, t, 0, count);
+        System.arraycopy(commands, 0, c, 0, count);
+        System.arraycopy(values, 0, v, 0, count);
+        return new InputTrace(t, c, v);
+    }
+
+    private static int commandOf(String name)
+    {
+        for (int i = 0; i < NAMES.length; i++)
+            if (NAMES[i].equalsIgnoreCase(name))
+                return i;
+        return -1;
+    }
+
+    private static float[] grow(float[] a)
+    {
+        float[] b = new float[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    /**
+     * @return the number of events in the trace.
+     */
+    public int size()
+    {
+        return times.length;
+    }
+
+    /**
+     * @return the time of the last event, in seconds.
+     */
+    public float getLength()
+    {
+        return times.length == 0 ? 0 : times[times.length - 1];
+    }
+
+    /**
+     * Feeds all events up to the given time into the car and sets the pedals and steering wheel for the next step.
+     * 
+     * @param car
+     *            the car to drive
+     * @param time
+     *            the simulated time since the start of the trace
+     * @param position
+     *            index of the next event not yet fed, as returned by the previous call, 0 on the first call
+     * @param controls
+     *            gas, brake and steering wheel held since earlier events, updated in place
+     * @return the index of the next event not yet fed
+     */
+    public int apply(Car car, float time, int position, float[] controls)
+    {
+        while (position < times.length && times[position] <= time)
+        {
+            float value = values[position];
+            switch (commands[position])
+            {
+                case GAS:
+                case BRAKE:
+                case STEER:
+                    controls[commands[position]] = value;
+                    break;
+                case CLUTCH:
+                    car.addToClutch(-value);
+                    break;
+                case SHIFT_UP:
+                    car.shiftUp();
+                    break;
+                case SHIFT_DOWN:
+                    car.shiftDown();
+                    break;
+                case GEAR:
+                    car.setCurrentGear((int) value);
+                    break;
+            }
+            position++;
+        }
+
+        if (controls[GAS] > 0)
+            car.setGasPedal(controls[GAS]);
+        else if (controls[BRAKE] > 0)
+            car.setBrakePedal(controls[BRAKE]);
+        else
+            car.setNeutrall();
+        car.setSteeringWheel(controls[STEER]);
+
+        return position;
+    }
+}
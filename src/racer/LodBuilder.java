@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.math.Quaternion;
+import com.jme.math.Vector2f;
+import com.jme.math.Vector3f;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+import com.jme.scene.TriMesh;
+import com.jme.scene.lod.ErrorClodMesh;
+import com.jme.scene.lod.ScreenErrorBudget;
+import com.jme.scene.state.RenderState;
+
+/**
+ * Continuous levels of detail for large static models such as the terrain. Every TriMesh is cut into square blocks
+ * and each block becomes an <code>ErrorClodMesh</code> with its collapse records, which are saved with the model. At
+ * runtime the blocks share a <code>ScreenErrorBudget</code>: each one collapses as far as its error stays within the
+ * budget at its distance from the camera, so the far blocks lose their detail while the near ones keep it.
+ * <p>
+ * Edges on the border of a block never collapse, so neighbouring blocks always meet without cracks.
+ * </p>
+ */
+public final class LodBuilder
+{
+    /** Edge length of the blocks in model units, 16 x 16 quads of the terrain grid. */
+    public static final float BLOCK_SIZE = 4096f;
+
+    private LodBuilder()
+    {
+    }
+
+    /**
+     * Replaces every TriMesh below the node by a node of the same name, transform and render states holding the
+     * mesh cut into <code>ErrorClodMesh</code> blocks. Other ClodMeshes, e.g. a TerrainBlock, are cut as well.
+     * 
+     * @param blockSize
+     *            edge length of the blocks in the x/z plane of the meshes, in model units.
+     */
+    public static void build(Spatial treeRoot, float blockSize)
+    {
+        List meshes = new ArrayList();
+        MeshProcessor.collect(treeRoot, meshes);
+        for (int i = 0; i < meshes.size(); i++)
+        {
+            TriMesh g = (TriMesh) meshes.get(i);
+            if (g instanceof ErrorClodMesh || g.getTriangleQuantity() <= 0 || g.getParent() == null)
+                continue;
+
+            Node blocks = split(g, blockSize);
+            Node parent = g.getParent();
+            parent.detachChild(g);
+            parent.attachChild(blocks);
+        }
+    }
+
+    /**
+     * Lets all <code>ErrorClodMesh</code> blocks below the node collapse to the given budget.
+     */
+    public static void setBudget(Spatial treeRoot, ScreenErrorBudget budget)
+    {
+        List meshes = new ArrayList();
+        MeshProcessor.collect(treeRoot, meshes);
+        for (int i = 0; i < meshes.size(); i++)
+            if (meshes.get(i) instanceof ErrorClodMesh)
+                ((ErrorClodMesh) meshes.get(i)).setBudget(budget);
+    }
+
+    /**
+     * Sorts the triangles into blocks by their centers and builds a block of each non empty group.
+     */
+    private static Node split(TriMesh g, float blockSize)
+    {
+        MeshProcessor.Mesh m = MeshProcessor.Mesh.read(g);
+        int triangles = m.indices.length / 3;
+
+        float minX = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int v = 0; v < m.vertexCount; v++)
+        {
+            minX = Math.min(minX, m.positions[v * 3]);
+            maxX = Math.max(maxX, m.positions[v * 3]);
+            minZ = Math.min(minZ, m.positions[v * 3 + 2]);
+            maxZ = Math.max(maxZ, m.positions[v * 3 + 2]);
+        }
+        int columns = Math.max(1, (int) Math.ceil((maxX - minX) / blockSize));
+        int rows = Math.max(1, (int) Math.ceil((maxZ - minZ) / blockSize));
+
+        // bucket the triangles by block, counting sort keeps their order within a block
+        int[] block = new int[triangles];
+        int[] start = new int[columns * rows + 1];
+        for (int t = 0; t < triangles; t++)
+        {
+            float x = 0, z = 0;
+            for (int k = 0; k < 3; k++)
+            {
+                int v = m.indices[t * 3 + k];
+                x += m.positions[v * 3];
+                z += m.positions[v * 3 + 2];
+            }
+            int column = Math.min(columns - 1, (int) ((x / 3 - minX) / blockSize));
+            int row = Math.min(rows - 1, (int) ((z / 3 - minZ) / blockSize));
+            block[t] = row * columns + column;
+            start[block[t] + 1]++;
+        }
+        for (int b = 0; b < columns * rows; b++)
+            start[b + 1] += start[b];
+        int[] order = new int[triangles];
+        int[] next = start.clone();
+        for (int t = 0; t < triangles; t++)
+            order[next[block[t]]++] = t;
+
+        Node node = new Node(g.getName());
+        node.setLocalTranslation(new Vector3f(g.getLocalTranslation()));
+        node.setLocalRotation(new Quaternion(g.getLocalRotation()));
+        node.setLocalScale(new Vector3f(g.getLocalScale()));
+        for (int i = 0; i < RenderState.RS_MAX_STATE; i++)
+            if (g.getRenderStateList()[i] != null)
+                node.setRenderState(g.getRenderStateList()[i]);
+        node.setLightCombineMode(g.getLightCombineMode());
+        node.setTextureCombineMode(g.getTextureCombineMode());
+
+        int[] remap = new int[m.vertexCount];
+        Arrays.fill(remap, -1);
+        int stride = m.stride();
+        float[] data = new float[m.vertexCount * stride];
+        for (int v = 0; v < m.vertexCount; v++)
+            m.interleave(v, data, v * stride);
+        for (int b = 0; b < columns * rows; b++)
+        {
+            if (start[b] == start[b + 1])
+                continue;
+            ErrorClodMesh clod = createBlock(g.getName() + "_" + (b % columns) + "_" + (b / columns), m, data,
+                    stride, order, start[b], start[b + 1], remap);
+            node.attachChild(clod);
+        }
+        return node;
+    }
+
+    /**
+     * Builds the block of the triangles <code>order[from]</code> to <code>order[to - 1]</code> and computes its
+     * collapse records.
+     * 
+     * @param data
+     *            the vertices of <code>m</code>, interleaved.
+     * @param remap
+     *            all -1, returned that way.
+     */
+    private static ErrorClodMesh createBlock(String name, MeshProcessor.Mesh m, float[] data, int stride, int[] order,
+            int from, int to, int[] remap)
+    {
+        int[] vertex = new int[m.vertexCount];
+        int count = 0;
+        int[] indices = new int[(to - from) * 3];
+        for (int i = from; i < to; i++)
+        {
+            int t = order[i];
+            for (int k = 0; k < 3; k++)
+            {
+                int v = m.indices[t * 3 + k];
+                if (remap[v] < 0)
+                {
+                    remap[v] = count;
+                    vertex[count++] = v;
+                }
+                indices[(i - from) * 3 + k] = remap[v];
+            }
+        }
+        for (int i = 0; i < count; i++)
+            remap[vertex[i]] = -1;
+
+        MeshProcessor.Mesh part = m.deinterleave(data, stride, vertex, count, indices);
+
+        ErrorClodMesh clod = new ErrorClodMesh(name);
+        part.write(clod);
+
+        // the records are computed on the object arrays, which ClodCreator reorders in place; the vertex objects
+        // tell where each vertex went, to reorder the texture units ClodCreator does not know about
+        Vector3f[] vertices = clod.getVertices();
+        IdentityHashMap position = new IdentityHashMap();
+        for (int i = 0; i < vertices.length; i++)
+            position.put(vertices[i], Integer.valueOf(i));
+        clod.create(null);
+        for (int u = 1; u < clod.getNumberOfUnits(); u++)
+        {
+            Vector2f[] texture = clod.getTextures(u);
+            if (texture == null)
+                continue;
+            Vector2f[] reordered = new Vector2f[texture.length];
+            for (int i = 0; i < vertices.length; i++)
+                reordered[i] = texture[((Integer) position.get(vertices[i])).intValue()];
+            clod.setTextures(reordered, u);
+        }
+
+        clod.setModelBound(new BoundingBox());
+        clod.updateModelBound();
+        return clod;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import com.jme.scene.Node;
+import com.jme.scene.TriMesh;
+import com.jme.util.LoggingSystem;
+
+/**
+ * The geometry of a model after processing, e.g. by <code>VertexUtil.optimizeForCache</code>, stored next to the
+ * .jme file so the processing runs once per version of the model instead of at every start. The cache holds the
+ * buffers of all TriMeshes of the model in scene graph order and is mapped into memory when read.
+ * <p>
+ * A cache is only used while the .jme file has the length and modification time it had when the cache was written,
+ * and while the key given by the caller matches. The key names the processing, so changing the processing must
+ * change the key.
+ * </p>
+ */
+public final class MeshCache
+{
+    public static final String SUFFIX = ".mesh";
+
+    private static final int MAGIC = 0x4D736843;
+
+    private static final int VERSION = 1;
+
+    /** Written in native order, reads back differently on a machine of the other byte order. */
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+
+    private static final int HAS_NORMALS = 1;
+
+    private static final int HAS_COLORS = 2;
+
+    private static final int BUFFER_ONLY = 4;
+
+    private MeshCache()
+    {
+    }
+
+    /**
+     * @return the .jme file of one of the game models, or null if it is not a plain file, e.g. inside a jar.
+     */
+    public static File modelFile(String name)
+    {
+        URL url = RaceSetup.getResource(name);
+        if (!"file".equals(url.getProtocol()))
+            return null;
+        try
+        {
+            return new File(url.toURI());
+        }
+        catch (URISyntaxException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the geometry of the model with the cached one.
+     * 
+     * @param model
+     *            the model as loaded from <code>jme</code>.
+     * @return false if there is no valid cache, the model is unchanged then.
+     */
+    public static boolean load(Node model, File jme, String key)
+    {
+        File file = new File(jme.getPath() + SUFFIX);
+        if (!file.isFile())
+            return false;
+
+        List meshes = new ArrayList();
+        MeshProcessor.collect(model, meshes);
+        Object[][] buffers = new Object[meshes.size()][];
+        int[] flags = new int[meshes.size()];
+        try
+        {
+            FileInputStream in = new FileInputStream(file);
+            ByteBuffer data;
+            try
+            {
+                FileChannel channel = in.getChannel();
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally
+            {
+                in.close();
+            }
+            data.order(ByteOrder.nativeOrder());
+
+            if (data.getInt() != MAGIC || data.getInt() != VERSION || data.getInt() != BYTE_ORDER_MARK
+                    || data.getLong() != jme.length() || data.getLong() != jme.lastModified())
+                return false;
+            byte[] cachedKey = new byte[data.getInt()];
+            data.get(cachedKey);
+            align(data);
+            if (!key.equals(new String(cachedKey, "UTF-8")) || data.getInt() != meshes.size())
+                return false;
+
+            // slice everything before touching the model, a broken cache leaves it as it is
+            for (int i = 0; i < buffers.length; i++)
+            {
+                int vertices = data.getInt();
+                int indices = data.getInt();
+                flags[i] = data.getInt();
+                int units = data.getInt();
+                buffers[i] = new Object[4 + 32];
+                buffers[i][0] = floats(data, vertices * 3);
+                if ((flags[i] & HAS_NORMALS) != 0)
+                    buffers[i][1] = floats(data, vertices * 3);
+                if ((flags[i] & HAS_COLORS) != 0)
+                    buffers[i][2] = floats(data, vertices * 4);
+                for (int u = 0; u < 32; u++)
+                    if ((units & (1 << u)) != 0)
+                        buffers[i][4 + u] = floats(data, vertices * 2);
+                buffers[i][3] = ints(data, indices);
+            }
+        }
+        catch (IOException e)
+        {
+            LoggingSystem.getLogger().log(Level.WARNING, "Ignoring mesh cache " + file + ": " + e.getMessage());
+            return false;
+        }
+        catch (RuntimeException e)
+        {
+            // truncated
+            LoggingSystem.getLogger().log(Level.WARNING, "Ignoring mesh cache " + file + ": " + e);
+            return false;
+        }
+
+        for (int i = 0; i < buffers.length; i++)
+        {
+            TriMesh g = (TriMesh) meshes.get(i);
+            g.clearBuffers();
+            g.wrapVertices((FloatBuffer) buffers[i][0]);
+            g.wrapNormals((FloatBuffer) buffers[i][1]);
+            g.wrapColors((FloatBuffer) buffers[i][2]);
+            for (int u = 0; u < 32; u++)
+                if (buffers[i][4 + u] != null)
+                    g.wrapTextures((FloatBuffer) buffers[i][4 + u], u);
+            g.wrapIndices((IntBuffer) buffers[i][3]);
+            if ((flags[i] & BUFFER_ONLY) == 0)
+                g.setBufferOnly(false);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the geometry of the model to the cache of <code>jme</code>.
+     */
+    public static void save(Node model, File jme, String key) throws IOException
+    {
+        List meshes = new ArrayList();
+        MeshProcessor.collect(model, meshes);
+        MeshProcessor.Mesh[] data = new MeshProcessor.Mesh[meshes.size()];
+        byte[] keyBytes = utf8(key);
+        int size = 4 * 3 + 8 * 2 + 4 + pad(keyBytes.length) + 4;
+        for (int i = 0; i < data.length; i++)
+        {
+            MeshProcessor.Mesh m = MeshProcessor.Mesh.read((TriMesh) meshes.get(i));
+            data[i] = m;
+            size += 4 * 4 + 4 * (m.positions.length + m.indices.length);
+            if (m.normals != null)
+                size += 4 * m.normals.length;
+            if (m.colors != null)
+                size += 4 * m.colors.length;
+            for (int u = 0; u < m.textures.length && u < 32; u++)
+                if (m.textures[u] != null)
+                    size += 4 * m.textures[u].length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        out.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK);
+        out.putLong(jme.length()).putLong(jme.lastModified());
+        out.putInt(keyBytes.length).put(keyBytes);
+        align(out);
+        out.putInt(data.length);
+        for (int i = 0; i < data.length; i++)
+        {
+            MeshProcessor.Mesh m = data[i];
+            int flags = (m.normals != null ? HAS_NORMALS : 0) | (m.colors != null ? HAS_COLORS : 0)
+                    | (((TriMesh) meshes.get(i)).isBufferOnly() ? BUFFER_ONLY : 0);
+            int units = 0;
+            for (int u = 0; u < m.textures.length && u < 32; u++)
+                if (m.textures[u] != null)
+                    units |= 1 << u;
+            out.putInt(m.vertexCount).putInt(m.indices.length).putInt(flags).putInt(units);
+            out.asFloatBuffer().put(m.positions);
+            out.position(out.position() + 4 * m.positions.length);
+            if (m.normals != null)
+            {
+                out.asFloatBuffer().put(m.normals);
+                out.position(out.position() + 4 * m.normals.length);
+            }
+            if (m.colors != null)
+            {
+                out.asFloatBuffer().put(m.colors);
+                out.position(out.position() + 4 * m.colors.length);
+            }
+            for (int u = 0; u < 32; u++)
+                if ((units & (1 << u)) != 0)
+                {
+                    out.asFloatBuffer().put(m.textures[u]);
+                    out.position(out.position() + 4 * m.textures[u].length);
+                }
+            out.asIntBuffer().put(m.indices);
+            out.position(out.position() + 4 * m.indices.length);
+        }
+
+        write(new File(jme.getPath() + SUFFIX), out.array());
+    }
+
+    private static FloatBuffer floats(ByteBuffer data, int count)
+    {
+        ByteBuffer slice = slice(data, count * 4);
+        return slice.asFloatBuffer();
+    }
+
+    private static IntBuffer ints(ByteBuffer data, int count)
+    {
+        ByteBuffer slice = slice(data, count * 4);
+        return slice.asIntBuffer();
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int bytes)
+    {
+        ByteBuffer view = data.duplicate();
+        view.limit(view.position() + bytes);
+        data.position(data.position() + bytes);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static int pad(int bytes)
+    {
+        return (bytes + 3) & ~3;
+    }
+
+    private static void align(ByteBuffer data)
+    {
+        data.position(pad(data.position()));
+    }
+
+    private static byte[] utf8(String s)
+    {
+        try
+        {
+            return s.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException("UTF-8 not supported");
+        }
+    }
+
+    /**
+     * Writes to a temporary file and moves it over the cache, so models loaded concurrently never see a partially
+     * written cache.
+     */
+    private static void write(File file, byte[] data) throws IOException
+    {
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        FileOutputStream out = new FileOutputStream(tmp);
+        try
+        {
+            out.write(data);
+        }
+        finally
+        {
+            out.close();
+        }
+        if (!tmp.renameTo(file))
+        {
+            // some platforms do not replace an existing file on rename
+            file.delete();
+            if (!tmp.renameTo(file))
+            {
+                tmp.delete();
+                throw new IOException("could not replace " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,662 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+import com.jme.scene.TriMesh;
+import com.jme.scene.lod.ClodMesh;
+import com.jme.system.JmeException;
+import com.jme.util.geom.BufferUtils;
+
+/**
+ * Mesh processing on primitive arrays, behind <code>VertexUtil.smoothNormals</code> and
+ * <code>VertexUtil.optimizeForCache</code>. A mesh is read from the buffers of a <code>TriMesh</code> into float and
+ * int arrays, processed and written back as new buffers; no per vertex objects are created.
+ * <p>
+ * Equal vertices are found with a hash of their bits instead of comparing every vertex with every other one, the
+ * triangle order for the vertex cache is found in linear time (Tom Forsyth's algorithm). The TriMeshes below a node
+ * are independent of each other and processed in parallel.
+ * </p>
+ */
+public final class MeshProcessor
+{
+    /** Faces meeting at a larger angle keep separate normals at their common vertices. */
+    public static final float CREASE_ANGLE = 89f;
+
+    /** Size of the vertex cache the triangle order is optimized for. */
+    public static final int CACHE_SIZE = 24;
+
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
+    private MeshProcessor()
+    {
+    }
+
+    /**
+     * Work done on every TriMesh below a node.
+     */
+    private interface MeshTask
+    {
+        void process(TriMesh mesh);
+    }
+
+    /**
+     * The data of one TriMesh, arrays that are absent are null. Texture coordinates are kept per texture unit.
+     */
+    static final class Mesh
+    {
+        int vertexCount;
+
+        float[] positions;
+
+        float[] normals;
+
+        float[] colors;
+
+        float[][] textures;
+
+        int[] indices;
+
+        /**
+         * Copies the data of a mesh out of its buffers.
+         */
+        static Mesh read(TriMesh g)
+        {
+            Mesh m = new Mesh();
+            int n = g.getVertQuantity();
+            m.vertexCount = n;
+            m.positions = floats(g.getVerticeAsFloatBuffer(), n * 3);
+            m.normals = floats(g.getNormalAsFloatBuffer(), n * 3);
+            m.colors = floats(g.getColorAsFloatBuffer(), n * 4);
+            m.textures = new float[g.getNumberOfUnits()][];
+            for (int u = 0; u < m.textures.length; u++)
+                m.textures[u] = floats(g.getTextureAsFloatBuffer(u), n * 2);
+            int[] indices = g.getIndices();
+            m.indices = new int[g.getTriangleQuantity() * 3];
+            System.arraycopy(indices, 0, m.indices, 0, m.indices.length);
+            return m;
+        }
+
+        /**
+         * Replaces the data of a mesh with new buffers. A mesh that kept its object arrays gets them rebuilt.
+         */
+        void write(TriMesh g)
+        {
+            boolean bufferOnly = g.isBufferOnly();
+            g.clearBuffers();
+            g.wrapVertices(buffer(positions));
+            g.wrapNormals(normals != null ? buffer(normals) : null);
+            g.wrapColors(colors != null ? buffer(colors) : null);
+            for (int u = 0; u < textures.length; u++)
+                g.wrapTextures(textures[u] != null ? buffer(textures[u]) : null, u);
+            IntBuffer ib = ByteBuffer.allocateDirect(indices.length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+            ib.put(indices).flip();
+            g.wrapIndices(ib);
+            if (!bufferOnly)
+                g.setBufferOnly(false);
+        }
+
+        /**
+         * @return floats per vertex when all attributes are interleaved.
+         */
+        int stride()
+        {
+            int stride = 3;
+            if (normals != null)
+                stride += 3;
+            if (colors != null)
+                stride += 4;
+            for (int u = 0; u < textures.length; u++)
+                if (textures[u] != null)
+                    stride += 2;
+            return stride;
+        }
+
+        /**
+         * Copies all attributes of vertex <code>v</code> to <code>out</code>, in the order of <code>stride</code>.
+         */
+        void interleave(int v, float[] out, int offset)
+        {
+            offset = copy(positions, v, 3, out, offset);
+            if (normals != null)
+                offset = copy(normals, v, 3, out, offset);
+            if (colors != null)
+                offset = copy(colors, v, 4, out, offset);
+            for (int u = 0; u < textures.length; u++)
+                if (textures[u] != null)
+                    offset = copy(textures[u], v, 2, out, offset);
+        }
+
+        /**
+         * Builds a mesh of the vertices <code>vertex[i]</code> of <code>data</code>, interleaved like this mesh.
+         */
+        Mesh deinterleave(float[] data, int stride, int[] vertex, int count, int[] newIndices)
+        {
+            Mesh m = new Mesh();
+            m.vertexCount = count;
+            m.indices = newIndices;
+            m.positions = new float[count * 3];
+            m.normals = normals != null ? new float[count * 3] : null;
+            m.colors = colors != null ? new float[count * 4] : null;
+            m.textures = new float[textures.length][];
+            for (int u = 0; u < textures.length; u++)
+                m.textures[u] = textures[u] != null ? new float[count * 2] : null;
+            for (int i = 0; i < count; i++)
+            {
+                int offset = vertex[i] * stride;
+                System.arraycopy(data, offset, m.positions, i * 3, 3);
+                offset += 3;
+                if (m.normals != null)
+                {
+                    System.arraycopy(data, offset, m.normals, i * 3, 3);
+                    offset += 3;
+                }
+                if (m.colors != null)
+                {
+                    System.arraycopy(data, offset, m.colors, i * 4, 4);
+                    offset += 4;
+                }
+                for (int u = 0; u < m.textures.length; u++)
+                    if (m.textures[u] != null)
+                    {
+                        System.arraycopy(data, offset, m.textures[u], i * 2, 2);
+                        offset += 2;
+                    }
+            }
+            return m;
+        }
+
+        private static int copy(float[] from, int v, int size, float[] out, int offset)
+        {
+            System.arraycopy(from, v * size, out, offset, size);
+            return offset + size;
+        }
+
+        private static float[] floats(FloatBuffer buffer, int size)
+        {
+            if (buffer == null || buffer.limit() < size || size == 0)
+                return null;
+            float[] data = new float[size];
+            for (int i = 0; i < size; i++)
+                data[i] = buffer.get(i);
+            return data;
+        }
+
+        private static FloatBuffer buffer(float[] data)
+        {
+            FloatBuffer fb = BufferUtils.createFloatBuffer(data.length);
+            fb.put(data).flip();
+            return fb;
+        }
+    }
+
+    /**
+     * Gives every TriMesh below <code>treeRoot</code> normals averaged over the faces sharing a vertex position,
+     * unless the faces meet at more than <code>CREASE_ANGLE</code>. Vertices are welded where all their attributes
+     * are equal afterwards. ClodMeshes are left alone, their collapse records depend on the vertex order.
+     * 
+     * @param weight
+     *            true to weight the face normals by the face areas.
+     * @param replicateTxt
+     *            true to copy the coordinates of texture unit 0 to units 1 to 3 first.
+     */
+    public static void smoothNormals(Spatial treeRoot, final boolean weight, final boolean replicateTxt)
+    {
+        forEachMesh(treeRoot, new MeshTask()
+        {
+            public void process(TriMesh g)
+            {
+                if (g instanceof ClodMesh)
+                    return;
+                Mesh m = Mesh.read(g);
+                if (replicateTxt && m.textures.length > 0 && m.textures[0] != null)
+                    for (int u = 1; u < 4 && u < m.textures.length; u++)
+                        m.textures[u] = m.textures[0].clone();
+                smoothNormals(m, weight, (float) Math.cos(Math.toRadians(CREASE_ANGLE))).write(g);
+                g.updateModelBound();
+            }
+        });
+    }
+
+    /**
+     * Welds the equal vertices of every TriMesh below <code>treeRoot</code>, orders the triangles for the vertex
+     * cache and the vertices by first use. ClodMeshes are left alone, their order is the collapse order.
+     */
+    public static void optimizeForCache(Spatial treeRoot)
+    {
+        forEachMesh(treeRoot, new MeshTask()
+        {
+            public void process(TriMesh g)
+            {
+                if (g.getTriangleQuantity() <= 0 || g instanceof ClodMesh)
+                    return;
+                optimizeForCache(Mesh.read(g)).write(g);
+            }
+        });
+    }
+
+    /**
+     * Runs the task for all TriMeshes below the node, in parallel if there are several.
+     */
+    private static void forEachMesh(Spatial treeRoot, final MeshTask task)
+    {
+        final List meshes = new ArrayList();
+        collect(treeRoot, meshes);
+        if (meshes.size() == 1)
+        {
+            task.process((TriMesh) meshes.get(0));
+            return;
+        }
+        if (meshes.size() == 0)
+            return;
+
+        pool.invoke(new RecursiveAction()
+        {
+            protected void compute()
+            {
+                List tasks = new ArrayList(meshes.size());
+                for (int i = 0; i < meshes.size(); i++)
+                {
+                    final TriMesh mesh = (TriMesh) meshes.get(i);
+                    tasks.add(new RecursiveAction()
+                    {
+                        protected void compute()
+                        {
+                            task.process(mesh);
+                        }
+                    });
+                }
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Adds all TriMeshes below the node to the list, depth first and always in the same order.
+     */
+    static void collect(Spatial treeRoot, List meshes)
+    {
+        if (treeRoot instanceof Node)
+        {
+            ArrayList children = ((Node) treeRoot).getChildren();
+            for (int x = children.size(); --x >= 0;)
+                collect((Spatial) children.get(x), meshes);
+        }
+        else if (treeRoot instanceof TriMesh)
+            meshes.add(treeRoot);
+    }
+
+    /**
+     * Splits the mesh into triangle corners, gives each corner the average of the face normals at its position that
+     * are within the crease angle of its own face normal and welds the corners again.
+     * 
+     * @param cosCrease
+     *            cosine of the crease angle.
+     */
+    static Mesh smoothNormals(Mesh m, boolean weight, float cosCrease)
+    {
+        int[] indices = m.indices;
+        if (indices.length % 3 != 0)
+            throw new JmeException("No triangle mesh!");
+        int corners = indices.length;
+        int faces = corners / 3;
+
+        // face normals, and twice the face areas
+        float[] faceNormals = new float[faces * 3];
+        float[] faceAreas = new float[faces];
+        float[] p = m.positions;
+        for (int f = 0; f < faces; f++)
+        {
+            int a = indices[f * 3] * 3;
+            int b = indices[f * 3 + 1] * 3;
+            int c = indices[f * 3 + 2] * 3;
+            // (c - b) x (c - a), the winding the models were made for
+            float ux = p[c] - p[b], uy = p[c + 1] - p[b + 1], uz = p[c + 2] - p[b + 2];
+            float vx = p[c] - p[a], vy = p[c + 1] - p[a + 1], vz = p[c + 2] - p[a + 2];
+            float nx = uy * vz - uz * vy;
+            float ny = uz * vx - ux * vz;
+            float nz = ux * vy - uy * vx;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            faceAreas[f] = length;
+            if (length > 0)
+            {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+            faceNormals[f * 3] = nx;
+            faceNormals[f * 3 + 1] = ny;
+            faceNormals[f * 3 + 2] = nz;
+        }
+
+        // corners at the same position
+        float[] cornerPositions = new float[corners * 3];
+        for (int c = 0; c < corners; c++)
+            System.arraycopy(p, indices[c] * 3, cornerPositions, c * 3, 3);
+        int[] group = new int[corners];
+        int groups = weld(cornerPositions, 3, 3, corners, group, null);
+        cornerPositions = null;
+        int[] groupStart = new int[groups + 1];
+        for (int c = 0; c < corners; c++)
+            groupStart[group[c] + 1]++;
+        for (int g = 0; g < groups; g++)
+            groupStart[g + 1] += groupStart[g];
+        int[] fill = new int[groups];
+        int[] members = new int[corners];
+        for (int c = 0; c < corners; c++)
+            members[groupStart[group[c]] + fill[group[c]]++] = c;
+        fill = null;
+
+        // corners with all attributes, the normals replaced by the smoothed ones
+        Mesh withNormals = new Mesh();
+        withNormals.positions = m.positions;
+        withNormals.normals = m.normals != null ? m.normals : new float[m.vertexCount * 3];
+        withNormals.colors = m.colors;
+        withNormals.textures = m.textures;
+        int stride = withNormals.stride();
+        float[] data = new float[corners * stride];
+        for (int c = 0; c < corners; c++)
+        {
+            withNormals.interleave(indices[c], data, c * stride);
+
+            int f = c / 3;
+            float fx = faceNormals[f * 3], fy = faceNormals[f * 3 + 1], fz = faceNormals[f * 3 + 2];
+            float sx = 0, sy = 0, sz = 0;
+            for (int i = groupStart[group[c]], end = groupStart[group[c] + 1]; i < end; i++)
+            {
+                int f2 = members[i] / 3;
+                float gx = faceNormals[f2 * 3], gy = faceNormals[f2 * 3 + 1], gz = faceNormals[f2 * 3 + 2];
+                if (fx * gx + fy * gy + fz * gz > cosCrease)
+                {
+                    float w = weight ? faceAreas[f2] : 1f;
+                    sx += gx * w;
+                    sy += gy * w;
+                    sz += gz * w;
+                }
+            }
+            float length = (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+            if (length > 0)
+            {
+                // degenerate faces keep the normal they had
+                data[c * stride + 3] = sx / length;
+                data[c * stride + 4] = sy / length;
+                data[c * stride + 5] = sz / length;
+            }
+        }
+
+        int[] vertex = new int[corners];
+        int[] first = new int[corners];
+        int count = weld(data, stride, stride, corners, vertex, first);
+        return withNormals.deinterleave(data, stride, first, count, vertex);
+    }
+
+    /**
+     * Welds equal vertices, orders the triangles for the vertex cache and renumbers the vertices in the order they
+     * are first used. Vertices not used by any triangle are dropped.
+     */
+    static Mesh optimizeForCache(Mesh m)
+    {
+        int n = m.vertexCount;
+        int stride = m.stride();
+        float[] data = new float[n * stride];
+        for (int v = 0; v < n; v++)
+            m.interleave(v, data, v * stride);
+        int[] welded = new int[n];
+        int[] first = new int[n];
+        int count = weld(data, stride, stride, n, welded, first);
+
+        int[] indices = new int[m.indices.length];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = welded[m.indices[i]];
+        indices = orderForCache(indices, count, CACHE_SIZE);
+
+        // renumber by first use
+        int[] number = new int[count];
+        Arrays.fill(number, -1);
+        int[] vertex = new int[count];
+        int used = 0;
+        for (int i = 0; i < indices.length; i++)
+        {
+            int v = indices[i];
+            if (number[v] < 0)
+            {
+                number[v] = used;
+                vertex[used++] = first[v];
+            }
+            indices[i] = number[v];
+        }
+        return m.deinterleave(data, stride, vertex, used, indices);
+    }
+
+    /**
+     * Finds equal vertices by hashing their bits. Positive and negative zero are equal.
+     * 
+     * @param data
+     *            <code>count</code> vertices of <code>stride</code> floats each.
+     * @param keyFloats
+     *            how many of the first floats of a vertex are compared.
+     * @param id
+     *            receives the number of each vertex's first equal vertex, counted in the order of first occurrence.
+     * @param first
+     *            if not null, receives the vertex each number was first seen at.
+     * @return the number of different vertices.
+     */
+    static int weld(float[] data, int stride, int keyFloats, int count, int[] id, int[] first)
+    {
+        int size = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+        int mask = size - 1;
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        int[] representative = first != null ? first : new int[count];
+
+        int unique = 0;
+        for (int v = 0; v < count; v++)
+        {
+            int offset = v * stride;
+            int h = 0;
+            for (int k = 0; k < keyFloats; k++)
+                h = (h ^ Float.floatToIntBits(data[offset + k] + 0f)) * 0x9E3779B1;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (true)
+            {
+                int candidate = table[slot];
+                if (candidate < 0)
+                {
+                    table[slot] = unique;
+                    representative[unique] = v;
+                    id[v] = unique++;
+                    break;
+                }
+                if (equal(data, representative[candidate] * stride, offset, keyFloats))
+                {
+                    id[v] = candidate;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return unique;
+    }
+
+    private static boolean equal(float[] data, int a, int b, int length)
+    {
+        for (int k = 0; k < length; k++)
+            if (Float.floatToIntBits(data[a + k] + 0f) != Float.floatToIntBits(data[b + k] + 0f))
+                return false;
+        return true;
+    }
+
+    /** Score of a vertex by its position in the cache, the last triangle's vertices are scored alike. */
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+
+    private static final float VALENCE_BOOST_SCALE = 2f;
+
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    /**
+     * Orders the triangles so that consecutive triangles share vertices kept in a vertex cache of the given size.
+     * Tom Forsyth's linear-speed vertex cache optimisation: the next triangle is the best scored one using a vertex
+     * in the simulated cache, vertices score by cache position and by how few triangles still use them.
+     * 
+     * @return the triangles in the new order.
+     */
+    static int[] orderForCache(int[] indices, int vertexCount, int cacheSize)
+    {
+        int triangles = indices.length / 3;
+        int[] out = new int[triangles * 3];
+        if (triangles == 0)
+            return out;
+
+        // the triangles not yet emitted of every vertex, start[v] to start[v] + remaining[v]
+        int[] remaining = new int[vertexCount];
+        for (int i = 0; i < triangles * 3; i++)
+            remaining[indices[i]]++;
+        int[] start = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++)
+            start[v + 1] = start[v] + remaining[v];
+        int[] adjacent = new int[triangles * 3];
+        int[] fill = new int[vertexCount];
+        for (int t = 0; t < triangles; t++)
+            for (int k = 0; k < 3; k++)
+            {
+                int v = indices[t * 3 + k];
+                adjacent[start[v] + fill[v]++] = t;
+            }
+        fill = null;
+
+        // scores by cache position and by remaining triangles, looked up instead of computed
+        float[] positionScore = new float[cacheSize];
+        for (int i = 0; i < cacheSize; i++)
+            positionScore[i] = i < 3 ? LAST_TRIANGLE_SCORE : (float) Math.pow(1f - (i - 3) / (float) (cacheSize - 3),
+                    CACHE_DECAY_POWER);
+        float[] valenceScore = new float[64];
+        for (int i = 1; i < valenceScore.length; i++)
+            valenceScore[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+
+        int[] cachePosition = new int[vertexCount];
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++)
+        {
+            cachePosition[v] = -1;
+            vertexScore[v] = score(-1, remaining[v], positionScore, valenceScore);
+        }
+        float[] triangleScore = new float[triangles];
+        boolean[] emitted = new boolean[triangles];
+        int best = 0;
+        for (int t = 0; t < triangles; t++)
+        {
+            triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]]
+                    + vertexScore[indices[t * 3 + 2]];
+            if (triangleScore[t] > triangleScore[best])
+                best = t;
+        }
+
+        int[] cache = new int[cacheSize + 3];
+        int[] next = new int[cacheSize + 3];
+        int cached = 0;
+        int scan = 0;
+        for (int n = 0; n < triangles; n++)
+        {
+            if (best < 0)
+            {
+                // nothing in the cache is left to draw, continue with any triangle
+                while (emitted[scan])
+                    scan++;
+                best = scan;
+            }
+            emitted[best] = true;
+            System.arraycopy(indices, best * 3, out, n * 3, 3);
+
+            // the triangle's vertices move to the front of the cache
+            int size = 0;
+            for (int k = 0; k < 3; k++)
+            {
+                int v = indices[best * 3 + k];
+                int end = start[v] + remaining[v] - 1;
+                for (int i = start[v]; i <= end; i++)
+                    if (adjacent[i] == best)
+                    {
+                        adjacent[i] = adjacent[end];
+                        adjacent[end] = best;
+                        break;
+                    }
+                remaining[v]--;
+                next[size++] = v;
+            }
+            for (int i = 0; i < cached; i++)
+            {
+                int v = cache[i];
+                if (v != next[0] && v != next[1] && v != next[2])
+                    next[size++] = v;
+            }
+            int[] swap = cache;
+            cache = next;
+            next = swap;
+            cached = Math.min(size, cacheSize);
+
+            // rescore the vertices that moved or dropped out of the cache
+            for (int i = 0; i < size; i++)
+            {
+                int v = cache[i];
+                cachePosition[v] = i < cacheSize ? i : -1;
+                vertexScore[v] = score(cachePosition[v], remaining[v], positionScore, valenceScore);
+            }
+            // and their triangles, the best one of those is next
+            best = -1;
+            float bestScore = -1;
+            for (int i = 0; i < size; i++)
+            {
+                int v = cache[i];
+                for (int j = start[v], end = start[v] + remaining[v]; j < end; j++)
+                {
+                    int t = adjacent[j];
+                    float s = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]]
+                            + vertexScore[indices[t * 3 + 2]];
+                    triangleScore[t] = s;
+                    if (i < cached && s > bestScore)
+                    {
+                        bestScore = s;
+                        best = t;
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private static float score(int cachePosition, int remaining, float[] positionScore, float[] valenceScore)
+    {
+        if (remaining == 0)
+            return -1f;
+        float score = cachePosition >= 0 ? positionScore[cachePosition] : 0f;
+        if (remaining < valenceScore.length)
+            return score + valenceScore[remaining];
+        return score + VALENCE_BOOST_SCALE * (float) Math.pow(remaining, -VALENCE_BOOST_POWER);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.OBB2;
+import com.jme.bounding.OrientedBoundingBox;
+import com.jme.math.FastMath;
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+import com.jme.renderer.CloneCreator;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+import com.jme.scene.shape.Box;
+import com.jme.scene.state.LightState;
+import com.jme.system.JmeException;
+import com.jmex.model.XMLparser.JmeBinaryReader;
+import com.jmex.physics.DynamicPhysicsObject;
+import com.jmex.physics.PhysicsWorld;
+import com.jmex.physics.StaticPhysicsObject;
+import com.jmex.physics.types.PhysicsCylinder;
+import com.jmex.physics.vehicle.Car;
+
+/**
+ * The track and car definitions of the quarter mile, shared by the game and the headless race runner so both
+ * simulate the same thing. Everything that only matters for drawing (textures, colors, buffers) stays in
+ * <code>Racer</code>.
+ */
+public final class RaceSetup
+{
+    public static final String ROAD = "gamedata/road.jme";
+
+    public static final String TERRAIN = "gamedata/terrain.jme";
+
+    /** The terrain cut into blocks with levels of detail, built from <code>TERRAIN</code> by <code>Racer</code>. */
+    public static final String TERRAIN_LOD = "gamedata/terrain_lod.jme";
+
+    public static final String WHEEL = "gamedata/wheel.jme";
+
+    public static final String CHASSIS = "gamedata/golf4.jme";
+
+    public static final String ENGINE = "gamedata/golf_engine.png";
+
+    /** Where the timing starts, the car is placed just behind it. */
+    public static final Vector3f START_LINE = new Vector3f(-946.44f, -20f, -68.915f);
+
+    /** 0.4022500000 1/4 meile */
+    public static final Vector3f FINISH_LINE = new Vector3f(-423.8f, -20f, -68.915f);
+
+    private RaceSetup()
+    {
+    }
+
+    /**
+     * @return the URL of one of the game resources, e.g. <code>ROAD</code>.
+     */
+    public static URL getResource(String name)
+    {
+        URL url = RaceSetup.class.getClassLoader().getResource(name);
+        if (url == null)
+            throw new JmeException("Missing game resource: " + name);
+        return url;
+    }
+
+    /**
+     * Loads one of the .jme models with the given reader. Models that are plain files are mapped into memory.
+     */
+    public static Node loadModel(JmeBinaryReader jbr, String name) throws IOException
+    {
+        URL url = getResource(name);
+        if ("file".equals(url.getProtocol()))
+        {
+            try
+            {
+                return jbr.loadBinaryFormat(new File(url.toURI()));
+            }
+            catch (URISyntaxException e)
+            {
+                // not a valid file URI, read it as a stream
+            }
+        }
+
+        InputStream in = url.openStream();
+        try
+        {
+            return jbr.loadBinaryFormat(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Adds a loaded part of the track (road or terrain) to the physics world of the calling thread.
+     */
+    public static void addTrack(Node track)
+    {
+        track.updateGeometricState(0, true);
+        PhysicsWorld.getInstance().addObject(new StaticPhysicsObject(track));
+    }
+
+    /**
+     * Creates an invisible line that is crossed by the car, used for timing.
+     */
+    public static Box createLine(String name, Vector3f location)
+    {
+        Box line = new Box(name, new Vector3f(0, 0, 0), 0.0125f, 5, 10);
+        line.setModelBound(new BoundingBox());
+        line.updateModelBound();
+        line.setLocalTranslation(new Vector3f(location));
+        line.setLightCombineMode(LightState.OFF);
+        line.setForceCull(true);
+        line.setForceView(false);
+        return line;
+    }
+
+    /**
+     * Creates the four wheels from the wheel model. Every wheel is put into its own node in <code>wheelNode</code>,
+     * which is attached to <code>carNode</code>.
+     * 
+     * @return the physics objects of the wheels
+     */
+    public static DynamicPhysicsObject[] createWheels(Node wheelModel, Node carNode, Node[] wheelNode)
+    {
+        // Create a clone creator so that we can apply the same model to all
+        // four wheels.
+        CloneCreator wheel = new CloneCreator(wheelModel);
+
+        wheel.addProperty("colors");
+        wheel.addProperty("texcoords");
+        wheel.addProperty("vertices");
+        wheel.addProperty("normals");
+        wheel.addProperty("indices");
+
+        DynamicPhysicsObject[] wheels = new DynamicPhysicsObject[4];
+        for (int i = 0; i < wheels.length; i++)
+        {
+            // Create the wheel graphics.
+            Spatial wheelGraphics = wheel.createCopy();
+            wheelGraphics.setName("Wheel " + i);
+
+            if (i == 2 || i == 0)
+                wheelGraphics.setLocalRotation(new Quaternion(new float[] { 180 * FastMath.DEG_TO_RAD, 0, 0 }));
+
+            // Create the wheel physics.
+            wheelNode[i] = new Node("Wheel " + i);
+            wheelNode[i].attachChild(wheelGraphics);
+
+            wheels[i] = new DynamicPhysicsObject(wheelGraphics, new PhysicsCylinder(0.32f, 0.19f), 2.5f); // 15kg
+            carNode.attachChild(wheelNode[i]);
+        }
+        return wheels;
+    }
+
+    /**
+     * Moves the chassis model onto the start position and attaches it to <code>carNode</code>.
+     */
+    public static void placeChassis(Node chassisNode, Node carNode)
+    {
+        chassisNode.setLocalRotation(new Quaternion(new float[] { 0, 90f * FastMath.DEG_TO_RAD, 0 }));
+
+        Vector3f tmp = new Vector3f(chassisNode.getLocalTranslation());
+        tmp.x += -948.8203f;
+        tmp.z += -70.915f;
+        tmp.y += -15f;
+        chassisNode.setLocalTranslation(tmp);
+        chassisNode.setName("Chassis");
+
+        carNode.attachChild(chassisNode);
+
+        carNode.setWorldBound(new OBB2());
+        carNode.updateWorldBound();
+    }
+
+    /**
+     * Creates the golf with its engine, gear box and suspension.
+     */
+    public static Car createCar(Node chassisNode, DynamicPhysicsObject[] wheels)
+    {
+        DynamicPhysicsObject chassis = new DynamicPhysicsObject(chassisNode, 140f); // 1400 kg
+
+        float suspention = 0.00025f; // The suspention constant. A lower value
+        boolean fourWheeled = false;
+        boolean frontDriven = true;
+        Vector3f frontAxleCenter = new Vector3f(1.16f, -0.84f, 0); // The center of
+        Vector3f backAxleCenter = new Vector3f(-1.33f, -0.82f, 0); // The center of
+        float axleLength = 1.5f; // The length of the axles. They are assumed to
+        float brakePower = 50;
+        float brakeBalance = 0.75f;
+
+        Car car = new Car(chassis, wheels, brakePower, brakeBalance, suspention, frontDriven, fourWheeled,
+                frontAxleCenter, backAxleCenter, axleLength, getResource(ENGINE).getFile(), 1000f, 7000f, 120f, 280f);
+
+        chassisNode.setWorldBound(new OrientedBoundingBox());
+        chassisNode.updateWorldBound();
+        return car;
+    }
+
+    /**
+     * Adds the car to the physics world of the calling thread and remembers the start position for resets.
+     */
+    public static void startCar(Car car)
+    {
+        car.addToWorld();
+
+        car.getChassis().resetForces();
+        for (int i = 0; i < car.getWheels().length; i++)
+            car.getWheels()[i].resetForces();
+        car.getChassis().syncWithGraphical();
+
+        car.setStartPosition(new Vector3f(car.getChassis().getSpatial().getLocalTranslation()));
+        car.setStartRotation(new Quaternion(car.getChassis().getSpatial().getLocalRotation()));
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.jme.intersection.BoundingCollisionResults;
+import com.jme.intersection.CollisionResults;
+import com.jme.math.Vector3f;
+import com.jme.scene.Node;
+import com.jme.scene.shape.Box;
+import com.jmex.model.XMLparser.JmeBinaryReader;
+import com.jmex.physics.DynamicPhysicsObject;
+import com.jmex.physics.PhysicsWorld;
+import com.jmex.physics.vehicle.Car;
+
+/**
+ * One quarter mile race without display. The track and car are built by <code>RaceSetup</code> like in the game,
+ * the car is driven by an <code>InputTrace</code> and the physics are stepped at a fixed rate as fast as the CPU
+ * allows. The race is timed between crossing the start and the finish line, with the same collision test as
+ * <code>Racer</code>.
+ * <p>
+ * Every simulation uses its own <code>PhysicsWorld</code> on the thread that runs it. The libodejava shipped with
+ * jmephysics keeps its colliders in globals, so only one simulation per process may run at a time;
+ * <code>HeadlessRacer</code> runs parallel races in separate processes. The same trace may be shared by all
+ * simulations.
+ * </p>
+ */
+public class RaceSimulation implements Callable
+{
+    /** Default physics step, the game steps at the same rate. */
+    public static final float STEP_SIZE = 1f / 240f;
+
+    /** Model file name -> bytes, the models are parsed again for every race but read only once. */
+    private static final Map modelCache = new HashMap();
+
+    private final InputTrace trace;
+
+    private float stepSize = STEP_SIZE;
+
+    private float timeout = 60f;
+
+    /** Ratios of the gears -1 to 6 at index gear + 1, NaN keeps the default. */
+    private final float[] gearRatios = new float[8];
+
+    private float clutchTime = Float.NaN;
+
+    private float raceTime = Float.NaN;
+
+    private float topSpeed;
+
+    private int steps;
+
+    public RaceSimulation(InputTrace trace)
+    {
+        this.trace = trace;
+        for (int i = 0; i < gearRatios.length; i++)
+            gearRatios[i] = Float.NaN;
+    }
+
+    /**
+     * @param stepSize
+     *            length of one physics step in seconds.
+     */
+    public void setStepSize(float stepSize)
+    {
+        this.stepSize = stepSize;
+    }
+
+    /**
+     * @param timeout
+     *            simulated seconds after which a race that did not reach the finish line is given up.
+     */
+    public void setTimeout(float timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @see Car#setGearRatio(int, float)
+     */
+    public void setGearRatio(int gear, float ratio)
+    {
+        gearRatios[gear + 1] = ratio;
+    }
+
+    /**
+     * @see Car#setClutchTime(float)
+     */
+    public void setClutchTime(float clutchTime)
+    {
+        this.clutchTime = clutchTime;
+    }
+
+    public float getClutchTime()
+    {
+        return clutchTime;
+    }
+
+    /**
+     * @return the ratio set for a gear, NaN if the default is used.
+     */
+    public float getGearRatio(int gear)
+    {
+        return gearRatios[gear + 1];
+    }
+
+    /**
+     * @return the time from the start to the finish line in seconds, NaN if the race was not finished.
+     */
+    public float getRaceTime()
+    {
+        return raceTime;
+    }
+
+    /**
+     * @return the highest speed of the chassis during the race, in m/s.
+     */
+    public float getTopSpeed()
+    {
+        return topSpeed;
+    }
+
+    /**
+     * @return the number of physics steps of the last run.
+     */
+    public int getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * Takes over the outcome of this simulation raced in another process.
+     */
+    void setResult(float raceTime, float topSpeed, int steps)
+    {
+        this.raceTime = raceTime;
+        this.topSpeed = topSpeed;
+        this.steps = steps;
+    }
+
+    /**
+     * Runs the race, see <code>run()</code>.
+     * 
+     * @return this simulation
+     */
+    public Object call() throws IOException
+    {
+        run();
+        return this;
+    }
+
+    /**
+     * Builds track and car in a new physics world and drives the race.
+     * 
+     * @return the race time, NaN if the finish line was not reached before the timeout
+     */
+    public float run() throws IOException
+    {
+        raceTime = Float.NaN;
+        topSpeed = 0;
+        steps = 0;
+
+        PhysicsWorld world = PhysicsWorld.createLocal();
+        try
+        {
+            world.setStepSize(stepSize);
+            world.setUpdateRate(-1);
+            world.setStepFunction(PhysicsWorld.SF_STEP_QUICK);
+            world.setPhysicsCallBack(new CarPhysicsCallback());
+
+            RaceSetup.addTrack(loadModel(RaceSetup.ROAD));
+            RaceSetup.addTrack(loadModel(RaceSetup.TERRAIN));
+
+            Node scene = new Node("race");
+            Box startLine = RaceSetup.createLine("startline", RaceSetup.START_LINE);
+            Box finishLine = RaceSetup.createLine("finishline", RaceSetup.FINISH_LINE);
+            scene.attachChild(startLine);
+            scene.attachChild(finishLine);
+
+            Node carNode = new Node("car");
+            DynamicPhysicsObject[] wheels = RaceSetup.createWheels(loadModel(RaceSetup.WHEEL), carNode, new Node[4]);
+            Node chassisNode = loadModel(RaceSetup.CHASSIS);
+            RaceSetup.placeChassis(chassisNode, carNode);
+            Car car = RaceSetup.createCar(chassisNode, wheels);
+
+            for (int i = 0; i < gearRatios.length; i++)
+                if (!Float.isNaN(gearRatios[i]))
+                    car.setGearRatio(i - 1, gearRatios[i]);
+            if (!Float.isNaN(clutchTime))
+                car.setClutchTime(clutchTime);
+
+            RaceSetup.startCar(car);
+            scene.attachChild(carNode);
+            scene.updateGeometricState(0, true);
+
+            drive(car, scene, carNode, startLine, finishLine);
+            return raceTime;
+        }
+        finally
+        {
+            PhysicsWorld.releaseLocal();
+        }
+    }
+
+    private void drive(Car car, Node scene, Node carNode, Box startLine, Box finishLine)
+    {
+        CollisionResults collisionResults = new BoundingCollisionResults();
+        Vector3f velocity = new Vector3f();
+        float[] controls = new float[3];
+        int position = 0;
+        float startTime = Float.NaN;
+        int maxSteps = (int) Math.ceil(timeout / stepSize);
+
+        while (steps < maxSteps)
+        {
+            float time = steps * stepSize;
+
+            // same order as Racer.updatePhysics()
+            position = trace.apply(car, time, position, controls);
+            car.update(stepSize);
+            PhysicsWorld.getInstance().update(stepSize);
+            steps++;
+            time = steps * stepSize;
+
+            float speed = car.getChassis().getLinearVelocity(velocity).length();
+            if (speed > topSpeed)
+                topSpeed = speed;
+
+            scene.updateGeometricState(stepSize, true);
+            collisionResults.clear();
+            if (Float.isNaN(startTime))
+            {
+                startLine.calculateCollisions(carNode, collisionResults);
+                if (collisionResults.getNumber() > 0)
+                    startTime = time;
+            }
+            else
+            {
+                finishLine.calculateCollisions(carNode, collisionResults);
+                if (collisionResults.getNumber() > 0)
+                {
+                    raceTime = time - startTime;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses one of the models without display, so only the geometry is loaded.
+     */
+    private static Node loadModel(String name) throws IOException
+    {
+        byte[] data;
+        synchronized (modelCache)
+        {
+            data = (byte[]) modelCache.get(name);
+            if (data == null)
+            {
+                data = readFully(RaceSetup.getResource(name).openStream());
+                modelCache.put(name, data);
+            }
+        }
+        return new JmeBinaryReader().loadBinaryFormat(new ByteArrayInputStream(data));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -15,46 +15,45 @@
  * POSSIBILITY OF SUCH DAMAGE.
  */
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.IntBuffer;
 import java.util.logging.Level;
 
 import org.lwjgl.BufferUtils;
+import org.lwjgl.openal.AL;
 import org.lwjgl.opengl.GL11;
+import org.odejava.Body;
 
 import camera.CameraHandler;
 
 import com.jme.app.MultiThreadingGameApp;
-import com.jme.app.GlobalLock;
+import com.jme.app.TransformSnapshot;
 import com.jme.bounding.BoundingBox;
-import com.jme.bounding.OBB2;
-import com.jme.bounding.OrientedBoundingBox;
 import com.jme.image.Image;
 import com.jme.image.Texture;
 import com.jme.input.InputHandler;
 import com.jme.input.KeyBindingManager;
 import com.jme.input.KeyInput;
 import com.jme.intersection.BoundingCollisionResults;
-import com.jme.intersection.BoundingPickResults;
 import com.jme.intersection.CollisionResults;
-import com.jme.intersection.PickResults;
 import com.jme.light.DirectionalLight;
 import com.jme.light.LightNode;
 import com.jme.math.FastMath;
 import com.jme.math.Quaternion;
-import com.jme.math.Ray;
 import com.jme.math.Vector3f;
 import com.jme.renderer.Camera;
-import com.jme.renderer.CloneCreator;
 import com.jme.renderer.ColorRGBA;
 import com.jme.renderer.Renderer;
+import com.jme.scene.BvhNode;
 import com.jme.scene.Controller;
 import com.jme.scene.Node;
 import com.jme.scene.Skybox;
 import com.jme.scene.Spatial;
 import com.jme.scene.Text;
 import com.jme.scene.TriMesh;
+import com.jme.scene.lod.ScreenErrorBudget;
 import com.jme.scene.shape.Box;
 import com.jme.scene.shape.Quad;
 import com.jme.scene.state.AlphaState;
@@ -71,11 +70,12 @@ import com.jmex.effects.LensFlare;
 import com.jmex.effects.LensFlareFactory;
 import com.jmex.effects.ParticleManager;
 import com.jmex.model.XMLparser.JmeBinaryReader;
+import com.jmex.model.XMLparser.Converters.MaxToJme;
+import com.jmex.model.XMLparser.Converters.MilkToJme;
 import com.jmex.physics.DynamicPhysicsObject;
 import com.jmex.physics.PhysicsWorld;
-import com.jmex.physics.StaticPhysicsObject;
-import com.jmex.physics.types.PhysicsCylinder;
 import com.jmex.physics.vehicle.Car;
+import com.jmex.sound.openAL.SoundSystem;
 
 /**
  * @author Ahmed
@@ -105,6 +105,10 @@ public class Racer extends MultiThreadingGameApp
 
     private Node carNode = null;
 
+    private Node roadNode = null;
+
+    private Node terrainNode = null;
+
     private Box startLine = null;
 
     private Box finishLine = null;
@@ -133,8 +137,20 @@ public class Racer extends MultiThreadingGameApp
 
     private Car car = null;
 
+    private EngineSound engineSound = null;
+
     private Skybox skybox = null;
 
+    private AssetPipeline assets = null;
+
+    /** The terrain as loaded, the model cut into levels of detail once that could be built. */
+    private String terrainModel = RaceSetup.TERRAIN;
+
+    /** Screen error the levels of detail of the terrain may show, grows while frames take longer than 1/60s. */
+    private ScreenErrorBudget lodBudget = new ScreenErrorBudget(1f, 0.5f, 16f, 1f / 60f);
+
+    private long lastRenderTime = 0;
+
     private Spatial road = null;
 
     private Text timerText = null;
@@ -169,7 +185,7 @@ public class Racer extends MultiThreadingGameApp
     static int fps_render_tmp = 0;
     static int fps_render = 0;
 
-    private boolean lensFlareVisible = false;
+    private SunVisibility sunVisibility = null;
 
     static boolean particleRestart[] = new boolean[4];
 
@@ -183,29 +199,37 @@ public class Racer extends MultiThreadingGameApp
 
     int mySpecialConsoleCounter=0;
     
-    private boolean physicsUpdateOccured=false;
-    
+    /**
+     * Set by the render thread to have the physics thread put the car back on the start, cleared by the physics thread
+     * once the car stands still there.
+     */
+    private volatile boolean resetRequested = false;
+
+    /** Physics thread temporaries of the reset. */
+    private final Quaternion resetRotation = new Quaternion();
+
+    private final Quaternion resetWheelRotation = new Quaternion();
+
+    private final Vector3f resetChassisPosition = new Vector3f();
+
+    private final Vector3f resetWheelPosition = new Vector3f();
+
+    private final Vector3f resetVelocity = new Vector3f();
+
     @Override
     protected void updatePhysics(float tpf)
     {
-        GlobalLock.writeLock.lock();
-        rootNode.updateGeometricState(tpf, true);
-        GlobalLock.writeLock.unlock();
-        GlobalLock.writeLock.lock();
-        lightNode.updateGeometricState(tpf, true);
-        GlobalLock.writeLock.unlock();
-        GlobalLock.writeLock.lock();
+        // runs on the physics thread, the scene graph is only touched by the
+        // render thread; transforms are handed over through the snapshot
         input.update(tpf);
-        GlobalLock.writeLock.unlock();
-        
-        //GlobalLock.writeLock.lock();
+        if (resetRequested)
+            resetCar(tpf);
         car.update(tpf);
-  //      GlobalLock.writeLock.unlock();
-        
-     //   GlobalLock.writeLock.lock();
         PhysicsWorld.getInstance().update(tpf);
-       // GlobalLock.writeLock.unlock();
-        physicsUpdateOccured = true;
+        if (resetRequested && FastMath.floor(0.5f + car.getChassis().getLinearVelocity(resetVelocity).length()) <= 1f)
+            resetRequested = false;
+        if (engineSound != null)
+            engineSound.update(car);
     }
     
     @Override
@@ -224,7 +248,14 @@ public class Racer extends MultiThreadingGameApp
             //System.out.println("game logic updates per second: "+fps_logic);
         }
 
-        initResetLogic(tpf_logic);
+        Spatial.resetUpdateCounts();
+        rootNode.updateGeometricState(tpf_logic, true);
+        lightNode.updateGeometricState(tpf_logic, true);
+        if (LoggingSystem.getLogger().isLoggable(Level.FINE))
+            LoggingSystem.getLogger().log(Level.FINE, "spatials updated (world/bound): " + Spatial.getWorldUpdateCount()
+                    + " / " + Spatial.getBoundUpdateCount());
+
+        initResetLogic();
 
         updateTimer(tpf_logic * 1000f*60f);
 
@@ -234,7 +265,7 @@ public class Racer extends MultiThreadingGameApp
 
         updateTimerLabel();
 
-        updateLensFlare();
+        updateLensFlare(tpf_logic);
 
         updateGauges();
         
@@ -251,68 +282,57 @@ public class Racer extends MultiThreadingGameApp
                 
     }
 
-    void initResetLogic(float tpf)
+    void initResetLogic()
     {
-        if (raceReset || KeyBindingManager.getKeyBindingManager().isValidCommand("toggle_smoothing", false))
+        if (KeyBindingManager.getKeyBindingManager().isValidCommand("toggle_smoothing", false))
         {
-            //System.out.println("start: "+car.getChassis().getLinearVelocity().length());
-
+            // the bodies belong to the physics thread, which does the reset
+            // before its next step
             raceReset = true;
+            resetRequested = true;
+        }
+        if (raceReset)
+        {
             raceStart = false;
             raceTime = 0;
+        }
+        finishResetLogic();
+    }
 
-            car.getChassis().resetForces();
-            car.getWheels()[0].resetForces();
-            car.getWheels()[1].resetForces();
-            car.getWheels()[2].resetForces();
-            car.getWheels()[3].resetForces();
-
-            car.setCurrentGear(0);
-            car.setBrakePedal(1);
-            car.setSteeringWheel(0);
-            car.setGasPedal(0);
-            car.setNeutrall();
-            car.update(tpf);
-
-            car.getChassis().getSpatial().setLocalRotation(new Quaternion(car.getStartRotation()));
-            car.getChassis().getSpatial().setLocalTranslation(new Vector3f(car.getStartPosition()));
-
-            car.getChassis().resetForces();
-            car.getWheels()[0].resetForces();
-            car.getWheels()[1].resetForces();
-            car.getWheels()[2].resetForces();
-            car.getWheels()[3].resetForces();
-            
-            car.getChassis().syncWithGraphical();
-            car.getWheels()[0].syncWithGraphical();
-            car.getWheels()[1].syncWithGraphical();
-            car.getWheels()[2].syncWithGraphical();
-            car.getWheels()[3].syncWithGraphical();
-            car.update(tpf);
-
-            GlobalLock.readLock.unlock();
-
-            physicsUpdateOccured=false;
-            while(!physicsUpdateOccured)
-            {
-                car.update(tpf);
-                try
-                {
-                    Thread.sleep(15);
-                }
-                catch (InterruptedException e)
-                {
-                    LoggingSystem.getLogger().log(Level.WARNING, "Error sleeping during main loop.");
-                }
-            }
-
-            GlobalLock.readLock.lock();
-
-            finishResetLogic();
-
-            //carNode.updateGeometricState(1, true);
-
+    /**
+     * Puts the car back on the start with its engine idling. Called by the physics thread before stepping the world;
+     * the wheels are moved along with the chassis so the joints keep their anchors.
+     */
+    private void resetCar(float tpf)
+    {
+        car.setCurrentGear(0);
+        car.setBrakePedal(1);
+        car.setSteeringWheel(0);
+        car.setGasPedal(0);
+        car.setNeutrall();
+
+        Body chassis = car.getChassis().getPhysicalEntity();
+        chassis.getPosition(resetChassisPosition);
+        // the rotation taking the chassis from where it is to the start
+        chassis.getQuaternion(resetRotation).inverseLocal();
+        car.getStartRotation().mult(resetRotation, resetRotation);
+
+        DynamicPhysicsObject[] wheels = car.getWheels();
+        for (int i = 0; i < wheels.length; i++)
+        {
+            Body wheel = wheels[i].getPhysicalEntity();
+            wheel.getPosition(resetWheelPosition).subtractLocal(resetChassisPosition);
+            resetRotation.multLocal(resetWheelPosition).addLocal(car.getStartPosition());
+            wheel.setPosition(resetWheelPosition);
+            wheel.setQuaternion(resetRotation.mult(wheel.getQuaternion(resetWheelRotation), resetWheelRotation));
+            wheels[i].resetForces();
+            wheels[i].setEnabled(true);
         }
+        chassis.setPosition(car.getStartPosition());
+        chassis.setQuaternion(car.getStartRotation());
+        car.getChassis().resetForces();
+        car.getChassis().setEnabled(true);
+        car.update(tpf);
     }
 
     void updateSkidding(float tpf)
@@ -378,45 +398,14 @@ public class Racer extends MultiThreadingGameApp
 
     void finishResetLogic()
     {
-        //System.out.println("end("+physicsUpdateOccured+"): "+car.getChassis().getLinearVelocity().length());
-        if (raceReset)
-        {
-     
-            Vector3f pos = new Vector3f(car.getChassis().getSpatial().getLocalTranslation());
-            Quaternion rot = new Quaternion(car.getChassis().getSpatial().getLocalRotation());
-
-            if (FastMath.floor(0.5f+FastMath.abs(car.getChassis().getLinearVelocity().length()))<=1f &&
-                    pos.x == car.getStartPosition().x &&
-                    pos.y == car.getStartPosition().y &&
-                    pos.z == car.getStartPosition().z &&
-            
-            rot.w==car.getStartRotation().w &&
-            rot.y==car.getStartRotation().y &&
-            rot.z==car.getStartRotation().z &&
-            rot.w==car.getStartRotation().w)
-            {
-                raceReset = false;
-            }                        
-                //System.out.println("xs:"+pos.x+" ys:"+pos.y+" zs:"+pos.z);
-                //System.out.println("xi:"+car.getStartPosition().x+" yi:"+car.getStartPosition().y+" zi:"+car.getStartPosition().z);
-                //System.out.println("xs:"+rot.x+" ys:"+rot.y+" zs:"+rot.z+" ws:"+rot.w);
-                //System.out.println("xi:"+car.getStartRotation().x+" yi:"+car.getStartRotation().y+" zi:"+car.getStartRotation().z+" wi:"+car.getStartRotation().w);
-        }
+        if (raceReset && !resetRequested)
+            raceReset = false;
     }
 
-    Ray lensFlareRay = new Ray();
-    PickResults pickResults = new BoundingPickResults();
-
-    void updateLensFlare()
+    void updateLensFlare(float tpf)
     {
-
-        lensFlareRay.setOrigin(cam.getLocation());
-        lensFlareRay.setDirection(lightNode.getLocalTranslation());
-
-        pickResults.clear();
-        rootNode.findPick(lensFlareRay, pickResults);
-        lensFlareVisible = pickResults.getNumber() > 4 ? false : true;
-
+        if (sunVisibility != null)
+            flare.setIntensity(sunVisibility.update(cam.getLocation(), tpf));
     }
 
     void updateStartFinishLogic()
@@ -483,25 +472,16 @@ public class Racer extends MultiThreadingGameApp
             fps_render = fps_render_tmp;
             fps_render_tmp = 0;
             
-            System.out.println("rendered frames second: "+fps_render);
+            if (LoggingSystem.getLogger().isLoggable(Level.FINE))
+                LoggingSystem.getLogger().log(Level.FINE, "rendered frames per second: " + fps_render);
         }
-        display.getRenderer().clearBuffers();
+        long now = System.nanoTime();
+        if (lastRenderTime != 0)
+            lodBudget.update((now - lastRenderTime) / 1000000000f);
+        lastRenderTime = now;
 
-        //TODO: lens flare culled ?
-        // draw lens flare
-        /*
-        if (lensFlareVisible && flare != null)
-        {
-            flare.setForceView(true);
-            flare.setForceCull(false);
-        }
-        else
-        {
-            flare.setForceView(false);
-            flare.setForceCull(true);
+        display.getRenderer().clearBuffers();
 
-        }
-        */
         display.getRenderer().draw(rootNode);
 
         // draw skidding
@@ -695,6 +675,14 @@ public class Racer extends MultiThreadingGameApp
         flare = LensFlareFactory.createBasicLensFlare("flare", tex);
         flare.setLocalTranslation(lightNode.getLocalTranslation());
 
+        sunVisibility = new SunVisibility(lightNode);
+        if (roadNode != null)
+            sunVisibility.addOccluder(roadNode);
+        if (terrainNode != null)
+            sunVisibility.addOccluder(terrainNode);
+        if (carNode != null)
+            sunVisibility.addOccluder(carNode);
+
         rootNode.attachChild(lightNode);
 
         // notice that it comes at the end
@@ -769,7 +757,7 @@ public class Racer extends MultiThreadingGameApp
         uiNode = new Node("UI Node");
 
         PhysicsWorld.create();
-        PhysicsWorld.getInstance().setStepSize(1.0f / 60f);//60f);
+        PhysicsWorld.getInstance().setStepSize(getPhysicsStepSize());
         PhysicsWorld.getInstance().setUpdateRate(-1);//190);
         PhysicsWorld.getInstance().setStepFunction(PhysicsWorld.SF_STEP_QUICK);//SIMULATION);//.SF_STEP_QUICK);
         carPhysicsHandler = new CarPhysicsCallback();
@@ -782,11 +770,17 @@ public class Racer extends MultiThreadingGameApp
          guiNode.setForceView(true);
          rootNode.attachChild(guiNode);
 */
+        startLoadingAssets();
+
         initSkyBox();
         initFloor();
         initWalls();
 
         initCar();
+        initEngineSound();
+        assets.shutdown();
+        assets = null;
+        initTransformSnapshot();
 
         initCamera();
 
@@ -885,7 +879,6 @@ public class Racer extends MultiThreadingGameApp
         while((endTime-startTime)<5000000000l)
         {
             endTime = System.nanoTime();
-            GlobalLock.readLock.lock();
             update(-1);
             render(-1);
 
@@ -895,7 +888,7 @@ public class Racer extends MultiThreadingGameApp
             miscText.print("warming up VM and caches..." + ((int) ((endTime-startTime) / 50000000.00f)) + "%");
 
             display.getRenderer().draw(tmpNode);
-            display.getRenderer().displayBackBufferAndUnlock();
+            display.getRenderer().displayBackBuffer();
         }
         display.getRenderer().clearBuffers();
        
@@ -906,6 +899,8 @@ public class Racer extends MultiThreadingGameApp
         // Create a skybox
         skybox = new Skybox("skybox", 10000, 5000, 10000);
 
+        assets.awaitTextures();
+
         Texture north = TextureManager.loadTexture(this.getClass().getClassLoader().getResource("gamedata/north.png"),
                 Texture.MM_LINEAR, Texture.FM_LINEAR);
         Texture south = TextureManager.loadTexture(this.getClass().getClassLoader().getResource("gamedata/south.png"),
@@ -930,114 +925,212 @@ public class Racer extends MultiThreadingGameApp
         rootNode.attachChild(skybox);
     }
 
-    private void initFloor()
+    /**
+     * Converts model sources that changed since the last conversion and starts loading the models and textures on
+     * worker threads. The init methods pick them up when they need them.
+     */
+    private void startLoadingAssets()
     {
+        assets = new AssetPipeline();
+        convertModels();
+        buildLevelsOfDetail();
+
+        URL gamedata = this.getClass().getClassLoader().getResource("gamedata/");
+        TextureState ts = display.getRenderer().createTextureState();
 
+        JmeBinaryReader jbr = new JmeBinaryReader();
+        jbr.setProperty("tex_mm", Integer.valueOf(Texture.MM_LINEAR_LINEAR));
+        jbr.setProperty("tex_aniso", Float.valueOf(ts.getMaxAnisotropic()/2f));
+        jbr.setProperty("tex_fm", Integer.valueOf(Texture.FM_LINEAR));
+        jbr.setProperty("tex_type", Integer.valueOf(Image.RGB888));
+        jbr.setProperty("tex_flip", Boolean.valueOf(true));
+        jbr.setProperty("texurl", gamedata);
+        assets.loadModel(RaceSetup.ROAD, jbr, new AssetPipeline.ModelProcessor()
+        {
+            public void process(Node model)
+            {
+                VertexUtil.setSolidColor(model, new ColorRGBA(1,1,1,1));
+                VertexUtil.setBufferOnly(model, true);
+            }
+        });
+
+        jbr = new JmeBinaryReader();
+        jbr.setProperty("tex_mm", Integer.valueOf(Texture.MM_LINEAR_LINEAR));
+        jbr.setProperty("tex_aniso", Float.valueOf(ts.getMaxAnisotropic()/2f));
+        jbr.setProperty("tex_fm", Integer.valueOf(Texture.FM_LINEAR));
+        jbr.setProperty("tex_type", Integer.valueOf(Image.GUESS_FORMAT));
+        jbr.setProperty("tex_flip", Boolean.valueOf(true));
+        jbr.setProperty("texurl", gamedata);
+        assets.loadModel(terrainModel, jbr, new AssetPipeline.ModelProcessor()
+        {
+            public void process(Node model)
+            {
+                VertexUtil.optimizeForCache(model);
+                VertexUtil.duplicateTextureCoordinates(model, 2);
+                VertexUtil.scaleTextureCoords(model, new float[]{1024, 16}, new float[]{1024, 16}, null);
+                VertexUtil.setBufferOnly(model, true);
+            }
+        }, "optimizeForCache duplicateTextureCoordinates(2) scaleTextureCoords(1024,16) 2");
+
+        AssetPipeline.ModelProcessor optimize = new AssetPipeline.ModelProcessor()
+        {
+            public void process(Node model)
+            {
+                VertexUtil.optimizeForCache(model);
+            }
+        };
+        assets.loadModel(RaceSetup.WHEEL, new JmeBinaryReader(), optimize, "optimizeForCache 1");
+        assets.loadModel(RaceSetup.CHASSIS, new JmeBinaryReader(), optimize, "optimizeForCache 1");
+
+        String[] textures = { "north.png", "south.png", "east.png", "west.png", "up.png", "down.png", "GRASS.PNG",
+                "detail.png", "clouds.png" };
+        for (int i = 0; i < textures.length; i++)
+            assets.preloadTexture(this.getClass().getClassLoader().getResource("gamedata/" + textures[i]), true);
+    }
+
+    /**
+     * Converts the modelled sources of road, wheel and chassis to gamedata/*.jme, if they are there and changed.
+     */
+    private void convertModels()
+    {
+        File sources = new File(System.getProperty("racer.modelsources", "/ftp"));
+        URL gamedata = this.getClass().getClassLoader().getResource("gamedata/");
         try
         {
-            TextureState ts = display.getRenderer().createTextureState();
-            ts.setEnabled(true);
-/*
-            MilkToJme C1 = new MilkToJme();
-            MaxToJme C2 = new MaxToJme();
-            ByteArrayOutputStream BO = new ByteArrayOutputStream();
-            C2.convert(new BufferedInputStream(new URL("file:///ftp/road.3ds").openStream()), BO);
-            
-            
             JmeBinaryReader jbr = new JmeBinaryReader();
-            //jbr.setProperty("texurl", this.getClass().getClassLoader().getResource("gamedata/"));
             jbr.setProperty("tex_mm", Integer.valueOf(Texture.MM_LINEAR_LINEAR));
-            jbr.setProperty("tex_aniso", Float.valueOf(ts.getMaxAnisotropic()/2f));
+            jbr.setProperty("tex_aniso", Float.valueOf(display.getRenderer().createTextureState().getMaxAnisotropic()/2f));
             jbr.setProperty("tex_fm", Integer.valueOf(Texture.FM_LINEAR));
             jbr.setProperty("tex_type", Integer.valueOf(Image.GUESS_FORMAT));
-            jbr.setProperty("tex_flip", Boolean.valueOf(false));            
-            jbr.setProperty("texurl", this.getClass().getClassLoader().getResource("gamedata/"));
-            jbr.setProperty("texdir", this.getClass().getClassLoader().getResource("gamedata/"));
+            jbr.setProperty("tex_flip", Boolean.valueOf(true));
+            jbr.setProperty("texurl", gamedata);
+            jbr.setProperty("texdir", gamedata);
             jbr.setProperty("bound", "box");
+            assets.convert(new File(sources, "road.3ds"), new MaxToJme(), new File(RaceSetup.ROAD), jbr,
+                    new AssetPipeline.ModelProcessor()
+            {
+                public void process(Node model)
+                {
+                    VertexUtil.smoothNormals(model, true, true);
+                    VertexUtil.scaleTextureCoords(model, new float[] { 1f, 1f }, new float[] { 24f, 1f },
+                            new String[] { "backway" });
+
+                    TextureState ts = display.getRenderer().createTextureState();
+                    ts.setEnabled(true);
+                    Texture t2 = TextureManager.loadTexture(
+                            this.getClass().getClassLoader().getResource("gamedata/detail.png"), Texture.MM_LINEAR_LINEAR,
+                            Texture.FM_LINEAR);
+                    ts.setTexture(t2, 1);
+                    t2.setWrap(Texture.WM_WRAP_S_WRAP_T);
+
+                    t2.setApply(Texture.AM_COMBINE);
+                    t2.setCombineFuncRGB(Texture.ACF_ADD_SIGNED);
+                    t2.setCombineSrc0RGB(Texture.ACS_TEXTURE);
+                    t2.setCombineOp0RGB(Texture.ACO_SRC_COLOR);
+                    t2.setCombineSrc1RGB(Texture.ACS_PREVIOUS);
+                    t2.setCombineOp1RGB(Texture.ACO_SRC_COLOR);
+                    t2.setCombineScaleRGB(1.0f);
+
+                    model.setRenderState(ts);
+                    model.updateGeometricState(0, true);
+                    model.updateRenderState();
+                    model.setLightCombineMode(LightState.OFF);
+                }
+            });
 
-            // System.out.println(this.getClass().getClassLoader().getResource("gamedata/"));
+            jbr = new JmeBinaryReader();
+            jbr.setProperty("bound", "box");//obb"); // trottel!!!
+            jbr.setProperty("texurl", gamedata);
+            assets.convert(new File(sources, "wheel.ms3d"), new MilkToJme(), new File(RaceSetup.WHEEL), jbr, null);
 
-            Node tmpNode = jbr.loadBinaryFormat(new ByteArrayInputStream(BO.toByteArray()));
-            VertexUtil.smoothNormals(tmpNode, true, true);
-            VertexUtil.scaleTextureCoords(tmpNode, new float[] { 1f, 1f }, new float[] { 24f, 1f },
-                    new String[] { "backway" });
+            jbr = new JmeBinaryReader();
+            jbr.setProperty("bound", "box");//obb"); // trottel!!!
+            jbr.setProperty("texurl", gamedata);
+            assets.convert(new File(sources, "car.ms3d"), new MilkToJme(), new File(RaceSetup.CHASSIS), jbr,
+                    new AssetPipeline.ModelProcessor()
+            {
+                public void process(Node model)
+                {
+                    VertexUtil.smoothNormals(model, true, false);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            LoggingSystem.getLogger().log(Level.WARNING, "Could not convert models: " + e.getMessage());
+        }
+    }
 
-            Texture t2 = TextureManager.loadTexture(
-                    this.getClass().getClassLoader().getResource("gamedata/detail.png"), Texture.MM_LINEAR_LINEAR,
-                    Texture.FM_LINEAR);
-            ts.setTexture(t2, 1);
-            t2.setWrap(Texture.WM_WRAP_S_WRAP_T);
+    /**
+     * Cuts the terrain into blocks with continuous levels of detail, see <code>LodBuilder</code>, unless that was done
+     * for the current model already. The blocks are loaded instead of the plain terrain once they exist. The road is
+     * left alone, it is a few hundred triangles that share no edges, so there is nothing to collapse.
+     */
+    private void buildLevelsOfDetail()
+    {
+        // the blocks are written next to the terrain that is loaded, which is not the working directory when the
+        // game data is copied to the class output
+        File source = MeshCache.modelFile(RaceSetup.TERRAIN);
+        if (source == null)
+            return;
+        File target = new File(source.getParentFile(), new File(RaceSetup.TERRAIN_LOD).getName());
+
+        URL gamedata = this.getClass().getClassLoader().getResource("gamedata/");
+        try
+        {
+            JmeBinaryReader jbr = new JmeBinaryReader();
+            jbr.setProperty("texurl", gamedata);
+            jbr.setProperty("texdir", gamedata);
+            assets.derive(source, target, jbr, new AssetPipeline.ModelProcessor()
+            {
+                public void process(Node model)
+                {
+                    LodBuilder.build(model, LodBuilder.BLOCK_SIZE);
+                }
+            }, "LodBuilder.build(" + LodBuilder.BLOCK_SIZE + ") 1");
+        }
+        catch (IOException e)
+        {
+            LoggingSystem.getLogger().log(Level.WARNING, "Could not build the terrain's levels of detail: "
+                    + e.getMessage());
+        }
 
-            t2.setApply(Texture.AM_COMBINE);
-            t2.setCombineFuncRGB(Texture.ACF_ADD_SIGNED);
-            t2.setCombineSrc0RGB(Texture.ACS_TEXTURE);
-            t2.setCombineOp0RGB(Texture.ACO_SRC_COLOR);
-            t2.setCombineSrc1RGB(Texture.ACS_PREVIOUS);
-            t2.setCombineOp1RGB(Texture.ACO_SRC_COLOR);
-            t2.setCombineScaleRGB(1.0f);
+        if (target.isFile() && this.getClass().getClassLoader().getResource(RaceSetup.TERRAIN_LOD) != null)
+            terrainModel = RaceSetup.TERRAIN_LOD;
+    }
 
-            tmpNode.setRenderState(ts);
+    /**
+     * Puts a model that never moves below a node that culls and picks it by a bounding volume hierarchy.
+     */
+    private static Node staticContent(Node model)
+    {
+        BvhNode node = new BvhNode(model.getName() + "Bvh");
+        node.attachChild(model);
+        node.updateGeometricState(0, true);
+        node.build();
+        return node;
+    }
 
-            tmpNode.updateGeometricState(0, true);
-            tmpNode.updateRenderState();
+    private void initFloor()
+    {
 
-            tmpNode.setLightCombineMode(LightState.OFF);
+        try
+        {
+            Node tmpNode = assets.getModel(RaceSetup.ROAD);
 
-            // savt to JME
-            JmeBinaryWriter jbw = new JmeBinaryWriter();
-            ByteArrayOutputStream BO2 = new ByteArrayOutputStream();
-            
-       
-            jbw.writeScene(tmpNode, BO2);
-            FileOutputStream fo = new FileOutputStream("gamedata/road.jme");
-            fo.write(BO2.toByteArray());
-            fo.flush();
-            fo.close();
-*/
-            JmeBinaryReader jbr = new JmeBinaryReader();
-            jbr.setProperty("tex_mm", Integer.valueOf(Texture.MM_LINEAR_LINEAR));
-            jbr.setProperty("tex_aniso", Float.valueOf(ts.getMaxAnisotropic()/2f));
-            jbr.setProperty("tex_fm", Integer.valueOf(Texture.FM_LINEAR));
-            jbr.setProperty("tex_type", Integer.valueOf(Image.RGB888));
-            jbr.setProperty("tex_flip", Boolean.valueOf(false));            
-            jbr.setProperty("texurl", this.getClass().getClassLoader().getResource("gamedata/"));
-            //jbr.setProperty("texdir", this.getClass().getClassLoader().getResource("gamedata/"));
-            Node tmpNode = jbr.loadBinaryFormat(new URL(this.getClass().getClassLoader().getResource(
-                    "gamedata/road.jme").toString()).openStream());
-
-            VertexUtil.setSolidColor(tmpNode, new ColorRGBA(1,1,1,1));
             VertexUtil.changeTextureState(tmpNode, Texture.AM_COMBINE);
             tmpNode.updateGeometricState(1, true);
             tmpNode.setZOffset(1);
             tmpNode.setLightCombineMode(LightState.OFF);
-
-            
-/*
-            Texture t2 = TextureManager.loadTexture(
-                    this.getClass().getClassLoader().getResource("gamedata/detail.png"), Texture.MM_LINEAR_LINEAR,
-                    Texture.FM_LINEAR);
-            ts.setTexture(t2, 1);
-            t2.setWrap(Texture.WM_WRAP_S_WRAP_T);
-
-            t2.setApply(Texture.AM_COMBINE);
-            t2.setCombineFuncRGB(Texture.ACF_ADD_SIGNED);
-            t2.setCombineSrc0RGB(Texture.ACS_TEXTURE);
-            t2.setCombineOp0RGB(Texture.ACO_SRC_COLOR);
-            t2.setCombineSrc1RGB(Texture.ACS_PREVIOUS);
-            t2.setCombineOp1RGB(Texture.ACO_SRC_COLOR);
-            t2.setCombineScaleRGB(1.0f);
-
-            tmpNode.setRenderState(ts);
-            */
-                       
             tmpNode.updateRenderState();
             
-            rootNode.attachChild(tmpNode);
+            roadNode = staticContent(tmpNode);
+            rootNode.attachChild(roadNode);
 
             //tmpNode.setLocalTranslation(new Vector3f(948.8203f,0,70.915f));
 
             //0.4022500000 1/4 meile
-            PhysicsWorld.getInstance().addObject(new StaticPhysicsObject(tmpNode));
+            RaceSetup.addTrack(tmpNode);
             
             /*
             //          This grayscale image will be our terrain
@@ -1069,24 +1162,10 @@ public class Racer extends MultiThreadingGameApp
             //System.out.println("JmeBinaryWriter end");
             */
                        
-
-            jbr = new JmeBinaryReader();
-            jbr.setProperty("tex_mm", Integer.valueOf(Texture.MM_LINEAR_LINEAR));
-            jbr.setProperty("tex_aniso", Float.valueOf(ts.getMaxAnisotropic()/2f));
-            jbr.setProperty("tex_fm", Integer.valueOf(Texture.FM_LINEAR));
-            jbr.setProperty("tex_type", Integer.valueOf(Image.GUESS_FORMAT));
-            jbr.setProperty("tex_flip", Boolean.valueOf(false));            
-            jbr.setProperty("texurl", this.getClass().getClassLoader().getResource("gamedata/"));
-            //jbr.setProperty("texdir", this.getClass().getClassLoader().getResource("gamedata/"));
-            tmpNode = jbr.loadBinaryFormat(new URL(this.getClass().getClassLoader().getResource("gamedata/terrain.jme")
-                    .toString()).openStream());
-
-            VertexUtil.optimizeForCache(tmpNode);
-            VertexUtil.duplicateTextureCoordinates(tmpNode, 2);
-            VertexUtil.scaleTextureCoords(tmpNode, new float[]{1024, 16}, new float[]{1024, 16}, null);
-            //VertexUtil.setSolidColor(tmpNode, new ColorRGBA(1,1,1,1));
+            tmpNode = assets.getModel(terrainModel);
+            LodBuilder.setBudget(tmpNode, lodBudget);
             
-            ts = display.getRenderer().createTextureState();
+            TextureState ts = display.getRenderer().createTextureState();
             ts.setEnabled(true);
 
             Texture t1 = TextureManager.loadTexture(this.getClass().getClassLoader().getResource("gamedata/GRASS.PNG"),
@@ -1120,27 +1199,16 @@ public class Racer extends MultiThreadingGameApp
                 
 
             tmpNode.setLightCombineMode(LightState.OFF);
-            PhysicsWorld.getInstance().addObject(new StaticPhysicsObject(tmpNode));
+            RaceSetup.addTrack(tmpNode);
 
-            rootNode.attachChild(tmpNode);
+            terrainNode = staticContent(tmpNode);
+            rootNode.attachChild(terrainNode);
 
-            startLine = new Box("startline", new Vector3f(0, 0, 0), 0.0125f, 5, 10);
-            startLine.setModelBound(new BoundingBox());
-            startLine.updateModelBound();
-            startLine.setLocalTranslation(new Vector3f(-946.44f, -20f, -68.915f));
-            startLine.setLightCombineMode(LightState.OFF);
+            startLine = RaceSetup.createLine("startline", RaceSetup.START_LINE);
             rootNode.attachChild(startLine);
-            startLine.setForceCull(true);
-            startLine.setForceView(false);
-
-            finishLine = new Box("finishline", new Vector3f(0, 0, 0), 0.0125f, 5, 10);
-            finishLine.setModelBound(new BoundingBox());
-            finishLine.updateModelBound();
-            finishLine.setLocalTranslation(new Vector3f(-423.8f, -20f, -68.915f));
-            finishLine.setLightCombineMode(LightState.OFF);
+
+            finishLine = RaceSetup.createLine("finishline", RaceSetup.FINISH_LINE);
             rootNode.attachChild(finishLine);
-            finishLine.setForceCull(true);
-            finishLine.setForceView(false);
 /*
 
             Box d = new Box("referenceline", new Vector3f(0, 0, 0), 2000, 0.05f, 10);
@@ -1174,6 +1242,36 @@ public class Racer extends MultiThreadingGameApp
          */
     }
 
+    /**
+     * Lets the physics thread publish the chassis and wheel transforms instead of writing the scene graph, the render
+     * thread applies them at the start of each frame.
+     */
+    private void initTransformSnapshot()
+    {
+        Spatial[] targets = new Spatial[1 + car.getWheels().length];
+        targets[0] = car.getChassis().getSpatial();
+        for (int i = 0; i < car.getWheels().length; i++)
+            targets[i + 1] = car.getWheels()[i].getSpatial();
+
+        TransformSnapshot snapshot = new TransformSnapshot(targets);
+        PhysicsWorld.getInstance().setTransformSnapshot(snapshot);
+        setTransformSnapshot(snapshot);
+    }
+
+    private void initEngineSound()
+    {
+        SoundSystem.init(null, SoundSystem.OUTPUT_DEFAULT);
+        if (!AL.isCreated())
+        {
+            LoggingSystem.getLogger().log(Level.WARNING, "OpenAL not available, no engine sound.");
+            return;
+        }
+        // a six cylinder engine
+        engineSound = new EngineSound(6);
+        engineSound.update(car);
+        engineSound.play();
+    }
+
     private void initCar()
     {
         carNode = new Node("car");
@@ -1189,132 +1287,20 @@ public class Racer extends MultiThreadingGameApp
         // //////////////////////////////////////////////
         try
         {
-
-            /*
-            MilkToJme C1 = new MilkToJme();
-            ByteArrayOutputStream BO = new ByteArrayOutputStream();
-            C1.convert(new BufferedInputStream(new URL("file:///ftp/wheel.ms3d").openStream()), BO);
-            JmeBinaryReader jbr = new JmeBinaryReader();
-            jbr.setProperty("bound", "box");//obb"); // trottel!!!
-            jbr.setProperty("texurl", this.getClass().getClassLoader().getResource("gamedata/"));
-            //jbr.setProperty("texdir", this.getClass().getClassLoader().getResource("test/"));
-
-            jbr = new JmeBinaryReader();
-            Node tmpNode = jbr.loadBinaryFormat(new ByteArrayInputStream(BO.toByteArray()));
-
-            //          save to jme
-            JmeBinaryWriter jbw = new JmeBinaryWriter();
-            ByteArrayOutputStream BO2 = new ByteArrayOutputStream();
-            jbw.writeScene(tmpNode, BO2);
-            FileOutputStream fo = new FileOutputStream("gamedata/wheel.jme");
-            fo.write(BO2.toByteArray());
-            fo.close();
-            */
-            JmeBinaryReader jbr = new JmeBinaryReader();
-            Node tmpNode = jbr.loadBinaryFormat(new URL(this.getClass().getClassLoader().getResource(
-            "gamedata/wheel.jme").toString()).openStream());
-
-            
-            CloneCreator wheel = new CloneCreator(tmpNode);
-
-            wheel.addProperty("colors");
-            wheel.addProperty("texcoords");
-            wheel.addProperty("vertices");
-            wheel.addProperty("normals");
-            wheel.addProperty("indices");
+            Node tmpNode = assets.getModel(RaceSetup.WHEEL);
 
             TextureState ts = display.getRenderer().createTextureState();
             ts.setEnabled(true);
 
             // Create the four wheels that we will attach to the car.
-            DynamicPhysicsObject[] wheels = new DynamicPhysicsObject[4];
-            for (int i = 0; i < wheels.length; i++)
-            {
-
-                // Create the wheel graphics.
-                Spatial wheelGraphics = wheel.createCopy();
-                wheelGraphics.setName("Wheel " + i);
-
-                if (i == 2 || i == 0)
-                    wheelGraphics.setLocalRotation(new Quaternion(new float[] { 180 * FastMath.DEG_TO_RAD, 0, 0 }));
-
-                // Create the wheel physics.
-                wheelNode[i] = new Node("Wheel " + i);
-                wheelNode[i].attachChild(wheelGraphics);
-                VertexUtil.optimizeForCache(wheelNode[i]);
-
-
-                wheels[i] = new DynamicPhysicsObject(wheelGraphics, new PhysicsCylinder(0.32f, 0.19f), 2.5f); // 15kg
-                carNode.attachChild(wheelNode[i]);
-                //rootNode.attachChild(wheelNode[i]);
-            }
+            DynamicPhysicsObject[] wheels = RaceSetup.createWheels(tmpNode, carNode, wheelNode);
 
             // Load the model that makes out the chassis.
+            chassisNode = assets.getModel(RaceSetup.CHASSIS);
 
-            // try{
-            /*
-            BO = new ByteArrayOutputStream();
-            C1 = new MilkToJme();
-            C1.convert(new BufferedInputStream(new URL("file:///ftp/car.ms3d").openStream()), BO);
-            jbr = new JmeBinaryReader();
-            jbr.setProperty("bound", "box");//obb"); // trottel!!!
-            jbr.setProperty("texurl", this.getClass().getClassLoader().getResource("gamedata/"));
-            //jbr.setProperty("texdir", this.getClass().getClassLoader().getResource("test/"));
-
-            chassisNode = jbr.loadBinaryFormat(new ByteArrayInputStream(BO.toByteArray()));
-            VertexUtil.smoothNormals(chassisNode, true, false);
-
-            // save to jme
-            jbw = new JmeBinaryWriter();
-            BO2 = new ByteArrayOutputStream();
-            jbw.writeScene(chassisNode, BO2);
-            fo = new FileOutputStream("gamedata/golf4.jme");
-            fo.write(BO2.toByteArray());
-            fo.close();
-            */
-            jbr = new JmeBinaryReader();
-            chassisNode = jbr.loadBinaryFormat(new URL(this.getClass().getClassLoader().getResource(
-                    "gamedata/golf4.jme").toString()).openStream());
-            VertexUtil.optimizeForCache(chassisNode);
-
-
-            chassisNode.setLocalRotation(new Quaternion(new float[] { 0, 90f * FastMath.DEG_TO_RAD, 0 }));
-
-            Vector3f tmp = new Vector3f(chassisNode.getLocalTranslation());
-            //tmpNode.setLocalTranslation(new Vector3f(948.8203f,0,70.915f));
-
-            tmp.x += -948.8203f;
-            tmp.z += -70.915f;
-            tmp.y += -15f;
-            //tmp.y-=15;//25f;//.y-=20;//tmp);
-            chassisNode.setLocalTranslation(new Vector3f(tmp));
-            chassisNode.setName("Chassis");
-
-            carNode.attachChild(chassisNode);
+            RaceSetup.placeChassis(chassisNode, carNode);
 
-            carNode.setWorldBound(new OBB2());
-            carNode.updateWorldBound();
-
-            DynamicPhysicsObject chassis = new DynamicPhysicsObject(chassisNode, 140f);//350);//140f); // 1400 kg
-
-            // restore save golf4
-            //float enginePower = 0; // The power of the cars engine.
-            float suspention = 0.00025f;// 0805f; // The suspention constant. A lower value
-            boolean fourWheeled = false;// true;
-            boolean frontDriven = true;//true;
-            Vector3f frontAxleCenter = new Vector3f(1.16f, -0.84f, 0); // The center of
-            Vector3f backAxleCenter = new Vector3f(-1.33f, -0.82f, 0); // The center of
-            float axleLength = 1.5f; // The length of the axles. They are assumed to
-            float brakePower = 50;
-            float brakeBalance = 0.75f;
-
-            // System.out.println("fps: ");
-            car = new Car(chassis, wheels, brakePower, brakeBalance, suspention, frontDriven, fourWheeled,
-                    frontAxleCenter, backAxleCenter, axleLength, (this.getClass().getClassLoader()
-                            .getResource("gamedata/golf_engine.png")).getFile(), 1000f, 7000f, 120f, 280f);
-
-            chassisNode.setWorldBound(new OrientedBoundingBox());
-            chassisNode.updateWorldBound();
+            car = RaceSetup.createCar(chassisNode, wheels);
 
             // Environmental Map (reflection of clouds)
             Texture t1 = TextureManager.loadTexture(
@@ -1353,17 +1339,7 @@ public class Racer extends MultiThreadingGameApp
 
             // Send a jME SceneGraph to jME Binary
             
-            car.addToWorld();
-
-            car.getChassis().resetForces();
-            car.getWheels()[0].resetForces();
-            car.getWheels()[1].resetForces();
-            car.getWheels()[2].resetForces();
-            car.getWheels()[3].resetForces();
-            car.getChassis().syncWithGraphical();
-
-            car.setStartPosition(new Vector3f(car.getChassis().getSpatial().getLocalTranslation()));
-            car.setStartRotation(new Quaternion(car.getChassis().getSpatial().getLocalRotation()));
+            RaceSetup.startCar(car);
 
             /*          
              Node carNode = new Node("car");
@@ -1638,6 +1614,9 @@ public class Racer extends MultiThreadingGameApp
     @Override
     protected void cleanup()
     {
+        if (engineSound != null)
+            engineSound.stop();
+        LoggingSystem.getLogger().log(Level.INFO, TextureManager.getTextureCache().toString());
     }
 
     private void updateTimer(float dt)
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2003-2004, jMonkeyEngine - Mojo Monkey Coding All rights reserved. Redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of
+ * the Mojo Monkey Coding, jME, jMonkey Engine, nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission. THIS SOFTWARE IS PROVIDED BY THE
+ * COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.util.ArrayList;
+
+import com.jme.intersection.BoundingPickResults;
+import com.jme.intersection.PickResults;
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+import com.jme.scene.Geometry;
+import com.jme.scene.Spatial;
+import com.jme.scene.TriMesh;
+import com.jme.util.IntList;
+
+/**
+ * Tells how much of the sun can be seen from the camera, for fading the lens flare. The sun is hidden when the ray
+ * from the camera to it hits a triangle of one of the occluders. The occluders' bounds are picked first, which is
+ * cheap below a <code>BvhNode</code>, and only the meshes whose bounds the ray hits are tested triangle by triangle
+ * through their collision trees.
+ * <p>
+ * The result is kept while the camera moves less than the tolerance, up to a maximum age, so the exact test runs a
+ * few times per second instead of every frame. The visibility fades towards the result over the fade time, which
+ * also hides the delay.
+ * </p>
+ */
+public final class SunVisibility
+{
+    private final Spatial sun;
+
+    private final ArrayList occluders = new ArrayList();
+
+    private float tolerance = 0.1f;
+
+    private float maxAge = 0.2f;
+
+    private float fadeTime = 0.15f;
+
+    /** The result of the last exact test, 1 if the sun was visible. */
+    private float target = 1;
+
+    private float visibility = 1;
+
+    private boolean tested = false;
+
+    private float age;
+
+    private final Vector3f testedEye = new Vector3f();
+
+    private final Vector3f testedSun = new Vector3f();
+
+    private int tests;
+
+    private final Ray ray = new Ray();
+
+    private final ArrayList candidates = new ArrayList();
+
+    private final IntList triangles = new IntList();
+
+    private final PickResults candidatePicks = new BoundingPickResults()
+    {
+        @Override
+        public void addPick(Ray toTest, Geometry s)
+        {
+            candidates.add(s);
+        }
+    };
+
+    /**
+     * @param sun
+     *            the spatial at the sun's position, e.g. the light node of the sun.
+     */
+    public SunVisibility(Spatial sun)
+    {
+        this.sun = sun;
+    }
+
+    /**
+     * Adds a spatial that can hide the sun and builds the collision trees of its meshes. Moving occluders are fine,
+     * they are tested at their current place, but changes are only noticed once the cached result has aged.
+     */
+    public void addOccluder(Spatial occluder)
+    {
+        occluder.updateCollisionTree();
+        occluders.add(occluder);
+    }
+
+    /**
+     * @param tolerance
+     *            the distance the camera may move before the sun is tested again.
+     */
+    public void setTolerance(float tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @param maxAge
+     *            the seconds after which the sun is tested again even if the camera stood still.
+     */
+    public void setMaxAge(float maxAge)
+    {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @param fadeTime
+     *            the seconds the visibility takes to go from 0 to 1 or back.
+     */
+    public void setFadeTime(float fadeTime)
+    {
+        this.fadeTime = fadeTime;
+    }
+
+    /**
+     * Tests the sun again if the cached result is out of date and fades the visibility towards the result.
+     * 
+     * @param eye
+     *            the camera's location.
+     * @param time
+     *            the seconds since the previous update.
+     * @return the visibility, 0 if the sun is hidden, 1 if it is visible.
+     */
+    public float update(Vector3f eye, float time)
+    {
+        age += time;
+        Vector3f sunLocation = sun.getWorldTranslation();
+        if (!tested || age >= maxAge || eye.distanceSquared(testedEye) > tolerance * tolerance
+                || !sunLocation.equals(testedSun))
+        {
+            target = isOccluded(eye, sunLocation) ? 0 : 1;
+            testedEye.set(eye);
+            testedSun.set(sunLocation);
+            age = 0;
+            if (!tested)
+                visibility = target;
+            tested = true;
+        }
+
+        float step = fadeTime > 0 ? time / fadeTime : 1;
+        if (visibility < target)
+            visibility = Math.min(target, visibility + step);
+        else
+            visibility = Math.max(target, visibility - step);
+        return visibility;
+    }
+
+    /**
+     * @return the visibility of the last update, 0 if the sun is hidden, 1 if it is visible.
+     */
+    public float getVisibility()
+    {
+        return visibility;
+    }
+
+    /**
+     * @return the number of exact tests so far.
+     */
+    public int getTestCount()
+    {
+        return tests;
+    }
+
+    private boolean isOccluded(Vector3f eye, Vector3f sunLocation)
+    {
+        tests++;
+        ray.getOrigin().set(eye);
+        ray.getDirection().set(sunLocation).subtractLocal(eye).normalizeLocal();
+
+        for (int i = 0; i < occluders.size(); i++)
+        {
+            candidates.clear();
+            candidatePicks.clear();
+            ((Spatial) occluders.get(i)).findPick(ray, candidatePicks);
+            for (int c = 0; c < candidates.size(); c++)
+            {
+                Geometry candidate = (Geometry) candidates.get(c);
+                if (!(candidate instanceof TriMesh) || candidate.isForceCulled())
+                    continue;
+                triangles.clear();
+                ((TriMesh) candidate).findTrianglePick(ray, triangles);
+                if (!triangles.isEmpty())
+                    return true;
+            }
+        }
+        return false;
+    }
+}